@@ -0,0 +1,212 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.agent.util.StripedLongCounter;
+
+/**
+ * <p>Title: CommandKeyCache</p>
+ * <p>Description: A bounded concurrent cache of parsed command strings keyed by the raw command string, so that 
+ * the command keys the zabbix server sends repeatedly are only trimmed, lower-cased and CSV parsed once.
+ * Each entry also holds the command processor resolved for it, so the cache must be invalidated whenever processors are registered or removed.
+ * When the cache is full it is cleared rather than evicting individual entries, which keeps lookups lock free
+ * and is cheap for the stable key sets the zabbix server sends.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.CommandKeyCache</code></p>
+ */
+public class CommandKeyCache {
+	/** The parsed commands keyed by the raw command string */
+	private final ConcurrentHashMap<String, ParsedCommand> cache = new ConcurrentHashMap<String, ParsedCommand>();
+	/** The invalidation generation. Entries parsed in a prior generation are treated as misses. */
+	private final AtomicLong generation = new AtomicLong(0);
+	/** The number of cache hits */
+	private final StripedLongCounter hits = new StripedLongCounter();
+	/** The number of cache misses */
+	private final StripedLongCounter misses = new StripedLongCounter();
+	/** The maximum number of cached entries, or zero if caching is disabled */
+	private volatile int maxSize;
+	
+	/** The default maximum number of cached entries */
+	public static final int DEFAULT_MAX_SIZE = 8192;
+	
+	/**
+	 * Creates a new CommandKeyCache
+	 * @param maxSize The maximum number of cached entries, or zero to disable caching
+	 */
+	public CommandKeyCache(int maxSize) {
+		setMaxSize(maxSize);
+	}
+	
+	/**
+	 * Returns the current cache generation, which should be acquired before resolving the processor for a new entry
+	 * @return the current cache generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+	
+	/**
+	 * Returns the cached parse of the passed raw command string
+	 * @param commandString The raw command string
+	 * @return the parsed command or null if it is not cached
+	 */
+	public ParsedCommand get(String commandString) {
+		ParsedCommand parsed = cache.get(commandString);
+		if(parsed!=null && parsed.generation==generation.get()) {
+			hits.increment();
+			return parsed;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Caches a parsed command
+	 * @param commandString The raw command string
+	 * @param parsed The parsed command
+	 */
+	public void put(String commandString, ParsedCommand parsed) {
+		int max = maxSize;
+		if(max<1 || parsed.generation!=generation.get()) return;
+		if(cache.size()>=max) {
+			cache.clear();
+		}
+		cache.put(commandString, parsed);
+	}
+	
+	/**
+	 * Invalidates all cached entries
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+		cache.clear();
+	}
+	
+	/**
+	 * Returns the number of cached entries
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		return cache.size();
+	}
+	
+	/**
+	 * Returns the maximum number of cached entries
+	 * @return the maximum number of cached entries, or zero if caching is disabled
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Sets the maximum number of cached entries. Clears the cache if it is over the new size.
+	 * @param maxSize The maximum number of cached entries, or zero to disable caching
+	 */
+	public void setMaxSize(int maxSize) {
+		if(maxSize<0) throw new IllegalArgumentException("Invalid command cache size [" + maxSize + "]", new Throwable());
+		this.maxSize = maxSize;
+		if(cache.size()>maxSize) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Returns the number of cache hits
+	 * @return the number of cache hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * Returns the number of cache misses
+	 * @return the number of cache misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Returns the cache hit ratio
+	 * @return the ratio of hits to lookups, or zero if there have been no lookups
+	 */
+	public double getHitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total==0 ? 0D : (double)h/total;
+	}
+	
+	/**
+	 * Resets the hit and miss counts
+	 */
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+	}
+	
+	/**
+	 * <p>Title: ParsedCommand</p>
+	 * <p>Description: A command string parsed into its lower-cased command name, its arguments and the command processor resolved for the name</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.CommandKeyCache.ParsedCommand</code></p>
+	 */
+	public static class ParsedCommand {
+		/** The lower-cased command name */
+		final String commandName;
+		/** The command arguments */
+		final String[] args;
+		/** The resolved command processor, or null if no processor is registered for the command name */
+		final ICommandProcessor processor;
+		/** The cache generation the processor was resolved in */
+		final long generation;
+		
+		/**
+		 * Creates a new ParsedCommand
+		 * @param commandName The lower-cased command name
+		 * @param args The command arguments
+		 * @param processor The resolved command processor, or null if no processor is registered for the command name
+		 * @param generation The cache generation the processor was resolved in
+		 */
+		ParsedCommand(String commandName, String[] args, ICommandProcessor processor, long generation) {
+			this.commandName = commandName;
+			this.args = args;
+			this.processor = processor;
+			this.generation = generation;
+		}
+		
+		/**
+		 * Returns a copy of the command arguments, so that a command processor cannot modify the cached arguments
+		 * @return a copy of the command arguments
+		 */
+		String[] copyArgs() {
+			return args.length==0 ? args : args.clone();
+		}
+	}
+}
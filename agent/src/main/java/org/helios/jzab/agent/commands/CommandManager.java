@@ -25,12 +25,9 @@
 package org.helios.jzab.agent.commands;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -46,7 +43,7 @@ import javax.management.NotificationListener;
 import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 
-import org.helios.jzab.agent.SystemClock;
+import org.helios.jzab.agent.commands.CommandKeyCache.ParsedCommand;
 import org.helios.jzab.agent.commands.instrumentation.ExecutionMetric;
 import org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean;
 import org.helios.jzab.agent.internal.jmx.ThreadPoolFactory;
@@ -75,6 +72,8 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 	protected final Map<ObjectName, Set<String>> pluginRegistry = new ConcurrentHashMap<ObjectName, Set<String>>();
 	/** Indicates if execution instrumentation is enabled */
 	protected final boolean[] instrumentation = new boolean[]{true};
+	/** The parsed command key cache */
+	protected final CommandKeyCache commandKeyCache = new CommandKeyCache(CommandKeyCache.DEFAULT_MAX_SIZE);
 
 	/** The singleton instance */
 	protected static volatile CommandManager instance = null;
@@ -170,6 +169,7 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 			synchronized(commandProcessors) {
 				if(!commandProcessors.containsKey(name)) {
 					commandProcessors.put(name, processor);
+					commandKeyCache.invalidate();
 					exists = false;
 				}
 			}
@@ -184,7 +184,11 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 	 */
 	protected ICommandProcessor removeCommandProcessor(String name) {
 		if(name==null || name.trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty", new Throwable());
-		return commandProcessors.remove(name.trim().toLowerCase());
+		ICommandProcessor processor = commandProcessors.remove(name.trim().toLowerCase());
+		if(processor!=null) {
+			commandKeyCache.invalidate();
+		}
+		return processor;
 	}
 
 	/**
@@ -256,10 +260,10 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 		return new ICommandProcessor() {
 			@Override
 			public Object execute(String commandName, String... args) {
-				long start = instrumentation[0] ? SystemClock.currentTimeMillis() : 0;
+				long start = instrumentation[0] ? System.nanoTime() : 0;
 				Object result = cp.execute(commandName, args);
 				if(instrumentation[0]) {
-					ExecutionMetric.submit(processorName, SystemClock.currentTimeMillis()-start);
+					ExecutionMetric.submit(processorName, System.nanoTime()-start);
 				}
 				return result;
 			}
@@ -344,35 +348,26 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 	@Override
 	public String[] parseCommandString(String commandString) {
 			if(commandString==null) return null;
-			String cstring = commandString.trim();
-			if(cstring.isEmpty()) return null;
-			int length = cstring.length();
-			int paramOpener = cstring.indexOf('[');
-			
-			if(paramOpener==-1 || cstring.charAt(length-1)!=']') {
-				return new String[]{cstring.toLowerCase()};
-			}
-			List<String> ops = new ArrayList<String>();
-			ops.add(cstring.substring(0, paramOpener).toLowerCase());
-			try {
-				Collections.addAll(ops, new CSVParser(',', '"').parseLine(cstring.substring(paramOpener+1, length-1).trim()));
-			} catch (IOException e) {
-				log.error("Failed to parse arguments in command string \n\t-->{}<--", commandString, e);
-				return null;
-			}
-			return ops.toArray(new String[ops.size()]);
+			ParsedCommand parsed = parse(commandString);
+			if(parsed==null) return null;
+			String[] ops = new String[parsed.args.length+1];
+			ops[0] = parsed.commandName;
+			System.arraycopy(parsed.args, 0, ops, 1, parsed.args.length);
+			return ops;
 	}
 	
 	/**
-	 * Processes a command string and returns the result
-	 * @param commandString The command string specified by the zabbix server
-	 * @return the result of the command execution
+	 * Parses a raw command string into the lower-cased command name, the arguments and the registered command processor,
+	 * returning the cached parse if the same command string has been parsed before.
+	 * @param commandString The raw command string
+	 * @return the parsed command or null if the command string was empty or its arguments could not be parsed
 	 */
-	public String processCommand(CharSequence commandString) {
-		long start = instrumentation[0] ? SystemClock.currentTimeMillis() : -1L;
-		if(commandString==null) return ICommandProcessor.COMMAND_ERROR;
-		String cstring = commandString.toString().trim();
-		if(cstring.isEmpty()) return ICommandProcessor.COMMAND_ERROR;
+	protected ParsedCommand parse(String commandString) {
+		ParsedCommand parsed = commandKeyCache.get(commandString);
+		if(parsed!=null) return parsed;
+		long generation = commandKeyCache.getGeneration();
+		String cstring = commandString.trim();
+		if(cstring.isEmpty()) return null;
 		int length = cstring.length();
 		int paramOpener = cstring.indexOf('[');
 		String[] strArgs = null;
@@ -385,26 +380,41 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 			try {
 				strArgs = new CSVParser(',', '"').parseLine(cstring.substring(paramOpener+1, length-1).trim());
 				log.debug("Command [{}] with arguments {}", commandName, Arrays.toString(strArgs));
-				//strArgs = cstring.substring(paramOpener+1, length-1).trim().split("\\|");
-			//} catch (Exception e) {
 			} catch (IOException e) {
 				log.error("Failed to parse arguments in command string [{}]", commandString, e);
-				return ICommandProcessor.COMMAND_ERROR;
+				return null;
 			}
 		}
-		ICommandProcessor cp = getCommandProcessor(commandName);
+		ICommandProcessor cp = commandName.trim().isEmpty() ? null : getCommandProcessor(commandName);
+		parsed = new ParsedCommand(commandName, strArgs, cp, generation);
+		commandKeyCache.put(commandString, parsed);
+		return parsed;
+	}
+	
+	/**
+	 * Processes a command string and returns the result
+	 * @param commandString The command string specified by the zabbix server
+	 * @return the result of the command execution
+	 */
+	public String processCommand(CharSequence commandString) {
+		long start = instrumentation[0] ? System.nanoTime() : -1L;
+		if(commandString==null) return ICommandProcessor.COMMAND_ERROR;
+		ParsedCommand parsed = parse(commandString.toString());
+		if(parsed==null) return ICommandProcessor.COMMAND_ERROR;
+		String commandName = parsed.commandName;
+		ICommandProcessor cp = parsed.processor;
 		if(cp==null) {
 			log.debug("No command registered called [{}]", commandName);
 			return ICommandProcessor.COMMAND_NOT_SUPPORTED;
 		}
 		try {
-			Object result =  cp.execute(commandName, strArgs);
+			Object result =  cp.execute(commandName, parsed.copyArgs());
 			if(result==null) {
 				log.warn("Null result executing command [{}]", commandString);
 				return ICommandProcessor.COMMAND_NOT_SUPPORTED;				
 			}
 			if(instrumentation[0]) {
-				ExecutionMetric.submit(commandName, SystemClock.currentTimeMillis()-start);
+				ExecutionMetric.submit(commandName, System.nanoTime()-start);
 			}
 			return result.toString();
 		} catch (Exception e) {
@@ -426,6 +436,70 @@ public class CommandManager implements CommandManagerMXBean, NotificationListene
 		return map;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#getCommandCacheSize()
+	 */
+	@Override
+	public int getCommandCacheSize() {
+		return commandKeyCache.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#getCommandCacheMaxSize()
+	 */
+	@Override
+	public int getCommandCacheMaxSize() {
+		return commandKeyCache.getMaxSize();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#setCommandCacheMaxSize(int)
+	 */
+	@Override
+	public void setCommandCacheMaxSize(int maxSize) {
+		commandKeyCache.setMaxSize(maxSize);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#getCommandCacheHits()
+	 */
+	@Override
+	public long getCommandCacheHits() {
+		return commandKeyCache.getHits();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#getCommandCacheMisses()
+	 */
+	@Override
+	public long getCommandCacheMisses() {
+		return commandKeyCache.getMisses();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#getCommandCacheHitRatio()
+	 */
+	@Override
+	public double getCommandCacheHitRatio() {
+		return commandKeyCache.getHitRatio();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.CommandManagerMXBean#flushCommandCache()
+	 */
+	@Override
+	public void flushCommandCache() {
+		commandKeyCache.invalidate();
+		commandKeyCache.resetStats();
+	}
+	
 	/**
 	 * Determines if the underlying class of the named MBean is assignable to the passed class.
 	 * @param objectName The JMX ObjectName of the MBean to test
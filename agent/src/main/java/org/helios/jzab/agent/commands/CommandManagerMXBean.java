@@ -83,4 +83,45 @@ public interface CommandManagerMXBean {
 	 * @return A string of commands where the first item is the command processor name and the remainder are the arguments.
 	 */
 	public String[] parseCommandString(String commandString);
+	
+	/**
+	 * Returns the number of entries in the parsed command key cache
+	 * @return the number of cached command keys
+	 */
+	public int getCommandCacheSize();
+	
+	/**
+	 * Returns the maximum number of entries in the parsed command key cache
+	 * @return the maximum number of cached command keys, or zero if caching is disabled
+	 */
+	public int getCommandCacheMaxSize();
+	
+	/**
+	 * Sets the maximum number of entries in the parsed command key cache
+	 * @param maxSize the maximum number of cached command keys, or zero to disable caching
+	 */
+	public void setCommandCacheMaxSize(int maxSize);
+	
+	/**
+	 * Returns the number of parsed command key cache hits
+	 * @return the number of cache hits
+	 */
+	public long getCommandCacheHits();
+	
+	/**
+	 * Returns the number of parsed command key cache misses
+	 * @return the number of cache misses
+	 */
+	public long getCommandCacheMisses();
+	
+	/**
+	 * Returns the parsed command key cache hit ratio
+	 * @return the ratio of cache hits to lookups
+	 */
+	public double getCommandCacheHitRatio();
+	
+	/**
+	 * Clears the parsed command key cache and resets its hit and miss counts
+	 */
+	public void flushCommandCache();
 }
@@ -0,0 +1,41 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands;
+
+/**
+ * <p>Title: IBatchingCommandProcessor</p>
+ * <p>Description: An extension of {@link ICommandProcessor} for processors that can serve a window of commands more cheaply 
+ * as one batch than one command at a time, such as JMX attribute reads that can share one round trip per MBean.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.IBatchingCommandProcessor</code></p>
+ */
+public interface IBatchingCommandProcessor extends ICommandProcessor {
+	/**
+	 * Creates a new empty command batch for this processor
+	 * @return a new command batch
+	 */
+	public ICommandBatch newBatch();
+}
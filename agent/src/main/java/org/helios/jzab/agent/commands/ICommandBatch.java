@@ -0,0 +1,63 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands;
+
+/**
+ * <p>Title: ICommandBatch</p>
+ * <p>Description: A batch of commands for one {@link IBatchingCommandProcessor} that are executed in the same collection window.
+ * Commands are added before the window runs and then executed concurrently by the window's check threads. 
+ * Commands that the batch cannot serve are executed normally by the processor.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.ICommandBatch</code></p>
+ */
+public interface ICommandBatch {
+	/**
+	 * Adds a command to the batch. Not thread safe: all commands must be added before any are executed.
+	 * @param commandName The command name
+	 * @param args The arguments to the command
+	 * @return a token to execute the command with, or null if the command cannot be served by the batch
+	 */
+	public Object add(String commandName, String...args);
+	
+	/**
+	 * Executes a command that was added to the batch
+	 * @param token The token returned when the command was added
+	 * @return the return value of the executed command
+	 */
+	public Object execute(Object token);
+	
+	/**
+	 * Returns the number of commands executed from this batch
+	 * @return the number of commands executed
+	 */
+	public long getExecutions();
+	
+	/**
+	 * Returns the number of round trips this batch made to serve its executions
+	 * @return the number of round trips made
+	 */
+	public long getRoundTrips();
+}
@@ -0,0 +1,328 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.helios.jzab.util.JMXHelper;
+
+/**
+ * <p>Title: AttributeValueCache</p>
+ * <p>Description: A bounded, short lived cache of MBean attribute values shared by the JMX command processors, keyed by 
+ * MBeanServer domain, ObjectName and root attribute name. Compound attribute names are resolved against the cached root value, 
+ * so items reading several fields of the same composite attribute share one fetch.
+ * Each entry records when it was fetched and each processor applies its own TTL on lookup, so processors with different TTLs can share entries.
+ * When the cache is full, entries older than the longest registered TTL are evicted and if that is not enough the cache is cleared.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.AttributeValueCache</code></p>
+ */
+public class AttributeValueCache implements AttributeValueCacheMXBean {
+	/** The singleton instance */
+	private static volatile AttributeValueCache instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+	
+	/** The cached values */
+	private final ConcurrentHashMap<CacheKey, CacheEntry> cache = new ConcurrentHashMap<CacheKey, CacheEntry>();
+	/** The number of cache hits */
+	private final StripedLongCounter hits = new StripedLongCounter();
+	/** The number of cache misses */
+	private final StripedLongCounter misses = new StripedLongCounter();
+	/** The number of evicted entries */
+	private final StripedLongCounter evictions = new StripedLongCounter();
+	/** The longest TTL in ms. registered by a processor */
+	private final AtomicLong maxTtl = new AtomicLong(0);
+	/** The maximum number of cached entries */
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+	
+	/** The default maximum number of cached entries */
+	public static final int DEFAULT_MAX_SIZE = 4096;
+	/** The JMX ObjectName of the cache's management interface */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("org.helios.jzab.agent.jmx:service=AttributeValueCache");
+	
+	/**
+	 * Acquires the AttributeValueCache singleton instance
+	 * @return the AttributeValueCache singleton instance
+	 */
+	public static AttributeValueCache getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new AttributeValueCache();
+					JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), OBJECT_NAME, instance);
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates a new AttributeValueCache
+	 */
+	private AttributeValueCache() {
+	}
+	
+	/**
+	 * Registers a processor TTL so that entries are not evicted while a processor would still use them
+	 * @param ttl The TTL in ms.
+	 */
+	public void registerTtl(long ttl) {
+		long current = maxTtl.get();
+		while(ttl>current && !maxTtl.compareAndSet(current, ttl)) {
+			current = maxTtl.get();
+		}
+	}
+	
+	/**
+	 * Returns a cached value
+	 * @param domain The MBeanServer domain or JMX Service URL, or empty for the default MBeanServer
+	 * @param objectName The MBean's ObjectName
+	 * @param name The root attribute name
+	 * @param ttl The caller's TTL in ms.
+	 * @return the cached value or null if it is not cached or older than the TTL
+	 */
+	public Object get(String domain, ObjectName objectName, String name, long ttl) {
+		CacheEntry entry = cache.get(new CacheKey(domain, objectName, name));
+		if(entry!=null && System.nanoTime()-entry.timestamp <= TimeUnit.NANOSECONDS.convert(ttl, TimeUnit.MILLISECONDS)) {
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Caches a value. Null values are not cached.
+	 * @param domain The MBeanServer domain or JMX Service URL, or empty for the default MBeanServer
+	 * @param objectName The MBean's ObjectName
+	 * @param name The root attribute name
+	 * @param value The value
+	 */
+	public void put(String domain, ObjectName objectName, String name, Object value) {
+		int max = maxSize;
+		if(value==null || max<1) return;
+		if(cache.size()>=max) {
+			evict(max);
+		}
+		cache.put(new CacheKey(domain, objectName, name), new CacheEntry(value));
+	}
+	
+	/**
+	 * Evicts entries older than the longest registered TTL, clearing the cache if it is still full
+	 * @param max The maximum number of cached entries
+	 */
+	private void evict(int max) {
+		long expiry = System.nanoTime() - TimeUnit.NANOSECONDS.convert(maxTtl.get(), TimeUnit.MILLISECONDS);
+		for(Iterator<CacheEntry> iter = cache.values().iterator(); iter.hasNext();) {
+			if(iter.next().timestamp - expiry < 0) {
+				iter.remove();
+				evictions.increment();
+			}
+		}
+		if(cache.size()>=max) {
+			evictions.add(cache.size());
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getSize()
+	 */
+	@Override
+	public int getSize() {
+		return cache.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getMaxSize()
+	 */
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#setMaxSize(int)
+	 */
+	@Override
+	public void setMaxSize(int maxSize) {
+		if(maxSize<0) throw new IllegalArgumentException("Invalid attribute cache size [" + maxSize + "]", new Throwable());
+		this.maxSize = maxSize;
+		if(cache.size()>maxSize) {
+			flush();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getMaxTtl()
+	 */
+	@Override
+	public long getMaxTtl() {
+		return maxTtl.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getHits()
+	 */
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getMisses()
+	 */
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getHitRatio()
+	 */
+	@Override
+	public double getHitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total==0 ? 0D : (double)h/total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#getEvictions()
+	 */
+	@Override
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#flush()
+	 */
+	@Override
+	public void flush() {
+		cache.clear();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean#resetStatistics()
+	 */
+	@Override
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+	
+	/**
+	 * <p>Title: CacheKey</p>
+	 * <p>Description: The key of a cached attribute value</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.AttributeValueCache.CacheKey</code></p>
+	 */
+	private static final class CacheKey {
+		/** The MBeanServer domain */
+		final String domain;
+		/** The MBean's ObjectName */
+		final ObjectName objectName;
+		/** The root attribute name */
+		final String name;
+		/** The precomputed hash code */
+		final int hashCode;
+		
+		/**
+		 * Creates a new CacheKey
+		 * @param domain The MBeanServer domain
+		 * @param objectName The MBean's ObjectName
+		 * @param name The root attribute name
+		 */
+		CacheKey(String domain, ObjectName objectName, String name) {
+			this.domain = domain==null ? "" : domain;
+			this.objectName = objectName;
+			this.name = name;
+			hashCode = (31 * (31 * this.domain.hashCode() + objectName.hashCode())) + name.hashCode();
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof CacheKey)) return false;
+			CacheKey other = (CacheKey)obj;
+			return hashCode==other.hashCode && name.equals(other.name) && objectName.equals(other.objectName) && domain.equals(other.domain);
+		}
+	}
+	
+	/**
+	 * <p>Title: CacheEntry</p>
+	 * <p>Description: A cached attribute value and the time it was fetched</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.AttributeValueCache.CacheEntry</code></p>
+	 */
+	private static final class CacheEntry {
+		/** The cached value */
+		final Object value;
+		/** The {@link System#nanoTime()} the value was fetched at */
+		final long timestamp = System.nanoTime();
+		
+		/**
+		 * Creates a new CacheEntry
+		 * @param value The cached value
+		 */
+		CacheEntry(Object value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx;
+
+/**
+ * <p>Title: AttributeValueCacheMXBean</p>
+ * <p>Description: JMX interface for {@link AttributeValueCache} </p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.AttributeValueCacheMXBean</code></p>
+ */
+
+public interface AttributeValueCacheMXBean {
+	/**
+	 * Returns the number of cached values
+	 * @return the number of cached values
+	 */
+	public int getSize();
+	
+	/**
+	 * Returns the maximum number of cached values
+	 * @return the maximum number of cached values, or zero if caching is disabled
+	 */
+	public int getMaxSize();
+	
+	/**
+	 * Sets the maximum number of cached values
+	 * @param maxSize the maximum number of cached values, or zero to disable caching
+	 */
+	public void setMaxSize(int maxSize);
+	
+	/**
+	 * Returns the longest TTL configured by a JMX command processor
+	 * @return the longest TTL in ms.
+	 */
+	public long getMaxTtl();
+	
+	/**
+	 * Returns the number of cache hits
+	 * @return the number of cache hits
+	 */
+	public long getHits();
+	
+	/**
+	 * Returns the number of cache misses
+	 * @return the number of cache misses
+	 */
+	public long getMisses();
+	
+	/**
+	 * Returns the cache hit ratio
+	 * @return the ratio of hits to lookups, or zero if there have been no lookups
+	 */
+	public double getHitRatio();
+	
+	/**
+	 * Returns the number of evicted values
+	 * @return the number of evicted values
+	 */
+	public long getEvictions();
+	
+	/**
+	 * Clears the cache
+	 */
+	public void flush();
+	
+	/**
+	 * Resets the hit, miss and eviction counts
+	 */
+	public void resetStatistics();
+}
@@ -25,18 +25,24 @@
 package org.helios.jzab.agent.commands.impl.jmx;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.management.AttributeList;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.helios.jzab.agent.commands.AbstractCommandProcessor;
+import org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreaker;
 import org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnector;
 import org.helios.jzab.util.JMXHelper;
 
@@ -49,17 +55,47 @@ import org.helios.jzab.util.JMXHelper;
  */
 public abstract class BaseJMXCommandProcessor extends AbstractCommandProcessor {
 	/** A cache of remote JMX connectors */
-	protected static final Map<String, RemoteJMXConnector> remoteServerCache = new ConcurrentHashMap<String, RemoteJMXConnector>();
+	protected static final ConcurrentMap<String, RemoteJMXConnector> remoteServerCache = new ConcurrentHashMap<String, RemoteJMXConnector>();
+	/** The circuit breakers guarding each remote JMX Service URL */
+	protected static final ConcurrentMap<String, RemoteCircuitBreaker> remoteBreakers = new ConcurrentHashMap<String, RemoteCircuitBreaker>();
 	/** A cache of local MBeanServers */
 	protected static final Map<String, MBeanServer> localServers = new ConcurrentHashMap<String, MBeanServer>();
 	
 	/** The remote timeout in seconds */
 	protected long remoteTimeout = 5;
+	/** The maximum number of concurrent calls against each remote MBeanServer connected by this processor */
+	protected int remoteConcurrency = RemoteJMXConnector.DEFAULT_MAX_CONCURRENCY;
+	/** The failure rate percentage at which a remote's circuit breaker trips */
+	protected int breakerFailureRate = RemoteCircuitBreaker.DEFAULT_FAILURE_RATE;
+	/** The slow call rate percentage at which a remote's circuit breaker trips */
+	protected int breakerSlowCallRate = RemoteCircuitBreaker.DEFAULT_SLOW_CALL_RATE;
+	/** The elapsed time in ms. above which a remote call is slow */
+	protected long breakerSlowCallTime = RemoteCircuitBreaker.DEFAULT_SLOW_CALL_TIME;
+	/** The number of calls in each circuit breaker evaluation window */
+	protected int breakerWindow = RemoteCircuitBreaker.DEFAULT_WINDOW_SIZE;
+	/** The time in seconds a tripped circuit breaker stays open before probing the remote */
+	protected long breakerOpenPeriod = RemoteCircuitBreaker.DEFAULT_OPEN_PERIOD;
+	/** The time in ms. this processor uses values from the {@link AttributeValueCache}. Zero disables caching. */
+	protected long attributeCacheTtl = 0;
 	
 	/** The property name for the {@link #compoundDelimiter}  */
 	public static final String DELIMITER_KEY  = "compound-delimiter";
 	/** The property name for the {@link #remoteTimeout}  */
 	public static final String RTIMEOUT_KEY  = "remote-timeout";
+	/** The property name for the {@link #remoteConcurrency}  */
+	public static final String RCONCURRENCY_KEY  = "remote-concurrency";
+	/** The property name for the {@link #breakerFailureRate}  */
+	public static final String BREAKER_FAILURE_RATE_KEY  = "breaker-failure-rate";
+	/** The property name for the {@link #breakerSlowCallRate}  */
+	public static final String BREAKER_SLOW_RATE_KEY  = "breaker-slow-call-rate";
+	/** The property name for the {@link #breakerSlowCallTime}  */
+	public static final String BREAKER_SLOW_TIME_KEY  = "breaker-slow-call-time";
+	/** The property name for the {@link #breakerWindow}  */
+	public static final String BREAKER_WINDOW_KEY  = "breaker-window";
+	/** The property name for the {@link #breakerOpenPeriod}  */
+	public static final String BREAKER_OPEN_PERIOD_KEY  = "breaker-open-period";
+	/** The property name for the {@link #attributeCacheTtl}  */
+	public static final String ATTR_CACHE_TTL_KEY  = "attribute-cache-ttl";
 	
 	
 	/** The mandatory prefix for strings representing a {@link JMXServiceURL} */
@@ -69,17 +105,117 @@ public abstract class BaseJMXCommandProcessor extends AbstractCommandProcessor {
 	protected String compoundDelimiter = null;
 
 	/**
-	 * Initializes the {@link #compoundDelimiter}
+	 * Initializes the {@link #compoundDelimiter}, the attribute cache TTL and the remote connection and circuit breaker settings
 	 * {@inheritDoc}
 	 * @see org.helios.jzab.agent.commands.AbstractCommandProcessor#init()
 	 */
 	@Override
 	public void init() {
 		compoundDelimiter = processorProperties.getProperty(DELIMITER_KEY, "/");
+		remoteTimeout = longProperty(RTIMEOUT_KEY, remoteTimeout, 0);
+		remoteConcurrency = (int)longProperty(RCONCURRENCY_KEY, remoteConcurrency, 1);
+		breakerFailureRate = (int)longProperty(BREAKER_FAILURE_RATE_KEY, breakerFailureRate, 1);
+		breakerSlowCallRate = (int)longProperty(BREAKER_SLOW_RATE_KEY, breakerSlowCallRate, 1);
+		breakerSlowCallTime = longProperty(BREAKER_SLOW_TIME_KEY, breakerSlowCallTime, 1);
+		breakerWindow = (int)longProperty(BREAKER_WINDOW_KEY, breakerWindow, 1);
+		breakerOpenPeriod = longProperty(BREAKER_OPEN_PERIOD_KEY, breakerOpenPeriod, 0);
+		attributeCacheTtl = longProperty(ATTR_CACHE_TTL_KEY, attributeCacheTtl, 0);
+		if(attributeCacheTtl>0) {
+			AttributeValueCache.getInstance().registerTtl(attributeCacheTtl);
+		}
 		super.init();
 	}
+	
+	/**
+	 * Reads a numeric processor property
+	 * @param key The property name
+	 * @param defaultValue The value to return if the property is not set or invalid
+	 * @param minimum The minimum valid value
+	 * @return the property value
+	 */
+	protected long longProperty(String key, long defaultValue, long minimum) {
+		String value = processorProperties.getProperty(key);
+		if(value==null) return defaultValue;
+		try {
+			long v = Long.parseLong(value.trim());
+			if(v>=minimum) return v;
+		} catch (Exception e) {}
+		log.warn("Invalid {} property [{}]. Using default {}.", new Object[]{key, value, defaultValue});
+		return defaultValue;
+	}
+	
+	/**
+	 * Returns the state of the circuit breaker for each remote JMX Service URL
+	 * @return a map of circuit breaker states keyed by JMX Service URL
+	 */
+	public static Map<String, String> getRemoteCircuitStates() {
+		Map<String, String> map = new HashMap<String, String>(remoteBreakers.size());
+		for(Map.Entry<String, RemoteCircuitBreaker> entry: remoteBreakers.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().getState());
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns a snapshot of the statistics of each cached remote JMX connector
+	 * @return a map of connector statistics keyed by JMX Service URL
+	 */
+	public static Map<String, Map<String, Long>> getRemoteConnectorStatistics() {
+		Map<String, Map<String, Long>> map = new HashMap<String, Map<String, Long>>(remoteServerCache.size());
+		for(Map.Entry<String, RemoteJMXConnector> entry: remoteServerCache.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().getStatistics());
+		}
+		return map;
+	}
 
 	
+	/**
+	 * Retrieves an attribute value, using the {@link AttributeValueCache} if this processor's TTL is set and the ObjectName is not a pattern.
+	 * Compound attribute names are resolved against the cached root attribute value.
+	 * @param domain The domain which might be a JMXServiceURL, or null for the default MBeanServer
+	 * @param objectName The MBean's ObjectName
+	 * @param attrName The attribute name, which may be compound
+	 * @return the attribute value or null if it could not be retrieved
+	 */
+	protected Object getCachedAttribute(String domain, ObjectName objectName, String attrName) {
+		if(attributeCacheTtl<1 || objectName.isPattern()) {
+			return JMXHelper.getAttribute(getServerForDomain(domain), compoundDelimiter, objectName, attrName);
+		}
+		boolean compound = attrName.contains(compoundDelimiter);
+		String rootName = compound ? attrName.split(Pattern.quote(compoundDelimiter))[0] : attrName;
+		String key = domainKey(domain);
+		AttributeValueCache cache = AttributeValueCache.getInstance();
+		Object value = cache.get(key, objectName, rootName, attributeCacheTtl);
+		if(value==null) {
+			MBeanServerConnection server = getServerForDomain(domain);
+			try {
+				value = server.getAttribute(objectName, rootName);
+			} catch (Exception e) {
+				log.debug("Failed to get attribute [{}] from [{}]", rootName, objectName);
+				return null;
+			}
+			cache.put(key, objectName, rootName, value);
+		}
+		if(compound) {
+			if(!(value instanceof CompositeData)) return null;
+			try {
+				return JMXHelper.extractCompositeData((CompositeData)value, compoundDelimiter, attrName);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the {@link AttributeValueCache} key for the passed domain
+	 * @param domain The domain which might be a JMXServiceURL, or null for the default MBeanServer
+	 * @return the trimmed domain or an empty string for the default MBeanServer
+	 */
+	protected static String domainKey(String domain) {
+		return domain==null ? "" : domain.trim();
+	}
+	
 	/**
 	 * Returns an MBeanServerConnection for the passed domain
 	 * @param domain The domain which might be a JMXServiceURL
@@ -111,31 +247,119 @@ public abstract class BaseJMXCommandProcessor extends AbstractCommandProcessor {
 	}
 	
 	/**
-	 * Attempts to retrieve an MBeanServerConnection from a JMXConnector and lock.
+	 * Retrieves an MBeanServerConnection from the cached JMXConnector for the passed JMX Service URL, creating it if necessary.
+	 * Each call on the returned connection waits up to {@link #remoteTimeout} seconds for one of the connector's permits.
+	 * The first processor to connect to a remote determines the connector's concurrency and circuit breaker settings.
+	 * If the remote's circuit breaker is not closed, fails fast without connecting.
 	 * @param serviceUrl The JMX Service URL for the connection
 	 * @return a MBeanServerConnection for the specified JMX Service URL  
 	 */
 	protected MBeanServerConnection getConnection(String serviceUrl) {
 		if(serviceUrl==null) throw new IllegalArgumentException("The passed JMXServiceURL was null", new Throwable());
-		try {
-			RemoteJMXConnector connector = remoteServerCache.get(serviceUrl);
-			if(connector==null) {
-				synchronized(remoteServerCache) {
-					connector = remoteServerCache.get(serviceUrl);
-					if(connector==null) {
-						connector = new RemoteJMXConnector(remoteServerCache, JMXConnectorFactory.newJMXConnector(new JMXServiceURL(serviceUrl), null));
-					}
-				}
+		RemoteCircuitBreaker breaker = getCircuitBreaker(serviceUrl);
+		if(!breaker.allowRequest()) {
+			throw new IllegalStateException("The circuit breaker for [" + serviceUrl + "] is " + breaker.getState());
+		}
+		RemoteJMXConnector connector = remoteServerCache.get(serviceUrl);
+		if(connector==null) {
+			long start = System.currentTimeMillis();
+			try {
+				connector = newConnector(serviceUrl);
+			} catch (Exception e) {
+				breaker.recordFailure(System.currentTimeMillis()-start);
+				throw new RuntimeException("Failed to acquire MBeanServerConnection for [" + serviceUrl + "]", e);
 			}
-			if(connector.lock(TimeUnit.MILLISECONDS.convert(remoteTimeout, TimeUnit.MILLISECONDS))) {
-				return connector.getMBeanServerConnection();
+			if(!connector.isConnected()) {
+				try { connector.close(); } catch (Exception e) {}
+				breaker.recordFailure(System.currentTimeMillis()-start);
+				throw new RuntimeException("Failed to acquire MBeanServerConnection for [" + serviceUrl + "]. Not connected");
 			}
-			throw new Exception("Failed to get lock for MBeanServerConnection on [" + serviceUrl + "]");
+			RemoteJMXConnector existing = remoteServerCache.putIfAbsent(serviceUrl, connector);
+			if(existing!=null) {
+				try { connector.close(); } catch (Exception e) {}
+				connector = existing;
+			} else {
+				connector.setCircuitBreaker(breaker).register();
+			}
+		}
+		try {
+			return connector.getMBeanServerConnection();
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to acquire MBeanServerConnection for [" + serviceUrl + "]", e);
 		}
 	}
 	
+	/**
+	 * Creates a new, uncached, connector to the passed JMX Service URL
+	 * @param serviceUrl The JMX Service URL to connect to
+	 * @return a connector which may not be connected
+	 * @throws Exception thrown if the connector cannot be created
+	 */
+	protected RemoteJMXConnector newConnector(String serviceUrl) throws Exception {
+		RemoteJMXConnector connector = new RemoteJMXConnector(serviceUrl, remoteServerCache, JMXConnectorFactory.newJMXConnector(new JMXServiceURL(serviceUrl), null), null, remoteConcurrency);
+		connector.setAccessTimeout(TimeUnit.MILLISECONDS.convert(remoteTimeout, TimeUnit.SECONDS));
+		return connector;
+	}
+	
+	/**
+	 * Returns the circuit breaker for the passed JMX Service URL, creating it if necessary
+	 * @param serviceUrl The JMX Service URL 
+	 * @return the circuit breaker guarding the remote
+	 */
+	protected RemoteCircuitBreaker getCircuitBreaker(final String serviceUrl) {
+		RemoteCircuitBreaker breaker = remoteBreakers.get(serviceUrl);
+		if(breaker==null) {
+			breaker = new RemoteCircuitBreaker(serviceUrl, new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return reconnect(serviceUrl);
+				}
+			});
+			breaker.setFailureRateThreshold(Math.min(100, breakerFailureRate));
+			breaker.setSlowCallRateThreshold(Math.min(100, breakerSlowCallRate));
+			breaker.setSlowCallThreshold(breakerSlowCallTime);
+			breaker.setWindowSize(breakerWindow);
+			breaker.setOpenPeriod(breakerOpenPeriod);
+			RemoteCircuitBreaker existing = remoteBreakers.putIfAbsent(serviceUrl, breaker);
+			if(existing!=null) {
+				breaker = existing;
+			} else {
+				breaker.register();
+			}
+		}
+		return breaker;
+	}
+	
+	/**
+	 * Probes a remote whose circuit breaker is half-open. Opens a new connection alongside the cached one and, if it answers,
+	 * replaces the cached connector with it and closes the old one, releasing any calls still hung on it. 
+	 * Called on the reconnect scheduler, never on a request thread.
+	 * @param serviceUrl The JMX Service URL to reconnect to
+	 * @return true if the remote answered on the new connection, false otherwise
+	 * @throws Exception thrown if the reconnect fails
+	 */
+	protected boolean reconnect(String serviceUrl) throws Exception {
+		RemoteJMXConnector candidate = newConnector(serviceUrl);
+		if(!candidate.isConnected()) {
+			try { candidate.close(); } catch (Exception e) {}
+			return false;
+		}
+		try {
+			candidate.getMBeanServerConnection().getMBeanCount();
+		} catch (Exception e) {
+			try { candidate.close(); } catch (Exception ex) {}
+			throw e;
+		}
+		RemoteJMXConnector old = remoteServerCache.put(serviceUrl, candidate);
+		if(old!=null) {
+			old.unregister();
+			try { old.close(); } catch (Exception e) {}
+		}
+		candidate.setCircuitBreaker(getCircuitBreaker(serviceUrl)).register();
+		log.info("Reconnected to [{}]", serviceUrl);
+		return true;
+	}
+	
 	
 	/**
 	 * Executes a remote operation against the MBeanServerConnection for the passed JMX Service URL
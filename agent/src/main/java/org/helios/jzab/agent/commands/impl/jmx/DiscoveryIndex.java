@@ -0,0 +1,426 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+import org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnector;
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.helios.jzab.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: DiscoveryIndex</p>
+ * <p>Description: An incrementally maintained index of the MBeans in one MBeanServer matching each discovery ObjectName pattern.
+ * A pattern is queried with <code>queryNames</code> the first time it is requested, after which the index listens to 
+ * {@link MBeanServerDelegate} registration and unregistration notifications to keep the matching set current, so discovery
+ * is answered from memory. Each change to a pattern's set assigns it a new version so callers can cache work derived from it.
+ * Notifications received while a pattern is being queried are replayed over the query result so they are not undone by it.
+ * Notifications from remote MBeanServers can be lost, so remote patterns are also fully re-queried once their resync period elapses.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndex</code></p>
+ */
+public class DiscoveryIndex implements NotificationListener, DiscoveryIndexMXBean {
+	/** Static class logger */
+	protected static final Logger log = LoggerFactory.getLogger(DiscoveryIndex.class);
+	
+	/** The MBeanServer domain or JMX Service URL, or empty for the default MBeanServer */
+	protected final String domain;
+	/** Indicates if the indexed MBeanServer is remote */
+	protected final boolean remote;
+	/** The indexed patterns */
+	protected final ConcurrentHashMap<ObjectName, PatternEntry> patterns = new ConcurrentHashMap<ObjectName, PatternEntry>();
+	/** The source of pattern versions */
+	protected final AtomicLong versions = new AtomicLong(0);
+	/** The MBeanServer connection the index is listening on */
+	protected volatile MBeanServerConnection server = null;
+	/** The period in ms. after which a remote pattern is re-queried */
+	protected volatile long resyncPeriod;
+	/** The JMX ObjectName of this index's management interface */
+	protected final ObjectName objectName;
+	
+	/** The number of queries answered from the index */
+	protected final StripedLongCounter hits = new StripedLongCounter();
+	/** The number of pattern queries and resyncs run against the MBeanServer */
+	protected final StripedLongCounter queries = new StripedLongCounter();
+	/** The number of registration notifications received */
+	protected final StripedLongCounter notifications = new StripedLongCounter();
+	
+	/** The default resync period for remote MBeanServers in seconds */
+	public static final long DEFAULT_RESYNC_PERIOD = 300;
+	
+	/**
+	 * Creates a new DiscoveryIndex
+	 * @param domain The MBeanServer domain or JMX Service URL, or empty for the default MBeanServer
+	 * @param remote true if the indexed MBeanServer is remote
+	 * @param resyncPeriod The period in seconds after which a remote pattern is re-queried
+	 */
+	public DiscoveryIndex(String domain, boolean remote, long resyncPeriod) {
+		this.domain = domain==null ? "" : domain;
+		this.remote = remote;
+		setResyncPeriod(resyncPeriod);
+		objectName = JMXHelper.objectName(RemoteJMXConnector.OBJECT_NAME_DOMAIN, "service", "DiscoveryIndex", "domain", ObjectName.quote(this.domain));
+	}
+	
+	/**
+	 * Registers this index's management interface
+	 * @return this index
+	 */
+	public DiscoveryIndex register() {
+		try {
+			if(!JMXHelper.getHeliosMBeanServer().isRegistered(objectName)) {
+				JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), objectName, this);
+			}
+		} catch (Exception e) {
+			log.debug("Failed to register management interface for [{}]", domain, e);
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns the MBeans matching the passed pattern
+	 * @param conn The current connection to the indexed MBeanServer
+	 * @param pattern The ObjectName pattern
+	 * @return a snapshot of the matching MBeans
+	 * @throws Exception thrown if the MBeanServer query fails
+	 */
+	public PatternSnapshot query(MBeanServerConnection conn, ObjectName pattern) throws Exception {
+		if(!listen(conn)) {
+			// notifications are unavailable so the index cannot be trusted
+			queries.increment();
+			Set<ObjectName> names = conn.queryNames(pattern, null);
+			return new PatternSnapshot(versions.incrementAndGet(), names);
+		}
+		PatternEntry entry = patterns.get(pattern);
+		if(entry==null) {
+			entry = new PatternEntry(pattern);
+			PatternEntry existing = patterns.putIfAbsent(pattern, entry);
+			if(existing!=null) entry = existing;
+		}
+		synchronized(entry) {
+			if(entry.lastSync==0 || (remote && System.currentTimeMillis()-entry.lastSync>=resyncPeriod)) {
+				queries.increment();
+				entry.sync(conn);
+			} else {
+				hits.increment();
+			}
+			return entry.snapshot();
+		}
+	}
+	
+	/**
+	 * Ensures the index is listening for registration notifications on the passed connection. 
+	 * If the connection has changed, as when a remote connector is replaced, the index is reset and resubscribes.
+	 * @param conn The current connection to the indexed MBeanServer
+	 * @return true if the index is listening
+	 */
+	protected synchronized boolean listen(MBeanServerConnection conn) {
+		if(conn==server) return true;
+		if(server!=null) {
+			try { server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this); } catch (Exception e) {}
+			server = null;
+		}
+		patterns.clear();
+		try {
+			MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+			filter.enableAllObjectNames();
+			conn.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+			server = conn;
+			log.debug("Discovery Index for [{}] listening for registrations", domain);
+			return true;
+		} catch (Exception e) {
+			log.debug("Discovery Index for [{}] failed to listen for registrations", domain, e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Applies MBean registrations and unregistrations to the indexed patterns
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if(!(notification instanceof MBeanServerNotification)) return;
+		notifications.increment();
+		ObjectName name = ((MBeanServerNotification)notification).getMBeanName();
+		boolean registered = MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType());
+		for(PatternEntry entry: patterns.values()) {
+			entry.onNotification(name, registered);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getDomain()
+	 */
+	@Override
+	public String getDomain() {
+		return domain;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#isRemote()
+	 */
+	@Override
+	public boolean isRemote() {
+		return remote;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#isListening()
+	 */
+	@Override
+	public boolean isListening() {
+		return server!=null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getPatterns()
+	 */
+	@Override
+	public Set<String> getPatterns() {
+		Set<String> set = new HashSet<String>(patterns.size());
+		for(ObjectName on: patterns.keySet()) {
+			set.add(on.toString());
+		}
+		return set;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getIndexedNameCount()
+	 */
+	@Override
+	public int getIndexedNameCount() {
+		int count = 0;
+		for(PatternEntry entry: patterns.values()) {
+			count += entry.names.size();
+		}
+		return count;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getResyncPeriod()
+	 */
+	@Override
+	public long getResyncPeriod() {
+		return TimeUnit.SECONDS.convert(resyncPeriod, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#setResyncPeriod(long)
+	 */
+	@Override
+	public void setResyncPeriod(long resyncPeriod) {
+		if(resyncPeriod<0) throw new IllegalArgumentException("Invalid resync period [" + resyncPeriod + "]", new Throwable());
+		this.resyncPeriod = TimeUnit.MILLISECONDS.convert(resyncPeriod, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getHits()
+	 */
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getQueries()
+	 */
+	@Override
+	public long getQueries() {
+		return queries.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#getNotifications()
+	 */
+	@Override
+	public long getNotifications() {
+		return notifications.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean#resync()
+	 */
+	@Override
+	public void resync() {
+		for(PatternEntry entry: patterns.values()) {
+			synchronized(entry) {
+				entry.lastSync = 0;
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: PatternSnapshot</p>
+	 * <p>Description: The MBeans matching a pattern at a point in time and the version of the pattern's set they were copied from</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndex.PatternSnapshot</code></p>
+	 */
+	public static class PatternSnapshot {
+		/** The version of the pattern's set */
+		public final long version;
+		/** The matching MBeans */
+		public final Set<ObjectName> names;
+		
+		/**
+		 * Creates a new PatternSnapshot
+		 * @param version The version of the pattern's set
+		 * @param names The matching MBeans
+		 */
+		PatternSnapshot(long version, Set<ObjectName> names) {
+			this.version = version;
+			this.names = names;
+		}
+	}
+	
+	/**
+	 * <p>Title: PatternEntry</p>
+	 * <p>Description: The indexed MBeans matching one pattern</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndex.PatternEntry</code></p>
+	 */
+	protected class PatternEntry {
+		/** The ObjectName pattern */
+		final ObjectName pattern;
+		/** The matching MBeans */
+		final Set<ObjectName> names = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+		/** The version of the set, changed on every modification */
+		volatile long version = 0;
+		/** The time the set was last synchronized with the MBeanServer, or zero if it never was */
+		long lastSync = 0;
+		/** The lock guarding {@link #pending} and the replacement of the set by a sync */
+		final Object deltaLock = new Object();
+		/** The registrations and unregistrations received while a sync query is running, or null if none is running */
+		List<Object[]> pending = null;
+		
+		/**
+		 * Creates a new PatternEntry
+		 * @param pattern The ObjectName pattern
+		 */
+		PatternEntry(ObjectName pattern) {
+			this.pattern = pattern;
+		}
+		
+		/**
+		 * Replaces the set with the result of a full query, then replays the notifications received while the query ran
+		 * so that registrations and unregistrations it missed are not undone. Must be called holding this entry's monitor.
+		 * @param conn The connection to query
+		 * @throws IOException thrown if the query fails
+		 */
+		void sync(MBeanServerConnection conn) throws IOException {
+			synchronized(deltaLock) {
+				pending = new ArrayList<Object[]>();
+			}
+			Set<ObjectName> queried = null;
+			try {
+				queried = conn.queryNames(pattern, null);
+			} finally {
+				synchronized(deltaLock) {
+					List<Object[]> deltas = pending;
+					pending = null;
+					if(queried!=null) {
+						boolean changed = names.retainAll(queried);
+						changed |= names.addAll(queried);
+						for(Object[] delta: deltas) {
+							changed |= apply((ObjectName)delta[0], (Boolean)delta[1]);
+						}
+						if(changed || lastSync==0) {
+							version = versions.incrementAndGet();
+						}
+						lastSync = System.currentTimeMillis();
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Applies a registration or unregistration to the set, buffering it for replay if a sync query is running
+		 * @param name The registered or unregistered MBean
+		 * @param registered true for a registration, false for an unregistration
+		 */
+		void onNotification(ObjectName name, boolean registered) {
+			synchronized(deltaLock) {
+				if(pending!=null) pending.add(new Object[]{name, registered});
+				if(apply(name, registered)) {
+					version = versions.incrementAndGet();
+				}
+			}
+		}
+		
+		/**
+		 * Adds a matching registered MBean to, or removes an unregistered MBean from, the set
+		 * @param name The registered or unregistered MBean
+		 * @param registered true for a registration, false for an unregistration
+		 * @return true if the set changed
+		 */
+		boolean apply(ObjectName name, boolean registered) {
+			if(registered) {
+				return pattern.apply(name) && names.add(name);
+			}
+			return names.remove(name);
+		}
+		
+		/**
+		 * Copies the set
+		 * @return a snapshot of the set
+		 */
+		PatternSnapshot snapshot() {
+			long v = version;
+			return new PatternSnapshot(v, new HashSet<ObjectName>(names));
+		}
+	}
+}
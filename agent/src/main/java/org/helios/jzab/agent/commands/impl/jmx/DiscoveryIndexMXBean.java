@@ -0,0 +1,102 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx;
+
+import java.util.Set;
+
+/**
+ * <p>Title: DiscoveryIndexMXBean</p>
+ * <p>Description: JMX interface for {@link DiscoveryIndex} </p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndexMXBean</code></p>
+ */
+
+public interface DiscoveryIndexMXBean {
+	/**
+	 * Returns the MBeanServer domain or JMX Service URL of the indexed MBeanServer
+	 * @return the domain, or an empty string for the default MBeanServer
+	 */
+	public String getDomain();
+	
+	/**
+	 * Indicates if the indexed MBeanServer is remote
+	 * @return true if the indexed MBeanServer is remote
+	 */
+	public boolean isRemote();
+	
+	/**
+	 * Indicates if the index is listening for registration notifications
+	 * @return true if the index is listening
+	 */
+	public boolean isListening();
+	
+	/**
+	 * Returns the indexed ObjectName patterns
+	 * @return the indexed ObjectName patterns
+	 */
+	public Set<String> getPatterns();
+	
+	/**
+	 * Returns the number of indexed MBeans across all patterns
+	 * @return the number of indexed MBeans
+	 */
+	public int getIndexedNameCount();
+	
+	/**
+	 * Returns the period after which a remote pattern is re-queried
+	 * @return the resync period in seconds
+	 */
+	public long getResyncPeriod();
+	
+	/**
+	 * Sets the period after which a remote pattern is re-queried
+	 * @param resyncPeriod the resync period in seconds
+	 */
+	public void setResyncPeriod(long resyncPeriod);
+	
+	/**
+	 * Returns the number of discovery queries answered from the index
+	 * @return the number of queries answered from the index
+	 */
+	public long getHits();
+	
+	/**
+	 * Returns the number of queries run against the MBeanServer
+	 * @return the number of MBeanServer queries
+	 */
+	public long getQueries();
+	
+	/**
+	 * Returns the number of registration and unregistration notifications received
+	 * @return the number of notifications received
+	 */
+	public long getNotifications();
+	
+	/**
+	 * Forces every pattern to be re-queried on its next use
+	 */
+	public void resync();
+}
@@ -0,0 +1,305 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.helios.jzab.agent.commands.ICommandBatch;
+import org.helios.jzab.agent.commands.ICommandProcessor;
+import org.helios.jzab.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: JMXAttributeBatch</p>
+ * <p>Description: A window scoped batch of {@link JMXAttributeCommandProcessor} commands. Commands are grouped by their MBeanServer domain and ObjectName,
+ * and the first command of a group to execute reads the root attributes of every command in the group with one <code>getAttributes</code> call.
+ * Root attributes found in the {@link AttributeValueCache} are not read, and the values read are cached.
+ * The rest of the group's commands are served from that result. Commands with ObjectName patterns or aggregate functions are not batched.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXAttributeBatch</code></p>
+ */
+public class JMXAttributeBatch implements ICommandBatch {
+	/** Static class logger */
+	protected static final Logger log = LoggerFactory.getLogger(JMXAttributeBatch.class);
+	/** The processor that created this batch */
+	protected final BaseJMXCommandProcessor processor;
+	/** The compound attribute name delimiter */
+	protected final String delimiter;
+	/** The attribute groups keyed by domain and ObjectName */
+	protected final Map<GroupKey, AttributeGroup> groups = new HashMap<GroupKey, AttributeGroup>();
+	/** The number of commands executed from this batch */
+	protected final AtomicLong executions = new AtomicLong(0);
+	/** The number of getAttributes calls made */
+	protected final AtomicLong roundTrips = new AtomicLong(0);
+	
+	/**
+	 * Creates a new JMXAttributeBatch
+	 * @param processor The processor that created this batch
+	 * @param delimiter The compound attribute name delimiter
+	 */
+	public JMXAttributeBatch(BaseJMXCommandProcessor processor, String delimiter) {
+		this.processor = processor;
+		this.delimiter = delimiter==null ? "/" : delimiter;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.ICommandBatch#add(java.lang.String, java.lang.String[])
+	 */
+	@Override
+	public Object add(String commandName, String... args) {
+		if(args==null || args.length<2 || args[1]==null || args[1].trim().isEmpty()) return null;
+		if(args.length>2 && args[2]!=null && !args[2].trim().isEmpty()) return null;
+		ObjectName on;
+		try {
+			on = JMXHelper.objectName(args[0]);
+		} catch (Exception e) {
+			return null;
+		}
+		if(on.isPattern()) return null;
+		String domain = args.length>3 && args[3]!=null ? args[3].trim() : "";
+		GroupKey key = new GroupKey(domain, on);
+		AttributeGroup group = groups.get(key);
+		if(group==null) {
+			group = new AttributeGroup(domain, on);
+			groups.put(key, group);
+		}
+		String attrName = args[1];
+		boolean compound = attrName.contains(delimiter);
+		String rootName = compound ? attrName.split(Pattern.quote(delimiter))[0] : attrName;
+		group.rootNames.add(rootName);
+		return new AttributeRef(group, attrName, rootName, compound);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.ICommandBatch#execute(java.lang.Object)
+	 */
+	@Override
+	public Object execute(Object token) {
+		AttributeRef ref = (AttributeRef)token;
+		executions.incrementAndGet();
+		Map<String, Object> values = ref.group.fetch();
+		if(values==null) return ICommandProcessor.COMMAND_NOT_SUPPORTED;
+		Object value = values.get(ref.rootName);
+		if(value!=null && ref.compound) {
+			if(value instanceof CompositeData) {
+				try {
+					value = JMXHelper.extractCompositeData((CompositeData)value, delimiter, ref.attrName);
+				} catch (Exception e) {
+					value = null;
+				}
+			} else {
+				value = null;
+			}
+		}
+		return value==null ? ICommandProcessor.COMMAND_NOT_SUPPORTED : value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.ICommandBatch#getExecutions()
+	 */
+	@Override
+	public long getExecutions() {
+		return executions.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.ICommandBatch#getRoundTrips()
+	 */
+	@Override
+	public long getRoundTrips() {
+		return roundTrips.get();
+	}
+	
+	/**
+	 * Returns the number of MBean groups in this batch
+	 * @return the number of MBean groups
+	 */
+	public int getGroupCount() {
+		return groups.size();
+	}
+	
+	/**
+	 * <p>Title: AttributeGroup</p>
+	 * <p>Description: The batched attributes of one MBean, fetched once on first use</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXAttributeBatch.AttributeGroup</code></p>
+	 */
+	protected class AttributeGroup {
+		/** The MBeanServer domain or JMXServiceURL, or empty for the default MBeanServer */
+		final String domain;
+		/** The MBean's ObjectName */
+		final ObjectName objectName;
+		/** The root attribute names to fetch */
+		final Set<String> rootNames = new LinkedHashSet<String>();
+		/** Indicates if the attributes have been fetched */
+		boolean fetched = false;
+		/** The fetched attribute values, or null if the fetch failed */
+		Map<String, Object> values = null;
+		
+		/**
+		 * Creates a new AttributeGroup
+		 * @param domain The MBeanServer domain or JMXServiceURL, or empty for the default MBeanServer
+		 * @param objectName The MBean's ObjectName
+		 */
+		AttributeGroup(String domain, ObjectName objectName) {
+			this.domain = domain;
+			this.objectName = objectName;
+		}
+		
+		/**
+		 * Fetches the group's attributes if they have not been fetched yet
+		 * @return the attribute values keyed by root attribute name, or null if the fetch failed
+		 */
+		synchronized Map<String, Object> fetch() {
+			if(!fetched) {
+				fetched = true;
+				long ttl = processor.attributeCacheTtl;
+				AttributeValueCache cache = ttl>0 ? AttributeValueCache.getInstance() : null;
+				Map<String, Object> fetchedValues = new HashMap<String, Object>(rootNames.size());
+				Set<String> missing = new LinkedHashSet<String>(rootNames);
+				if(cache!=null) {
+					for(String rootName: rootNames) {
+						Object value = cache.get(domain, objectName, rootName, ttl);
+						if(value!=null) {
+							fetchedValues.put(rootName, value);
+							missing.remove(rootName);
+						}
+					}
+				}
+				if(!missing.isEmpty()) {
+					roundTrips.incrementAndGet();
+					try {
+						MBeanServerConnection server = processor.getServerForDomain(domain.isEmpty() ? null : domain);
+						Map<String, Object> remote = JMXHelper.getAttributes(objectName, server, missing.toArray(new String[missing.size()]));
+						if(cache!=null) {
+							for(Map.Entry<String, Object> entry: remote.entrySet()) {
+								cache.put(domain, objectName, entry.getKey(), entry.getValue());
+							}
+						}
+						fetchedValues.putAll(remote);
+					} catch (Exception e) {
+						log.debug("Batched getAttributes failed for [{}]", objectName, e);
+						fetchedValues = null;
+					}
+				}
+				values = fetchedValues;
+			}
+			return values;
+		}
+	}
+	
+	/**
+	 * <p>Title: AttributeRef</p>
+	 * <p>Description: The token for a batched command, referencing its attribute within an {@link AttributeGroup}</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXAttributeBatch.AttributeRef</code></p>
+	 */
+	protected static class AttributeRef {
+		/** The group the attribute is fetched in */
+		final AttributeGroup group;
+		/** The full, possibly compound, attribute name */
+		final String attrName;
+		/** The root attribute name */
+		final String rootName;
+		/** Indicates if the attribute name is compound */
+		final boolean compound;
+		
+		/**
+		 * Creates a new AttributeRef
+		 * @param group The group the attribute is fetched in
+		 * @param attrName The full, possibly compound, attribute name
+		 * @param rootName The root attribute name
+		 * @param compound Indicates if the attribute name is compound
+		 */
+		AttributeRef(AttributeGroup group, String attrName, String rootName, boolean compound) {
+			this.group = group;
+			this.attrName = attrName;
+			this.rootName = rootName;
+			this.compound = compound;
+		}
+	}
+	
+	/**
+	 * <p>Title: GroupKey</p>
+	 * <p>Description: The key of an {@link AttributeGroup}</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXAttributeBatch.GroupKey</code></p>
+	 */
+	protected static class GroupKey {
+		/** The MBeanServer domain */
+		final String domain;
+		/** The MBean's ObjectName */
+		final ObjectName objectName;
+		
+		/**
+		 * Creates a new GroupKey
+		 * @param domain The MBeanServer domain
+		 * @param objectName The MBean's ObjectName
+		 */
+		GroupKey(String domain, ObjectName objectName) {
+			this.domain = domain;
+			this.objectName = objectName;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * domain.hashCode() + objectName.hashCode();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof GroupKey)) return false;
+			GroupKey other = (GroupKey)obj;
+			return domain.equals(other.domain) && objectName.equals(other.objectName);
+		}
+	}
+}
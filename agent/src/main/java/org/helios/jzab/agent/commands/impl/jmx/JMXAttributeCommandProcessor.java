@@ -24,10 +24,11 @@
  */
 package org.helios.jzab.agent.commands.impl.jmx;
 
-import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.remote.JMXServiceURL;
 
+import org.helios.jzab.agent.commands.IBatchingCommandProcessor;
+import org.helios.jzab.agent.commands.ICommandBatch;
 import org.helios.jzab.agent.commands.impl.aggregate.AggregateFunction;
 import org.helios.jzab.util.JMXHelper;
 
@@ -48,7 +49,7 @@ import org.helios.jzab.util.JMXHelper;
  * </ol>
  */
 
-public class JMXAttributeCommandProcessor extends BaseJMXCommandProcessor {
+public class JMXAttributeCommandProcessor extends BaseJMXCommandProcessor implements IBatchingCommandProcessor {
 	/** This processors command keys */
 	public static final String COMMAND_KEY  = "jmxattr"; 
 	
@@ -62,6 +63,15 @@ public class JMXAttributeCommandProcessor extends BaseJMXCommandProcessor {
 	public String getLocatorKey() {
 		return COMMAND_KEY;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.IBatchingCommandProcessor#newBatch()
+	 */
+	@Override
+	public ICommandBatch newBatch() {
+		return new JMXAttributeBatch(this, compoundDelimiter);
+	}
 
 	/**
 	 * Var parameters:<ol>
@@ -96,10 +106,8 @@ public class JMXAttributeCommandProcessor extends BaseJMXCommandProcessor {
 		if(args.length>3) {
 			domain = args[3];
 		}
-		MBeanServerConnection server = null;
 		try {
-			server = getServerForDomain(domain);
-			return JMXHelper.getAttribute(server, compoundDelimiter, on, attrName);
+			return getCachedAttribute(domain, on, attrName);
 		} catch (Exception e) {
 			log.debug("Failed to get MBeanServerConnection for domain [{}]", domain, e);
 			log.error("Failed to get MBeanServerConnection for domain [{}]", domain);
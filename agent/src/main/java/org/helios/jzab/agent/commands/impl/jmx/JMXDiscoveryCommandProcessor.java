@@ -29,6 +29,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,12 +38,14 @@ import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.remote.JMXServiceURL;
 
+import org.helios.jzab.agent.commands.impl.jmx.DiscoveryIndex.PatternSnapshot;
 import org.helios.jzab.util.JMXHelper;
 import org.json.JSONObject;
 
 /**
  * <p>Title: JMXDiscoveryCommandProcessor</p>
- * <p>Description: JMX discovery command processor. Receives requests with ObjectName patterns, locates all matching instances, and returns the extracted values.</p> 
+ * <p>Description: JMX discovery command processor. Receives requests with ObjectName patterns, locates all matching instances, and returns the extracted values.
+ * Matching instances are located through a {@link DiscoveryIndex} per MBeanServer and the extracted values are reused until the matching instances change.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXDiscoveryCommandProcessor</code></p>
@@ -54,6 +58,33 @@ public class JMXDiscoveryCommandProcessor extends BaseJMXCommandProcessor {
 	// public static final Pattern TOKEN = Pattern.compile("(\\[\\{\\$(.*?)\\}\\])");
 	public static final Pattern TOKEN = Pattern.compile("(\\{#(.*?)\\})");
 	
+	/** The discovery indexes keyed by MBeanServer domain */
+	protected static final ConcurrentMap<String, DiscoveryIndex> discoveryIndexes = new ConcurrentHashMap<String, DiscoveryIndex>();
+	/** The extracted values of each discovery, keyed by MBeanServer domain and discovery ObjectName */
+	protected static final ConcurrentMap<String, ResolvedDiscovery> resolvedDiscoveries = new ConcurrentHashMap<String, ResolvedDiscovery>();
+	
+	/** Indicates if discovery uses the {@link DiscoveryIndex} */
+	protected boolean discoveryIndexEnabled = true;
+	/** The period in seconds after which indexed discovery results for remote MBeanServers are re-queried */
+	protected long discoveryResyncPeriod = DiscoveryIndex.DEFAULT_RESYNC_PERIOD;
+	
+	/** The property name for the {@link #discoveryIndexEnabled}  */
+	public static final String DISCOVERY_INDEX_KEY  = "discovery-index";
+	/** The property name for the {@link #discoveryResyncPeriod}  */
+	public static final String DISCOVERY_RESYNC_KEY  = "discovery-resync-period";
+	
+	/**
+	 * Initializes the discovery index settings
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.BaseJMXCommandProcessor#init()
+	 */
+	@Override
+	public void init() {
+		discoveryIndexEnabled = !"false".equalsIgnoreCase(processorProperties.getProperty(DISCOVERY_INDEX_KEY, "true").trim());
+		discoveryResyncPeriod = longProperty(DISCOVERY_RESYNC_KEY, discoveryResyncPeriod, 0);
+		super.init();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.jzab.agent.commands.ICommandProcessor#getLocatorKey()
@@ -89,20 +120,20 @@ public class JMXDiscoveryCommandProcessor extends BaseJMXCommandProcessor {
 			domain = args[3];
 		}
 		MBeanServerConnection server = null;
-		Set<JSONObject> results = new HashSet<JSONObject>();		
+		String original = args[0].trim();
 		try {
 			server = getServerForDomain(domain);
-			//return JMXHelper.getAttribute(server, compoundDelimiter, on, attrName);
-			
-			for(ObjectName on: server.queryNames(objectName, null)) {
-				for(Map.Entry<String, String> entry: tokens.entrySet()) {					
-					String resolvedValue = resolveValue(on.toString(), entry.getKey(), args[0].trim());
-					log.debug("Resolved Value [{}] for Token [{}]", resolvedValue, entry.getKey());
-					//result.append("\n").append(entry.getValue()).append("--->").append(resolvedValue);
-					results.add(new JSONObject(Collections.singletonMap(entry.getKey(), resolvedValue)));					
-				}
+			if(!discoveryIndexEnabled) {
+				return resolve(server.queryNames(objectName, null), tokens, original);
 			}
-			return results.toArray(new JSONObject[results.size()]);
+			PatternSnapshot snapshot = getDiscoveryIndex(domain).query(server, objectName);
+			String key = domainKey(domain) + "\n" + original;
+			ResolvedDiscovery resolved = resolvedDiscoveries.get(key);
+			if(resolved==null || resolved.version!=snapshot.version) {
+				resolved = new ResolvedDiscovery(snapshot.version, resolve(snapshot.names, tokens, original));
+				resolvedDiscoveries.put(key, resolved);
+			}
+			return resolved.results.clone();
 		} catch (Exception e) {
 			log.debug("Failed to get MBeanServerConnection for domain [{}]", domain, e);
 			log.error("Failed to get MBeanServerConnection for domain [{}]", domain);
@@ -113,6 +144,45 @@ public class JMXDiscoveryCommandProcessor extends BaseJMXCommandProcessor {
 	
 	
 	
+	/**
+	 * Extracts the discovery token values from the passed matching ObjectNames
+	 * @param names The ObjectNames matching the discovery pattern
+	 * @param tokens The discovery tokens
+	 * @param original The discovery ObjectName containing the tokens
+	 * @return the extracted values
+	 */
+	protected JSONObject[] resolve(Set<ObjectName> names, Map<String, String> tokens, String original) {
+		Set<JSONObject> results = new HashSet<JSONObject>();
+		for(ObjectName on: names) {
+			for(Map.Entry<String, String> entry: tokens.entrySet()) {					
+				String resolvedValue = resolveValue(on.toString(), entry.getKey(), original);
+				log.debug("Resolved Value [{}] for Token [{}]", resolvedValue, entry.getKey());
+				results.add(new JSONObject(Collections.singletonMap(entry.getKey(), resolvedValue)));					
+			}
+		}
+		return results.toArray(new JSONObject[results.size()]);
+	}
+	
+	/**
+	 * Returns the discovery index for the passed domain, creating it if necessary
+	 * @param domain The domain which might be a JMXServiceURL, or null for the default MBeanServer
+	 * @return the discovery index
+	 */
+	protected DiscoveryIndex getDiscoveryIndex(String domain) {
+		String key = domainKey(domain);
+		DiscoveryIndex index = discoveryIndexes.get(key);
+		if(index==null) {
+			index = new DiscoveryIndex(key, key.indexOf(JMX_SVC_URL_PREFIX)!=-1, discoveryResyncPeriod);
+			DiscoveryIndex existing = discoveryIndexes.putIfAbsent(key, index);
+			if(existing!=null) {
+				index = existing;
+			} else {
+				index.register();
+			}
+		}
+		return index;
+	}
+	
 	/**
 	 * Resolves a discovery token 
 	 * @param objectName The JMX ObjectName string value containing the subst tokens
@@ -170,5 +240,29 @@ public class JMXDiscoveryCommandProcessor extends BaseJMXCommandProcessor {
 		}
 		return JMXHelper.objectName(str);
 	}
+	
+	/**
+	 * <p>Title: ResolvedDiscovery</p>
+	 * <p>Description: The extracted values of a discovery and the version of the indexed pattern they were extracted from</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.JMXDiscoveryCommandProcessor.ResolvedDiscovery</code></p>
+	 */
+	protected static class ResolvedDiscovery {
+		/** The version of the indexed pattern */
+		final long version;
+		/** The extracted values */
+		final JSONObject[] results;
+		
+		/**
+		 * Creates a new ResolvedDiscovery
+		 * @param version The version of the indexed pattern
+		 * @param results The extracted values
+		 */
+		ResolvedDiscovery(long version, JSONObject[] results) {
+			this.version = version;
+			this.results = results;
+		}
+	}
 
 }
@@ -48,6 +48,8 @@ import org.helios.jzab.util.JMXHelper;
 public class JMXOperationCommandProcessor extends BaseJMXCommandProcessor {
 	/** This processors command keys */
 	public static final String COMMAND_KEY  = "jmxop"; 
+	/** The {@link AttributeValueCache} marker for operations that are not read-only and so are never cached */
+	protected static final Object NOT_READ_ONLY = new Object();
 	
 	
 	
@@ -101,17 +103,36 @@ public class JMXOperationCommandProcessor extends BaseJMXCommandProcessor {
 			}
 		}				
 		try {
-			String[] signature = null;
-			Object[] arguments = null;
-			if(argCount>0) {
-				signature = getSignature(on, domain, opName, argCount);
-				arguments = getParameters(signature, opArgs);
-			} else {
-				signature = new String[0];
-				arguments = new Object[0];
+			String cacheName = attributeCacheTtl>0 && !on.isPattern() ? getCacheName(opName, opArgs) : null;
+			Object result = null;
+			if(cacheName!=null) {
+				result = AttributeValueCache.getInstance().get(domainKey(domain), on, cacheName, attributeCacheTtl);
+				if(result==NOT_READ_ONLY) {
+					result = null;
+					cacheName = null;
+				}
 			}
-			Object result =  getServerForDomain(domain).invoke(on, opName, arguments, signature);			
-			if(!aggregate.trim().isEmpty()) {
+			if(result==null) {
+				String[] signature = null;
+				Object[] arguments = null;
+				MBeanOperationInfo opInfo = null;
+				if(argCount>0 || cacheName!=null) {
+					opInfo = getOperationInfo(on, domain, opName, argCount);
+				}
+				if(argCount>0) {
+					signature = getSignature(opInfo);
+					arguments = getParameters(signature, opArgs);
+				} else {
+					signature = new String[0];
+					arguments = new Object[0];
+				}
+				result =  getServerForDomain(domain).invoke(on, opName, arguments, signature);
+				if(cacheName!=null) {
+					boolean readOnly = opInfo!=null && opInfo.getImpact()==MBeanOperationInfo.INFO;
+					AttributeValueCache.getInstance().put(domainKey(domain), on, cacheName, readOnly ? result : NOT_READ_ONLY);
+				}
+			}
+			if(aggregate!=null && !aggregate.trim().isEmpty()) {
 				AggregateFunction aggrFunc = AggregateFunction.getAggregateFunction(aggregate);
 				if(aggrFunc==null) {
 					log.error("Invalid aggregate name [{}]", aggrFunc);
@@ -128,6 +149,21 @@ public class JMXOperationCommandProcessor extends BaseJMXCommandProcessor {
 		}		
 	}
 	
+	/**
+	 * Returns the {@link AttributeValueCache} name for an operation invocation
+	 * @param opName The operation name
+	 * @param opArgs The operation arguments
+	 * @return the cache name, which cannot collide with an attribute name
+	 */
+	protected static String getCacheName(String opName, String[] opArgs) {
+		StringBuilder b = new StringBuilder(opName).append("(");
+		for(int i = 0; i < opArgs.length; i++) {
+			if(i>0) b.append(",");
+			b.append(opArgs[i]);
+		}
+		return b.append(")").toString();
+	}
+	
 	/**
 	 * Sniffs out the signature of the inteded op.
 	 * @param on The object name
@@ -138,17 +174,40 @@ public class JMXOperationCommandProcessor extends BaseJMXCommandProcessor {
 	 * @throws Exception thrown if MBeanInfo retrieval fails
 	 */
 	protected String[] getSignature(ObjectName on, String domain, String opName, int argCount) throws Exception {		
+		return getSignature(getOperationInfo(on, domain, opName, argCount));
+	}
+	
+	/**
+	 * Returns the signature of the passed operation
+	 * @param opInfo The operation info
+	 * @return A string array of types or null if the operation info was null
+	 */
+	protected String[] getSignature(MBeanOperationInfo opInfo) {
+		if(opInfo==null) return null;
+		MBeanParameterInfo[] pInfo = opInfo.getSignature();
+		String[] sig = new String[pInfo.length];
+		for(int i = 0; i < pInfo.length; i++) {
+			sig[i] = pInfo[i].getType();
+		}
+		return sig;
+	}
+	
+	/**
+	 * Sniffs out the MBeanOperationInfo of the intended op.
+	 * @param on The object name
+	 * @param domain The server pointer
+	 * @param opName The operation name
+	 * @param argCount The argument count
+	 * @return the MBeanOperationInfo or null if no match was found.
+	 * @throws Exception thrown if MBeanInfo retrieval fails
+	 */
+	protected MBeanOperationInfo getOperationInfo(ObjectName on, String domain, String opName, int argCount) throws Exception {		
 		try {
 			MBeanServerConnection conn = domain==null ? JMXHelper.getHeliosMBeanServer() : getServerForDomain(domain);
 			MBeanInfo info = conn.getMBeanInfo(on);
 			for(MBeanOperationInfo opInfo: info.getOperations()) {
 				if(opInfo.getName().equals(opName) && opInfo.getSignature().length==argCount) {
-					String[] sig = new String[argCount];
-					MBeanParameterInfo[] pInfo = opInfo.getSignature();
-					for(int i = 0; i <argCount; i++) {
-						sig[i] = pInfo[i].getType();
-					}
-					return sig;
+					return opInfo;
 				}
 			}
 			return null;
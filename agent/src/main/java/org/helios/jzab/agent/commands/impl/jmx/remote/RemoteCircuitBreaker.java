@@ -0,0 +1,512 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx.remote;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.ObjectName;
+
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.helios.jzab.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: RemoteCircuitBreaker</p>
+ * <p>Description: A circuit breaker guarding calls to one remote MBeanServer. The breaker trips <b>open</b> when the failure rate 
+ * or the slow call rate within a tumbling window of calls reaches its threshold. Calls against an open remote are rejected
+ * without touching the network. Once the open period has elapsed the breaker goes <b>half-open</b> and runs a probe, 
+ * which reconnects to the remote, on the reconnect scheduler. A successful probe closes the breaker and a failed one reopens it.
+ * Request threads never run the probe, so a hung remote cannot block them.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreaker</code></p>
+ */
+public class RemoteCircuitBreaker implements RemoteCircuitBreakerMXBean, Runnable {
+	/** Static class logger */
+	protected static final Logger log = LoggerFactory.getLogger(RemoteCircuitBreaker.class);
+	
+	/** The JMX Service URL of the guarded remote */
+	protected final String serviceUrl;
+	/** The current state of the breaker */
+	protected final AtomicReference<CircuitState> state = new AtomicReference<CircuitState>(CircuitState.CLOSED);
+	/** The probe that reconnects to the remote, returning true if the remote is usable */
+	protected final Callable<Boolean> probe;
+	/** Indicates if a probe is scheduled or running */
+	protected final AtomicBoolean probeScheduled = new AtomicBoolean(false);
+	/** The JMX ObjectName of this breaker's management interface */
+	protected final ObjectName objectName;
+	
+	/** The failure rate percentage at which the breaker trips */
+	protected volatile int failureRateThreshold = DEFAULT_FAILURE_RATE;
+	/** The slow call rate percentage at which the breaker trips */
+	protected volatile int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE;
+	/** The elapsed time in ms. above which a call is slow */
+	protected volatile long slowCallThreshold = DEFAULT_SLOW_CALL_TIME;
+	/** The number of calls in each tumbling evaluation window */
+	protected volatile int windowSize = DEFAULT_WINDOW_SIZE;
+	/** The time in seconds the breaker stays open before probing */
+	protected volatile long openPeriod = DEFAULT_OPEN_PERIOD;
+	
+	/** The number of calls in the current window */
+	protected int windowCalls = 0;
+	/** The number of failed calls in the current window */
+	protected int windowFailures = 0;
+	/** The number of slow calls in the current window */
+	protected int windowSlowCalls = 0;
+	
+	/** The number of times the breaker has tripped */
+	protected final StripedLongCounter trips = new StripedLongCounter();
+	/** The number of calls rejected while the breaker was not closed */
+	protected final StripedLongCounter rejections = new StripedLongCounter();
+	/** The number of probes run */
+	protected final StripedLongCounter probes = new StripedLongCounter();
+	/** The time of the last state change */
+	protected volatile long lastStateChange = System.currentTimeMillis();
+	/** The reason the breaker last tripped */
+	protected volatile String lastTripReason = null;
+	
+	/** The default failure rate percentage */
+	public static final int DEFAULT_FAILURE_RATE = 50;
+	/** The default slow call rate percentage */
+	public static final int DEFAULT_SLOW_CALL_RATE = 80;
+	/** The default slow call time in ms. */
+	public static final long DEFAULT_SLOW_CALL_TIME = 2000;
+	/** The default evaluation window size */
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	/** The default open period in seconds */
+	public static final long DEFAULT_OPEN_PERIOD = 30;
+	/** The minimum number of calls in a window before the rates are evaluated */
+	public static final int MINIMUM_CALLS = 5;
+	
+	/**
+	 * <p>Title: CircuitState</p>
+	 * <p>Description: Enumerates the states of a {@link RemoteCircuitBreaker}</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreaker.CircuitState</code></p>
+	 */
+	public static enum CircuitState {
+		/** Calls are allowed and their outcomes evaluated */
+		CLOSED,
+		/** Calls are rejected until the open period elapses */
+		OPEN,
+		/** Calls are rejected while a background probe tests the remote */
+		HALF_OPEN;
+		
+		/**
+		 * Returns the CircuitState for the passed name
+		 * @param name The name of the state
+		 * @return the CircuitState
+		 */
+		public static CircuitState forName(CharSequence name) {
+			if(name==null) throw new IllegalArgumentException("The passed name was null", new Throwable());
+			try {
+				return CircuitState.valueOf(name.toString().trim().toUpperCase());
+			} catch (Exception e) {
+				throw new IllegalArgumentException("The passed name [" + name + "] is not a valid CircuitState", new Throwable());
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new RemoteCircuitBreaker
+	 * @param serviceUrl The JMX Service URL of the guarded remote
+	 * @param probe The probe that reconnects to the remote, returning true if the remote is usable
+	 */
+	public RemoteCircuitBreaker(String serviceUrl, Callable<Boolean> probe) {
+		if(serviceUrl==null) throw new IllegalArgumentException("The passed service URL was null", new Throwable());
+		if(probe==null) throw new IllegalArgumentException("The passed probe was null", new Throwable());
+		this.serviceUrl = serviceUrl;
+		this.probe = probe;
+		objectName = JMXHelper.objectName(RemoteJMXConnector.OBJECT_NAME_DOMAIN, "service", "RemoteCircuitBreaker", "url", ObjectName.quote(serviceUrl));
+	}
+	
+	/**
+	 * Registers this breaker's management interface
+	 * @return this breaker
+	 */
+	public RemoteCircuitBreaker register() {
+		try {
+			if(!JMXHelper.getHeliosMBeanServer().isRegistered(objectName)) {
+				JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), objectName, this);
+			}
+		} catch (Exception e) {
+			log.debug("Failed to register management interface for [{}]", serviceUrl, e);
+		}
+		return this;
+	}
+	
+	/**
+	 * Determines if a call against the remote may proceed
+	 * @return true if the breaker is closed, false if the call should fail fast
+	 */
+	public boolean allowRequest() {
+		if(state.get()==CircuitState.CLOSED) return true;
+		rejections.increment();
+		return false;
+	}
+	
+	/**
+	 * Records a successful call against the remote
+	 * @param elapsedMs The elapsed time of the call in ms.
+	 */
+	public void recordSuccess(long elapsedMs) {
+		record(false, elapsedMs);
+	}
+	
+	/**
+	 * Records a failed call against the remote
+	 * @param elapsedMs The elapsed time of the call in ms.
+	 */
+	public void recordFailure(long elapsedMs) {
+		record(true, elapsedMs);
+	}
+	
+	/**
+	 * Accumulates a call outcome into the current window and trips the breaker if a threshold has been reached
+	 * @param failed true if the call failed
+	 * @param elapsedMs The elapsed time of the call in ms.
+	 */
+	protected void record(boolean failed, long elapsedMs) {
+		if(state.get()!=CircuitState.CLOSED) return;
+		String reason = null;
+		synchronized(this) {
+			windowCalls++;
+			if(failed) windowFailures++;
+			if(elapsedMs>=slowCallThreshold) windowSlowCalls++;
+			if(windowCalls>=Math.min(MINIMUM_CALLS, windowSize)) {
+				if(windowFailures*100>=failureRateThreshold*windowCalls) {
+					reason = "Failure rate " + (windowFailures*100/windowCalls) + "% of " + windowCalls + " calls";
+				} else if(windowSlowCalls*100>=slowCallRateThreshold*windowCalls) {
+					reason = "Slow call rate " + (windowSlowCalls*100/windowCalls) + "% of " + windowCalls + " calls";
+				}
+			}
+			if(reason!=null || windowCalls>=windowSize) {
+				resetWindow();
+			}
+		}
+		if(reason!=null) {
+			trip(reason);
+		}
+	}
+	
+	/**
+	 * Resets the current window. Must be called holding this breaker's monitor.
+	 */
+	protected void resetWindow() {
+		windowCalls = 0;
+		windowFailures = 0;
+		windowSlowCalls = 0;
+	}
+	
+	/**
+	 * Trips the breaker open if it is closed and schedules the probe
+	 * @param reason The reason the breaker tripped
+	 */
+	protected void trip(String reason) {
+		if(state.compareAndSet(CircuitState.CLOSED, CircuitState.OPEN)) {
+			trips.increment();
+			lastTripReason = reason;
+			lastStateChange = System.currentTimeMillis();
+			log.warn("Circuit Breaker for [{}] Opened: {}", serviceUrl, reason);
+			scheduleProbe();
+		}
+	}
+	
+	/**
+	 * Schedules the probe to run once the open period has elapsed, unless one is already scheduled
+	 */
+	protected void scheduleProbe() {
+		if(probeScheduled.compareAndSet(false, true)) {
+			RemoteJMXConnector.getScheduler().schedule(this, openPeriod, TimeUnit.SECONDS);
+		}
+	}
+	
+	/**
+	 * Moves the breaker to half-open and runs the probe, closing the breaker if it succeeds and reopening it if it fails.
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		if(!state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN)) {
+			probeScheduled.set(false);
+			return;
+		}
+		lastStateChange = System.currentTimeMillis();
+		probes.increment();
+		boolean ok = false;
+		try {
+			ok = probe.call();
+		} catch (Exception e) {
+			log.debug("Circuit Breaker probe for [{}] failed", serviceUrl, e);
+		}
+		probeScheduled.set(false);
+		if(ok) {
+			synchronized(this) {
+				resetWindow();
+			}
+			if(state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED)) {
+				lastStateChange = System.currentTimeMillis();
+				log.info("Circuit Breaker for [{}] Closed", serviceUrl);
+			}
+		} else if(state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.OPEN)) {
+			lastStateChange = System.currentTimeMillis();
+			log.debug("Circuit Breaker for [{}] Reopened after failed probe", serviceUrl);
+			scheduleProbe();
+		}
+	}
+	
+	/**
+	 * Returns the current state of the breaker
+	 * @return the current state
+	 */
+	public CircuitState getCircuitState() {
+		return state.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getState()
+	 */
+	@Override
+	public String getState() {
+		return state.get().name();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#forceOpen()
+	 */
+	@Override
+	public void forceOpen() {
+		trip("Forced open");
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#forceClose()
+	 */
+	@Override
+	public void forceClose() {
+		synchronized(this) {
+			resetWindow();
+		}
+		if(state.getAndSet(CircuitState.CLOSED)!=CircuitState.CLOSED) {
+			lastStateChange = System.currentTimeMillis();
+			log.info("Circuit Breaker for [{}] Forced Closed", serviceUrl);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getServiceURL()
+	 */
+	@Override
+	public String getServiceURL() {
+		return serviceUrl;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getFailureRateThreshold()
+	 */
+	@Override
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#setFailureRateThreshold(int)
+	 */
+	@Override
+	public void setFailureRateThreshold(int failureRateThreshold) {
+		if(failureRateThreshold<1 || failureRateThreshold>100) throw new IllegalArgumentException("Invalid failure rate threshold [" + failureRateThreshold + "]", new Throwable());
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getSlowCallRateThreshold()
+	 */
+	@Override
+	public int getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#setSlowCallRateThreshold(int)
+	 */
+	@Override
+	public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+		if(slowCallRateThreshold<1 || slowCallRateThreshold>100) throw new IllegalArgumentException("Invalid slow call rate threshold [" + slowCallRateThreshold + "]", new Throwable());
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getSlowCallThreshold()
+	 */
+	@Override
+	public long getSlowCallThreshold() {
+		return slowCallThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#setSlowCallThreshold(long)
+	 */
+	@Override
+	public void setSlowCallThreshold(long slowCallThreshold) {
+		if(slowCallThreshold<1) throw new IllegalArgumentException("Invalid slow call threshold [" + slowCallThreshold + "]", new Throwable());
+		this.slowCallThreshold = slowCallThreshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getWindowSize()
+	 */
+	@Override
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#setWindowSize(int)
+	 */
+	@Override
+	public void setWindowSize(int windowSize) {
+		if(windowSize<1) throw new IllegalArgumentException("Invalid window size [" + windowSize + "]", new Throwable());
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getOpenPeriod()
+	 */
+	@Override
+	public long getOpenPeriod() {
+		return openPeriod;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#setOpenPeriod(long)
+	 */
+	@Override
+	public void setOpenPeriod(long openPeriod) {
+		if(openPeriod<0) throw new IllegalArgumentException("Invalid open period [" + openPeriod + "]", new Throwable());
+		this.openPeriod = openPeriod;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getWindowCalls()
+	 */
+	@Override
+	public synchronized int getWindowCalls() {
+		return windowCalls;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getWindowFailures()
+	 */
+	@Override
+	public synchronized int getWindowFailures() {
+		return windowFailures;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getWindowSlowCalls()
+	 */
+	@Override
+	public synchronized int getWindowSlowCalls() {
+		return windowSlowCalls;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getTripCount()
+	 */
+	@Override
+	public long getTripCount() {
+		return trips.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getRejectedCount()
+	 */
+	@Override
+	public long getRejectedCount() {
+		return rejections.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getProbeCount()
+	 */
+	@Override
+	public long getProbeCount() {
+		return probes.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getLastStateChange()
+	 */
+	@Override
+	public Date getLastStateChange() {
+		return new Date(lastStateChange);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean#getLastTripReason()
+	 */
+	@Override
+	public String getLastTripReason() {
+		return lastTripReason;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "RemoteCircuitBreaker [" + serviceUrl + ", state=" + state.get() + "]";
+	}
+}
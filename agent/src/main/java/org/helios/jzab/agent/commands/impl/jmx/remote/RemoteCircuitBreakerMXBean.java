@@ -0,0 +1,167 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx.remote;
+
+import java.util.Date;
+
+/**
+ * <p>Title: RemoteCircuitBreakerMXBean</p>
+ * <p>Description: JMX interface for {@link RemoteCircuitBreaker} </p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.remote.RemoteCircuitBreakerMXBean</code></p>
+ */
+
+public interface RemoteCircuitBreakerMXBean {
+	/**
+	 * Returns the JMX Service URL of the guarded remote
+	 * @return the JMX Service URL
+	 */
+	public String getServiceURL();
+	
+	/**
+	 * Returns the name of the breaker's current state
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 */
+	public String getState();
+	
+	/**
+	 * Trips the breaker open, rejecting calls until a probe succeeds
+	 */
+	public void forceOpen();
+	
+	/**
+	 * Closes the breaker, allowing calls
+	 */
+	public void forceClose();
+	
+	/**
+	 * Returns the failure rate percentage at which the breaker trips
+	 * @return the failure rate threshold
+	 */
+	public int getFailureRateThreshold();
+	
+	/**
+	 * Sets the failure rate percentage at which the breaker trips
+	 * @param failureRateThreshold the failure rate threshold, 1 to 100
+	 */
+	public void setFailureRateThreshold(int failureRateThreshold);
+	
+	/**
+	 * Returns the slow call rate percentage at which the breaker trips
+	 * @return the slow call rate threshold
+	 */
+	public int getSlowCallRateThreshold();
+	
+	/**
+	 * Sets the slow call rate percentage at which the breaker trips
+	 * @param slowCallRateThreshold the slow call rate threshold, 1 to 100
+	 */
+	public void setSlowCallRateThreshold(int slowCallRateThreshold);
+	
+	/**
+	 * Returns the elapsed time above which a call is slow
+	 * @return the slow call threshold in ms.
+	 */
+	public long getSlowCallThreshold();
+	
+	/**
+	 * Sets the elapsed time above which a call is slow
+	 * @param slowCallThreshold the slow call threshold in ms.
+	 */
+	public void setSlowCallThreshold(long slowCallThreshold);
+	
+	/**
+	 * Returns the number of calls in each evaluation window
+	 * @return the window size
+	 */
+	public int getWindowSize();
+	
+	/**
+	 * Sets the number of calls in each evaluation window
+	 * @param windowSize the window size
+	 */
+	public void setWindowSize(int windowSize);
+	
+	/**
+	 * Returns the time the breaker stays open before probing the remote
+	 * @return the open period in seconds
+	 */
+	public long getOpenPeriod();
+	
+	/**
+	 * Sets the time the breaker stays open before probing the remote
+	 * @param openPeriod the open period in seconds
+	 */
+	public void setOpenPeriod(long openPeriod);
+	
+	/**
+	 * Returns the number of calls in the current window
+	 * @return the number of calls in the current window
+	 */
+	public int getWindowCalls();
+	
+	/**
+	 * Returns the number of failed calls in the current window
+	 * @return the number of failed calls in the current window
+	 */
+	public int getWindowFailures();
+	
+	/**
+	 * Returns the number of slow calls in the current window
+	 * @return the number of slow calls in the current window
+	 */
+	public int getWindowSlowCalls();
+	
+	/**
+	 * Returns the number of times the breaker has tripped
+	 * @return the trip count
+	 */
+	public long getTripCount();
+	
+	/**
+	 * Returns the number of calls rejected while the breaker was open or half-open
+	 * @return the rejected call count
+	 */
+	public long getRejectedCount();
+	
+	/**
+	 * Returns the number of reconnect probes run
+	 * @return the probe count
+	 */
+	public long getProbeCount();
+	
+	/**
+	 * Returns the time of the breaker's last state change
+	 * @return the time of the last state change
+	 */
+	public Date getLastStateChange();
+	
+	/**
+	 * Returns the reason the breaker last tripped
+	 * @return the last trip reason or null if it has never tripped
+	 */
+	public String getLastTripReason();
+}
@@ -25,43 +25,54 @@
 package org.helios.jzab.agent.commands.impl.jmx.remote;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.ListenerNotFoundException;
 import javax.management.MBeanServerConnection;
 import javax.management.Notification;
 import javax.management.NotificationFilter;
 import javax.management.NotificationListener;
+import javax.management.ObjectName;
 import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXAddressable;
 import javax.management.remote.JMXServerErrorException;
 import javax.security.auth.Subject;
 
+import org.helios.jzab.agent.util.LatencyHistogram;
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.helios.jzab.util.JMXHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <p>Title: RemoteJMXConnector</p>
- * <p>Description: A wrapper for {@link JMXConnector}s that tracks the connected state and enables connectivity based caching </p> 
+ * <p>Description: A wrapper for {@link JMXConnector}s that tracks the connected state and enables connectivity based caching.
+ * Calls on the {@link MBeanServerConnection} returned by this connector each acquire one of <b><code>maxConcurrency</code></b> permits
+ * for the duration of the call, so a concurrency of 1 serializes all access to the remote while a higher concurrency 
+ * multiplexes up to that many in-flight calls over the one connection.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnector</code></p>
  */
 
-public class RemoteJMXConnector implements JMXConnector, NotificationListener, Callable<Boolean>, InvocationHandler {
+public class RemoteJMXConnector implements JMXConnector, NotificationListener, Callable<Boolean>, InvocationHandler, RemoteJMXConnectorMXBean {
 	/** Static class logger */
 	protected static final Logger log = LoggerFactory.getLogger(RemoteJMXConnector.class);
 	
@@ -69,15 +80,39 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	protected final JMXConnector delegate;
 	/** The connected state of the delegate */
 	protected final AtomicBoolean connected = new AtomicBoolean(false);
+	/** Indicates if this connector has been closed, after which it is not reconnected */
+	protected final AtomicBoolean closed = new AtomicBoolean(false);
 	/** The environment for this connection */
 	protected final Map<String,Object> environment = new HashMap<String, Object>();
 	/** The reconnect schedule handle */
 	protected volatile ScheduledFuture<?> scheudleHandle = null;
 	/** The cache map to remove disconnected connectors if reconnect is not enabled */
 	protected final Map<String, RemoteJMXConnector> remoteServerCache;
-	/** Concurrency control lock */
-	protected final ReentrantLock accessLock = new ReentrantLock(true);
-	/** The MBeanServerConnection proxy that enforces the lock acquisition and release */
+	/** The JMX Service URL this connector is cached under */
+	protected final String serviceUrl;
+	/** The maximum number of concurrent calls against the remote MBeanServer */
+	protected final int maxConcurrency;
+	/** Concurrency control permits, one per in-flight call */
+	protected final Semaphore permits;
+	/** The maximum time to wait for a permit in ms. */
+	protected volatile long accessTimeout = DEFAULT_ACCESS_TIMEOUT;
+	/** The number of calls currently executing against the remote MBeanServer */
+	protected final AtomicInteger inFlight = new AtomicInteger(0);
+	/** The highest number of concurrently executing calls seen */
+	protected final AtomicInteger peakInFlight = new AtomicInteger(0);
+	/** The number of calls made against the remote MBeanServer */
+	protected final StripedLongCounter invocations = new StripedLongCounter();
+	/** The number of calls that timed out waiting for a permit */
+	protected final StripedLongCounter timeouts = new StripedLongCounter();
+	/** The time calls waited for a permit in microseconds */
+	protected final LatencyHistogram waitTime = new LatencyHistogram();
+	/** The elapsed time of calls against the remote MBeanServer in microseconds */
+	protected final LatencyHistogram callTime = new LatencyHistogram();
+	/** The JMX ObjectName of this connector's management interface */
+	protected final ObjectName objectName;
+	/** The circuit breaker the outcome of each call is reported to */
+	protected volatile RemoteCircuitBreaker circuitBreaker = null;
+	/** The MBeanServerConnection proxy that enforces the permit acquisition and release */
 	protected final MBeanServerConnection mbscProxy = (MBeanServerConnection)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MBeanServerConnection.class}, this);
 	/** The actual MBeanServerConnection  */
 	protected MBeanServerConnection mbsc;
@@ -89,50 +124,49 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	protected static boolean reconnectEnabled = false;
 	/** The reconnect period in seconds. Default is 60 */
 	protected static long reconnectPeriod = 60;
+	
+	/** The default maximum number of concurrent calls, which serializes access to the remote */
+	public static final int DEFAULT_MAX_CONCURRENCY = 1;
+	/** The default maximum time to wait for a permit in ms. */
+	public static final long DEFAULT_ACCESS_TIMEOUT = 5000;
+	/** The JMX domain of the connector management interfaces */
+	public static final String OBJECT_NAME_DOMAIN = "org.helios.jzab.agent.jmx";
 
 	/**
-	 * Acquires the lock on this connector
-	 * @param timeout The timeout in ms.
-	 * @return true if the lock was acquired, false if it was not or connector is not connected
+	 * Creates a new serializing RemoteJMXConnector
+	 * @param remoteServerCache The cache map to remove disconnected connectors if reconnect is not enabled 
+	 * @param delegate The delegate connector
 	 */
-	public boolean lock(long timeout) {		
-		try {
-			if(!connected.get()) return false;
-			log.debug("Not connected when requesting Lock on [{}]", this);
-			boolean locked =  accessLock.tryLock(timeout, TimeUnit.MILLISECONDS);
-			log.debug("Lock acquired for [{}]:{}", this, locked);
-			return locked;
-		} catch (InterruptedException ioe) {
-			log.debug("Thread interrupted while waiting for Lock on [{}]", this);
-			return false;
-		}
+	public RemoteJMXConnector(Map<String, RemoteJMXConnector> remoteServerCache, JMXConnector delegate) {
+		this(remoteServerCache, delegate, null);
 	}
 	
 	/**
-	 * Releases the lock if it is locked by the calling thread
-	 */
-	public void unlock() {
-		try { accessLock.unlock(); log.debug("Unlocked [{}]", this); } catch (Exception e) {}
-	}
-
-	/**
-	 * Creates a new RemoteJMXConnector
+	 * Creates a new serializing RemoteJMXConnector
 	 * @param remoteServerCache The cache map to remove disconnected connectors if reconnect is not enabled 
 	 * @param delegate The delegate connector
+	 * @param environment the properties of the connection.
 	 */
-	public RemoteJMXConnector(Map<String, RemoteJMXConnector> remoteServerCache, JMXConnector delegate) {
-		this(remoteServerCache, delegate, null);
+	public RemoteJMXConnector(Map<String, RemoteJMXConnector> remoteServerCache, JMXConnector delegate, Map<String,?> environment) {
+		this(addressOf(delegate), remoteServerCache, delegate, environment, DEFAULT_MAX_CONCURRENCY);
 	}
 	
 	/**
 	 * Creates a new RemoteJMXConnector
+	 * @param serviceUrl The JMX Service URL this connector is cached under
 	 * @param remoteServerCache The cache map to remove disconnected connectors if reconnect is not enabled 
 	 * @param delegate The delegate connector
 	 * @param environment the properties of the connection.
+	 * @param maxConcurrency The maximum number of concurrent calls against the remote MBeanServer
 	 */
-	public RemoteJMXConnector(Map<String, RemoteJMXConnector> remoteServerCache, JMXConnector delegate, Map<String,?> environment) {
+	public RemoteJMXConnector(String serviceUrl, Map<String, RemoteJMXConnector> remoteServerCache, JMXConnector delegate, Map<String,?> environment, int maxConcurrency) {
+		if(maxConcurrency<1) throw new IllegalArgumentException("Invalid max concurrency [" + maxConcurrency + "]", new Throwable());
+		this.serviceUrl = serviceUrl;
 		this.delegate = delegate;
 		this.remoteServerCache = remoteServerCache;
+		this.maxConcurrency = maxConcurrency;
+		permits = new Semaphore(maxConcurrency, true);
+		objectName = JMXHelper.objectName(OBJECT_NAME_DOMAIN, "service", "RemoteJMXConnector", "url", ObjectName.quote(serviceUrl));
 		if(environment!=null) { env(environment); }
 		this.delegate.addConnectionNotificationListener(this, null, null);
 		
@@ -154,7 +188,7 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	
 
 	/**
-	 * Sets the connected state of the connector. If it is set to false, and reconnect is enabled, 
+	 * Sets the connected state of the connector. If it is set to false, and reconnect is enabled and the connector has not been closed, 
 	 * schedules a delayed task to reconnect 
 	 * @param connected true if the connector is now connected, false otherwise
 	 */
@@ -165,21 +199,24 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 			try { scheudleHandle.cancel(true); } catch (Exception e) {}
 			scheudleHandle = null;
 		} 
-		try {
-			mbsc = delegate.getMBeanServerConnection();
-		} catch (Exception e) {
-			log.error("Failed to acquire MBeanServerConnection from [{}] on set connection true", delegate);
-			log.debug("Failed to acquire MBeanServerConnection from [{}] on set connection true", delegate, e);
-			setConnected(false);
-		}
-		
-		if(!connected) {
+		if(connected) {
+			try {
+				mbsc = delegate.getMBeanServerConnection();
+			} catch (Exception e) {
+				log.error("Failed to acquire MBeanServerConnection from [{}] on set connection true", delegate);
+				log.debug("Failed to acquire MBeanServerConnection from [{}] on set connection true", delegate, e);
+				setConnected(false);
+			}
+		} else {
 			mbsc = null;
-			if(reconnectEnabled) {
+			if(reconnectEnabled && !closed.get()) {
 				scheudleHandle = getScheduler().schedule(this, reconnectPeriod, TimeUnit.SECONDS);
 				log.debug("Scheduling Reconnect for Remote JMXConnector [{}], Period {} s.", this.delegate, reconnectPeriod);
 			} else {
-				remoteServerCache.remove(this);
+				if(remoteServerCache.get(serviceUrl)==this) {
+					remoteServerCache.remove(serviceUrl);
+					unregister();
+				}
 				log.debug("Ejecting Remote JMXConnector [{}] from cache on disconnect", this.delegate);
 			}
 		}
@@ -191,22 +228,280 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	 */
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		if(!accessLock.isHeldByCurrentThread()) throw new IllegalStateException("The MBeanServerConnection Lock for [" + this.delegate + "] is not held by the current thread", new Throwable());
+		if(method.getDeclaringClass()==Object.class) return method.invoke(this, args);
+		long start = System.nanoTime();
 		try {
-			return method.invoke(mbsc, args);
+			if(!permits.tryAcquire(accessTimeout, TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				RemoteCircuitBreaker breaker = circuitBreaker;
+				if(breaker!=null) breaker.recordFailure(TimeUnit.MILLISECONDS.convert(System.nanoTime()-start, TimeUnit.NANOSECONDS));
+				throw new IOException("Timed out after [" + accessTimeout + "] ms. waiting for MBeanServerConnection on [" + serviceUrl + "]");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Thread interrupted while waiting for MBeanServerConnection on [" + serviceUrl + "]");
+		}
+		long acquired = System.nanoTime();
+		waitTime.record((acquired-start)/1000);
+		int current = inFlight.incrementAndGet();
+		int peak = peakInFlight.get();
+		while(current>peak && !peakInFlight.compareAndSet(peak, current)) peak = peakInFlight.get();
+		boolean failed = false;
+		try {
+			MBeanServerConnection conn = mbsc;
+			if(conn==null) {
+				failed = true;
+				throw new IOException("MBeanServerConnection on [" + serviceUrl + "] is not connected");
+			}
+			invocations.increment();
+			return method.invoke(conn, args);
+		} catch (InvocationTargetException ite) {
+			// only communication failures count against the remote, not MBean exceptions
+			failed = ite.getCause() instanceof IOException;
+			throw ite.getCause();
 		} finally {
-			accessLock.unlock();
+			inFlight.decrementAndGet();
+			permits.release();
+			long elapsed = System.nanoTime()-acquired;
+			callTime.record(elapsed/1000);
+			RemoteCircuitBreaker breaker = circuitBreaker;
+			if(breaker!=null) {
+				if(failed) breaker.recordFailure(TimeUnit.MILLISECONDS.convert(elapsed, TimeUnit.NANOSECONDS));
+				else breaker.recordSuccess(TimeUnit.MILLISECONDS.convert(elapsed, TimeUnit.NANOSECONDS));
+			}
+		}
+	}
+	
+	/**
+	 * Sets the circuit breaker the outcome of each call is reported to
+	 * @param circuitBreaker the circuit breaker guarding this connector's remote
+	 * @return this connector
+	 */
+	public RemoteJMXConnector setCircuitBreaker(RemoteCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+		return this;
+	}
+	
+	/**
+	 * Returns the service URL for the passed connector, used when no service URL is provided
+	 * @param delegate The connector
+	 * @return the connector's service URL if it exposes one, otherwise the connector's string representation
+	 */
+	protected static String addressOf(JMXConnector delegate) {
+		if(delegate instanceof JMXAddressable) {
+			Object address = ((JMXAddressable)delegate).getAddress();
+			if(address!=null) return address.toString();
 		}
+		return delegate.toString();
+	}
+	
+	/**
+	 * Registers this connector's management interface
+	 * @return this connector
+	 */
+	public RemoteJMXConnector register() {
+		try {
+			if(!JMXHelper.getHeliosMBeanServer().isRegistered(objectName)) {
+				JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), objectName, this);
+			}
+		} catch (Exception e) {
+			log.debug("Failed to register management interface for [{}]", serviceUrl, e);
+		}
+		return this;
+	}
+	
+	/**
+	 * Unregisters this connector's management interface
+	 */
+	public void unregister() {
+		try {
+			if(JMXHelper.getHeliosMBeanServer().isRegistered(objectName)) {
+				JMXHelper.getHeliosMBeanServer().unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			log.debug("Failed to unregister management interface for [{}]", serviceUrl, e);
+		}
+	}
+	
+	/**
+	 * Sets the maximum time to wait for a permit to call the remote MBeanServer
+	 * @param accessTimeout the timeout in ms.
+	 * @return this connector
+	 */
+	public RemoteJMXConnector setAccessTimeout(long accessTimeout) {
+		if(accessTimeout<0) throw new IllegalArgumentException("Invalid access timeout [" + accessTimeout + "]", new Throwable());
+		this.accessTimeout = accessTimeout;
+		return this;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getAccessTimeout()
+	 */
+	@Override
+	public long getAccessTimeout() {
+		return accessTimeout;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getServiceURL()
+	 */
+	@Override
+	public String getServiceURL() {
+		return serviceUrl;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getMaxConcurrency()
+	 */
+	@Override
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getInFlight()
+	 */
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getPeakInFlight()
+	 */
+	@Override
+	public int getPeakInFlight() {
+		return peakInFlight.get();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getQueueLength()
+	 */
+	@Override
+	public int getQueueLength() {
+		return permits.getQueueLength();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getInvocationCount()
+	 */
+	@Override
+	public long getInvocationCount() {
+		return invocations.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getTimeoutCount()
+	 */
+	@Override
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getMeanWaitMicros()
+	 */
+	@Override
+	public long getMeanWaitMicros() {
+		return waitTime.getMean();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getP99WaitMicros()
+	 */
+	@Override
+	public long getP99WaitMicros() {
+		return waitTime.getPercentile(99);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getMaxWaitMicros()
+	 */
+	@Override
+	public long getMaxWaitMicros() {
+		return waitTime.getMax();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getMeanCallMicros()
+	 */
+	@Override
+	public long getMeanCallMicros() {
+		return callTime.getMean();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getP99CallMicros()
+	 */
+	@Override
+	public long getP99CallMicros() {
+		return callTime.getPercentile(99);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#getStatistics()
+	 */
+	@Override
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>(16);
+		map.put("maxConcurrency", (long)maxConcurrency);
+		map.put("inFlight", (long)inFlight.get());
+		map.put("peakInFlight", (long)peakInFlight.get());
+		map.put("queued", (long)permits.getQueueLength());
+		map.put("invocations", invocations.sum());
+		map.put("timeouts", timeouts.sum());
+		map.put("meanWaitUs", waitTime.getMean());
+		map.put("p99WaitUs", waitTime.getPercentile(99));
+		map.put("maxWaitUs", waitTime.getMax());
+		map.put("meanCallUs", callTime.getMean());
+		map.put("p99CallUs", callTime.getPercentile(99));
+		return map;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean#resetStatistics()
+	 */
+	@Override
+	public void resetStatistics() {
+		peakInFlight.set(inFlight.get());
+		invocations.reset();
+		timeouts.reset();
+		waitTime.reset();
+		callTime.reset();
+	}
 	
 	/**
-	 * Lazy accessor for the reconnect scheduler
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "RemoteJMXConnector [" + serviceUrl + ", maxConcurrency=" + maxConcurrency + ", connected=" + connected.get() + "]";
+	}
+	
+	
+	/**
+	 * Lazy accessor for the reconnect scheduler, which also runs circuit breaker probes
 	 * @return the scheduler
 	 */
-	protected ScheduledExecutorService getScheduler() {
+	protected static ScheduledExecutorService getScheduler() {
 		if(reconnectScheduler==null) {
-			synchronized(getClass()) {
+			synchronized(RemoteJMXConnector.class) {
 				if(reconnectScheduler==null) {
 					reconnectScheduler = Executors.newScheduledThreadPool(2, new ThreadFactory(){
 						protected final AtomicInteger serial = new AtomicInteger(0);
@@ -229,6 +524,7 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	 * Returns true if this connector is connected, false if it is not.
 	 * @return true if this connector is connected, false if it is not.
 	 */
+	@Override
 	public boolean isConnected() {
 		return connected.get();
 	}
@@ -240,6 +536,9 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
 	 */
 	@Override
 	public Boolean call() {
+		if(closed.get()) {
+			return false;
+		}
 		if(connected.get()) {
 			return true;
 		}
@@ -423,6 +722,12 @@ public class RemoteJMXConnector implements JMXConnector, NotificationListener, C
      */
 	@Override
 	public void close() throws IOException {
+		closed.set(true);
+		ScheduledFuture<?> handle = scheudleHandle;
+		if(handle!=null) {
+			try { handle.cancel(true); } catch (Exception e) {}
+			scheudleHandle = null;
+		}
 		delegate.close();
 	}
 
@@ -0,0 +1,132 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.impl.jmx.remote;
+
+import java.util.Map;
+
+/**
+ * <p>Title: RemoteJMXConnectorMXBean</p>
+ * <p>Description: JMX interface for {@link RemoteJMXConnector} </p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.impl.jmx.remote.RemoteJMXConnectorMXBean</code></p>
+ */
+
+public interface RemoteJMXConnectorMXBean {
+	/**
+	 * Returns the JMX Service URL of the remote MBeanServer
+	 * @return the JMX Service URL
+	 */
+	public String getServiceURL();
+	
+	/**
+	 * Indicates if the connector is connected
+	 * @return true if the connector is connected, false if it is not
+	 */
+	public boolean isConnected();
+	
+	/**
+	 * Returns the maximum number of concurrent calls against the remote MBeanServer
+	 * @return the maximum number of concurrent calls
+	 */
+	public int getMaxConcurrency();
+	
+	/**
+	 * Returns the maximum time a call waits for a permit before timing out
+	 * @return the access timeout in ms.
+	 */
+	public long getAccessTimeout();
+	
+	/**
+	 * Returns the number of calls currently executing against the remote MBeanServer
+	 * @return the number of in-flight calls
+	 */
+	public int getInFlight();
+	
+	/**
+	 * Returns the highest number of concurrently executing calls since the last reset
+	 * @return the peak number of in-flight calls
+	 */
+	public int getPeakInFlight();
+	
+	/**
+	 * Returns the approximate number of calls waiting for a permit
+	 * @return the number of waiting calls
+	 */
+	public int getQueueLength();
+	
+	/**
+	 * Returns the number of calls made against the remote MBeanServer
+	 * @return the number of calls
+	 */
+	public long getInvocationCount();
+	
+	/**
+	 * Returns the number of calls that timed out waiting for a permit
+	 * @return the number of timed out calls
+	 */
+	public long getTimeoutCount();
+	
+	/**
+	 * Returns the mean time calls waited for a permit
+	 * @return the mean wait time in microseconds
+	 */
+	public long getMeanWaitMicros();
+	
+	/**
+	 * Returns the 99th percentile of the time calls waited for a permit
+	 * @return the 99th percentile wait time in microseconds
+	 */
+	public long getP99WaitMicros();
+	
+	/**
+	 * Returns the longest time a call waited for a permit
+	 * @return the maximum wait time in microseconds
+	 */
+	public long getMaxWaitMicros();
+	
+	/**
+	 * Returns the mean elapsed time of calls against the remote MBeanServer
+	 * @return the mean call time in microseconds
+	 */
+	public long getMeanCallMicros();
+	
+	/**
+	 * Returns the 99th percentile elapsed time of calls against the remote MBeanServer
+	 * @return the 99th percentile call time in microseconds
+	 */
+	public long getP99CallMicros();
+	
+	/**
+	 * Returns a snapshot of this connector's statistics
+	 * @return a map of statistic values keyed by statistic name
+	 */
+	public Map<String, Long> getStatistics();
+	
+	/**
+	 * Resets this connector's statistics
+	 */
+	public void resetStatistics();
+}
@@ -24,20 +24,21 @@
  */
 package org.helios.jzab.agent.commands.instrumentation;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.helios.jzab.agent.SystemClock;
+import org.helios.jzab.agent.util.LatencyHistogram;
 
 /**
  * <p>Title: ExecutionMetric</p>
- * <p>Description: An execution metric for command processors</p> 
+ * <p>Description: An execution metric for command processors. Execution times are recorded in microseconds in a lock free, fixed memory 
+ * {@link LatencyHistogram} with 3 bits of sub-bucket precision, so reported percentiles are within 12.5% of the true value.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.jzab.agent.commands.instrumentation.ExecutionMetric</code></p>
@@ -46,29 +47,17 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 	/** The name of this metric */
 	private final String name;
 	/** The last execution date */
-	private long lastExecutionDate = -1L;
-	/** The last execution elapsed */
-	private long lastExecutionElapsed = -1L;
-	/** The total number of executions */
-	private long executionCount= 0L;
-	/** The last <i>n</i> execution times */
-	private long[] lastNExectionTimes = new long[0];
+	private volatile long lastExecutionDate = -1L;
+	/** The last execution elapsed time in ns. */
+	private volatile long lastExecutionElapsed = -1L;
+	/** The execution time histogram in microseconds */
+	private final LatencyHistogram latency = new LatencyHistogram(PRECISION);
 
-	/** The rolling average window size which is 5 unless overridden by a sys property called <b><code>jzsab.exec.window</code></b> */
-	protected static final int WINDOW_SIZE;
-	
-	static {
-		int tmp = -1;
-		try {
-			tmp = Integer.parseInt(System.getProperty("jzsab.exec.window", "5"));
-		} catch (Exception e) {
-			tmp = 5;
-		}
-		WINDOW_SIZE = tmp;
-	}
+	/** The number of sub-bucket bits in the execution time histograms */
+	public static final int PRECISION = 3;
 	
 	/** A map of registered execution metrics keyed by name */
-	protected static final Map<String, ExecutionMetric> metrics = new ConcurrentHashMap<String, ExecutionMetric>();
+	protected static final ConcurrentHashMap<String, ExecutionMetric> metrics = new ConcurrentHashMap<String, ExecutionMetric>();
 	
 	/**
 	 * Clears the metrics.
@@ -80,58 +69,45 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 	/**
 	 * Submits a metric
 	 * @param name The name of the metric
-	 * @param elapsed The elapsed time in ms.
+	 * @param elapsedNanos The elapsed time in ns.
 	 */
-	public static void submit(String name, long elapsed) {
+	public static void submit(String name, long elapsedNanos) {
 		if(name==null) throw new IllegalArgumentException("The passed metric name was null", new Throwable());
 		ExecutionMetric metric = metrics.get(name);
 		if(metric==null) {
-			synchronized(metrics) {
-				metric = metrics.get(name);
-				if(metric==null) {
-					metric = new ExecutionMetric(name);
-					metrics.put(name, metric);
-				}
-			}
+			metric = new ExecutionMetric(name);
+			ExecutionMetric prior = metrics.putIfAbsent(name, metric);
+			if(prior!=null) metric = prior;
 		}
-		metrics.get(name).process(elapsed);
+		metric.process(elapsedNanos);
+	}
+	
+	/**
+	 * Returns the named execution metric
+	 * @param name The name of the metric
+	 * @return the named execution metric or null if the command has not been executed since metrics were last cleared 
+	 */
+	public static ExecutionMetric getExecutionMetric(String name) {
+		if(name==null) throw new IllegalArgumentException("The passed metric name was null", new Throwable());
+		return metrics.get(name);
 	}
 	
 	/**
 	 * Processes a new submission
-	 * @param elapsed The elapsed time of the last execution
+	 * @param elapsedNanos The elapsed time of the last execution in ns.
 	 */
-	private void process(long elapsed) {
+	private void process(long elapsedNanos) {
 		lastExecutionDate = SystemClock.currentTimeMillis();
-		lastExecutionElapsed = elapsed;
-		incrementWindow(elapsed);
-		executionCount++;		
-	}
-	
-	/**
-	 * Pushes a new elapsed time into the rolling average window
-	 * @param elapsed The latest elapsed time
-	 */
-	private void incrementWindow(long elapsed) {
-		int length = lastNExectionTimes.length;
-		if(length==0) {
-			lastNExectionTimes = new long[]{elapsed};
-		} else {
-			int nlen = length+1>WINDOW_SIZE ? WINDOW_SIZE : length+1;
-			long tmp[] = new long[nlen];
-			tmp[0] = elapsed;
-			System.arraycopy(lastNExectionTimes, 0, tmp, 1, nlen-1);
-			lastNExectionTimes = tmp;	
-			tmp = null;
-		}
+		lastExecutionElapsed = elapsedNanos;
+		latency.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
 	}
 	
 	/**
-	 * {@inheritDoc}
-	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getLastNElapsed()
+	 * Returns the execution time histogram
+	 * @return the execution time histogram in microseconds
 	 */
-	public long[] getLastNElapsed() {
-		return lastNExectionTimes;
+	public LatencyHistogram getLatency() {
+		return latency;
 	}
 	
 	/**
@@ -175,7 +151,8 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 	 */
 	@Override
 	public long getLastExecutionElapsed() {
-		return lastExecutionElapsed;
+		long elapsed = lastExecutionElapsed;
+		return elapsed<0 ? elapsed : TimeUnit.NANOSECONDS.toMillis(elapsed);
 	}
 
 	/**
@@ -184,7 +161,7 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 	 */
 	@Override
 	public long getExecutionCount() {
-		return executionCount;
+		return latency.getCount();
 	}
 
 	/**
@@ -193,20 +170,62 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 	 */
 	@Override
 	public long getAvgExecutionElapsed() {
-		long[] tmp = lastNExectionTimes;
-		int length = tmp.length;
-		if(length<1) return -1L;
-		long total = 0;
-		for(int i = 0; i < length; i++) {
-			total += tmp[i];
-		}
-		return avg(total, length);
+		if(latency.getCount()<1) return -1L;
+		return TimeUnit.MICROSECONDS.toMillis(latency.getMean());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getMeanElapsedMicros()
+	 */
+	@Override
+	public long getMeanElapsedMicros() {
+		return latency.getMean();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getP50ElapsedMicros()
+	 */
+	@Override
+	public long getP50ElapsedMicros() {
+		return latency.getPercentile(50);
 	}
 	
-	protected long avg(double total, double count) {
-		if(total==0 || count==0) return 0;
-		double d = total/count;
-		return (long)d;
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getP90ElapsedMicros()
+	 */
+	@Override
+	public long getP90ElapsedMicros() {
+		return latency.getPercentile(90);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getP99ElapsedMicros()
+	 */
+	@Override
+	public long getP99ElapsedMicros() {
+		return latency.getPercentile(99);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getP999ElapsedMicros()
+	 */
+	@Override
+	public long getP999ElapsedMicros() {
+		return latency.getPercentile(99.9);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.instrumentation.ExecutionMetricMBean#getMaxElapsedMicros()
+	 */
+	@Override
+	public long getMaxElapsedMicros() {
+		return latency.getMax();
 	}
 
 	/**
@@ -221,14 +240,11 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 		builder.append(", lastExecutionDate=");
 		builder.append(new Date(lastExecutionDate));
 		builder.append(", lastExecutionElapsed=");
-		builder.append(lastExecutionElapsed);
+		builder.append(getLastExecutionElapsed());
 		builder.append(", executionCount=");
-		builder.append(executionCount);
-		builder.append(", lastNExectionTimes=");
-		builder.append(Arrays.toString(lastNExectionTimes));
-		builder.append("]");
-		builder.append(", avgExecutionElapsed=");
-		builder.append(getAvgExecutionElapsed());
+		builder.append(getExecutionCount());
+		builder.append(", latencyMicros=");
+		builder.append(latency);
 		builder.append("]");
 		return builder.toString();
 	}
@@ -241,8 +257,8 @@ public class ExecutionMetric implements ExecutionMetricMBean {
 		log("ExecMetric Test");
 		Random random = new Random(System.nanoTime());
 		for(int i = 0; i < 10; i++) {
-			ExecutionMetric.submit("foo", Math.abs(random.nextInt(1000)));
-			ExecutionMetric.submit("bar", Math.abs(random.nextInt(1000)));
+			ExecutionMetric.submit("foo", TimeUnit.MILLISECONDS.toNanos(random.nextInt(1000)));
+			ExecutionMetric.submit("bar", TimeUnit.MILLISECONDS.toNanos(random.nextInt(1000)));
 		}
 		
 		for(ExecutionMetricMBean metric: ExecutionMetric.getExecutionMetrics()) {
@@ -0,0 +1,120 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.commands.instrumentation;
+
+import org.helios.jzab.agent.commands.AbstractCommandProcessor;
+
+/**
+ * <p>Title: ExecutionMetricCommandProcessor</p>
+ * <p>Description: Command processor that reports the agent's own command execution latency as zabbix items. 
+ * The command syntax is <b><code>jzab.cmd.latency[&lt;command name&gt;,&lt;statistic&gt;]</code></b>, e.g. <b><code>jzab.cmd.latency[jmxattr,p99]</code></b>,
+ * where the statistic is one of {@link ExecutionStatistic} and defaults to <b><code>mean</code></b>. Latencies are reported in microseconds.
+ * Commands that have not been executed since instrumentation was last cleared report 0.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.commands.instrumentation.ExecutionMetricCommandProcessor</code></p>
+ */
+public class ExecutionMetricCommandProcessor extends AbstractCommandProcessor {
+	/** The command key for this processor */
+	public static final String COMMAND_KEY = "jzab.cmd.latency";
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.ICommandProcessor#getLocatorKey()
+	 */
+	@Override
+	public String getLocatorKey() {
+		return COMMAND_KEY;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.commands.AbstractCommandProcessor#doExecute(java.lang.String, java.lang.String[])
+	 */
+	@Override
+	protected Object doExecute(String commandName, String... args) throws Exception {
+		if(args.length<1 || args[0]==null || args[0].trim().isEmpty()) {
+			throw new IllegalArgumentException("No command name specified for [" + commandName + "]", new Throwable());
+		}
+		ExecutionStatistic statistic = args.length>1 ? ExecutionStatistic.forName(args[1]) : ExecutionStatistic.MEAN;
+		ExecutionMetric metric = ExecutionMetric.getExecutionMetric(args[0].trim().toLowerCase());
+		return metric==null ? 0L : statistic.get(metric);
+	}
+	
+	/**
+	 * <p>Title: ExecutionStatistic</p>
+	 * <p>Description: Enumerates the execution statistics reported by {@link ExecutionMetricCommandProcessor}</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.commands.instrumentation.ExecutionMetricCommandProcessor.ExecutionStatistic</code></p>
+	 */
+	public static enum ExecutionStatistic {
+		/** The number of executions */
+		COUNT,
+		/** The mean execution time in microseconds */
+		MEAN,
+		/** The median execution time in microseconds */
+		P50,
+		/** The 90th percentile execution time in microseconds */
+		P90,
+		/** The 99th percentile execution time in microseconds */
+		P99,
+		/** The 99.9th percentile execution time in microseconds */
+		P999,
+		/** The maximum execution time in microseconds */
+		MAX;
+		
+		/**
+		 * Returns this statistic from the passed execution metric
+		 * @param metric The execution metric
+		 * @return the statistic value
+		 */
+		public long get(ExecutionMetric metric) {
+			switch(this) {
+				case COUNT: return metric.getExecutionCount();
+				case MEAN: return metric.getMeanElapsedMicros();
+				case P50: return metric.getP50ElapsedMicros();
+				case P90: return metric.getP90ElapsedMicros();
+				case P99: return metric.getP99ElapsedMicros();
+				case P999: return metric.getP999ElapsedMicros();
+				default: return metric.getMaxElapsedMicros();
+			}
+		}
+		
+		/**
+		 * Decodes the passed string into an ExecutionStatistic, applying trim and uppercase to the passed value
+		 * @param name The name to decode
+		 * @return the decoded ExecutionStatistic
+		 */
+		public static ExecutionStatistic forName(CharSequence name) {
+			if(name==null || name.toString().trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty", new Throwable());
+			try {
+				return ExecutionStatistic.valueOf(name.toString().trim().toUpperCase());
+			} catch (Exception e) {
+				throw new IllegalArgumentException("The passed name [" + name + "] was not a valid ExecutionStatistic", new Throwable());
+			}
+		}
+	}
+}
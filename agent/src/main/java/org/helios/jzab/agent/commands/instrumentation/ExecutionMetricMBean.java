@@ -59,14 +59,44 @@ public interface ExecutionMetricMBean {
 	public long getExecutionCount();
 	
 	/**
-	 * Returns the elapsed time of the last <i>n</i> execution in ms.
-	 * @return the elapsed time of the last <i>n</i> execution in ms.
+	 * Returns the average elapsed time of all executions in ms.
+	 * @return the average elapsed time of all executions in ms. or -1 if there have been no executions
 	 */
 	public long getAvgExecutionElapsed();
 	
 	/**
-	 * Returns the last <i>n</i> execution times
-	 * @return the last <i>n</i> execution times
+	 * Returns the mean elapsed time of all executions in microseconds
+	 * @return the mean elapsed time in microseconds
 	 */
-	public long[] getLastNElapsed();
+	public long getMeanElapsedMicros();
+	
+	/**
+	 * Returns the median elapsed time in microseconds
+	 * @return the median elapsed time in microseconds
+	 */
+	public long getP50ElapsedMicros();
+	
+	/**
+	 * Returns the 90th percentile elapsed time in microseconds
+	 * @return the 90th percentile elapsed time in microseconds
+	 */
+	public long getP90ElapsedMicros();
+	
+	/**
+	 * Returns the 99th percentile elapsed time in microseconds
+	 * @return the 99th percentile elapsed time in microseconds
+	 */
+	public long getP99ElapsedMicros();
+	
+	/**
+	 * Returns the 99.9th percentile elapsed time in microseconds
+	 * @return the 99.9th percentile elapsed time in microseconds
+	 */
+	public long getP999ElapsedMicros();
+	
+	/**
+	 * Returns the maximum elapsed time in microseconds
+	 * @return the maximum elapsed time in microseconds
+	 */
+	public long getMaxElapsedMicros();
 }
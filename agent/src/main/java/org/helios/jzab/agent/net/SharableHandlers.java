@@ -27,11 +27,11 @@ package org.helios.jzab.agent.net;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.helios.jzab.agent.internal.jmx.ThreadPoolFactory;
 import org.helios.jzab.agent.net.codecs.ResponseRoutingHandler;
 import org.helios.jzab.agent.net.codecs.ZabbixRequestEncoder;
 import org.helios.jzab.agent.net.codecs.ZabbixResponseDecoder;
 import org.helios.jzab.agent.net.passive.PassiveRequestInvoker;
+import org.helios.jzab.agent.net.routing.ResponseProcessingStage;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandler;
@@ -84,7 +84,7 @@ public class SharableHandlers {
         addChannelHandler("responseEncoder", new ZabbixRequestEncoder((byte)1));
         addChannelHandler("stringEncoder", new StringEncoder());        
         addChannelHandler("responseDecoder", new ZabbixResponseDecoder());
-        addChannelHandler("responseRoutingHandler", new ResponseRoutingHandler(ThreadPoolFactory.getInstance("TaskExecutor"), "host", "request"));
+        addChannelHandler("responseRoutingHandler", new ResponseRoutingHandler(new ResponseProcessingStage(), "host", "request"));
         addChannelHandler("channelCloser", new ChannelCloser());
     }
    
@@ -27,6 +27,7 @@ package org.helios.jzab.agent.net.active;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -49,7 +50,12 @@ import org.helios.jzab.agent.net.active.collection.ActiveCollectionStream;
 import org.helios.jzab.agent.net.active.collection.ActiveCollectionStreamType;
 import org.helios.jzab.agent.net.active.collection.CommandThreadPolicy;
 import org.helios.jzab.agent.net.active.collection.IResultCollector;
+import org.helios.jzab.agent.net.active.collection.SpillBackPressurePolicy;
+import org.helios.jzab.agent.net.active.collection.SpillFileRing;
 import org.helios.jzab.agent.net.active.schedule.ActiveScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.CoalescingScheduler;
+import org.helios.jzab.agent.net.active.schedule.HashedTimingWheel;
+import org.helios.jzab.agent.net.active.schedule.ScheduleMode;
 import org.helios.jzab.agent.net.routing.JSONResponseHandler;
 import org.helios.jzab.util.JMXHelper;
 import org.helios.jzab.util.XMLHelper;
@@ -83,11 +89,23 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 	
 	/** The master schedule bucket for this agent */
 	protected final ActiveScheduleBucket<ActiveServer, ActiveAgent> scheduleBucket;
+	/** The scheduler that fires coincident delay windows as one submission per server */
+	protected final CoalescingScheduler coalescingScheduler;
+	/** The scheme by which active checks are scheduled */
+	protected final ScheduleMode scheduleMode;
+	/** The timing wheel on which active checks are individually scheduled, null unless the schedule mode is {@link ScheduleMode#WHEEL} */
+	protected final HashedTimingWheel<ActiveHostCheck> checkWheel;
+	/** The period in seconds on which the results of individually scheduled checks are submitted */
+	protected final long wheelFlushPeriod;
 	
 	/** The agent level refresh period in seconds */
 	protected long agentRefreshPeriod;
 	/** The agent level collection timeout in seconds */
 	protected long agentCollectionTimeout;
+	/** The number of spill files in each active server's spill file ring */
+	protected int spillRingSize;
+	/** The policy applied when every spill file in an active server's ring is in flight */
+	protected SpillBackPressurePolicy spillBackPressurePolicy;
 	
 	
 	/** A map of the configured active servers keyed by <code>address:port</code> */
@@ -121,6 +139,24 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 	public static final long DEFAULT_COLLECTION_TIMEOUT = 5;
 	/** The collection timeout attribute name */
 	public static final String COLLECTION_TIMEOUT_ATTR = "collection-timeout";
+	/** The spill file ring size attribute name */
+	public static final String SPILL_RING_SIZE_ATTR = "spill-ring-size";
+	/** The spill file ring back pressure policy attribute name */
+	public static final String SPILL_BACK_PRESSURE_ATTR = "spill-back-pressure";
+	/** The attribute name of the number of seconds a due delay window may be held to coalesce it with windows coming due shortly after */
+	public static final String COALESCE_LATENCY_ATTR = "coalesce-latency";
+	/** The default schedule mode */
+	public static final ScheduleMode DEFAULT_SCHEDULE_MODE = ScheduleMode.BUCKET;
+	/** The schedule mode attribute name */
+	public static final String SCHEDULE_MODE_ATTR = "schedule-mode";
+	/** The timing wheel tick duration (ms.) attribute name */
+	public static final String WHEEL_TICK_ATTR = "wheel-tick";
+	/** The timing wheel size attribute name */
+	public static final String WHEEL_SIZE_ATTR = "wheel-size";
+	/** The default period in seconds on which the results of individually scheduled checks are submitted */
+	public static final long DEFAULT_WHEEL_FLUSH = 1;
+	/** The timing wheel result submission period (seconds) attribute name */
+	public static final String WHEEL_FLUSH_ATTR = "wheel-flush";
 	
 	/** The default agent refresh period on which the agent attempts to refresh marching orders for all monitored servers, which is 3600 or 1 hour */
 	public static final long DEFAULT_AGENT_REFRESH = 60 *60;
@@ -228,7 +264,51 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 		
 		commandThreadPolicy = CommandThreadPolicy.forName(XMLHelper.getAttributeByName(configNode, COLLECTION_THREADING_POLICY_ATTR, DEFAULT_COLLECTION_THREADING_POLICY.name()));
 		collectionStreamType = ActiveCollectionStreamType.forName(XMLHelper.getAttributeByName(configNode, COLLATION_TYPE_ATTR, DEFAULT_COLLATION_TYPE.name()));
+		spillRingSize = XMLHelper.getAttributeByName(configNode, SPILL_RING_SIZE_ATTR, SpillFileRing.DEFAULT_CAPACITY);
+		spillBackPressurePolicy = SpillBackPressurePolicy.forName(XMLHelper.getAttributeByName(configNode, SPILL_BACK_PRESSURE_ATTR, SpillFileRing.DEFAULT_POLICY.name()));
 		
+		scheduleMode = ScheduleMode.forName(XMLHelper.getAttributeByName(configNode, SCHEDULE_MODE_ATTR, DEFAULT_SCHEDULE_MODE.name()));
+		wheelFlushPeriod = XMLHelper.getAttributeByName(configNode, WHEEL_FLUSH_ATTR, DEFAULT_WHEEL_FLUSH);
+		if(scheduleMode==ScheduleMode.WHEEL) {
+			checkWheel = new HashedTimingWheel<ActiveHostCheck>(scheduler, 
+					XMLHelper.getAttributeByName(configNode, WHEEL_TICK_ATTR, HashedTimingWheel.DEFAULT_TICK_DURATION), 
+					XMLHelper.getAttributeByName(configNode, WHEEL_SIZE_ATTR, HashedTimingWheel.DEFAULT_WHEEL_SIZE)) {
+				/**
+				 * {@inheritDoc}
+				 * @see org.helios.jzab.agent.net.active.schedule.HashedTimingWheel#fire(java.util.List)
+				 */
+				@Override
+				protected void fire(final List<ActiveHostCheck> checks) {
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							ActiveCheckBatch batch = new ActiveCheckBatch();
+							batch.addAll(checks);
+							for(ActiveHostCheck check: checks) {
+								try {
+									check.execute(check.getActiveHost().getServer().getRollingBuffer(), batch);
+								} catch (Exception e) {
+									log.debug("Check execution failed for [{}]", check, e);
+								}
+							}
+							batch.complete();
+						}
+					});
+				}
+			};
+		} else {
+			checkWheel = null;
+		}
+		coalescingScheduler = new CoalescingScheduler(scheduler, XMLHelper.getAttributeByName(configNode, COALESCE_LATENCY_ATTR, CoalescingScheduler.DEFAULT_MAX_LATENCY)) {
+			/**
+			 * {@inheritDoc}
+			 * @see org.helios.jzab.agent.net.active.schedule.CoalescingScheduler#fireWindows(java.util.Set)
+			 */
+			@Override
+			protected void fireWindows(Set<Long> delays) {
+				ActiveCollectionStream.execute(collectionStreamType, commandThreadPolicy, delays, agentCollectionTimeout);
+			}
+		};
 		scheduleBucket = new ActiveScheduleBucket<ActiveServer, ActiveAgent>(
 				ActiveServer.class
 		) {
@@ -239,12 +319,19 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 			@Override
 			public void fireStartScheduledEvent(final long delay) {
 				super.fireStartScheduledEvent(delay);
-				scheduler.scheduleAtFixedRate("Delayed Active Checks [" + delay + "]", new Runnable(){
-					@Override
-					public void run() {
-						ActiveCollectionStream.execute(collectionStreamType, commandThreadPolicy, delay, agentCollectionTimeout);
-					}
-				}, delay, delay, TimeUnit.SECONDS);
+				if(scheduleMode==ScheduleMode.BUCKET) {
+					coalescingScheduler.addWindow(delay);
+				}
+			}
+			
+			/**
+			 * {@inheritDoc}
+			 * @see org.helios.jzab.agent.net.active.schedule.ActiveScheduleBucket#fireCancelScheduledEvent(long)
+			 */
+			@Override
+			public void fireCancelScheduledEvent(long delay) {
+				super.fireCancelScheduledEvent(delay);
+				coalescingScheduler.removeWindow(delay);
 			}
 		};
 		
@@ -292,6 +379,22 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 				started.set(true);
 			}
 		});		
+		if(checkWheel!=null) {
+			checkWheel.start();
+			scheduler.scheduleAtFixedRate("Rolling Active Check Submission", new Runnable(){
+				@Override
+				public void run() {
+					for(final ActiveServer server: activeServers.values()) {
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								server.getRollingBuffer().flush();
+							}
+						});
+					}
+				}
+			}, wheelFlushPeriod, wheelFlushPeriod, TimeUnit.SECONDS);
+		}
 		
 	}
 	
@@ -325,14 +428,17 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 		if(!host.isRequiresRefresh() && !force) {
 			log.debug("ActiveCheck request cancelled. Host [{}] for server [{}] is up to date and no force requested", host.getHostName(), server.getId());
 		} else {
-			final Channel channel = ActiveClient.getInstance().newChannel(server.getAddress(), server.getPort());
+			ChannelLease lease = null;
 			try {
+				lease = ActiveClient.getInstance().lease(server);
+				final Channel channel = lease.getChannel();
 				log.debug("[Active Check] Acquired channel [{}]", channel);
 				channel.write(new JSONObject()
 					.put(JSONResponseHandler.KEY_REQUEST, JSONResponseHandler.VALUE_ACTIVE_CHECK_REQUEST)
 					.put(JSONResponseHandler.KEY_HOST, host.getHostName())
 				);
 			} catch (Exception e) {
+				if(lease!=null) lease.invalidate();
 				log.error("Failed to execute ActiveCheck request for server [{}]. Error was [{}]", server, e.getMessage());
 				log.debug("Failed to execute ActiveCheck request for server [{}]", server, e);
 				throw new RuntimeException(e);
@@ -461,6 +567,147 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 		this.commandThreadPolicy = CommandThreadPolicy.forName(commandThreadPolicyName);
 	}
 	
+	/**
+	 * Returns the timing wheel on which active checks are individually scheduled
+	 * @return the timing wheel, or null unless the schedule mode is {@link ScheduleMode#WHEEL}
+	 */
+	public HashedTimingWheel<ActiveHostCheck> getCheckWheel() {
+		return checkWheel;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getScheduleMode()
+	 */
+	@Override
+	public String getScheduleMode() {
+		return scheduleMode.name();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getWheelCheckCount()
+	 */
+	@Override
+	public int getWheelCheckCount() {
+		return checkWheel==null ? 0 : checkWheel.getItemCount();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getWheelFirings()
+	 */
+	@Override
+	public long getWheelFirings() {
+		return checkWheel==null ? 0 : checkWheel.getFirings();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getWheelPeakFiring()
+	 */
+	@Override
+	public long getWheelPeakFiring() {
+		return checkWheel==null ? 0 : checkWheel.getPeakFiring();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getCoalesceLatency()
+	 */
+	@Override
+	public long getCoalesceLatency() {
+		return coalescingScheduler.getMaxLatency();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#setCoalesceLatency(long)
+	 */
+	@Override
+	public void setCoalesceLatency(long coalesceLatency) {
+		coalescingScheduler.setMaxLatency(coalesceLatency);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getCollectionFirings()
+	 */
+	@Override
+	public long getCollectionFirings() {
+		return coalescingScheduler.getFirings();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getCoalescedWindows()
+	 */
+	@Override
+	public long getCoalescedWindows() {
+		return coalescingScheduler.getCoalescedWindows();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getBatchedCheckExecutions()
+	 */
+	@Override
+	public long getBatchedCheckExecutions() {
+		return ActiveCheckBatch.getBatchedExecutions();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getBatchRoundTrips()
+	 */
+	@Override
+	public long getBatchRoundTrips() {
+		return ActiveCheckBatch.getRoundTrips();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getBatchRoundTripsSaved()
+	 */
+	@Override
+	public long getBatchRoundTripsSaved() {
+		return ActiveCheckBatch.getRoundTripsSaved();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getLastWindowRoundTripsSaved()
+	 */
+	@Override
+	public long getLastWindowRoundTripsSaved() {
+		return ActiveCheckBatch.getLastWindowRoundTripsSaved();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveAgentMXBean#getScheduledWindows()
+	 */
+	@Override
+	public Set<Long> getScheduledWindows() {
+		return coalescingScheduler.getWindows();
+	}
+	
+	/**
+	 * Returns the number of spill files in each active server's spill file ring
+	 * @return the spill file ring size
+	 */
+	public int getSpillRingSize() {
+		return spillRingSize;
+	}
+	
+	/**
+	 * Returns the policy applied when every spill file in an active server's ring is in flight
+	 * @return the spill file ring back pressure policy
+	 */
+	public SpillBackPressurePolicy getSpillBackPressurePolicy() {
+		return spillBackPressurePolicy;
+	}
+	
 	/**
 	 * Returns the collation type name
 	 * @return the collation type name
@@ -477,6 +724,9 @@ public class ActiveAgent implements ActiveAgentMXBean, NotificationListener  {
 	@Override
 	public void setCollationType(String collationTypeName) {
 		this.collectionStreamType = ActiveCollectionStreamType.forName(collationTypeName);
+		for(ActiveServer server: activeServers.values()) {
+			server.getRollingBuffer().setType(collectionStreamType);
+		}
 	}
 	
 
@@ -25,6 +25,7 @@
 package org.helios.jzab.agent.net.active;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>Title: ActiveAgentMXBean</p>
@@ -118,5 +119,83 @@ public interface ActiveAgentMXBean {
 	 * @param agentCollectionTimeout the agent level collection timeout in seconds
 	 */
 	public void setAgentCollectionTimeout(long agentCollectionTimeout);
+	
+	/**
+	 * Returns the scheme by which active checks are scheduled
+	 * @return the schedule mode name
+	 */
+	public String getScheduleMode();
+	
+	/**
+	 * Returns the number of checks scheduled on the timing wheel
+	 * @return the number of wheel scheduled checks
+	 */
+	public int getWheelCheckCount();
+	
+	/**
+	 * Returns the number of check firings from the timing wheel
+	 * @return the number of wheel firings
+	 */
+	public long getWheelFirings();
+	
+	/**
+	 * Returns the highest number of checks fired by the timing wheel on one tick
+	 * @return the wheel peak firing
+	 */
+	public long getWheelPeakFiring();
+	
+	/**
+	 * Returns the number of seconds a due delay window may be held to coalesce it with windows coming due shortly after
+	 * @return the coalesce latency in seconds
+	 */
+	public long getCoalesceLatency();
+	
+	/**
+	 * Sets the number of seconds a due delay window may be held to coalesce it with windows coming due shortly after
+	 * @param coalesceLatency the coalesce latency in seconds
+	 */
+	public void setCoalesceLatency(long coalesceLatency);
+	
+	/**
+	 * Returns the number of scheduled collection firings, each of which submits once per server
+	 * @return the number of collection firings
+	 */
+	public long getCollectionFirings();
+	
+	/**
+	 * Returns the number of delay window firings that were merged into another window's submission
+	 * @return the number of coalesced windows
+	 */
+	public long getCoalescedWindows();
+	
+	/**
+	 * Returns the total number of active check executions served by window scoped command batches, such as bulk JMX attribute reads
+	 * @return the number of batched check executions
+	 */
+	public long getBatchedCheckExecutions();
+	
+	/**
+	 * Returns the total number of round trips made by window scoped command batches
+	 * @return the number of batch round trips
+	 */
+	public long getBatchRoundTrips();
+	
+	/**
+	 * Returns the total number of round trips saved by window scoped command batches
+	 * @return the number of round trips saved
+	 */
+	public long getBatchRoundTripsSaved();
+	
+	/**
+	 * Returns the number of round trips saved by the most recently completed collection window
+	 * @return the number of round trips saved by the last window
+	 */
+	public long getLastWindowRoundTripsSaved();
+	
+	/**
+	 * Returns the delay windows currently scheduled
+	 * @return the scheduled delay windows
+	 */
+	public Set<Long> getScheduledWindows();
 
 }
\ No newline at end of file
@@ -0,0 +1,539 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active;
+
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.agent.SystemClock;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: ActiveChannelPool</p>
+ * <p>Description: A bounded pool of keep-alive channels to one zabbix server.
+ * A channel is leased exclusively for one request/response exchange and is returned to the pool by the {@link #RELEASER} handler
+ * when the response has been read, or is failed and closed if the server does not respond within the response timeout. Idle channels are health checked when leased and evicted once they have been idle for longer than the maximum idle time.
+ * Servers that close the connection after each response are handled by discarding the closed channel, and if keep-alive is disabled, 
+ * channels are closed after the response as they were before pooling.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.ActiveChannelPool</code></p>
+ */
+public class ActiveChannelPool {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The client that connects new channels */
+	protected final ActiveClient client;
+	/** The address of the zabbix server */
+	protected final SocketAddress address;
+	/** The pool name */
+	protected final String name;
+	/** The idle channels, most recently released first */
+	protected final LinkedBlockingDeque<IdleChannel> idle = new LinkedBlockingDeque<IdleChannel>();
+	/** The permits for leased channels, bounding the number of concurrent exchanges with the server */
+	protected final Semaphore permits;
+	/** The maximum number of concurrently leased channels */
+	protected final int maxSize;
+	/** The maximum time in ms. that a channel can sit idle before it is evicted */
+	protected final long maxIdleTime;
+	/** The maximum time in ms. to wait for a lease */
+	protected final long leaseTimeout;
+	/** The maximum time in ms. a lease waits for the server's response before the exchange is failed, or zero for no timeout */
+	protected final long responseTimeout;
+	/** Indicates if channels are returned to the pool after the response, or closed */
+	protected final boolean keepAlive;
+	
+	/** The number of leases granted */
+	protected final AtomicLong leases = new AtomicLong(0L);
+	/** The number of leases served by a pooled channel */
+	protected final AtomicLong reuses = new AtomicLong(0L);
+	/** The number of new connections */
+	protected final AtomicLong connects = new AtomicLong(0L);
+	/** The number of idle channels evicted as expired or unhealthy */
+	protected final AtomicLong evictions = new AtomicLong(0L);
+	/** The number of lease requests that timed out */
+	protected final AtomicLong leaseTimeouts = new AtomicLong(0L);
+	/** The number of leased exchanges failed by the response timeout */
+	protected final AtomicLong responseTimeouts = new AtomicLong(0L);
+	/** The cumulative time in ms. spent waiting for leases */
+	protected final AtomicLong leaseWaitTime = new AtomicLong(0L);
+	/** The longest time in ms. spent waiting for a lease */
+	protected final AtomicLong maxLeaseWaitTime = new AtomicLong(0L);
+	/** The cumulative time in ms. that leases were held */
+	protected final AtomicLong leaseHoldTime = new AtomicLong(0L);
+	/** The number of released leases */
+	protected final AtomicLong releases = new AtomicLong(0L);
+	/** The number of leases currently held */
+	protected final AtomicInteger leased = new AtomicInteger(0);
+	
+	/** The default maximum number of concurrently leased channels */
+	public static final int DEFAULT_MAX_SIZE = 4;
+	/** The default maximum idle time in ms. */
+	public static final long DEFAULT_MAX_IDLE_TIME = 30000;
+	/** The default lease timeout in ms. */
+	public static final long DEFAULT_LEASE_TIMEOUT = 5000;
+	/** The default response timeout in ms. */
+	public static final long DEFAULT_RESPONSE_TIMEOUT = 15000;
+	
+	/** The timer that expires leases whose response has not been received within the response timeout */
+	protected static final Timer RESPONSE_TIMER = new HashedWheelTimer(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "ActiveChannelPool Response Timer");
+			t.setDaemon(true);
+			return t;
+		}
+	}, 100, TimeUnit.MILLISECONDS);
+	
+	/** The sharable handler that completes the lease of a channel when its response is received */
+	public static final SimpleChannelUpstreamHandler RELEASER = new ChannelReleaser();
+	
+	/**
+	 * Creates a new ActiveChannelPool
+	 * @param client The client that connects new channels
+	 * @param address The address of the zabbix server
+	 * @param maxSize The maximum number of concurrently leased channels
+	 * @param maxIdleTime The maximum time in ms. that a channel can sit idle before it is evicted
+	 * @param leaseTimeout The maximum time in ms. to wait for a lease
+	 * @param responseTimeout The maximum time in ms. a lease waits for the server's response, or zero for no timeout
+	 * @param keepAlive true to return channels to the pool after the response, false to close them
+	 */
+	public ActiveChannelPool(ActiveClient client, SocketAddress address, int maxSize, long maxIdleTime, long leaseTimeout, long responseTimeout, boolean keepAlive) {
+		if(maxSize<1) throw new IllegalArgumentException("The passed maxSize [" + maxSize + "] was less than 1", new Throwable());
+		this.client = client;
+		this.address = address;
+		this.name = address.toString();
+		this.maxSize = maxSize;
+		this.maxIdleTime = maxIdleTime;
+		this.leaseTimeout = leaseTimeout;
+		this.responseTimeout = responseTimeout;
+		this.keepAlive = keepAlive;
+		permits = new Semaphore(maxSize, true);
+	}
+	
+	/**
+	 * Leases a channel, reusing a healthy idle channel if one is available and connecting a new one if not
+	 * @return the channel lease
+	 */
+	public ChannelLease lease() {
+		while(true) {
+			acquirePermit();
+			ChannelLease lease = leaseChannel();
+			if(lease!=null) return lease;
+		}
+	}
+	
+	/**
+	 * Waits for a lease permit, recording the wait time
+	 */
+	protected void acquirePermit() {
+		long start = SystemClock.currentTimeMillis();
+		try {
+			if(!permits.tryAcquire(leaseTimeout, TimeUnit.MILLISECONDS)) {
+				leaseTimeouts.incrementAndGet();
+				throw new RuntimeException("Timed out after [" + leaseTimeout + "] ms. waiting for a channel to [" + name + "]", new Throwable());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for a channel to [" + name + "]", e);
+		}
+		long waited = SystemClock.currentTimeMillis()-start;
+		leaseWaitTime.addAndGet(waited);
+		while(true) {
+			long max = maxLeaseWaitTime.get();
+			if(waited<=max || maxLeaseWaitTime.compareAndSet(max, waited)) break;
+		}
+	}
+	
+	/**
+	 * Leases a pooled or new channel under an acquired permit
+	 * @return the channel lease, or null if the pooled channel was closed by the peer after its health check, in which case the permit has been released
+	 */
+	protected ChannelLease leaseChannel() {
+		try {
+			evictIdle();
+			IdleChannel ic = null;
+			while((ic = idle.pollFirst())!=null) {
+				if(isHealthy(ic.channel)) {
+					ChannelLease lease = newLease(ic.channel);
+					if(!ic.channel.isOpen()) {
+						evictions.incrementAndGet();
+						lease.invalidate();
+						return null;
+					}
+					reuses.incrementAndGet();
+					return lease;
+				}
+				evict(ic.channel);
+			}
+			Channel channel = client.connect(address);
+			connects.incrementAndGet();
+			ChannelLease lease = newLease(channel);
+			channel.getCloseFuture().addListener(closeListener);
+			return lease;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Creates a new lease for the passed channel and starts its response timeout
+	 * @param channel The channel to lease
+	 * @return the new lease
+	 */
+	protected ChannelLease newLease(Channel channel) {
+		final ChannelLease lease = new ChannelLease(this, channel);
+		leases.incrementAndGet();
+		leased.incrementAndGet();
+		if(responseTimeout>0) {
+			lease.setDeadline(RESPONSE_TIMER.newTimeout(new TimerTask() {
+				@Override
+				public void run(Timeout timeout) throws Exception {
+					if(timeout.isCancelled() || lease.isReleased()) return;
+					responseTimeouts.incrementAndGet();
+					log.warn("No response received on channel [{}] within [{}] ms.", lease.getChannel(), responseTimeout);
+					lease.fail(new TimeoutException("No response received from [" + name + "] within [" + responseTimeout + "] ms."));
+				}
+			}, responseTimeout, TimeUnit.MILLISECONDS));
+		}
+		return lease;
+	}
+	
+	/**
+	 * Releases a lease, returning the channel to the pool if it is healthy and reusable, or closing it if not
+	 * @param lease The lease to release
+	 */
+	protected void release(ChannelLease lease) {
+		Channel channel = lease.getChannel();
+		channel.setAttachment(null);
+		long now = SystemClock.currentTimeMillis();
+		leaseHoldTime.addAndGet(now-lease.getLeaseTime());
+		releases.incrementAndGet();
+		leased.decrementAndGet();
+		if(keepAlive && lease.isReusable() && isHealthy(channel)) {
+			idle.offerFirst(new IdleChannel(channel, now));
+		} else if(channel.isOpen()) {
+			channel.close();
+		}
+		permits.release();
+	}
+	
+	/**
+	 * Closes and removes idle channels that have been idle for longer than the maximum idle time
+	 */
+	public void evictIdle() {
+		long expired = SystemClock.currentTimeMillis() - maxIdleTime;
+		IdleChannel ic = null;
+		while((ic = idle.peekLast())!=null && ic.since < expired) {
+			if(idle.removeLastOccurrence(ic)) {
+				evict(ic.channel);
+			}
+		}
+	}
+	
+	/**
+	 * Closes all idle channels
+	 */
+	public void clear() {
+		IdleChannel ic = null;
+		while((ic = idle.pollFirst())!=null) {
+			evict(ic.channel);
+		}
+	}
+	
+	/**
+	 * Determines if the passed channel can be used for a new exchange
+	 * @param channel The channel to test
+	 * @return true if the channel is connected and writable
+	 */
+	protected boolean isHealthy(Channel channel) {
+		return channel.isConnected() && channel.isWritable();
+	}
+	
+	/**
+	 * Counts and closes an evicted channel
+	 * @param channel The channel to evict
+	 */
+	protected void evict(Channel channel) {
+		evictions.incrementAndGet();
+		if(channel.isOpen()) channel.close();
+	}
+	
+	/** Removes closed channels from the idle set and releases any lease still held on them */
+	protected final ChannelFutureListener closeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			Channel channel = future.getChannel();
+			ChannelLease lease = ChannelLease.get(channel);
+			if(lease!=null) {
+				lease.fail(new ClosedChannelException());
+				return;
+			}
+			for(Iterator<IdleChannel> iter = idle.iterator(); iter.hasNext();) {
+				IdleChannel ic = iter.next(); 
+				if(ic.channel==channel) {
+					iter.remove();
+					evictions.incrementAndGet();
+					log.debug("Idle channel [{}] was closed by the peer", channel);
+					break;
+				}
+			}
+		}
+	};
+	
+	/**
+	 * Returns the pool name
+	 * @return the pool name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the address of the zabbix server
+	 * @return the address of the zabbix server
+	 */
+	public SocketAddress getAddress() {
+		return address;
+	}
+	
+	/**
+	 * Returns the maximum number of concurrently leased channels
+	 * @return the maximum number of concurrently leased channels
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Returns the number of idle channels
+	 * @return the number of idle channels
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+	
+	/**
+	 * Returns the number of leases currently held
+	 * @return the number of leased channels
+	 */
+	public int getLeasedCount() {
+		return leased.get();
+	}
+
+	/**
+	 * Returns the number of leases granted
+	 * @return the number of leases granted
+	 */
+	public long getLeases() {
+		return leases.get();
+	}
+
+	/**
+	 * Returns the number of leases served by a pooled channel
+	 * @return the number of reused channels
+	 */
+	public long getReuses() {
+		return reuses.get();
+	}
+
+	/**
+	 * Returns the number of new connections
+	 * @return the number of new connections
+	 */
+	public long getConnects() {
+		return connects.get();
+	}
+
+	/**
+	 * Returns the number of idle channels evicted as expired, unhealthy or closed by the peer
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Returns the number of lease requests that timed out
+	 * @return the number of lease timeouts
+	 */
+	public long getLeaseTimeouts() {
+		return leaseTimeouts.get();
+	}
+
+	/**
+	 * Returns the number of leased exchanges failed because the server did not respond within the response timeout
+	 * @return the number of response timeouts
+	 */
+	public long getResponseTimeouts() {
+		return responseTimeouts.get();
+	}
+
+	/**
+	 * Returns the cumulative time in ms. spent waiting for leases
+	 * @return the cumulative lease wait time
+	 */
+	public long getLeaseWaitTime() {
+		return leaseWaitTime.get();
+	}
+	
+	/**
+	 * Returns the longest time in ms. spent waiting for a lease
+	 * @return the longest lease wait time
+	 */
+	public long getMaxLeaseWaitTime() {
+		return maxLeaseWaitTime.get();
+	}
+
+	/**
+	 * Returns the cumulative time in ms. that released leases were held
+	 * @return the cumulative lease hold time
+	 */
+	public long getLeaseHoldTime() {
+		return leaseHoldTime.get();
+	}
+	
+	/**
+	 * Returns the number of released leases
+	 * @return the number of released leases
+	 */
+	public long getReleases() {
+		return releases.get();
+	}
+	
+	/**
+	 * Resets the pool counters
+	 */
+	public void resetCounters() {
+		leases.set(0L);
+		reuses.set(0L);
+		connects.set(0L);
+		evictions.set(0L);
+		leaseTimeouts.set(0L);
+		responseTimeouts.set(0L);
+		leaseWaitTime.set(0L);
+		maxLeaseWaitTime.set(0L);
+		leaseHoldTime.set(0L);
+		releases.set(0L);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ActiveChannelPool [" + name + ", idle=" + idle.size() + ", leased=" + leased.get() + "]";
+	}
+	
+	/**
+	 * <p>Title: IdleChannel</p>
+	 * <p>Description: An idle pooled channel and the time it was released</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.ActiveChannelPool.IdleChannel</code></p>
+	 */
+	protected static class IdleChannel {
+		/** The idle channel */
+		protected final Channel channel;
+		/** The time the channel was released in ms. */
+		protected final long since;
+		
+		/**
+		 * Creates a new IdleChannel
+		 * @param channel The idle channel
+		 * @param since The time the channel was released in ms.
+		 */
+		protected IdleChannel(Channel channel, long since) {
+			this.channel = channel;
+			this.since = since;
+		}
+	}
+	
+	/**
+	 * <p>Title: ChannelReleaser</p>
+	 * <p>Description: The last upstream handler in an active client pipeline. Completes the channel's lease with the received response,
+	 * or closes the channel after the response if it is not leased.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.ActiveChannelPool.ChannelReleaser</code></p>
+	 */
+	@Sharable
+	protected static class ChannelReleaser extends SimpleChannelUpstreamHandler {
+		/** Instance logger */
+		protected final Logger log = LoggerFactory.getLogger(getClass());
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		@Override
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			ChannelLease lease = ChannelLease.get(e.getChannel());
+			if(lease!=null) {
+				lease.complete(e.getMessage());
+			} else {
+				e.getChannel().close();
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+		 */
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+			log.debug("Exchange failed on channel [{}]", e.getChannel(), e.getCause());
+			ChannelLease lease = ChannelLease.get(e.getChannel());
+			if(lease!=null) {
+				lease.fail(e.getCause());
+			} else {
+				e.getChannel().close();
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.agent.commands.IBatchingCommandProcessor;
+import org.helios.jzab.agent.commands.ICommandBatch;
+import org.helios.jzab.agent.commands.ICommandProcessor;
+import org.helios.jzab.agent.net.active.ActiveHost.ActiveHostCheck;
+
+/**
+ * <p>Title: ActiveCheckBatch</p>
+ * <p>Description: The command batches for one collection window of active checks. Before the window runs, each check whose processor is an 
+ * {@link IBatchingCommandProcessor} is added to that processor's batch for the window, and the window's check threads then execute those checks through the batch.
+ * Checks added to the window after the batch was prepared execute normally.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.ActiveCheckBatch</code></p>
+ */
+public class ActiveCheckBatch {
+	/** The command batches keyed by processor */
+	private final Map<ICommandProcessor, ICommandBatch> batches = new IdentityHashMap<ICommandProcessor, ICommandBatch>();
+	/** The batch tokens keyed by check */
+	private final Map<ActiveHostCheck, BatchedCheck> checks = new IdentityHashMap<ActiveHostCheck, BatchedCheck>();
+	
+	/** The total number of check executions served by batches */
+	private static final AtomicLong batchedExecutions = new AtomicLong(0);
+	/** The total number of round trips made by batches */
+	private static final AtomicLong roundTrips = new AtomicLong(0);
+	/** The number of round trips saved by the most recently completed window */
+	private static volatile long lastWindowRoundTripsSaved = 0;
+	
+	/**
+	 * Adds checks to the batch. Not thread safe: all checks must be added before the window runs.
+	 * @param activeChecks The checks to add
+	 */
+	public void addAll(Iterable<ActiveHostCheck> activeChecks) {
+		for(ActiveHostCheck check: activeChecks) {
+			add(check);
+		}
+	}
+	
+	/**
+	 * Adds a check to the batch if its processor supports batching. Not thread safe: all checks must be added before the window runs.
+	 * @param check The check to add
+	 */
+	public void add(ActiveHostCheck check) {
+		if(!(check.commandProcessor instanceof IBatchingCommandProcessor)) return;
+		ICommandBatch batch = batches.get(check.commandProcessor);
+		if(batch==null) {
+			batch = ((IBatchingCommandProcessor)check.commandProcessor).newBatch();
+			batches.put(check.commandProcessor, batch);
+		}
+		Object token = batch.add(check.commandName, check.processorArguments);
+		if(token!=null) {
+			checks.put(check, new BatchedCheck(batch, token));
+		}
+	}
+	
+	/**
+	 * Executes a check through its batch
+	 * @param check The check to execute
+	 * @return the check result or null if the check is not in this batch
+	 */
+	public Object execute(ActiveHostCheck check) {
+		BatchedCheck batched = checks.get(check);
+		return batched==null ? null : batched.batch.execute(batched.token);
+	}
+	
+	/**
+	 * Indicates if this batch contains any checks
+	 * @return true if this batch contains no checks
+	 */
+	public boolean isEmpty() {
+		return checks.isEmpty();
+	}
+	
+	/**
+	 * Called when the window has completed to record the round trips the window's batches saved
+	 * @return the number of round trips saved, being the number of batched executions less the number of round trips made
+	 */
+	public long complete() {
+		long executions = 0, trips = 0;
+		for(ICommandBatch batch: batches.values()) {
+			executions += batch.getExecutions();
+			trips += batch.getRoundTrips();
+		}
+		batchedExecutions.addAndGet(executions);
+		roundTrips.addAndGet(trips);
+		lastWindowRoundTripsSaved = executions - trips;
+		return executions - trips;
+	}
+	
+	/**
+	 * Returns the total number of check executions served by batches
+	 * @return the total number of batched check executions
+	 */
+	public static long getBatchedExecutions() {
+		return batchedExecutions.get();
+	}
+	
+	/**
+	 * Returns the total number of round trips made by batches
+	 * @return the total number of batch round trips
+	 */
+	public static long getRoundTrips() {
+		return roundTrips.get();
+	}
+	
+	/**
+	 * Returns the total number of round trips saved by batching
+	 * @return the total number of round trips saved
+	 */
+	public static long getRoundTripsSaved() {
+		return batchedExecutions.get() - roundTrips.get();
+	}
+	
+	/**
+	 * Returns the number of round trips saved by the most recently completed window
+	 * @return the number of round trips saved by the last window
+	 */
+	public static long getLastWindowRoundTripsSaved() {
+		return lastWindowRoundTripsSaved;
+	}
+	
+	/**
+	 * <p>Title: BatchedCheck</p>
+	 * <p>Description: A check's batch and the token it executes with</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.ActiveCheckBatch.BatchedCheck</code></p>
+	 */
+	private static class BatchedCheck {
+		/** The check's batch */
+		final ICommandBatch batch;
+		/** The check's batch token */
+		final Object token;
+		
+		/**
+		 * Creates a new BatchedCheck
+		 * @param batch The check's batch
+		 * @param token The check's batch token
+		 */
+		BatchedCheck(ICommandBatch batch, Object token) {
+			this.batch = batch;
+			this.token = token;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active;
+
+/**
+ * <p>Title: ActiveCheckEntry</p>
+ * <p>Description: One active check definition from a zabbix server's active check list, decoded without building a JSON tree</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.ActiveCheckEntry</code></p>
+ */
+public class ActiveCheckEntry {
+	/** The item key */
+	protected final String key;
+	/** The check delay in seconds */
+	protected final long delay;
+	/** The check mtime */
+	protected final long mtime;
+	/** The check last log size */
+	protected final long lastLogSize;
+	
+	/**
+	 * Creates a new ActiveCheckEntry
+	 * @param key The item key
+	 * @param delay The check delay in seconds
+	 * @param mtime The check mtime
+	 * @param lastLogSize The check last log size
+	 */
+	public ActiveCheckEntry(String key, long delay, long mtime, long lastLogSize) {
+		if(key==null) throw new IllegalArgumentException("The passed key was null", new Throwable());
+		this.key = key;
+		this.delay = delay;
+		this.mtime = mtime;
+		this.lastLogSize = lastLogSize;
+	}
+
+	/**
+	 * Returns the item key
+	 * @return the item key
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the check delay in seconds
+	 * @return the check delay
+	 */
+	public long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Returns the check mtime
+	 * @return the check mtime
+	 */
+	public long getMtime() {
+		return mtime;
+	}
+
+	/**
+	 * Returns the check last log size
+	 * @return the check last log size
+	 */
+	public long getLastLogSize() {
+		return lastLogSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("ActiveCheckEntry [key=%s, delay=%s, mtime=%s]", key, delay, mtime);
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>Title: ActiveCheckList</p>
+ * <p>Description: The <code>data</code> segment of a zabbix server's active check list response.
+ * Deliberately not a {@link java.util.Collection}, so that it is held as is when put into a {@link JSONObject} rather than converted to a {@link JSONArray}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.ActiveCheckList</code></p>
+ */
+public class ActiveCheckList implements Iterable<ActiveCheckEntry> {
+	/** The active check entries */
+	protected final List<ActiveCheckEntry> entries;
+	
+	/**
+	 * Creates a new ActiveCheckList
+	 * @param initialCapacity The initial capacity of the list
+	 */
+	public ActiveCheckList(int initialCapacity) {
+		entries = new ArrayList<ActiveCheckEntry>(initialCapacity);
+	}
+	
+	/**
+	 * Creates a new ActiveCheckList
+	 */
+	public ActiveCheckList() {
+		this(64);
+	}
+	
+	/**
+	 * Builds an ActiveCheckList from a JSON active check array
+	 * @param activeChecks An array of json formatted active checks
+	 * @return the active check list
+	 * @throws JSONException thrown if an active check is missing a required field
+	 */
+	public static ActiveCheckList fromJSON(JSONArray activeChecks) throws JSONException {
+		int size = activeChecks.length();
+		ActiveCheckList list = new ActiveCheckList(size);
+		for(int i = 0; i < size; i++) {
+			JSONObject activeCheck = activeChecks.getJSONObject(i);
+			list.add(new ActiveCheckEntry(
+					activeCheck.getString(ActiveHost.CHECK_ITEM_KEY), 
+					activeCheck.getLong(ActiveHost.CHECK_DELAY), 
+					activeCheck.getLong(ActiveHost.CHECK_MTIME), 
+					activeCheck.optLong(ActiveHost.CHECK_LASTLOG_SIZE, 0)
+			));
+		}
+		return list;
+	}
+	
+	/**
+	 * Adds an entry
+	 * @param entry The entry to add
+	 */
+	public void add(ActiveCheckEntry entry) {
+		entries.add(entry);
+	}
+	
+	/**
+	 * Returns the number of entries
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<ActiveCheckEntry> iterator() {
+		return Collections.unmodifiableList(entries).iterator();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("ActiveCheckList [size=%s]", entries.size());
+	}
+}
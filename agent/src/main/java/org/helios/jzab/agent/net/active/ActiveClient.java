@@ -28,6 +28,8 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -43,7 +45,9 @@ import org.helios.jzab.agent.internal.jmx.ThreadPoolFactory;
 import org.helios.jzab.agent.logging.LoggerManager;
 import org.helios.jzab.agent.logging.ZabbixLoggingHandler;
 import org.helios.jzab.agent.net.SharableHandlers;
+import org.helios.jzab.agent.net.codecs.ResponseDecodeMode;
 import org.helios.jzab.agent.net.codecs.ZabbixResponseDecoder;
+import org.helios.jzab.agent.net.codecs.ZabbixResponseFrameDecoder;
 import org.helios.jzab.agent.net.routing.JSONResponseHandler;
 import org.helios.jzab.util.JMXHelper;
 import org.helios.jzab.util.XMLHelper;
@@ -52,13 +56,9 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
@@ -103,6 +103,24 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	protected final AtomicLong notificationSequence = new AtomicLong(0);
 	/** The sharable handlers repository */
 	protected final SharableHandlers sharableHandlers = SharableHandlers.getInstance();
+	/** The keep-alive channel pools keyed by zabbix server address */
+	protected final Map<SocketAddress, ActiveChannelPool> channelPools = new ConcurrentHashMap<SocketAddress, ActiveChannelPool>();
+	/** The maximum number of concurrently leased channels to each zabbix server */
+	protected final int poolMaxSize;
+	/** The maximum time in ms. that a pooled channel can sit idle */
+	protected final long poolMaxIdleTime;
+	/** The maximum time in ms. to wait for a channel lease */
+	protected final long poolLeaseTimeout;
+	/** The maximum time in ms. a leased channel waits for the server's response */
+	protected final long poolResponseTimeout;
+	/** Indicates if channels are kept alive in the pool after the response */
+	protected final boolean poolKeepAlive;
+	/** The zabbix server response payload decode mode */
+	protected final ResponseDecodeMode responseDecodeMode;
+	/** The maximum accepted zabbix server response payload size in bytes */
+	protected final int maxResponseFrameSize;
+	/** Indicates if zabbix server responses are decoded with the legacy replaying decoder rather than the frame decoder */
+	protected final boolean replayingResponseDecoder;
 	
 	/** The singleton ActiveClient instance */
 	private static volatile ActiveClient instance = null;
@@ -125,6 +143,10 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	public static final String BOSS_POOL_TYPE = "boss-pool";
 	/** The config type name for the worker pool type */
 	public static final String WORKER_POOL_TYPE = "worker-pool";
+	/** The config type name for the channel pool */
+	public static final String CHANNEL_POOL_TYPE = "channel-pool";
+	/** The config type name for the response decoder */
+	public static final String RESPONSE_DECODER_TYPE = "response-decoder";
 	
 	/** The channel connection timeout in ms. that is used on connection requests if no timeout socket option has been specified */
 	public static final int DEFAULT_CONNECT_TIMEOUT = 1000;
@@ -200,6 +222,14 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 		bstrap = new ClientBootstrap(channelFactory);
 		bstrap.setPipelineFactory(this);
 		bstrap.setOptions(socketOptions);
+		poolMaxSize = ActiveChannelPool.DEFAULT_MAX_SIZE;
+		poolMaxIdleTime = ActiveChannelPool.DEFAULT_MAX_IDLE_TIME;
+		poolLeaseTimeout = ActiveChannelPool.DEFAULT_LEASE_TIMEOUT;
+		poolResponseTimeout = ActiveChannelPool.DEFAULT_RESPONSE_TIMEOUT;
+		poolKeepAlive = true;
+		responseDecodeMode = ResponseDecodeMode.TREE;
+		maxResponseFrameSize = ZabbixResponseDecoder.DEFAULT_MAX_FRAME_SIZE;
+		replayingResponseDecoder = false;
 		JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), OBJECT_NAME, this);
 		log.info("Created ActiveAgent [{}]", agentName);
 	}
@@ -241,6 +271,16 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 		bstrap = new ClientBootstrap(channelFactory);
 		bstrap.setPipelineFactory(this);
 		bstrap.setOptions(socketOptions);
+		Node poolNode = XMLHelper.getChildNodeByName(configNode, CHANNEL_POOL_TYPE, false);
+		poolMaxSize = XMLHelper.getAttributeByName(poolNode, "max-size", ActiveChannelPool.DEFAULT_MAX_SIZE);
+		poolMaxIdleTime = XMLHelper.getAttributeByName(poolNode, "max-idle", ActiveChannelPool.DEFAULT_MAX_IDLE_TIME);
+		poolLeaseTimeout = XMLHelper.getAttributeByName(poolNode, "lease-timeout", ActiveChannelPool.DEFAULT_LEASE_TIMEOUT);
+		poolResponseTimeout = XMLHelper.getAttributeByName(poolNode, "response-timeout", ActiveChannelPool.DEFAULT_RESPONSE_TIMEOUT);
+		poolKeepAlive = XMLHelper.getAttributeByName(poolNode, "keep-alive", true);
+		Node decoderNode = XMLHelper.getChildNodeByName(configNode, RESPONSE_DECODER_TYPE, false);
+		responseDecodeMode = ResponseDecodeMode.forName(XMLHelper.getAttributeByName(decoderNode, "mode", ResponseDecodeMode.TREE.name()));
+		maxResponseFrameSize = XMLHelper.getAttributeByName(decoderNode, "max-frame", ZabbixResponseDecoder.DEFAULT_MAX_FRAME_SIZE);
+		replayingResponseDecoder = XMLHelper.getAttributeByName(decoderNode, "replaying", false);
 		JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), OBJECT_NAME, this);
 		log.info("Created ActiveAgent [{}]", agentName);
 	}
@@ -258,9 +298,11 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 		}
 		pipeline.addLast("routingHandler1", sharableHandlers.getHandler("responseRoutingHandler"));
 		pipeline.addLast("responseEncoder", sharableHandlers.getHandler("responseEncoder"));		
-		pipeline.addLast("responseDecoder", new ZabbixResponseDecoder());
+		pipeline.addLast("responseDecoder", replayingResponseDecoder ? 
+				new ZabbixResponseDecoder(responseDecodeMode, maxResponseFrameSize) : 
+				new ZabbixResponseFrameDecoder(responseDecodeMode, maxResponseFrameSize));
 		pipeline.addLast("routingHandler2", sharableHandlers.getHandler("responseRoutingHandler"));
-		pipeline.addLast("channelCloser", sharableHandlers.getHandler("channelCloser"));
+		pipeline.addLast("channelReleaser", ActiveChannelPool.RELEASER);
 		return pipeline;
 	}
 	
@@ -311,11 +353,36 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	 * @param timeout The operation timeout
 	 * @param unit The timeout unit
 	 */
-	public void newReqRespChannel(String host, int port, Object request, JSONResponseHandler responseHandler, long timeout, TimeUnit unit) {
+	public void newReqRespChannel(String host, int port, final Object request, final JSONResponseHandler responseHandler, long timeout, TimeUnit unit) {
 		if(host==null) throw new IllegalArgumentException("The passed host was null", new Throwable());
 		if(responseHandler==null) throw new IllegalArgumentException("The passed response handler was null", new Throwable());
-		SocketAddress sa = new InetSocketAddress(host, port);
-		bstrap.connect(sa).addListener(wrapHandler(request, responseHandler, timeout, unit));
+		final ChannelLease lease = lease(new InetSocketAddress(host, port));
+		lease.setListener(new ChannelLease.ResponseListener() {
+			@Override
+			public void onResponse(Object response) {
+				try {
+					responseHandler.jsonResponse(null, (JSONObject)response);
+				} catch (Exception e) {
+					log.error("Response handler failed to process response [{}]", response, e);
+				}
+			}
+			@Override
+			public void onFailure(Throwable cause) {
+				log.error("Failed to get response for request [{}]:[{}]", request, cause);
+			}
+		});
+		lease.getChannel().write(request).addListener(new ChannelFutureListener(){
+			// Handles the request write
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(future.isSuccess()) {
+					log.debug("Sent ReqResp Request [{}]", request);
+				} else {
+					log.error("Failed to write request [{}]:[{}]", request, future.getCause());
+					lease.invalidate();
+				}
+			}
+		});
 	}
 	
 	/**
@@ -342,25 +409,50 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	 * @param unit The operation timeout unit
 	 * @return the returned result
 	 */
-	public <T> T requestResponse(final Object request, Class<T> responseType, SocketAddress sockAddr, long timeout, TimeUnit unit) {
+	public <T> T requestResponse(final Object request, final Class<T> responseType, SocketAddress sockAddr, long timeout, TimeUnit unit) {
 		final long startTime = SystemClock.currentTimeMillis();
-		ChannelFuture cf = bstrap.connect(sockAddr);
-		if(!cf.awaitUninterruptibly(timeout, unit)) {
-			log.error("Connection to [{}] timed out", sockAddr);
-			throw new RuntimeException("Connection to [" + sockAddr+ "] timed out", new Throwable());
-		}
-		if(!cf.isSuccess()) {
-			log.error("Failure Connecting to [{}] timed out: [{}]", sockAddr, cf.getCause());
-			throw new RuntimeException("Failure Connecting to [" + sockAddr + "]", new Throwable());			
-		}
-		final Channel channel = cf.getChannel();
+		final ChannelLease lease = lease(sockAddr);
 		final AtomicReference<T> result = new AtomicReference<T>(null);
 		final AtomicReference<Throwable> exception = new AtomicReference<Throwable>(null);
+		final CountDownLatch latch = new CountDownLatch(1);
+		lease.setListener(new ChannelLease.ResponseListener() {
+			@Override
+			public void onResponse(Object response) {
+				try {
+					result.set(responseType.cast(response));
+				} catch (Exception ex) {
+					exception.set(new Exception("Incompatible Result Type [" + (response==null ? "<null>" :  response.getClass().getName()) + "] but was expecting [" + responseType.getName() + "]", ex));
+				}
+				latch.countDown();
+			}
+			@Override
+			public void onFailure(Throwable cause) {
+				exception.set(cause);
+				latch.countDown();
+			}
+		});
 		long remaining = computeNextTimeout(TimeUnit.MILLISECONDS.convert(timeout, unit), startTime);
-		log.debug("Connected to [{}]. Time remaining to complete [{}] ms.", sockAddr, remaining);
-		if(!modfyRequestResponseChannel(channel, responseType, result, exception).write(request).awaitUninterruptibly(remaining, TimeUnit.MILLISECONDS)) {
-			log.error("Timed out waiting for response from [{}]", sockAddr);
-			throw new RuntimeException("Timed out waiting for response from [" + sockAddr + "]", new Throwable());			
+		log.debug("Leased channel to [{}]. Time remaining to complete [{}] ms.", sockAddr, remaining);
+		lease.getChannel().write(request).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(!future.isSuccess()) {
+					exception.set(future.getCause());
+					latch.countDown();
+					lease.invalidate();
+				}
+			}
+		});
+		try {
+			if(!latch.await(computeNextTimeout(TimeUnit.MILLISECONDS.convert(timeout, unit), startTime), TimeUnit.MILLISECONDS)) {
+				lease.invalidate();
+				log.error("Timed out waiting for response from [{}]", sockAddr);
+				throw new RuntimeException("Timed out waiting for response from [" + sockAddr + "]", new Throwable());			
+			}
+		} catch (InterruptedException e) {
+			lease.invalidate();
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for response from [" + sockAddr + "]", e);
 		}
 		Throwable throwable = exception.get();
 		if(throwable != null) {
@@ -381,92 +473,65 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	}
 	
 	/**
-	 * Modifies the passed channel's pipeline to handle a request response
-	 * @param channel The channel to modify the pipeline for
-	 * @param result A reference container for the result
-	 * @param exception A reference container for any thrown exception
-	 * @return the modified channel
+	 * Leases a channel to the passed socket from the socket's keep-alive channel pool. 
+	 * The lease is released when the response to the request written on the channel is received.
+	 * @param host The host name or ip address to connect to
+	 * @param port The listening port
+	 * @return A connected channel
+	 * TODO: Need to add failover zabbix servers
 	 */
-	protected <T> Channel modfyRequestResponseChannel(Channel channel, final Class<T> responseType, final AtomicReference<T> result, final AtomicReference<Throwable> exception) {
-		channel.getPipeline().remove("routingHandler1");
-		channel.getPipeline().remove("routingHandler2");
-		channel.getPipeline().addAfter("responseDecoder", "requestResponseHandler", new SimpleChannelUpstreamHandler() {
-			@Override
-			public void messageReceived(ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
-				final Object response = e.getMessage();
-				try {
-					result.set(responseType.cast(response));
-				} catch (Exception ex) {
-					exception.set(new Exception("Incompatible Result Type [" + response==null ? "<null>" :  response.getClass().getName() + "] but was expecting [" + responseType.getClass().getName() + "]", ex));
-				}
-				super.messageReceived(ctx, e);
-			}
-			
-			@Override
-			public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
-				exception.set(e.getCause());
-			}
-		});		
-		return channel;
+	public Channel newChannel(String host, int port) {
+		if(host==null) throw new IllegalArgumentException("The passed host was null", new Throwable());
+		return lease(new InetSocketAddress(host, port)).getChannel();
 	}
 	
-	
 	/**
-	 * Creates a request response channel future listener
-	 * @param request The request to send
-	 * @param responseHandler The JSON response handler
-	 * @return the request response channel future listener
-	 */
-	protected ChannelFutureListener wrapHandler(final Object request, final JSONResponseHandler responseHandler, long timeout, TimeUnit unit) {
-			final long startTime = SystemClock.currentTimeMillis();
-			return new ChannelFutureListener() {
-				// Handles the connect completion
-				@Override
-				public void operationComplete(ChannelFuture future) throws Exception {
-					future.getChannel().getPipeline().remove("routingHandler1");
-					future.getChannel().getPipeline().remove("routingHandler2");
-					future.getChannel().getPipeline().addAfter("responseDecoder", "requestResponseHandler", new SimpleChannelUpstreamHandler() {
-						@Override
-						public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-							responseHandler.jsonResponse(null, (JSONObject)e.getMessage());
-							super.messageReceived(ctx, e);
-						}					
-					});
-					if(future.isSuccess()) {
-						future.getChannel().write(request).addListener(new ChannelFutureListener(){
-							// Handles the request write
-							@Override
-							public void operationComplete(ChannelFuture future) throws Exception {
-								if(future.isSuccess()) {
-									log.debug("Sent ReqResp Request [{}]", request);
-								} else {
-									log.error("Failed to write request [{}]:[{}]", request, future.getCause());
-								}
-							}
-						});
-					} else {
-						log.error("Failed to connect [{}]", future.getCause());
-					}
-					
-				}
-			};
+	 * Leases a channel to the passed ActiveServer from the server's keep-alive channel pool.
+	 * The lease is released when the response to the request written on the channel is received.
+	 * @param server The ActiveServer to connect to
+	 * @return the channel lease
+	 */
+	public ChannelLease lease(ActiveServer server) {
+		if(server==null) throw new IllegalArgumentException("The passed server was null", new Throwable());
+		return lease(server.getSocketAddress());
 	}
 	
+	/**
+	 * Leases a channel to the passed socket address from the address's keep-alive channel pool.
+	 * The lease is released when the response to the request written on the channel is received.
+	 * @param address The socket address to connect to
+	 * @return the channel lease
+	 */
+	public ChannelLease lease(SocketAddress address) {
+		return getChannelPool(address).lease();
+	}
 	
-	
+	/**
+	 * Returns the keep-alive channel pool for the passed address, creating it if it does not exist
+	 * @param address The zabbix server address
+	 * @return the channel pool
+	 */
+	protected ActiveChannelPool getChannelPool(SocketAddress address) {
+		if(address==null) throw new IllegalArgumentException("The passed address was null", new Throwable());
+		ActiveChannelPool pool = channelPools.get(address);
+		if(pool==null) {
+			synchronized(channelPools) {
+				pool = channelPools.get(address);
+				if(pool==null) {
+					pool = new ActiveChannelPool(this, address, poolMaxSize, poolMaxIdleTime, poolLeaseTimeout, poolResponseTimeout, poolKeepAlive);
+					channelPools.put(address, pool);
+				}
+			}
+		}
+		return pool;
+	}
 	
 	/**
-	 * Acquires a new channel to the passed socket syncrhonously
-	 * @param host The host name or ip address to connect to
-	 * @param port The listening port
+	 * Connects a new channel to the passed socket address syncrhonously
+	 * @param sa The socket address to connect to
 	 * @return A connected channel
-	 * TODO: Need to gracefully handle a failed connection to the zabbix server
-	 * TODO: Need to add failover zabbix servers
 	 */
-	public Channel newChannel(String host, int port) {
-		if(host==null) throw new IllegalArgumentException("The passed host was null", new Throwable());
-		SocketAddress sa = new InetSocketAddress(host, port);
-		Channel channel = null;
+	protected Channel connect(SocketAddress sa) {
 		ChannelFuture cf = null;
 		if(socketOptions.containsKey("connectTimeoutMillis")) {
 			cf = bstrap.connect(sa).awaitUninterruptibly();
@@ -476,33 +541,24 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 				if(!cf.cancel()) {
 					try { cf.getChannel().close(); } catch (Exception e) {}
 				}
-				// TIMEOUT THROW
+				throw new RuntimeException("Connection to [" + sa + "] timed out", new Throwable());
 			}
 		}
-		if(!cf.isDone()) {
-			if(!cf.cancel()) {
-				try { cf.getChannel().close(); } catch (Exception e) {}
-			}	
-			// TIMEOUT THROW
-		} 
-		// operation completed
 		if(!cf.isSuccess()) {
-			// FAILED THROW
+			throw new RuntimeException("Failure Connecting to [" + sa + "]", cf.getCause());
 		}
-		// operation succeeded
-		channel = cf.getChannel();		
+		Channel channel = cf.getChannel();		
 		channelGroup.add(channel);
 		return channel;
 	}
 	
 	/**
-	 * Acquires a new channel to the passed ActiveServer syncrhonously
+	 * Leases a channel to the passed ActiveServer from the server's keep-alive channel pool
 	 * @param server The ActiveServer to connect to
 	 * @return A connected channel
 	 */
 	public Channel newChannel(ActiveServer server) {
-		if(server==null) throw new IllegalArgumentException("The passed server was null", new Throwable());
-		return newChannel(server.getAddress(), server.getPort());
+		return lease(server).getChannel();
 	}
 	
 	/**
@@ -519,6 +575,200 @@ public class ActiveClient extends NotificationBroadcasterSupport implements Chan
 	}
 	
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getLeaseCount()
+	 */
+	@Override
+	public long getLeaseCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getLeases();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getReuseCount()
+	 */
+	@Override
+	public long getReuseCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getReuses();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getConnectCount()
+	 */
+	@Override
+	public long getConnectCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getConnects();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getEvictionCount()
+	 */
+	@Override
+	public long getEvictionCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getEvictions();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getLeaseTimeoutCount()
+	 */
+	@Override
+	public long getLeaseTimeoutCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getLeaseTimeouts();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getResponseTimeoutCount()
+	 */
+	@Override
+	public long getResponseTimeoutCount() {
+		long total = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			total += pool.getResponseTimeouts();
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getResponseDecodeMode()
+	 */
+	@Override
+	public String getResponseDecodeMode() {
+		return responseDecodeMode.name();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getMaxResponseFrameSize()
+	 */
+	@Override
+	public int getMaxResponseFrameSize() {
+		return maxResponseFrameSize;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#isReplayingResponseDecoder()
+	 */
+	@Override
+	public boolean isReplayingResponseDecoder() {
+		return replayingResponseDecoder;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getAverageLeaseWaitTime()
+	 */
+	@Override
+	public long getAverageLeaseWaitTime() {
+		long time = 0, count = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			time += pool.getLeaseWaitTime();
+			count += pool.getLeases();
+		}
+		return count==0 ? 0 : time/count;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getMaxLeaseWaitTime()
+	 */
+	@Override
+	public long getMaxLeaseWaitTime() {
+		long max = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			max = Math.max(max, pool.getMaxLeaseWaitTime());
+		}
+		return max;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getAverageLeaseTime()
+	 */
+	@Override
+	public long getAverageLeaseTime() {
+		long time = 0, count = 0;
+		for(ActiveChannelPool pool: channelPools.values()) {
+			time += pool.getLeaseHoldTime();
+			count += pool.getReleases();
+		}
+		return count==0 ? 0 : time/count;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getIdleChannels()
+	 */
+	@Override
+	public Map<String, Integer> getIdleChannels() {
+		Map<String, Integer> map = new HashMap<String, Integer>(channelPools.size());
+		for(ActiveChannelPool pool: channelPools.values()) {
+			map.put(pool.getName(), pool.getIdleCount());
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#getLeasedChannels()
+	 */
+	@Override
+	public Map<String, Integer> getLeasedChannels() {
+		Map<String, Integer> map = new HashMap<String, Integer>(channelPools.size());
+		for(ActiveChannelPool pool: channelPools.values()) {
+			map.put(pool.getName(), pool.getLeasedCount());
+		}
+		return map;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#evictIdleChannels()
+	 */
+	@Override
+	public void evictIdleChannels() {
+		for(ActiveChannelPool pool: channelPools.values()) {
+			pool.evictIdle();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.ActiveClientMXBean#resetPoolCounters()
+	 */
+	@Override
+	public void resetPoolCounters() {
+		for(ActiveChannelPool pool: channelPools.values()) {
+			pool.resetCounters();
+		}
+	}
+	
 	/**
 	 * Returns a map representation of the installed socket options for this client
 	 * @return a map representation of the installed socket options for this client
@@ -59,4 +59,98 @@ public interface ActiveClientMXBean {
 	 */
 	public Map<String, String> getSocketOptions();	
 	
+	/**
+	 * Returns the number of channel leases granted across all zabbix server channel pools
+	 * @return the number of channel leases
+	 */
+	public long getLeaseCount();
+	
+	/**
+	 * Returns the number of channel leases that were served by a pooled keep-alive channel
+	 * @return the number of reused channels
+	 */
+	public long getReuseCount();
+	
+	/**
+	 * Returns the number of new connections made by the channel pools
+	 * @return the number of connections
+	 */
+	public long getConnectCount();
+	
+	/**
+	 * Returns the number of pooled channels evicted as expired, unhealthy or closed by the server
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount();
+	
+	/**
+	 * Returns the number of lease requests that timed out waiting for a channel
+	 * @return the number of lease timeouts
+	 */
+	public long getLeaseTimeoutCount();
+	
+	/**
+	 * Returns the number of leased exchanges that were failed because the server did not respond within the response timeout
+	 * @return the number of response timeouts
+	 */
+	public long getResponseTimeoutCount();
+	
+	/**
+	 * Returns the zabbix server response payload decode mode
+	 * @return the response decode mode name
+	 */
+	public String getResponseDecodeMode();
+	
+	/**
+	 * Returns the maximum accepted zabbix server response payload size in bytes
+	 * @return the maximum response frame size
+	 */
+	public int getMaxResponseFrameSize();
+	
+	/**
+	 * Indicates if zabbix server responses are decoded with the legacy replaying decoder rather than the frame decoder
+	 * @return true if the replaying decoder is used
+	 */
+	public boolean isReplayingResponseDecoder();
+	
+	/**
+	 * Returns the average time in ms. spent waiting for a channel lease
+	 * @return the average lease wait time
+	 */
+	public long getAverageLeaseWaitTime();
+	
+	/**
+	 * Returns the longest time in ms. spent waiting for a channel lease
+	 * @return the longest lease wait time
+	 */
+	public long getMaxLeaseWaitTime();
+	
+	/**
+	 * Returns the average time in ms. that a channel lease is held, from lease to response
+	 * @return the average lease time
+	 */
+	public long getAverageLeaseTime();
+	
+	/**
+	 * Returns the number of idle pooled channels keyed by zabbix server address
+	 * @return the number of idle pooled channels
+	 */
+	public Map<String, Integer> getIdleChannels();
+	
+	/**
+	 * Returns the number of leased channels keyed by zabbix server address
+	 * @return the number of leased channels
+	 */
+	public Map<String, Integer> getLeasedChannels();
+	
+	/**
+	 * Closes pooled channels that have been idle for longer than the maximum idle time
+	 */
+	public void evictIdleChannels();
+	
+	/**
+	 * Resets the channel pool counters
+	 */
+	public void resetPoolCounters();
+	
 }
@@ -61,7 +61,11 @@ import org.helios.jzab.agent.internal.jmx.TrackedScheduledFuture;
 import org.helios.jzab.agent.logging.LoggerManager;
 import org.helios.jzab.agent.net.active.ActiveHost.ActiveHostCheck;
 import org.helios.jzab.agent.net.active.collection.IResultCollector;
-import org.helios.jzab.agent.net.active.schedule.PassiveScheduleBucket;
+import org.helios.jzab.agent.net.active.collection.IStreamingResultCollector;
+import org.helios.jzab.agent.net.active.collection.StreamingResultWriter;
+import org.helios.jzab.agent.net.active.schedule.ConcurrentScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.HashedTimingWheel;
+import org.helios.jzab.agent.net.active.schedule.ScheduleDiff;
 import org.helios.jzab.agent.net.routing.JSONResponseHandler;
 import org.helios.jzab.agent.net.routing.RoutingObjectName;
 import org.helios.jzab.agent.net.routing.RoutingObjectNameFactory;
@@ -119,7 +123,15 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	protected final Map<String, ActiveHostCheck> hostDiscoveryChecks = new ConcurrentHashMap<String, ActiveHostCheck>();
 	
 	/** The schedule bucket map for this active host */
-	protected final PassiveScheduleBucket<ActiveHostCheck, ActiveHost> scheduleBucket; 
+	protected final ConcurrentScheduleBucket<ActiveHostCheck, ActiveHost> scheduleBucket; 
+	/** The schedule changes accumulated during an upsert, applied to the schedule bucket in one batch when the upsert completes */
+	protected ScheduleDiff<ActiveHostCheck> pendingDiff = null;
+	/** The hash of the last active check payload applied */
+	protected long lastPayloadHash = 0;
+	/** The number of checks in the last active check payload applied */
+	protected int lastPayloadSize = -1;
+	/** The delay and mtime of each check in the last active check payload applied, keyed by item key */
+	protected Map<String, long[]> lastPayload = Collections.emptyMap();
 	/** The routing object names for this host */
 	protected final RoutingObjectName[] routingNames; 
 	
@@ -132,6 +144,10 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	public static final String CHECK_ITEM_KEY = "key";
 	/** The JSON key for the active check last log size */
 	public static final String CHECK_LASTLOG_SIZE = "lastlogsize";
+	/** The FNV-1a 64 bit offset basis used to hash active check payloads */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	/** The FNV-1a 64 bit prime used to hash active check payloads */
+	private static final long FNV_PRIME = 0x100000001b3L;
 	
 	
 	
@@ -147,7 +163,7 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		this.server = server;
 		this.hostName = hostName;
 		this.refreshPeriod = refreshPeriod;
-		scheduleBucket = new PassiveScheduleBucket<ActiveHostCheck, ActiveHost>(server.scheduleBucket, this);
+		scheduleBucket = new ConcurrentScheduleBucket<ActiveHostCheck, ActiveHost>(server.scheduleBucket, this);
 		routingNames = new RoutingObjectName[]{RoutingObjectNameFactory.getInstance().getRoute(true, KEY_REQUEST, VALUE_ACTIVE_CHECK_REQUEST, KEY_HOST, hostName)};
 		RoutingObjectNameFactory.getInstance().registerJSONResponseHandler(this);
 		log.debug("Created ActiveHost [{}]", hostName);
@@ -260,7 +276,8 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		log.debug("Handling JSON Response [{}]", response);
 		String requestType = routing.getKeyProperty(KEY_REQUEST);
 		if(VALUE_ACTIVE_CHECK_REQUEST.equals(requestType)) {
-			int[] results = upsertActiveChecks(response.getJSONArray(KEY_DATA));
+			Object data = response.opt(KEY_DATA);
+			int[] results = data instanceof ActiveCheckList ? upsertActiveChecks((ActiveCheckList)data) : upsertActiveChecks(response.getJSONArray(KEY_DATA));
 			log.debug("Active Host [{}] Check Update Results (adds/updates/nochanges/removeds) {}", hostName, Arrays.toString(results)); 
 		}
 	}
@@ -313,11 +330,14 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	 */
 	public void executeChecks(long delay, IResultCollector collector) {
 		Set<ActiveHostCheck> checks = scheduleBucket.get(delay);
+		ActiveCheckBatch batch = new ActiveCheckBatch();
+		batch.addAll(checks);
 		for(ActiveHostCheck check: checks) {
 			try {
-				check.execute(collector);				
+				check.execute(collector, batch);				
 			} catch (Exception e) {}
 		}
+		batch.complete();
 	}
 	
 	/**
@@ -394,9 +414,12 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	 * @param collector The result collection stream
 	 */
 	public void executeChecks(IResultCollector collector) {
+		ActiveCheckBatch batch = new ActiveCheckBatch();
+		batch.addAll(hostChecks.values());
 		for(ActiveHostCheck check: hostChecks.values()) {
-			collector.addResult(check.call());
+			check.execute(collector, batch);
 		}
+		batch.complete();
 	}
 	 
 	/**
@@ -411,7 +434,10 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	
 	
 	/**
-	 * Upserts the active checks for this host
+	 * Upserts the active checks for this host.
+	 * The payload is hashed as it is read and, if it matches the last payload applied, the refresh is skipped entirely.
+	 * Otherwise only the differences are applied: new checks are created, changed checks are updated and checks no longer 
+	 * in the payload are removed, with the schedule changes applied in one batch. Check execution is not blocked.
 	 * @param activeChecks An array of json formatted active checks
 	 * @return An array of ints representing the counts of: <ol>
 	 * 	<li>The number of checks added<li>
@@ -422,16 +448,55 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 	 * 
 	 */
 	public synchronized int[] upsertActiveChecks(JSONArray activeChecks) {
+		final ActiveCheckList checkList;
+		try {
+			checkList = ActiveCheckList.fromJSON(activeChecks);
+		} catch (Exception e) {
+			log.error("Failed to upsert Active Host Checks [{}]", e.getMessage());
+			log.debug("Failed to upsert Active Host Checks for JSON [{}]", activeChecks,  e);
+			scheduleNextRefresh();
+			return null;
+		}
+		return upsertActiveChecks(checkList);
+	}
+	
+	/**
+	 * Upserts the active checks for this host from an already decoded active check list.
+	 * @param activeChecks The decoded active checks
+	 * @return An array of ints representing the counts of adds, updates, no changes and deletes
+	 * @see #upsertActiveChecks(JSONArray)
+	 */
+	public synchronized int[] upsertActiveChecks(ActiveCheckList activeChecks) {
 		final long start = SystemClock.currentTimeMillis();
-		markAllChecks(true);
-		int adds = 0, updates = 0, nochanges = 0;
 		try {
-			for(int i = 0; i < activeChecks.length(); i++) {
-				JSONObject activeCheck = activeChecks.getJSONObject(i);
-				String key = activeCheck.getString(CHECK_ITEM_KEY);
-				long mtime = activeCheck.getLong(CHECK_MTIME);
-				long delay = activeCheck.getLong(CHECK_DELAY);
+			final int size = activeChecks.size();
+			Map<String, long[]> incoming = new HashMap<String, long[]>(size*2);
+			long payloadHash = FNV_OFFSET;
+			for(ActiveCheckEntry activeCheck: activeChecks) {
+				String key = activeCheck.getKey();
+				long mtime = activeCheck.getMtime();
+				long delay = activeCheck.getDelay();
+				incoming.put(key, new long[]{delay, mtime});
+				for(int i = 0, len = key.length(); i < len; i++) {
+					payloadHash = (payloadHash ^ key.charAt(i)) * FNV_PRIME;
+				}
+				payloadHash = (payloadHash ^ key.length()) * FNV_PRIME;
+				payloadHash = (payloadHash ^ delay) * FNV_PRIME;
+				payloadHash = (payloadHash ^ mtime) * FNV_PRIME;
+			}
+			if(payloadHash==lastPayloadHash && size==lastPayloadSize && isSamePayload(incoming)) {
+				setState(ActiveHostState.ACTIVE);
+				lastRefreshChange.skip(SystemClock.currentTimeMillis()-start, size);
+				log.debug("Active Host [{}] Check payload unchanged. Refresh skipped.", hostName);
+				return new int[]{0, 0, size, 0};
+			}
+			pendingDiff = new ScheduleDiff<ActiveHostCheck>();
+			int adds = 0, updates = 0, nochanges = 0, failures = 0;
+			for(Map.Entry<String, long[]> entry: incoming.entrySet()) {
+				String key = entry.getKey();
+				long delay = entry.getValue()[0], mtime = entry.getValue()[1];
 				ActiveHostCheck ahc = hostChecks.get(key);
+				if(ahc==null) ahc = hostDiscoveryChecks.get(key);
 				if(ahc==null) {
 					// new ActiveHostCheck
 					try {
@@ -443,9 +508,10 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 						}
 						
 						log.trace("New ActiveHostCheck [{}]", ahc);
-						sendNotification(new Notification("host.activecheck.added", objectName, notificationSequence.incrementAndGet(), this.stateTimestamp, String.format("Removed Active Check [%s]", ahc.itemKey)));
+						sendNotification(new Notification("host.activecheck.added", objectName, notificationSequence.incrementAndGet(), this.stateTimestamp, String.format("Added Active Check [%s]", ahc.itemKey)));
 						adds++;
 					} catch (Exception e) {
+						failures++;
 						log.error("Failed to create active host check for host/key [{}]: [{}]", hostName + "/" + key, e.getMessage());
 						//log.debug("Failed to create active host check for host/key [{}]", hostName + "/" + key, e);
 					}
@@ -453,61 +519,121 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 					if(ahc.update(delay, mtime)) {
 						// updated ActiveHostCheck
 						log.debug("Updated ActiveHostCheck [{}]", ahc);
-						sendNotification(new Notification("host.activecheck.updated", objectName, notificationSequence.incrementAndGet(), this.stateTimestamp, String.format("Removed Active Check [%s]", ahc.itemKey)));
+						sendNotification(new Notification("host.activecheck.updated", objectName, notificationSequence.incrementAndGet(), this.stateTimestamp, String.format("Updated Active Check [%s]", ahc.itemKey)));
 						updates++;
 					} else {
 						// no change ActiveHostCheck
 						nochanges++;
 					}
-					ahc.marked = false;
 				}
 			}
-			int checksRemoved = clearMarkedChecks();
+			int checksRemoved = removeChecks(hostChecks, incoming) + removeChecks(hostDiscoveryChecks, incoming);
+			applyPendingDiff();
 			log.info("Removed [{}] Active Host Checks", checksRemoved);
 			setState(ActiveHostState.ACTIVE);
+			if(failures==0) {
+				lastPayloadHash = payloadHash;
+				lastPayloadSize = size;
+				lastPayload = incoming;
+			} else {
+				// leave the payload unrecorded so the next refresh retries the failed checks
+				lastPayloadHash = 0;
+				lastPayloadSize = -1;
+				lastPayload = Collections.emptyMap();
+			}
 			long elapsed = SystemClock.currentTimeMillis()-start;
 			lastRefreshChange.update(elapsed, checksRemoved, adds, updates, nochanges);
 			return new int[]{adds, updates , nochanges, checksRemoved };
 		} catch (Exception e) {
 			log.error("Failed to upsert Active Host Checks [{}]", e.getMessage());
-			log.debug("Failed to upsert Active Host Checks for JSON [{}]", activeChecks,  e);
+			log.debug("Failed to upsert Active Host Checks [{}]", activeChecks,  e);
 			return null;
 		} finally {
+			applyPendingDiff();
 			scheduleNextRefresh();
 		}
 	}
 	
 	/**
-	 * Sets the upsert markerson all active host checks
-	 * @param enabled the state to set the markers to 
+	 * Applies the schedule changes accumulated during an upsert to the schedule bucket in one batch
 	 */
-	protected void markAllChecks(boolean enabled) {
-		for(ActiveHostCheck ac: hostChecks.values()) {
-			ac.marked = enabled;
+	protected void applyPendingDiff() {
+		ScheduleDiff<ActiveHostCheck> diff = pendingDiff;
+		pendingDiff = null;
+		if(diff!=null) {
+			scheduleBucket.apply(diff);
 		}
 	}
 	
 	/**
-	 * Removes all marked active host checks
-	 * @return The number of active host checks removed
+	 * Determines if a refresh payload carries exactly the same checks as the last payload applied
+	 * @param incoming The delay and mtime of each check in the refresh payload, keyed by item key
+	 * @return true if every key, delay and mtime matches the last payload applied
 	 */
-	protected int clearMarkedChecks() {
-		Set<ActiveHostCheck> checksToRemove = new HashSet<ActiveHostCheck>();
-		for(ActiveHostCheck ac: hostChecks.values()) {
-			if(ac.marked) {
-				checksToRemove.add(ac);
-			}
+	protected boolean isSamePayload(Map<String, long[]> incoming) {
+		if(incoming.size()!=lastPayload.size()) return false;
+		for(Map.Entry<String, long[]> entry: incoming.entrySet()) {
+			if(!Arrays.equals(entry.getValue(), lastPayload.get(entry.getKey()))) return false;
 		}
-		for(ActiveHostCheck ac: checksToRemove) {
-			hostChecks.remove(ac.itemKey);
-			scheduleBucket.removeItem(ac.delay, ac);	
+		return true;
+	}
+
+	/**
+	 * Removes the checks that are no longer in a refresh payload
+	 * @param checks The checks to remove from, keyed by item key
+	 * @param incoming The item keys in the refresh payload
+	 * @return The number of active host checks removed
+	 */
+	protected int removeChecks(Map<String, ActiveHostCheck> checks, Map<String, long[]> incoming) {
+		int removed = 0;
+		Iterator<ActiveHostCheck> iter = checks.values().iterator();
+		while(iter.hasNext()) {
+			ActiveHostCheck ac = iter.next();
+			if(incoming.containsKey(ac.itemKey)) continue;
+			iter.remove();
+			unschedule(ac);	
 			if(log.isDebugEnabled()) removedCheckNames.add(ac.itemKey);
 			sendNotification(new Notification("host.activecheck.removed", objectName, notificationSequence.incrementAndGet(), this.stateTimestamp, String.format("Removed Active Check [%s]", ac.itemKey)));
+			removed++;
 		}
-		return checksToRemove.size();
+		return removed;
 	}
 	
 	
+	/**
+	 * Schedules a check in this host's schedule bucket and, when the agent schedules checks individually, in the agent's timing wheel.
+	 * During an upsert, the bucket change is deferred to the upsert's batch.
+	 * @param check The check to schedule
+	 */
+	protected void schedule(ActiveHostCheck check) {
+		if(pendingDiff!=null) {
+			pendingDiff.add(check.delay, check);
+		} else {
+			scheduleBucket.addItem(check.delay, check);
+		}
+		HashedTimingWheel<ActiveHostCheck> wheel = server.agent.getCheckWheel();
+		if(wheel!=null) {
+			wheel.schedule(check, check.delay, TimeUnit.SECONDS, check.scheduleHash);
+		}
+	}
+	
+	/**
+	 * Removes a check from this host's schedule bucket and from the agent's timing wheel.
+	 * During an upsert, the bucket change is deferred to the upsert's batch.
+	 * @param check The check to unschedule
+	 */
+	protected void unschedule(ActiveHostCheck check) {
+		if(pendingDiff!=null) {
+			pendingDiff.remove(check.delay, check);
+		} else {
+			scheduleBucket.removeItem(check.delay, check);
+		}
+		HashedTimingWheel<ActiveHostCheck> wheel = server.agent.getCheckWheel();
+		if(wheel!=null) {
+			wheel.cancel(check);
+		}
+	}
+	
 	/**
 	 * Determines if this active host requires a marching orders refresh
 	 * @return true if this active host requires a marching orders refresh
@@ -623,8 +749,12 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		protected final String itemKey;
 		/** The key of the item being checked escaped */
 		protected final String itemKeyEsc;
+		/** The pre-encoded JSON result prefix for streaming result collectors */
+		protected final byte[] resultPrefix;
 		/** Indicates if this is a discovery command */
 		protected final boolean discovery;
+		/** The hash of the host name and item key which determines this check's offset within its delay when scheduled on a timing wheel */
+		protected final int scheduleHash;
 		
 		/** The period of the check in seconds */
 		protected long delay;
@@ -634,9 +764,6 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		protected long lastRefreshTime;
 		/** The last time this check was executed */
 		protected long lastExecuteTime;
-		
-		/** The update mark, set when upsert starts, cleared on match, deletes this check if still marked on upsert end */
-		protected boolean marked = false;
 		/** The command processor for this check */
 		protected final ICommandProcessor commandProcessor;
 		/** The parsed arguments to pass to the command processor for this check */
@@ -656,6 +783,9 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 			this.mtime = mtime;
 			lastRefreshTime = System.currentTimeMillis();
 			itemKeyEsc = StringHelper.escapeQuotes(this.itemKey);
+			resultPrefix = StreamingResultWriter.encodePrefix(hostName, itemKeyEsc);
+			int hash = (hostName + "/" + itemKey).hashCode();
+			scheduleHash = hash ^ (hash >>> 16);
 			commandName = commandManager.parseCommandName(itemKey);
 			String[] ops = commandManager.parseCommandString(itemKey);
 			if(ops==null) {
@@ -672,7 +802,7 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 			} else {
 				processorArguments = CommandManager.EMPTY_ARGS;
 			}
-			scheduleBucket.addItem(delay, this);			
+			schedule(this);			
 		}
 		
 		/** The JSON response template */
@@ -686,7 +816,15 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		 */
 		@Override
 		public String call()  {
-			Object result = commandProcessor.execute(commandName, processorArguments);
+			return format(commandProcessor.execute(commandName, processorArguments));
+		}
+		
+		/**
+		 * Formats a check result
+		 * @param result The check result
+		 * @return the formatted check result
+		 */
+		protected String format(Object result) {
 			return String.format(RESPONSE_TEMPLATE, hostName, itemKeyEsc, StringHelper.escapeQuotes(result.toString()), SystemClock.currentTimeSecs() );
 		}
 
@@ -708,12 +846,31 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		}
 		
 		/**
-		 * Executes this check and writes the result to the passed byte buffer
+		 * Executes this check and writes the result to the passed byte buffer.
+		 * If the collector is an {@link IStreamingResultCollector}, the result is encoded directly into the collector,
+		 * otherwise the formatted string result is added.
 		 * @param collector The collector stream to write the results to
 		 */
 		public void execute(IResultCollector collector) {
+			execute(collector, null);
+		}
+		
+		/**
+		 * Executes this check, through the passed batch if this check is in it, and writes the result to the passed collector.
+		 * @param collector The collector stream to write the results to
+		 * @param batch The collection window's check batch, or null if the window is not batched
+		 */
+		public void execute(IResultCollector collector, ActiveCheckBatch batch) {
 			lastExecuteTime = collector.getCollectTime();
-			collector.addResult(call());
+			Object result = batch==null ? null : batch.execute(this);
+			if(result==null) {
+				result = commandProcessor.execute(commandName, processorArguments);
+			}
+			if(collector instanceof IStreamingResultCollector) {
+				((IStreamingResultCollector)collector).addResult(resultPrefix, result.toString(), SystemClock.currentTimeSecs());
+			} else {
+				collector.addResult(format(result));
+			}
 		}
 		
 		
@@ -728,11 +885,11 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 			boolean updated = false;
 			if(this.delay!=delay) {
 				// removes this check from it's current bucket
-				scheduleBucket.removeItem(this.delay, this);
+				unschedule(this);
 				// update this check's delay
 				this.delay=delay;
 				// add this check back into the new bucket
-				scheduleBucket.addItem(this.delay, this);
+				schedule(this);
 				updated = true;
 			}
 			if(this.mtime!=mtime) {
@@ -784,6 +941,14 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		private ActiveHost getOuterType() {
 			return ActiveHost.this;
 		}
+		
+		/**
+		 * Returns the active host this check is for
+		 * @return the active host
+		 */
+		public ActiveHost getActiveHost() {
+			return ActiveHost.this;
+		}
 
 
 		/**
@@ -1025,6 +1190,8 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		public int getNoChange();
 		public long getElapsedTime();
 		public Date getDate();
+		public boolean isSkipped();
+		public long getSkippedPayloads();
 	}
 	
 	public static class LastRefreshChange implements LastRefreshChangeMBean {
@@ -1034,6 +1201,8 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 		private int noChange = 0;
 		private long elapsed = 0L;
 		private long time = 0L;
+		private boolean skipped = false;
+		private long skippedPayloads = 0L;
 		
 		/**
 		 * Updates in this order: removed, added, updated, noChange
@@ -1046,6 +1215,36 @@ public class ActiveHost implements JSONResponseHandler, ActiveHostMXBean, Iterab
 			noChange = values[3];
 			time = SystemClock.currentTimeMillis();
 			this.elapsed = elapsed;
+			skipped = false;
+		}
+		
+		/**
+		 * Records a refresh that was skipped because its payload matched the last payload applied
+		 * @param elapsed The elapsed time of the refresh in ms.
+		 * @param checks The number of checks in the payload
+		 */
+		public void skip(long elapsed, int checks) {
+			update(elapsed, 0, 0, 0, checks);
+			skipped = true;
+			skippedPayloads++;
+		}
+		
+		/**
+		 * Indicates if the last refresh was skipped because its payload was unchanged
+		 * @return true if the last refresh was skipped
+		 */
+		@Override
+		public boolean isSkipped() {
+			return skipped;
+		}
+		
+		/**
+		 * Returns the number of refreshes skipped because their payload was unchanged
+		 * @return the number of skipped payloads
+		 */
+		@Override
+		public long getSkippedPayloads() {
+			return skippedPayloads;
 		}
 		
 		public long getElapsedTime() {
@@ -44,9 +44,11 @@ import org.helios.jzab.agent.SystemClock;
 import org.helios.jzab.agent.logging.LoggerManager;
 import org.helios.jzab.agent.net.active.ActiveHost.ActiveHostCheck;
 import org.helios.jzab.agent.net.active.collection.IResultCollector;
+import org.helios.jzab.agent.net.active.collection.RollingSubmissionBuffer;
+import org.helios.jzab.agent.net.active.collection.SpillFileRing;
 import org.helios.jzab.agent.net.active.schedule.IScheduleBucket;
 import org.helios.jzab.agent.net.active.schedule.PassiveScheduleBucket;
-import org.helios.jzab.agent.net.routing.JSONResponseHandler;
+import org.helios.jzab.agent.net.routing.InlineResponseHandler;
 import org.helios.jzab.agent.net.routing.RoutingObjectName;
 import org.helios.jzab.agent.net.routing.RoutingObjectNameFactory;
 import org.helios.jzab.util.JMXHelper;
@@ -69,7 +71,7 @@ import org.w3c.dom.Node;
  * </ol>
  */
 
-public class ActiveServer implements JSONResponseHandler, ActiveServerMXBean, Iterable<ActiveHost>  {
+public class ActiveServer implements InlineResponseHandler, ActiveServerMXBean, Iterable<ActiveHost>  {
 	/** Instance logger */
 	protected final Logger log = LoggerFactory.getLogger(getClass());
 	/** The parent ActiveAgent for this server */
@@ -90,6 +92,10 @@ public class ActiveServer implements JSONResponseHandler, ActiveServerMXBean, It
 	protected final RoutingObjectName[] routingNames; 	
 	/** The socket address to connect to this ActiveServer's Zabbix server */
 	protected final SocketAddress socketAddress;
+	/** The ring of spill files used by disk based collection streams submitting to this server */
+	protected final SpillFileRing spillRing;
+	/** The buffer accumulating the results of individually scheduled checks for submission to this server */
+	protected final RollingSubmissionBuffer rollingBuffer;
 	/** The configuration node name */
 	public static final String NODE = "hosts";
 	/** The JSON item key for the response status */
@@ -138,6 +144,12 @@ public class ActiveServer implements JSONResponseHandler, ActiveServerMXBean, It
 				.append(",port=").append(port)
 		);
 		
+		spillRing = new SpillFileRing(JMXHelper.objectName(new StringBuilder(
+				"org.helios.jzab.agent.active:service=SpillFileRing")
+				.append(",server=").append(address)
+				.append(",port=").append(port)
+			), getId(), agent.getSpillRingSize(), agent.getSpillBackPressurePolicy(), SpillFileRing.DEFAULT_WAIT_TIMEOUT);
+		rollingBuffer = new RollingSubmissionBuffer(this, agent.collectionStreamType);
 		// ==================  UPDATE ME  ===================		
 		scheduleBucket = new PassiveScheduleBucket<ActiveHost,ActiveServer>(parentScheduler, this);
 		// ==================================================
@@ -313,7 +325,7 @@ public class ActiveServer implements JSONResponseHandler, ActiveServerMXBean, It
 			long failed = Long.parseLong(matcher.group(2));
 			long total = Long.parseLong(matcher.group(3));
 			long time = Math.round(new Double(Double.parseDouble(matcher.group(4))*1000));
-			log.debug(String.format("\nActive Check Submission Results:\n\tServer:%s\n\tProcessed:%s\n\tFailed:%s\n\tTotal:%s\n\tProcess Time:%s\n", getId(), processed, failed, total, time));
+			if(log.isDebugEnabled()) log.debug(String.format("\nActive Check Submission Results:\n\tServer:%s\n\tProcessed:%s\n\tFailed:%s\n\tTotal:%s\n\tProcess Time:%s\n", getId(), processed, failed, total, time));
 			// DO Something USEFUL with this data
 		}
 	}
@@ -342,6 +354,22 @@ public class ActiveServer implements JSONResponseHandler, ActiveServerMXBean, It
 		return objectName;
 	}
 	
+	/**
+	 * Returns the ring of spill files used by disk based collection streams submitting to this server
+	 * @return the spill file ring
+	 */
+	public SpillFileRing getSpillRing() {
+		return spillRing;
+	}
+	
+	/**
+	 * Returns the buffer accumulating the results of individually scheduled checks for submission to this server
+	 * @return the rolling submission buffer
+	 */
+	public RollingSubmissionBuffer getRollingBuffer() {
+		return rollingBuffer;
+	}
+	
 	/**
 	 * Adds a new response listener
 	 * @param listener the listener to add
@@ -0,0 +1,235 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.helios.jzab.agent.SystemClock;
+import org.helios.jzab.agent.net.routing.ResponseCorrelation;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.util.Timeout;
+
+/**
+ * <p>Title: ChannelLease</p>
+ * <p>Description: The exclusive lease of a channel from an {@link ActiveChannelPool} for one request/response exchange.
+ * The lease is attached to the channel while it is held and is released back to the pool when the response is received.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.ChannelLease</code></p>
+ */
+public class ChannelLease implements ResponseCorrelation {
+	/** The pool the channel was leased from */
+	protected final ActiveChannelPool pool;
+	/** The leased channel */
+	protected final Channel channel;
+	/** The time the lease was granted in ms. */
+	protected final long leaseTime;
+	/** Indicates if the lease has been released */
+	protected final AtomicBoolean released = new AtomicBoolean(false);
+	/** Indicates if the exchange has been completed or failed */
+	protected final AtomicBoolean settled = new AtomicBoolean(false);
+	/** The pending response timeout, cancelled when the lease is released */
+	protected volatile Timeout deadline = null;
+	/** The routing override for opaque requests */
+	protected volatile Map<String, String> routingOverride = null;
+	/** The listener the response is delivered to when the requester consumes it directly */
+	protected volatile ResponseListener listener = null;
+	/** Indicates if the channel can be returned to the pool when the lease is released */
+	protected volatile boolean reusable = true;
+	
+	/**
+	 * Creates a new ChannelLease and attaches it to the channel
+	 * @param pool The pool the channel was leased from
+	 * @param channel The leased channel
+	 */
+	ChannelLease(ActiveChannelPool pool, Channel channel) {
+		this.pool = pool;
+		this.channel = channel;
+		leaseTime = SystemClock.currentTimeMillis();
+		channel.setAttachment(this);
+	}
+	
+	/**
+	 * Returns the lease attached to the passed channel
+	 * @param channel The channel to get the lease for
+	 * @return the lease or null if the channel is not leased
+	 */
+	public static ChannelLease get(Channel channel) {
+		Object attachment = channel.getAttachment();
+		return attachment instanceof ChannelLease ? (ChannelLease)attachment : null;
+	}
+	
+	/**
+	 * Completes the exchange with the passed response, delivering it to the listener if one is set, and releases the lease
+	 * @param response The response read from the channel
+	 */
+	public void complete(Object response) {
+		if(!settled.compareAndSet(false, true)) return;
+		ResponseListener l = listener;
+		try {
+			if(l!=null) l.onResponse(response);
+		} finally {
+			release();
+		}
+	}
+	
+	/**
+	 * Fails the exchange, delivering the cause to the listener if one is set, and closes the channel
+	 * @param cause The failure cause
+	 */
+	public void fail(Throwable cause) {
+		ResponseListener l = settled.compareAndSet(false, true) ? listener : null;
+		try {
+			if(l!=null) l.onFailure(cause);
+		} finally {
+			invalidate();
+		}
+	}
+	
+	/**
+	 * Releases the lease back to the pool
+	 */
+	public void release() {
+		if(released.compareAndSet(false, true)) {
+			Timeout t = deadline;
+			if(t!=null) t.cancel();
+			pool.release(this);
+		}
+	}
+	
+	/**
+	 * Closes the channel and releases the lease without returning the channel to the pool
+	 */
+	public void invalidate() {
+		reusable = false;
+		release();
+	}
+	
+	/**
+	 * Sets the response timeout that fails this lease if it is not released first
+	 * @param deadline the pending response timeout
+	 */
+	void setDeadline(Timeout deadline) {
+		this.deadline = deadline;
+		if(released.get()) deadline.cancel();
+	}
+	
+	/**
+	 * Returns the leased channel
+	 * @return the leased channel
+	 */
+	public Channel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Returns the time the lease was granted in ms.
+	 * @return the lease time
+	 */
+	public long getLeaseTime() {
+		return leaseTime;
+	}
+	
+	/**
+	 * Indicates if the channel can be returned to the pool when the lease is released
+	 * @return true if the channel is reusable
+	 */
+	public boolean isReusable() {
+		return reusable;
+	}
+	
+	/**
+	 * Indicates if the lease has been released
+	 * @return true if the lease has been released
+	 */
+	public boolean isReleased() {
+		return released.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseCorrelation#getRoutingOverride()
+	 */
+	@Override
+	public Map<String, String> getRoutingOverride() {
+		return routingOverride;
+	}
+	
+	/**
+	 * Sets the routing key/value pairs for an opaque request written on this lease
+	 * @param routingOverride the routing key/value pairs
+	 */
+	public void setRoutingOverride(Map<String, String> routingOverride) {
+		this.routingOverride = routingOverride;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseCorrelation#isConsumed()
+	 */
+	@Override
+	public boolean isConsumed() {
+		return listener!=null;
+	}
+	
+	/**
+	 * Sets the listener the response is delivered to, which consumes the response so that it is not routed 
+	 * @param listener the response listener
+	 */
+	public void setListener(ResponseListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ChannelLease [" + channel + ", pool=" + pool.getName() + "]";
+	}
+	
+	/**
+	 * <p>Title: ResponseListener</p>
+	 * <p>Description: Defines a requester that consumes the response to its request directly</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.ChannelLease.ResponseListener</code></p>
+	 */
+	public static interface ResponseListener {
+		/**
+		 * Callback when the response is received
+		 * @param response The decoded response
+		 */
+		public void onResponse(Object response);
+		
+		/**
+		 * Callback when the exchange fails
+		 * @param cause The failure cause
+		 */
+		public void onFailure(Throwable cause);
+	}
+}
@@ -25,6 +25,7 @@
 package org.helios.jzab.agent.net.active.collection;
 
 import java.nio.CharBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.helios.jzab.agent.SystemClock;
 import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
@@ -40,13 +41,22 @@ import org.jboss.netty.channel.ChannelFutureListener;
  * <p><code>org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream</code></p>
  */
 public abstract class AbstractFileActiveCollectionStream extends ActiveCollectionStream {
+	/** The spill file to stream results through */
+	protected final SpillFile spillFile;
+	/** Indicates if the spill file has been handed to a channel, in which case it is released when the write completes */
+	protected volatile boolean fileSubmitted = false;
+	/** Indicates if the spill file has been released */
+	protected final AtomicBoolean spillReleased = new AtomicBoolean(false);
+	
 	/**
 	 * Creates a new AbstractFileActiveCollectionStream
 	 * @param buffer The collection buffer
 	 * @param type The collection type
+	 * @param spillFile The spill file to stream results through
 	 */
-	public AbstractFileActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type) {
+	public AbstractFileActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type, SpillFile spillFile) {
 		super(buffer, type);
+		this.spillFile = spillFile;
 	}
 
 	
@@ -56,22 +66,19 @@ public abstract class AbstractFileActiveCollectionStream extends ActiveCollectio
 	 */
 	@Override
 	public ChannelFuture writeToChannel(Channel channel) {
-		channel.getCloseFuture().addListener(getCleanUpListener());
 		ChannelFuture cf = writeFile(channel);		
+		fileSubmitted = true;
+		cf.addListener(getCleanUpListener());
 		final ActiveCollectionStream collector = this;
 		cf.addListener(new ChannelFutureListener() {
 			@Override
 			public void operationComplete(ChannelFuture future) throws Exception {
 				if(future.isSuccess()) {
-					future.getChannel().getCloseFuture().addListener(new ChannelFutureListener() {							
-						@Override
-						public void operationComplete(ChannelFuture future) throws Exception {
-							completeElapsedTime.set(SystemClock.currentTimeMillis()-startTime);
-							log.debug("Collection Stream Write Completed {}",  collector);
-						}
-					});
+					completeElapsedTime.set(SystemClock.currentTimeMillis()-startTime);
+					log.debug("Collection Stream Write Completed {}",  collector);
 				} else {
 					log.error("Submission Failed", future.getCause());
+					invalidateLease(future.getChannel());
 				}
 			}
 		});
@@ -94,6 +101,23 @@ public abstract class AbstractFileActiveCollectionStream extends ActiveCollectio
 			throw new RuntimeException("Failed to add result to collection stream [" + result + "]", e);
 		}
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public synchronized void addResult(byte[] prefix, CharSequence value, long clock) {
+		if(!open.get()) return;
+		try {
+			int bytesWritten = StreamingResultWriter.writeResult(buffer, prefix, value, clock);
+			flushToFile(bytesWritten);
+			byteCount += bytesWritten;
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + value + "]", e);
+		}
+	}
 
 		
 	
@@ -141,7 +165,38 @@ public abstract class AbstractFileActiveCollectionStream extends ActiveCollectio
 	 * Creates a cleanup listener to deallocate any resources after the collection is complete
 	 * @return a cleanup listener to deallocate any resources after the collection is complete
 	 */
-	protected abstract ChannelFutureListener getCleanUpListener();
+	protected ChannelFutureListener getCleanUpListener() {
+		return new ChannelFutureListener() {
+			/**
+			 * {@inheritDoc}
+			 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+			 */
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				releaseSpillFile();
+			}
+		};
+	}
+	
+	/**
+	 * Releases the spill file unless it has been submitted, in which case it is released when the write completes
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#cleanup()
+	 */
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		if(!fileSubmitted) releaseSpillFile();
+	}
+	
+	/**
+	 * Releases the spill file back to its ring
+	 */
+	protected void releaseSpillFile() {
+		if(spillReleased.compareAndSet(false, true)) {
+			spillFile.release();
+		}
+	}
 	
 	/**
 	 * Writes the file to the channel
@@ -28,8 +28,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -41,10 +44,13 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.helios.jzab.agent.SystemClock;
 import org.helios.jzab.agent.internal.jmx.ThreadPoolFactory;
 import org.helios.jzab.agent.net.active.ActiveAgent;
+import org.helios.jzab.agent.net.active.ActiveCheckBatch;
 import org.helios.jzab.agent.net.active.ActiveClient;
 import org.helios.jzab.agent.net.active.ActiveHost;
+import org.helios.jzab.agent.net.active.ActiveHost.ActiveHostCheck;
 import org.helios.jzab.agent.net.active.ActiveServer;
-import org.helios.jzab.agent.net.codecs.ResponseRoutingHandler;
+import org.helios.jzab.agent.net.active.ChannelLease;
+import org.helios.jzab.agent.net.codecs.ZabbixConstants;
 import org.helios.jzab.agent.net.routing.JSONResponseHandler;
 import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
 import org.jboss.netty.channel.Channel;
@@ -60,7 +66,7 @@ import org.slf4j.LoggerFactory;
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.jzab.agent.net.active.AbstractActiveCollectionStream</code></p>
  */
-public class ActiveCollectionStream implements IActiveCollectionStream {
+public class ActiveCollectionStream implements IActiveCollectionStream, IStreamingResultCollector {
 	/** The results accumulation buffer */
 	protected final ReadableWritableByteChannelBuffer buffer;
 	/** The collection stream type */
@@ -72,6 +78,10 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	
 	/** Indicates if the stream is open for collection. */
 	protected final AtomicBoolean open = new AtomicBoolean(true);
+	/** Indicates if the buffer has been handed to a channel, in which case it is released on write completion rather than on cleanup */
+	protected volatile boolean submitted = false;
+	/** Indicates if the buffer has been released back to the type's factory */
+	protected final AtomicBoolean released = new AtomicBoolean(false);
 	
 	/** The elapsed time to execute the checks */
 	protected long checksElapsed = -1L;
@@ -82,6 +92,8 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	protected long timedOutChecks = 0;
 	/** Number of completed checks */
 	protected long completedChecks = 0;
+	/** The command batch for the collected checks */
+	protected volatile ActiveCheckBatch checkBatch = null;
 	
 	/** The elapsed time to complete the whole collection */
 	protected final AtomicLong completeElapsedTime = new AtomicLong(-1L);
@@ -121,6 +133,17 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 		return execute(ByteOrder.nativeOrder(), DEFAULT_COLLECTION_BUFFER_SIZE, type, commandThreadPolicy, delay, agentCollectionTimeout);
 	}
 	
+	/**
+	 * Executes a coalesced check submission for several delay windows using the default byte order and buffer size
+	 * @param type The collection stream type
+	 * @param commandThreadPolicy The threading polcy for this collection
+	 * @param delays The delays to execute and submit checks for
+	 * @param agentCollectionTimeout The collection timeout in seconds
+	 */	
+	public static void execute(ActiveCollectionStreamType type, CommandThreadPolicy commandThreadPolicy, Set<Long> delays, long agentCollectionTimeout) {
+		execute(ByteOrder.nativeOrder(), DEFAULT_COLLECTION_BUFFER_SIZE, type, commandThreadPolicy, delays, agentCollectionTimeout);
+	}
+	
 	
 	// ===========================================================================
 	/*
@@ -142,9 +165,16 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	public static IActiveCollectionStream execute(ByteOrder order, int size, ActiveCollectionStreamType type, final ActiveHost host, final Channel channel) {
 		Map<String, String> route = new HashMap<String, String>(1);
 		route.put(JSONResponseHandler.KEY_REQUEST, JSONResponseHandler.VALUE_ACTIVE_CHECK_SUBMISSION);
-		ResponseRoutingHandler.ROUTING_OVERRIDE.set(channel, route);
+		ChannelLease lease = ChannelLease.get(channel);
+		if(lease!=null) lease.setRoutingOverride(route);
 				
-		final IActiveCollectionStream collector = type.newCollectionStream(order, size);
+		final IActiveCollectionStream collector;
+		try {
+			collector = type.newCollectionStream(order, size, host.getServer().getSpillRing());
+		} catch (Exception e) {
+			LOG.error("Failed to create collection stream for Active Host [{}]", host, e);
+			return null;
+		}
 		collector.getLogger().debug("Starting Collection Stream for Active Host [{}] for send to [{}]", host, channel);
 		collector.setScheduledChecks(host.getActiveCheckCount());
 		try {
@@ -184,22 +214,60 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	 * @return The collector stream created for the submission
 	 */
 	public static IActiveCollectionStream execute(ByteOrder order, int size, final ActiveCollectionStreamType type, final CommandThreadPolicy commandThreadPolicy, final long delay, final long agentCollectionTimeout) {
+		execute(order, size, type, commandThreadPolicy, Collections.singleton(delay), agentCollectionTimeout);
+		return null;
+	}
+	
+	/**
+	 * Executes a coalesced check submission for several delay windows, 
+	 * sending the results of all the windows to each active server in one submission.
+	 * @param order The byte order of the buffer
+	 * @param size The size of the buffer
+	 * @param type The collection stream type
+	 * @param commandThreadPolicy The threading policy for this collection
+	 * @param delays The delay windows to execute and submit checks for
+	 * @param agentCollectionTimeout The agent collection timeout in seconds
+	 */
+	public static void execute(ByteOrder order, int size, final ActiveCollectionStreamType type, final CommandThreadPolicy commandThreadPolicy, final Set<Long> delays, final long agentCollectionTimeout) {
 		final ActiveAgent agent = ActiveAgent.getInstance();
 		final ActiveClient client = ActiveClient.getInstance();
-		Set<ActiveServer> targetCollectionServers = agent.getServersForDelay(delay);				
+		Set<ActiveServer> targetCollectionServers = new LinkedHashSet<ActiveServer>();
+		for(Long delay: delays) {
+			targetCollectionServers.addAll(agent.getServersForDelay(delay));
+		}
 		final ExecutorService executorService = ThreadPoolFactory.getInstance("TaskExecutor");
 		for(final ActiveServer activeServer: targetCollectionServers) {
-			final IActiveCollectionStream collector = type.newCollectionStream(order, size);
-			collector.setScheduledChecks(activeServer.getChecksForDelay(delay).size());
+			final IActiveCollectionStream collector;
+			try {
+				collector = type.newCollectionStream(order, size, activeServer.getSpillRing());
+			} catch (Exception e) {
+				LOG.error("Failed to create collection stream for ActiveServer [{}]", activeServer, e);
+				continue;
+			}
+			int scheduledChecks = 0;
+			final ActiveCheckBatch checkBatch = new ActiveCheckBatch();
+			for(Long delay: delays) {
+				Set<ActiveHostCheck> checks = activeServer.getChecksForDelay(delay);
+				scheduledChecks += checks.size();
+				checkBatch.addAll(checks);
+			}
+			collector.setScheduledChecks(scheduledChecks);
+			collector.setCheckBatch(checkBatch);
 			executorService.execute(new Runnable(){
 				public void run() {					
+					ChannelLease lease = null;
 					try {
 						collector.writeHeader();
-						Collection<? extends Callable<Void>> tasks = commandThreadPolicy.createPlan(delay, activeServer, collector);
+						Collection<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+						for(Long delay: delays) {
+							tasks.addAll(commandThreadPolicy.createPlan(delay, activeServer, collector));
+						}
 						try {
 							long start = SystemClock.currentTimeMillis();
 							executorService.invokeAll(tasks, agentCollectionTimeout, TimeUnit.SECONDS);
 							collector.updateCheckCollectionTime(SystemClock.currentTimeMillis()-start);
+							long saved = checkBatch.complete();
+							if(saved>0) LOG.debug("Batching saved [{}] round trips for ActiveServer [{}]", saved, activeServer);
 							collector.close();							
 							collector.setTimedOutChecks(collector.getScheduledChecks()-collector.getCompletedChecks());
 						} catch (InterruptedException e) {
@@ -210,10 +278,12 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 						collector.writeJSONCloser();
 						collector.rewritePayloadLength();
 						collector.close();
-						Channel channel = client.newChannel(activeServer);
-						collector.writeToChannel(channel);		
+						lease = client.lease(activeServer);
+						collector.writeToChannel(lease.getChannel());		
 					} catch (Exception e) {
 						LOG.error("Submission Failed", e);
+						// a write that fails synchronously never reaches the write listener that would invalidate the lease
+						if(lease!=null) lease.invalidate();
 					} finally {
 						collector.cleanup();
 					}
@@ -223,7 +293,7 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 		
 //		Map<String, String> route = new HashMap<String, String>(1);
 //		route.put(JSONResponseHandler.KEY_REQUEST, JSONResponseHandler.VALUE_ACTIVE_CHECK_SUBMISSION);
-//		ResponseRoutingHandler.ROUTING_OVERRIDE.set(channel, route);
+//		ChannelLease.get(channel).setRoutingOverride(route);
 //		log.debug("Starting Collection Stream for Delay Window [{}] for send to [{}]", delay, channel);		
 //		final IActiveCollectionStream collector = type.newCollectionStream(order, size);		
 //		try {
@@ -248,20 +318,26 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 //			log.error("Submission Failed", e);
 //		}
 //		return collector;
-		
-		return null;
-		
 	}
 	
 	
 	/**
+	 * Releases the buffer back to the type's factory unless it has been submitted, in which case it is released when the write completes
 	 * {@inheritDoc}
 	 * @see org.helios.jzab.agent.net.active.collection.IActiveCollectionStream#cleanup()
 	 */
 	@Override
 	public void cleanup() {
-		// No Op
-		
+		if(!submitted) releaseBuffer();
+	}
+	
+	/**
+	 * Releases the buffer back to the type's factory
+	 */
+	protected void releaseBuffer() {
+		if(released.compareAndSet(false, true)) {
+			type.release(buffer);
+		}
 	}
 	
 	
@@ -312,7 +388,7 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	 */
 	@Override
 	public void rewritePayloadLength() {
-		buffer.setBytes(lengthPosition, encodeLittleEndianLongBytes(byteCount));
+		ZabbixConstants.setLittleEndianLong(buffer, lengthPosition, byteCount);
 	}
 	
 	/**
@@ -371,6 +447,21 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 		}
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IStreamingResultCollector#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public synchronized void addResult(byte[] prefix, CharSequence value, long clock) {
+		if(!open.get()) return;
+		try {
+			byteCount += StreamingResultWriter.writeResult(buffer, prefix, value, clock);
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + value + "]", e);
+		}
+	}
+	
 
 	/**
 	 * {@inheritDoc}
@@ -378,25 +469,41 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	 */
 	@Override
 	public ChannelFuture writeToChannel(Channel channel) {
-			ChannelFuture cf = channel.write(buffer);
+			ChannelFuture cf = channel.write(getPayload());
+			submitted = true;
 			final ActiveCollectionStream collector = this;
 			cf.addListener(new ChannelFutureListener() {
 				@Override
 				public void operationComplete(ChannelFuture future) throws Exception {
+					releaseBuffer();
 					if(future.isSuccess()) {
-						future.getChannel().getCloseFuture().addListener(new ChannelFutureListener() {							
-							@Override
-							public void operationComplete(ChannelFuture future) throws Exception {
-								completeElapsedTime.set(SystemClock.currentTimeMillis()-startTime);
-								log.debug("Collection Stream Write Completed {}",  collector);
-							}
-						});
+						completeElapsedTime.set(SystemClock.currentTimeMillis()-startTime);
+						log.debug("Collection Stream Write Completed {}",  collector);
+					} else {
+						invalidateLease(future.getChannel());
 					}
 				}
 		});
 		return cf;
 	}
 
+	/**
+	 * Invalidates the lease of a channel whose submission write failed, so that the channel is not returned to its pool
+	 * @param channel The channel the submission was written to
+	 */
+	protected static void invalidateLease(Channel channel) {
+		ChannelLease lease = ChannelLease.get(channel);
+		if(lease!=null) lease.invalidate();
+	}
+	
+	/**
+	 * Returns the accumulated submission, header included, to be written to the channel
+	 * @return the accumulated submission
+	 */
+	protected Object getPayload() {
+		return buffer;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see org.helios.jzab.agent.net.active.collection.IActiveCollectionStream#trimLastCharacter()
@@ -560,6 +667,24 @@ public class ActiveCollectionStream implements IActiveCollectionStream {
 	public long getScheduledChecks() {
 		return totalChecks;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IActiveCollectionStream#getCheckBatch()
+	 */
+	@Override
+	public ActiveCheckBatch getCheckBatch() {
+		return checkBatch;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IActiveCollectionStream#setCheckBatch(org.helios.jzab.agent.net.active.ActiveCheckBatch)
+	 */
+	@Override
+	public void setCheckBatch(ActiveCheckBatch checkBatch) {
+		this.checkBatch = checkBatch;
+	}
 
 	/**
 	 * Sets the number of checks that were scheduled
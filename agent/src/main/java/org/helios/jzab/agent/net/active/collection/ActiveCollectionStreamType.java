@@ -27,7 +27,9 @@ package org.helios.jzab.agent.net.active.collection;
 import java.nio.ByteOrder;
 
 import org.helios.jzab.agent.util.AbstractReadableWritableByteChannelBufferFactory;
+import org.helios.jzab.agent.util.ChunkPool;
 import org.helios.jzab.agent.util.IReadableWritableByteChannelBufferFactory;
+import org.helios.jzab.agent.util.PooledBufferFactory;
 import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
 
 /**
@@ -44,11 +46,15 @@ public enum ActiveCollectionStreamType implements IReadableWritableByteChannelBu
 	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
 		return ReadableWritableByteChannelBuffer.newDynamic(order, size);
 	}}),
-	/** Uses a dynamic direct (non-heap) buffer to accumulate results */
+	/** Uses a pooled dynamic direct (non-heap) buffer to accumulate results */
 	DIRECTMEMORY(false, true, new AbstractReadableWritableByteChannelBufferFactory(){
 	@Override
 	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
-		return ReadableWritableByteChannelBuffer.newDirectDynamic(order, size);
+		return DIRECT_BUFFER_POOL.newInstance(order, size);
+	}
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		DIRECT_BUFFER_POOL.release(buffer);
 	}}),
 	/** Uses a temporary file buffer to accumulate results */
 	DISK(true, false, new AbstractReadableWritableByteChannelBufferFactory(){
@@ -56,12 +62,90 @@ public enum ActiveCollectionStreamType implements IReadableWritableByteChannelBu
 	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
 		return ReadableWritableByteChannelBuffer.newDynamic(order, size);
 	}}),
-	/** Uses a temporary memory mapped file buffer to accumulate results */
+	/** Uses a temporary memory mapped file buffer, staged through a pooled direct buffer, to accumulate results */
 	DIRECTDISK(true, true, new AbstractReadableWritableByteChannelBufferFactory(){
 	@Override
 	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
-		return ReadableWritableByteChannelBuffer.newDirectDynamic(order, size);
-	}});
+		return DIRECT_BUFFER_POOL.newInstance(order, size);
+	}
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		DIRECT_BUFFER_POOL.release(buffer);
+	}}),
+	/** Uses growable memory mapped segments of a temporary file to accumulate results, submitted as a file region */
+	MMAPDISK(true, true, new AbstractReadableWritableByteChannelBufferFactory(){
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return ReadableWritableByteChannelBuffer.newHeap(order, 0);
+	}}) {
+		@Override
+		public IActiveCollectionStream newCollectionStream(ByteOrder order, int size, SpillFileRing spillRing) {
+			SpillFile spillFile = SpillFile.acquire(spillRing);
+			try {
+				return new MappedFileActiveCollectionStream(newInstance(order, 0), this, spillFile, MappedFileActiveCollectionStream.DEFAULT_SEGMENT_SIZE);
+			} catch (RuntimeException e) {
+				spillFile.release();
+				throw e;
+			}
+		}
+	},
+	/** Uses per thread dynamic heap buffer segments to accumulate results without contending on a shared monitor */
+	SHARDEDMEMORY(false, false, new AbstractReadableWritableByteChannelBufferFactory(){
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return ReadableWritableByteChannelBuffer.newDynamic(order, size);
+	}}) {
+		@Override
+		public IActiveCollectionStream newCollectionStream(ByteOrder order, int size) {
+			return new ShardedActiveCollectionStream(newInstance(order, SHARDED_HEADER_SIZE), this, ShardedActiveCollectionStream.DEFAULT_SEGMENT_SIZE);
+		}
+	},
+	/** Uses per thread pooled dynamic direct (non-heap) buffer segments to accumulate results without contending on a shared monitor */
+	SHARDEDDIRECTMEMORY(false, true, new AbstractReadableWritableByteChannelBufferFactory(){
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return DIRECT_BUFFER_POOL.newInstance(order, size);
+	}
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		DIRECT_BUFFER_POOL.release(buffer);
+	}}) {
+		@Override
+		public IActiveCollectionStream newCollectionStream(ByteOrder order, int size) {
+			return new ShardedActiveCollectionStream(newInstance(order, SHARDED_HEADER_SIZE), this, ShardedActiveCollectionStream.DEFAULT_SEGMENT_SIZE);
+		}
+	},
+	/** Uses a chain of pooled fixed size heap chunks to accumulate results, submitted as a composite buffer */
+	CHUNKEDMEMORY(false, false, new AbstractReadableWritableByteChannelBufferFactory(){
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return ReadableWritableByteChannelBuffer.newHeap(order, size);
+	}}) {
+		@Override
+		public IActiveCollectionStream newCollectionStream(ByteOrder order, int size) {
+			return new ChunkedActiveCollectionStream(newInstance(HEAP_CHUNKS.getOrder(), IActiveCollectionStream.BASELINE_SIZE), this, HEAP_CHUNKS);
+		}
+	},
+	/** Uses a chain of pooled fixed size direct (non-heap) chunks to accumulate results, submitted as a composite buffer. The small header buffer is heap allocated. */
+	CHUNKEDDIRECTMEMORY(false, true, new AbstractReadableWritableByteChannelBufferFactory(){
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return ReadableWritableByteChannelBuffer.newHeap(order, size);
+	}}) {
+		@Override
+		public IActiveCollectionStream newCollectionStream(ByteOrder order, int size) {
+			return new ChunkedActiveCollectionStream(newInstance(DIRECT_CHUNKS.getOrder(), IActiveCollectionStream.BASELINE_SIZE), this, DIRECT_CHUNKS);
+		}
+	};
+	
+	/** The size of the header buffer for sharded streams, which only holds the zabbix header and the JSON opener */
+	private static final int SHARDED_HEADER_SIZE = IActiveCollectionStream.BASELINE_SIZE + IActiveCollectionStream.AGENT_DATA_HEADER.length;
+	/** The direct buffer pool for the direct memory, direct disk and sharded direct memory streams */
+	private static final PooledBufferFactory DIRECT_BUFFER_POOL = new PooledBufferFactory("DirectCollection", true, ByteOrder.nativeOrder());
+	/** The heap chunk pool for chunked streams */
+	private static final ChunkPool HEAP_CHUNKS = new ChunkPool(ChunkPool.DEFAULT_CHUNK_SIZE, false, ByteOrder.nativeOrder(), ChunkPool.DEFAULT_MAX_POOLED);
+	/** The direct chunk pool for chunked streams */
+	private static final ChunkPool DIRECT_CHUNKS = new ChunkPool(ChunkPool.DEFAULT_CHUNK_SIZE, true, ByteOrder.nativeOrder(), ChunkPool.DEFAULT_MAX_POOLED);
 	
 
 	/**
@@ -116,6 +200,15 @@ public enum ActiveCollectionStreamType implements IReadableWritableByteChannelBu
 	public ReadableWritableByteChannelBuffer newInstance(int size) {		
 		return factory.newInstance(size);
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.IReadableWritableByteChannelBufferFactory#release(org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer)
+	 */
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		factory.release(buffer);
+	}
 
 	/**
 	 * Creates a new IActiveCollectionStream
@@ -125,14 +218,34 @@ public enum ActiveCollectionStreamType implements IReadableWritableByteChannelBu
 	 */
 	public IActiveCollectionStream newCollectionStream(ByteOrder order, int size) {
 		if(isDiskBased()) {
-			if(isDirect()) {				
-				return new DirectFileActiveCollectionStream(factory.newInstance(order, size), this);
-			} 
-			return new FileActiveCollectionStream(factory.newInstance(order, size), this);
+			return newCollectionStream(order, size, null);
 		}
 		return new ActiveCollectionStream(factory.newInstance(order, size), this);
 	}
 	
+	/**
+	 * Creates a new IActiveCollectionStream which, if this type is disk based, spills to a file acquired from the passed ring
+	 * @param order The byte order of the underlying buffer
+	 * @param size The size of the underlying buffer
+	 * @param spillRing The ring to acquire the spill file from. If null, a transient spill file is created.
+	 * @return a new IActiveCollectionStream
+	 */
+	public IActiveCollectionStream newCollectionStream(ByteOrder order, int size, SpillFileRing spillRing) {
+		if(isDiskBased()) {
+			SpillFile spillFile = SpillFile.acquire(spillRing);
+			try {
+				if(isDirect()) {				
+					return new DirectFileActiveCollectionStream(factory.newInstance(order, size), this, spillFile);
+				} 
+				return new FileActiveCollectionStream(factory.newInstance(order, size), this, spillFile);
+			} catch (RuntimeException e) {
+				spillFile.release();
+				throw e;
+			}
+		}
+		return newCollectionStream(order, size);
+	}
+	
 	/**
 	 * Creates a new IActiveCollectionStream usng the native byte order
 	 * @param size The size of the underlying buffer
@@ -0,0 +1,229 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.helios.jzab.agent.util.ChunkPool;
+import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+/**
+ * <p>Title: ChunkedActiveCollectionStream</p>
+ * <p>Description: A collection stream that accumulates the payload in a chain of fixed size chunks acquired from a {@link ChunkPool}
+ * and holds the ZBXD header and payload length in a separate small buffer. The payload never grows by copying,
+ * the length rewrite never touches payload memory and the header and chunks are written to the channel as one composite buffer.
+ * Chunks are returned to the pool once the write completes.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.ChunkedActiveCollectionStream</code></p>
+ */
+public class ChunkedActiveCollectionStream extends ActiveCollectionStream {
+	/** The pool chunks are acquired from and released to */
+	protected final ChunkPool chunkPool;
+	/** The payload chunks in write order */
+	protected final List<ChannelBuffer> chunks = new ArrayList<ChannelBuffer>();
+	/** The chunk currently being written to */
+	protected ChannelBuffer current = null;
+	/** Scratch buffer for streamed results that may not fit in the remainder of the current chunk */
+	protected ChannelBuffer scratch = null;
+	/** Indicates if the chunks have been released */
+	protected final AtomicBoolean chunksReleased = new AtomicBoolean(false);
+	
+	/**
+	 * Creates a new ChunkedActiveCollectionStream
+	 * @param buffer The header buffer which must have the same byte order as the pool's chunks
+	 * @param type The collection stream type
+	 * @param chunkPool The pool to acquire payload chunks from
+	 */
+	public ChunkedActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type, ChunkPool chunkPool) {
+		super(buffer, type);
+		this.chunkPool = chunkPool;
+	}
+	
+	/**
+	 * Returns a chunk with writable space, acquiring a new one if the current chunk is full
+	 * @return a writable chunk
+	 */
+	protected ChannelBuffer writableChunk() {
+		if(current==null || !current.writable()) {
+			current = chunkPool.acquire();
+			chunks.add(current);
+		}
+		return current;
+	}
+	
+	/**
+	 * Writes the readable bytes of the passed buffer into the chunk chain, spanning chunks as required
+	 * @param src The buffer to write
+	 * @return the number of bytes written
+	 */
+	protected int writeChunked(ChannelBuffer src) {
+		int bytes = src.readableBytes();
+		while(src.readable()) {
+			ChannelBuffer chunk = writableChunk();
+			chunk.writeBytes(src, Math.min(src.readableBytes(), chunk.writableBytes()));
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Writes the ZBXD header and placeholder length to the header buffer and the JSON opener to the payload chunks 
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#writeHeader()
+	 */
+	@Override
+	public int writeHeader() {
+		buffer.writeBytes(ZABBIX_HEADER);
+		lengthPosition = buffer.writerIndex();
+		buffer.writeLong(0L);
+		byteCount += writeChunked(ChannelBuffers.wrappedBuffer(AGENT_DATA_HEADER));
+		return buffer.writerIndex() + AGENT_DATA_HEADER.length;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#addResult(java.lang.CharSequence)
+	 */
+	@Override
+	public synchronized void addResult(CharSequence result) {
+		if(!open.get()) return;
+		try {
+			byteCount += writeChunked(ChannelBuffers.wrappedBuffer(charSet.encode(CharBuffer.wrap(result))));
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + result + "]", e);
+		}
+	}
+	
+	/**
+	 * Writes the result directly into the current chunk if it is guaranteed to fit, otherwise via the scratch buffer
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public synchronized void addResult(byte[] prefix, CharSequence value, long clock) {
+		if(!open.get()) return;
+		try {
+			ChannelBuffer chunk = writableChunk();
+			if(chunk.writableBytes() >= StreamingResultWriter.maxResultSize(prefix, value)) {
+				byteCount += StreamingResultWriter.writeResult(chunk, prefix, value, clock);
+			} else {
+				if(scratch==null) scratch = ChannelBuffers.dynamicBuffer(chunkPool.getOrder(), chunkPool.getChunkSize());
+				scratch.clear();
+				StreamingResultWriter.writeResult(scratch, prefix, value, clock);
+				byteCount += writeChunked(scratch);
+			}
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + value + "]", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#trimLastCharacter()
+	 */
+	@Override
+	public void trimLastCharacter() {
+		if(completedChecks>0 && current!=null) {
+			current.writerIndex(current.writerIndex()-1);
+			byteCount--;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#writeJSONCloser()
+	 */
+	@Override
+	public int writeJSONCloser() {
+		byte[] closer = getCollectionCloser();
+		byteCount += writeChunked(ChannelBuffers.wrappedBuffer(closer));
+		return closer.length;
+	}
+	
+	/**
+	 * Returns a composite of the header buffer and the payload chunks
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#getPayload()
+	 */
+	@Override
+	protected Object getPayload() {
+		ChannelBuffer[] parts = new ChannelBuffer[chunks.size()+1];
+		parts[0] = buffer.getChannelBuffer();
+		for(int i = 0; i < chunks.size(); i++) {
+			parts[i+1] = chunks.get(i);
+		}
+		return ChannelBuffers.wrappedBuffer(parts);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#writeToChannel(org.jboss.netty.channel.Channel)
+	 */
+	@Override
+	public ChannelFuture writeToChannel(Channel channel) {
+		ChannelFuture cf = super.writeToChannel(channel);
+		cf.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				releaseChunks();
+			}
+		});
+		return cf;
+	}
+	
+	/**
+	 * Releases the chunks unless they have been submitted, in which case they are released when the write completes.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#cleanup()
+	 */
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		if(!submitted) releaseChunks();
+	}
+	
+	/**
+	 * Returns all the payload chunks to the pool
+	 */
+	protected void releaseChunks() {
+		if(chunksReleased.compareAndSet(false, true)) {
+			for(ChannelBuffer chunk: chunks) {
+				chunkPool.release(chunk);
+			}
+			chunks.clear();
+			current = null;
+		}
+	}
+}
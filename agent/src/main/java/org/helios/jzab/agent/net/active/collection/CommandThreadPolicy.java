@@ -106,7 +106,7 @@ public enum CommandThreadPolicy implements IExecutionPlan{
 						public Void call() throws Exception {
 								for(ActiveHost host: activeServer.getHostsForDelay(delay)) {
 									for(ActiveHostCheck check: host.getChecksForDelay(delay)) {
-										check.execute(collectionStream);										
+										check.execute(collectionStream, collectionStream.getCheckBatch());										
 									}
 								}
 								return null;
@@ -139,7 +139,7 @@ public enum CommandThreadPolicy implements IExecutionPlan{
 					tasks.add(new Callable<Void>(){
 						public Void call() throws Exception {
 							for(ActiveHostCheck check: host.getChecksForDelay(delay)) {
-								check.execute(collectionStream);
+								check.execute(collectionStream, collectionStream.getCheckBatch());
 							}							
 							return null;
 						}
@@ -170,7 +170,7 @@ public enum CommandThreadPolicy implements IExecutionPlan{
 				for(final ActiveHostCheck check: host.getChecksForDelay(delay)) {
 					tasks.add(new Callable<Void>(){
 						public Void call() throws Exception {
-							check.execute(collectionStream);
+							check.execute(collectionStream, collectionStream.getCheckBatch());
 							return null;
 						}
 					});
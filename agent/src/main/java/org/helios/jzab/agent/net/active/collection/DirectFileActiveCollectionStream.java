@@ -33,12 +33,10 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 
 import org.helios.jzab.agent.net.active.ActiveClient;
-import org.helios.jzab.agent.util.FileDeletor;
 import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.DefaultFileRegion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,22 +60,17 @@ public class DirectFileActiveCollectionStream extends AbstractFileActiveCollecti
 
 	/**
 	 * Creates a new DirectFileActiveCollectionStream
-	 * @param buffer
-	 * @param type
+	 * @param buffer The collection buffer
+	 * @param type The collection type
+	 * @param spillFile The spill file to stream results through
 	 */
 	public DirectFileActiveCollectionStream(
 			ReadableWritableByteChannelBuffer buffer,
-			ActiveCollectionStreamType type) {
-		super(buffer, type);
-		try {
-			tmpFile = File.createTempFile("jzab-coll", ".tmp");
-			raf = new RandomAccessFile(tmpFile, "rw");
-			fileChannel = raf.getChannel();
-			
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to create DirectFileActiveCollectionStreamOLD instance", e);
-		}
-		
+			ActiveCollectionStreamType type, SpillFile spillFile) {
+		super(buffer, type, spillFile);
+		tmpFile = spillFile.getFile();
+		raf = spillFile.getRandomAccessFile();
+		fileChannel = spillFile.getChannel();
 	}
 
 	/**
@@ -118,26 +111,6 @@ public class DirectFileActiveCollectionStream extends AbstractFileActiveCollecti
 		}
 	}
 
-	/**
-	 * {@inheritDoc}
-	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#getCleanUpListener()
-	 */
-	@Override
-	protected ChannelFutureListener getCleanUpListener() {
-		return new ChannelFutureListener() {
-			/**
-			 * {@inheritDoc}
-			 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
-			 */
-			@Override
-			public void operationComplete(ChannelFuture future) throws Exception {				
-				FileDeletor.closeOnExit(raf);
-				FileDeletor.closeOnExit(fileChannel);				
-				FileDeletor.deleteOnExit(tmpFile);
-			}
-		};
-	}
-
 	/**
 	 * If the logger for {@link ActiveClient} is debug enabled, will use a non-direct write of the file to the channel
 	 * so that the logging handler will display the payload sent. If it is not debug enabled, will use a zero-copy direct transfer
@@ -155,13 +128,26 @@ public class DirectFileActiveCollectionStream extends AbstractFileActiveCollecti
 	}
 	
 	
+	/**
+	 * Returns the number of bytes of the file to write to the channel
+	 * @return the length of the collected payload in the file
+	 * @throws IOException thrown if the file size cannot be read
+	 */
+	protected long getFileLength() throws IOException {
+		return fileChannel.size();
+	}
+	
 	/**
 	 * Executes a direct write to the channel
 	 * @param channel The channel to write to
 	 * @return the write future
 	 */
 	protected ChannelFuture writeFileDirect(Channel channel) {
-		return channel.write(new DefaultFileRegion(fileChannel, 0, tmpFile.length(), true));
+		try {
+			return channel.write(new DefaultFileRegion(fileChannel, 0, getFileLength(), false));
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to direct write file to channel", e);
+		}
 	}
 	
 	/**
@@ -172,7 +158,7 @@ public class DirectFileActiveCollectionStream extends AbstractFileActiveCollecti
 	 */
 	protected ChannelFuture writeFileUserSpace(Channel channel)  {
 		try {
-			int fileSize = (int) fileChannel.size();
+			int fileSize = (int) getFileLength();
 			log.debug("Allocated[{}] Byte Buffer During writeFileUserSpace", fileSize);
 			ByteBuffer buff = ByteBuffer.allocateDirect(fileSize);
 			long bytes = fileChannel.read(buff, 0);
@@ -26,16 +26,15 @@ package org.helios.jzab.agent.net.active.collection;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 
-import org.helios.jzab.agent.util.FileDeletor;
 import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.stream.ChunkedFile;
 import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 
@@ -49,23 +48,25 @@ import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 public class FileActiveCollectionStream extends AbstractFileActiveCollectionStream {
 	/** The temp file to stream results through */
 	protected final File tmpFile;
+	/** The temp file's NIO file channel */
+	protected final FileChannel fileChannel;
 	/** The temp file output stream */
-	protected OutputStream os;
+	protected final OutputStream os;
+	
+	/** The size of the chunks the spill file is streamed to the channel in */
+	public static final int CHUNK_SIZE = 8192;
 
 	/**
 	 * Creates a new FileActiveCollectionStream
 	 * @param buffer The collection buffer
 	 * @param type The collection type
+	 * @param spillFile The spill file to stream results through
 	 */
-	public FileActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type) {
-		super(buffer, type);
-		try {
-			tmpFile = File.createTempFile("jzab-coll", ".tmp");
-			os = new BufferedOutputStream(new FileOutputStream(tmpFile));
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to create DirectFileActiveCollectionStreamOLD instance", e);
-		}
-		
+	public FileActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type, SpillFile spillFile) {
+		super(buffer, type, spillFile);
+		tmpFile = spillFile.getFile();
+		fileChannel = spillFile.getChannel();
+		os = new BufferedOutputStream(Channels.newOutputStream(fileChannel));
 	}
 
 	/**
@@ -104,32 +105,22 @@ public class FileActiveCollectionStream extends AbstractFileActiveCollectionStre
 
 	/**
 	 * {@inheritDoc}
-	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#getCleanUpListener()
-	 */
-	@Override
-	protected ChannelFutureListener getCleanUpListener() {
-		return new ChannelFutureListener() {
-			/**
-			 * {@inheritDoc}
-			 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
-			 */
-			@Override
-			public void operationComplete(ChannelFuture future) throws Exception {				
-				FileDeletor.closeOnExit(os);			
-				FileDeletor.deleteOnExit(tmpFile);
-			}
-		};
-	}
-
-	/**
-	 * {@inheritDoc}
+	 * <p>The file is streamed from the spill file's open random access file rather than reopening it,
+	 * and the file is left open when the stream completes so the spill file can be reused.</p>
 	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#writeFile(org.jboss.netty.channel.Channel)
 	 */
 	@Override
 	protected ChannelFuture writeFile(Channel channel) {			
 		try {
-			channel.getPipeline().replace("responseEncoder", "chunkedFileEncoder", new ChunkedWriteHandler());
-			return channel.write(new ChunkedFile(tmpFile));
+			if(channel.getPipeline().get("chunkedFileEncoder")==null) {
+				channel.getPipeline().addBefore("responseEncoder", "chunkedFileEncoder", new ChunkedWriteHandler());
+			}
+			return channel.write(new ChunkedFile(spillFile.getRandomAccessFile(), 0, fileChannel.size(), CHUNK_SIZE) {
+				@Override
+				public void close() {
+					/* The spill file owns the file */
+				}
+			});
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to user space write file to channel", e);
 		} finally {
@@ -142,15 +133,10 @@ public class FileActiveCollectionStream extends AbstractFileActiveCollectionStre
 	 */
 	@Override
 	public void rewritePayloadLength() {
-		RandomAccessFile raf = null;
 		try {
-			raf = new RandomAccessFile(tmpFile, "rw");
-			raf.seek(lengthPosition);
-			raf.write(encodeLittleEndianLongBytes(byteCount));			
+			fileChannel.write(ByteBuffer.wrap(encodeLittleEndianLongBytes(byteCount)), lengthPosition);
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to rewritePayloadLength on file [" + tmpFile + "]", e);
-		} finally {
-			if(raf!=null) try { raf.close(); } catch (Exception e) {}
 		}		
 	}
 
@@ -160,18 +146,12 @@ public class FileActiveCollectionStream extends AbstractFileActiveCollectionStre
 	 */
 	@Override
 	public void trimLastCharacter() {
-		RandomAccessFile raf = null;
 		try {
 			os.flush();
-			os.close();
-			raf = new RandomAccessFile(tmpFile, "rw");
-			raf.setLength(raf.length()-1);
+			fileChannel.truncate(fileChannel.size()-1);
 			byteCount--;
-			os = new BufferedOutputStream(new FileOutputStream(tmpFile, true));
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to trimLastCharacter on file [" + tmpFile + "]", e);
-		} finally {
-			if(raf!=null) try { raf.close(); } catch (Exception e) {}
 		}
 	}
 
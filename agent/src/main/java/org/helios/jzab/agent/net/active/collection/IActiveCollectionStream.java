@@ -26,6 +26,7 @@ package org.helios.jzab.agent.net.active.collection;
 
 import java.nio.ByteBuffer;
 
+import org.helios.jzab.agent.net.active.ActiveCheckBatch;
 import org.helios.jzab.agent.net.active.ActiveHost;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -187,6 +188,18 @@ public interface IActiveCollectionStream extends IResultCollector {
 	 */
 	public void setScheduledChecks(long scheduledChecks);
 	
+	/**
+	 * Returns the command batch for the checks collected by this stream
+	 * @return the check batch or null if the collection is not batched
+	 */
+	public ActiveCheckBatch getCheckBatch();
+	
+	/**
+	 * Sets the command batch for the checks collected by this stream
+	 * @param checkBatch the check batch
+	 */
+	public void setCheckBatch(ActiveCheckBatch checkBatch);
+	
 	/**
 	 * Cleans up any resources allocated for the collection.
 	 */
@@ -0,0 +1,44 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+
+/**
+ * <p>Title: IStreamingResultCollector</p>
+ * <p>Description: Extension of {@link IResultCollector} for collectors that can escape and encode an active check result
+ * directly into their accumulation buffer, bypassing the intermediary formatted string.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.IStreamingResultCollector</code></p>
+ */
+public interface IStreamingResultCollector extends IResultCollector {
+	/**
+	 * Escapes and encodes an active check result directly into the collection stream
+	 * @param prefix The pre-encoded JSON prefix for the check (see {@link StreamingResultWriter#encodePrefix(String, String)})
+	 * @param value The unescaped check value
+	 * @param clock The timestamp of the result in seconds
+	 */
+	public void addResult(byte[] prefix, CharSequence value, long clock);
+}
@@ -0,0 +1,266 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+
+/**
+ * <p>Title: MappedFileActiveCollectionStream</p>
+ * <p>Description: A collection stream that writes results directly into memory mapped segments of the spill file.
+ * Results are encoded straight into the mapping, so there is no staging buffer, no per result flush, and the trailing comma
+ * and payload length are patched in place rather than by reopening the file. When a segment fills, the next segment is mapped
+ * from the current write position. The written length of the file is submitted as a {@link org.jboss.netty.channel.FileRegion}.
+ * The file is not truncated while mapped, since touching a mapped page beyond the end of the file raises SIGBUS. Instead the stream
+ * drops its mappings when it is submitted or cleaned up, and the file is only truncated when the spill file is reset for reuse.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.MappedFileActiveCollectionStream</code></p>
+ */
+public class MappedFileActiveCollectionStream extends DirectFileActiveCollectionStream {
+	/** The size of each mapped segment */
+	protected final int segmentSize;
+	/** The mapping of the first segment, which holds the payload length */
+	protected MappedByteBuffer headerSegment = null;
+	/** The channel buffer wrapping the current mapped segment */
+	protected ChannelBuffer segment = null;
+	/** The file offset of the current mapped segment */
+	protected long segmentStart = 0L;
+	/** The written length of the file, set when the mappings are dropped */
+	protected long fileLength = -1L;
+	
+	/** The default mapped segment size */
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	/**
+	 * Creates a new MappedFileActiveCollectionStream
+	 * @param buffer The collection buffer which is not used by this stream
+	 * @param type The collection type
+	 * @param spillFile The spill file to map
+	 * @param segmentSize The size of each mapped segment, which is at least large enough for the header and JSON opener
+	 */
+	public MappedFileActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type, SpillFile spillFile, int segmentSize) {
+		super(buffer, type, spillFile);
+		this.segmentSize = Math.max(segmentSize, BASELINE_SIZE + AGENT_DATA_HEADER.length);
+		map(0L, segmentSize);
+		headerSegment.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Maps a new segment of the spill file
+	 * @param start The file offset of the new segment
+	 * @param minSize The minimum size of the new segment
+	 */
+	protected void map(long start, int minSize) {
+		try {
+			MappedByteBuffer mbb = fileChannel.map(MapMode.READ_WRITE, start, Math.max(segmentSize, minSize));
+			if(headerSegment==null) headerSegment = mbb;
+			segment = ChannelBuffers.wrappedBuffer(mbb);
+			segment.clear();
+			segmentStart = start;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to map segment at [" + start + "] in file [" + tmpFile + "]", e);
+		}
+	}
+	
+	/**
+	 * Returns a mapped segment with at least the passed number of writable bytes, mapping a new segment if required
+	 * @param required The number of bytes required
+	 * @return the writable segment
+	 */
+	protected ChannelBuffer writableSegment(int required) {
+		if(segment.writableBytes() < required) {
+			map(getFilePosition(), required);
+		}
+		return segment;
+	}
+	
+	/**
+	 * Returns the current write position in the spill file
+	 * @return the current write position
+	 */
+	protected long getFilePosition() {
+		return segmentStart + segment.writerIndex();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#writeHeader()
+	 */
+	@Override
+	public int writeHeader() {
+		segment.writeBytes(ZABBIX_HEADER);
+		lengthPosition = segment.writerIndex();
+		segment.writeLong(0L);
+		segment.writeBytes(AGENT_DATA_HEADER);
+		byteCount += AGENT_DATA_HEADER.length;
+		return segment.writerIndex();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#addResult(java.lang.CharSequence)
+	 */
+	@Override
+	public synchronized void addResult(CharSequence result) {
+		if(!open.get()) return;
+		try {
+			ByteBuffer encoded = charSet.encode(CharBuffer.wrap(result));
+			int bytes = encoded.remaining();
+			writableSegment(bytes).writeBytes(encoded);
+			byteCount += bytes;
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + result + "]", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public synchronized void addResult(byte[] prefix, CharSequence value, long clock) {
+		if(!open.get()) return;
+		try {
+			byteCount += StreamingResultWriter.writeResult(writableSegment(StreamingResultWriter.maxResultSize(prefix, value)), prefix, value, clock);
+			completedChecks++;
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + value + "]", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#writeJSONCloser()
+	 */
+	@Override
+	public int writeJSONCloser() {
+		byte[] closer = getCollectionCloser();
+		writableSegment(closer.length).writeBytes(closer);
+		byteCount += closer.length;
+		return closer.length;
+	}
+	
+	/**
+	 * Steps the write position back over the trailing comma, remapping from the comma if it sits in the previous segment
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#trimLastCharacter()
+	 */
+	@Override
+	public void trimLastCharacter() {
+		if(completedChecks>0) {
+			if(segment.writerIndex()>0) {
+				segment.writerIndex(segment.writerIndex()-1);
+			} else {
+				map(segmentStart-1, segmentSize);
+			}
+			byteCount--;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#rewritePayloadLength()
+	 */
+	@Override
+	public void rewritePayloadLength() {
+		headerSegment.putLong(lengthPosition, byteCount);
+	}
+	
+	/**
+	 * No Op. Results are written directly to the mapped file.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#flushToFile(int)
+	 */
+	@Override
+	protected int flushToFile(int bytesWritten) {
+		return bytesWritten;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#close()
+	 */
+	@Override
+	public boolean close() {
+		open.set(false);
+		return true;
+	}
+	
+	/**
+	 * Drops the mappings and writes the written length of the spill file to the channel
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#writeFile(org.jboss.netty.channel.Channel)
+	 */
+	@Override
+	protected ChannelFuture writeFile(Channel channel) {
+		dropMappings();
+		return super.writeFile(channel);
+	}
+	
+	/**
+	 * Drops the mappings before the spill file can be released and truncated
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.AbstractFileActiveCollectionStream#cleanup()
+	 */
+	@Override
+	public void cleanup() {
+		dropMappings();
+		super.cleanup();
+	}
+	
+	/**
+	 * Records the written length of the file and drops the references to the mapped segments so that nothing 
+	 * writes to them once the file can be truncated. The mappings themselves are released when they are collected.
+	 */
+	protected synchronized void dropMappings() {
+		open.set(false);
+		if(segment==null) return;
+		fileLength = getFilePosition();
+		segment = null;
+		headerSegment = null;
+	}
+	
+	/**
+	 * Returns the written length of the file rather than its mapped size
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.DirectFileActiveCollectionStream#getFileLength()
+	 */
+	@Override
+	protected synchronized long getFileLength() throws IOException {
+		return segment==null ? fileLength : getFilePosition();
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.helios.jzab.agent.SystemClock;
+import org.helios.jzab.agent.net.active.ActiveClient;
+import org.helios.jzab.agent.net.active.ActiveServer;
+import org.helios.jzab.agent.net.active.ChannelLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: RollingSubmissionBuffer</p>
+ * <p>Description: A result collector for checks that are scheduled individually rather than by delay window.
+ * Results accumulate in a collection stream which is swapped out and submitted to the active server on each {@link #flush()}.
+ * The stream is created on the first result after a flush, so a flush with no results submits nothing.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.RollingSubmissionBuffer</code></p>
+ */
+
+public class RollingSubmissionBuffer implements IStreamingResultCollector {
+	/** Static class logger */
+	protected static final Logger LOG = LoggerFactory.getLogger(RollingSubmissionBuffer.class);
+	/** The active server the results are submitted to */
+	protected final ActiveServer server;
+	/** The collection stream type */
+	protected volatile ActiveCollectionStreamType type;
+	/** Guards the current stream. Writers share the read lock, a flush takes the write lock to swap the stream out. */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** The stream currently accumulating results */
+	protected IActiveCollectionStream current = null;
+	
+	/** The number of submissions */
+	protected final AtomicLong submissions = new AtomicLong(0);
+	/** The number of results submitted */
+	protected final AtomicLong submittedResults = new AtomicLong(0);
+	
+	/**
+	 * Creates a new RollingSubmissionBuffer
+	 * @param server The active server the results are submitted to
+	 * @param type The collection stream type
+	 */
+	public RollingSubmissionBuffer(ActiveServer server, ActiveCollectionStreamType type) {
+		if(server==null) throw new IllegalArgumentException("The passed server was null", new Throwable());
+		if(type==null) throw new IllegalArgumentException("The passed type was null", new Throwable());
+		this.server = server;
+		this.type = type;
+	}
+	
+	/**
+	 * Returns the current stream, creating it if there is none. The caller must hold the read lock.
+	 * @return the current stream
+	 */
+	protected IActiveCollectionStream current() {
+		IActiveCollectionStream stream = current;
+		if(stream==null) {
+			synchronized(this) {
+				stream = current;
+				if(stream==null) {
+					stream = type.newCollectionStream(ByteOrder.nativeOrder(), IActiveCollectionStream.DEFAULT_COLLECTION_BUFFER_SIZE, server.getSpillRing());
+					stream.writeHeader();
+					current = stream;
+				}
+			}
+		}
+		return stream;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IResultCollector#addResult(java.lang.CharSequence)
+	 */
+	@Override
+	public void addResult(CharSequence result) {
+		lock.readLock().lock();
+		try {
+			current().addResult(result);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IStreamingResultCollector#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public void addResult(byte[] prefix, CharSequence value, long clock) {
+		lock.readLock().lock();
+		try {
+			((IStreamingResultCollector)current()).addResult(prefix, value, clock);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.IResultCollector#getCollectTime()
+	 */
+	@Override
+	public long getCollectTime() {
+		return SystemClock.currentTimeMillis();
+	}
+	
+	/**
+	 * Swaps out the current stream and submits it to the active server
+	 * @return the number of results submitted
+	 */
+	public long flush() {
+		IActiveCollectionStream collector = null;
+		lock.writeLock().lock();
+		try {
+			collector = current;
+			current = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if(collector==null) return 0;
+		ChannelLease lease = null;
+		try {
+			collector.close();
+			long results = collector.getCompletedChecks();
+			if(results==0) return 0;
+			collector.setScheduledChecks(results);
+			collector.trimLastCharacter();
+			collector.writeJSONCloser();
+			collector.rewritePayloadLength();
+			collector.close();
+			lease = ActiveClient.getInstance().lease(server);
+			collector.writeToChannel(lease.getChannel());
+			submissions.incrementAndGet();
+			submittedResults.addAndGet(results);
+			return results;
+		} catch (Exception e) {
+			LOG.error("Rolling Submission Failed for ActiveServer [{}]", server, e);
+			// a write that fails synchronously never reaches the write listener that would invalidate the lease
+			if(lease!=null) lease.invalidate();
+			return 0;
+		} finally {
+			collector.cleanup();
+		}
+	}
+	
+	/**
+	 * Sets the collection stream type used for subsequent streams
+	 * @param type the collection stream type
+	 */
+	public void setType(ActiveCollectionStreamType type) {
+		if(type==null) throw new IllegalArgumentException("The passed type was null", new Throwable());
+		this.type = type;
+	}
+	
+	/**
+	 * Returns the number of submissions
+	 * @return the number of submissions
+	 */
+	public long getSubmissions() {
+		return submissions.get();
+	}
+	
+	/**
+	 * Returns the number of results submitted
+	 * @return the number of results submitted
+	 */
+	public long getSubmittedResults() {
+		return submittedResults.get();
+	}
+}
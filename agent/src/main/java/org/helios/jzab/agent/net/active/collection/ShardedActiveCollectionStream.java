@@ -0,0 +1,301 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer;
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+/**
+ * <p>Title: ShardedActiveCollectionStream</p>
+ * <p>Description: A collection stream where each collecting thread appends results to its own buffer segment,
+ * so concurrent check executions do not serialize on the stream's monitor. The segments are sealed when the stream
+ * is closed and written to the channel as one composite buffer behind the header, with no stitching copy.
+ * The segment buffers are allocated from the stream type's factory and released back to it once the write completes.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.ShardedActiveCollectionStream</code></p>
+ */
+public class ShardedActiveCollectionStream extends ActiveCollectionStream {
+	/** The per thread result segments keyed by the owning thread */
+	protected final Map<Thread, Segment> segments = new ConcurrentHashMap<Thread, Segment>();
+	/** Every segment allocated for this stream, including any orphaned by the seal, so that all their buffers are released */
+	protected final Queue<Segment> allocatedSegments = new ConcurrentLinkedQueue<Segment>();
+	/** The sealed non-empty segment buffers in stitch order, populated when the stream is closed */
+	protected final List<ChannelBuffer> sealedSegments = new ArrayList<ChannelBuffer>();
+	/** The striped completed check counter */
+	protected final StripedLongCounter completedCounter = new StripedLongCounter();
+	/** The initial size of each thread's segment buffer */
+	protected final int segmentSize;
+	/** The JSON closer, written after the last segment */
+	protected ChannelBuffer closer = ChannelBuffers.EMPTY_BUFFER;
+	
+	/** The default initial size of each thread's segment buffer */
+	public static final int DEFAULT_SEGMENT_SIZE = 4096;
+	
+	/**
+	 * Creates a new ShardedActiveCollectionStream
+	 * @param buffer The header buffer
+	 * @param type The collection stream type which is used to allocate the segment buffers
+	 * @param segmentSize The initial size of each thread's segment buffer
+	 */
+	public ShardedActiveCollectionStream(ReadableWritableByteChannelBuffer buffer, ActiveCollectionStreamType type, int segmentSize) {
+		super(buffer, type);
+		this.segmentSize = segmentSize;
+	}
+	
+	/**
+	 * Returns the calling thread's segment, creating it if necessary
+	 * @return the calling thread's segment or null if the stream was closed while the segment was being created
+	 */
+	protected Segment getSegment() {
+		Thread current = Thread.currentThread();
+		Segment segment = segments.get(current);
+		if(segment==null) {
+			segment = new Segment(type.newInstance(buffer.order(), segmentSize));
+			allocatedSegments.add(segment);
+			segments.put(current, segment);
+			// if the stream was closed before the put, the segment may have been missed by the seal,
+			// so it is dropped and its buffer released here. The result is not counted as completed.
+			if(!open.get()) {
+				segments.remove(current);
+				segment.release(type);
+				return null;
+			}
+		}
+		return segment;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#addResult(java.lang.CharSequence)
+	 */
+	@Override
+	public void addResult(CharSequence result) {
+		if(!open.get()) return;
+		Segment segment = getSegment();
+		if(segment==null) return;
+		try {
+			synchronized(segment) {
+				if(segment.sealed) return;
+				segment.buffer.writeBytes(charSet.encode(CharBuffer.wrap(result)));
+				completedCounter.increment();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + result + "]", e);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#addResult(byte[], java.lang.CharSequence, long)
+	 */
+	@Override
+	public void addResult(byte[] prefix, CharSequence value, long clock) {
+		if(!open.get()) return;
+		Segment segment = getSegment();
+		if(segment==null) return;
+		try {
+			synchronized(segment) {
+				if(segment.sealed) return;
+				StreamingResultWriter.writeResult(segment.buffer, prefix, value, clock);
+				completedCounter.increment();
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to add result to collection stream [" + value + "]", e);
+		}
+	}
+	
+	/**
+	 * Seals all the segments on the first call. Results added after this are discarded.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#close()
+	 */
+	@Override
+	public boolean close() {
+		if(open.compareAndSet(true, false)) {
+			for(Segment segment: segments.values()) {
+				synchronized(segment) {
+					segment.sealed = true;
+					if(segment.buffer.readable()) {
+						sealedSegments.add(segment.buffer);
+						byteCount += segment.buffer.readableBytes();
+					}
+				}
+			}
+			segments.clear();
+		}
+		return true;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#trimLastCharacter()
+	 */
+	@Override
+	public void trimLastCharacter() {
+		if(!sealedSegments.isEmpty()) {
+			ChannelBuffer last = sealedSegments.get(sealedSegments.size()-1);
+			last.writerIndex(last.writerIndex()-1);
+			byteCount--;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#writeJSONCloser()
+	 */
+	@Override
+	public int writeJSONCloser() {
+		byte[] closerBytes = getCollectionCloser();
+		closer = ChannelBuffers.wrappedBuffer(buffer.order(), closerBytes);
+		byteCount += closerBytes.length;
+		return closerBytes.length;
+	}
+	
+	/**
+	 * Returns a composite of the header, the sealed segments and the closer
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#getPayload()
+	 */
+	@Override
+	protected Object getPayload() {
+		ChannelBuffer[] parts = new ChannelBuffer[sealedSegments.size()+2];
+		parts[0] = buffer.getChannelBuffer();
+		for(int i = 0; i < sealedSegments.size(); i++) {
+			parts[i+1] = sealedSegments.get(i);
+		}
+		parts[parts.length-1] = closer;
+		return ChannelBuffers.wrappedBuffer(parts);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#getCompletedChecks()
+	 */
+	@Override
+	public long getCompletedChecks() {
+		return completedCounter.sum();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#setCompletedChecks(long)
+	 */
+	@Override
+	public void setCompletedChecks(long completedChecks) {
+		completedCounter.set(completedChecks);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#writeToChannel(org.jboss.netty.channel.Channel)
+	 */
+	@Override
+	public ChannelFuture writeToChannel(Channel channel) {
+		ChannelFuture cf = super.writeToChannel(channel);
+		cf.addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				releaseSegments();
+			}
+		});
+		return cf;
+	}
+	
+	/**
+	 * Seals and releases the segments unless they have been submitted, in which case they are released when the write completes.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.ActiveCollectionStream#cleanup()
+	 */
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		if(!submitted) {
+			close();
+			releaseSegments();
+		}
+	}
+	
+	/**
+	 * Returns the buffers of all the allocated segments to the stream type's factory
+	 */
+	protected void releaseSegments() {
+		for(Segment segment: allocatedSegments) {
+			segment.release(type);
+		}
+	}
+	
+	/**
+	 * <p>Title: Segment</p>
+	 * <p>Description: A single thread's result buffer. The monitor is only contended when the stream is sealed.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.collection.ShardedActiveCollectionStream.Segment</code></p>
+	 */
+	protected static class Segment {
+		/** The segment buffer as allocated by the stream type's factory */
+		protected final ReadableWritableByteChannelBuffer allocated;
+		/** The segment buffer */
+		protected final ChannelBuffer buffer;
+		/** Indicates that the segment has been sealed and will accept no more results */
+		protected boolean sealed = false;
+		/** Indicates that the segment buffer has been released */
+		protected boolean released = false;
+		
+		/**
+		 * Creates a new Segment
+		 * @param allocated The segment buffer as allocated by the stream type's factory
+		 */
+		protected Segment(ReadableWritableByteChannelBuffer allocated) {
+			this.allocated = allocated;
+			this.buffer = allocated.getChannelBuffer();
+		}
+		
+		/**
+		 * Seals the segment and returns its buffer to the passed type's factory, if it has not been already
+		 * @param type The stream type the buffer was allocated from
+		 */
+		protected synchronized void release(ActiveCollectionStreamType type) {
+			sealed = true;
+			if(!released) {
+				released = true;
+				type.release(allocated);
+			}
+		}
+	}
+}
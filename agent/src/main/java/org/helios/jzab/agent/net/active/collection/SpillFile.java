@@ -0,0 +1,156 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.helios.jzab.agent.util.FileDeletor;
+
+/**
+ * <p>Title: SpillFile</p>
+ * <p>Description: A spill file used by disk based collection streams, with its file channel held open.
+ * A spill file is either a slot in a {@link SpillFileRing}, which is truncated and reused when released,
+ * or a transient temp file which is closed and deleted when released.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.SpillFile</code></p>
+ */
+public class SpillFile {
+	/** The ring this spill file belongs to, or null if it is transient */
+	protected final SpillFileRing ring;
+	/** The spill file */
+	protected final File file;
+	/** The random access file wrapper around the spill file */
+	protected final RandomAccessFile raf;
+	/** The spill file's NIO file channel */
+	protected final FileChannel channel;
+	
+	/**
+	 * Creates a new SpillFile
+	 * @param ring The ring this spill file belongs to, or null if it is transient
+	 * @param file The spill file
+	 * @throws IOException thrown if the file cannot be opened
+	 */
+	protected SpillFile(SpillFileRing ring, File file) throws IOException {
+		this.ring = ring;
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+	
+	/**
+	 * Acquires a spill file from the passed ring, or a transient spill file if the ring is null
+	 * @param ring The ring to acquire from, which may be null
+	 * @return a spill file
+	 */
+	public static SpillFile acquire(SpillFileRing ring) {
+		return ring==null ? newTransient() : ring.acquire();
+	}
+	
+	/**
+	 * Creates a new transient spill file
+	 * @return a new transient spill file
+	 */
+	public static SpillFile newTransient() {
+		try {
+			return new SpillFile(null, File.createTempFile("jzab-coll", ".tmp"));
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to create transient spill file", e);
+		}
+	}
+	
+	/**
+	 * Releases this spill file back to its ring, or closes and deletes it if it is transient
+	 */
+	public void release() {
+		if(ring==null) {
+			destroy();
+		} else {
+			ring.release(this);
+		}
+	}
+	
+	/**
+	 * Truncates the file and rewinds the channel for reuse
+	 * @throws IOException thrown on any IO error
+	 */
+	protected void reset() throws IOException {
+		channel.truncate(0L);
+		channel.position(0L);
+	}
+	
+	/**
+	 * Closes and deletes the file
+	 */
+	protected void destroy() {
+		FileDeletor.closeOnExit(raf);
+		FileDeletor.closeOnExit(channel);				
+		FileDeletor.deleteOnExit(file);
+	}
+
+	/**
+	 * Returns the spill file
+	 * @return the spill file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the random access file wrapper around the spill file
+	 * @return the random access file
+	 */
+	public RandomAccessFile getRandomAccessFile() {
+		return raf;
+	}
+
+	/**
+	 * Returns the spill file's NIO file channel
+	 * @return the file channel
+	 */
+	public FileChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Indicates if this spill file is transient
+	 * @return true if this spill file is deleted on release, false if it is reused by a ring
+	 */
+	public boolean isTransient() {
+		return ring==null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SpillFile [" + file + (ring==null ? ", transient" : "") + "]";
+	}
+}
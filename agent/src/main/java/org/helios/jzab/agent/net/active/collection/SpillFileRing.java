@@ -0,0 +1,352 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.helios.jzab.util.JMXHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: SpillFileRing</p>
+ * <p>Description: A bounded ring of reusable spill files for disk based collection streams.
+ * Slots are created on first use and then kept with their file channels open, being truncated and returned to the ring when a submission completes,
+ * so a steady state collection creates and deletes no files. When every slot is in flight, the ring's {@link SpillBackPressurePolicy} is applied.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.SpillFileRing</code></p>
+ */
+public class SpillFileRing implements SpillFileRingMXBean {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The name of the ring */
+	protected final String name;
+	/** The maximum number of spill files in the ring */
+	protected final int capacity;
+	/** The idle spill files */
+	protected final BlockingQueue<SpillFile> idle;
+	/** The JMX ObjectName for this ring */
+	protected final ObjectName objectName;
+	/** The policy applied when every slot is in flight */
+	protected volatile SpillBackPressurePolicy policy;
+	/** The time in ms. that the WAIT policy waits for a slot */
+	protected volatile long waitTimeout;
+	/** The number of spill files created in the ring */
+	protected final AtomicInteger created = new AtomicInteger(0);
+	/** The number of ring spill files in flight */
+	protected final AtomicInteger inFlight = new AtomicInteger(0);
+	/** The peak number of ring spill files in flight */
+	protected final AtomicInteger peakInFlight = new AtomicInteger(0);
+	/** The number of acquisitions */
+	protected final AtomicLong acquisitions = new AtomicLong(0L);
+	/** The number of acquisitions that waited for a slot */
+	protected final AtomicLong waits = new AtomicLong(0L);
+	/** The number of acquisitions that overflowed to a transient spill file */
+	protected final AtomicLong overflows = new AtomicLong(0L);
+	/** The number of rejected acquisitions */
+	protected final AtomicLong rejections = new AtomicLong(0L);
+	
+	/** The default ring capacity */
+	public static final int DEFAULT_CAPACITY = 4;
+	/** The default back pressure policy */
+	public static final SpillBackPressurePolicy DEFAULT_POLICY = SpillBackPressurePolicy.OVERFLOW;
+	/** The default WAIT policy timeout in ms. */
+	public static final long DEFAULT_WAIT_TIMEOUT = 5000;
+	
+	/**
+	 * Creates a new SpillFileRing and registers its management interface
+	 * @param objectName The JMX ObjectName for this ring
+	 * @param name The name of the ring, used in the spill file names
+	 * @param capacity The maximum number of spill files in the ring
+	 * @param policy The policy applied when every slot is in flight
+	 * @param waitTimeout The time in ms. that the WAIT policy waits for a slot
+	 */
+	public SpillFileRing(ObjectName objectName, String name, int capacity, SpillBackPressurePolicy policy, long waitTimeout) {
+		if(capacity<1) throw new IllegalArgumentException("The passed capacity [" + capacity + "] was less than 1", new Throwable());
+		if(policy==null) throw new IllegalArgumentException("The passed policy was null", new Throwable());
+		this.objectName = objectName;
+		this.name = name;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.waitTimeout = waitTimeout;
+		idle = new ArrayBlockingQueue<SpillFile>(capacity);
+		JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), objectName, this);
+	}
+	
+	/**
+	 * Acquires an empty spill file, applying the back pressure policy if every slot is in flight
+	 * @return an empty spill file
+	 */
+	public SpillFile acquire() {
+		SpillFile spill = idle.poll();
+		if(spill==null) spill = create();
+		if(spill==null) {
+			switch(policy) {
+				case OVERFLOW:
+					overflows.incrementAndGet();
+					log.debug("All [{}] spill files in ring [{}] are in flight. Overflowing to transient file", capacity, name);
+					return SpillFile.newTransient();
+				case WAIT:
+					waits.incrementAndGet();
+					try {
+						spill = idle.poll(waitTimeout, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					// no slot was released in time, so reject
+					if(spill==null) throw reject();
+					break;
+				default:
+					throw reject();
+			}
+		}
+		acquisitions.incrementAndGet();
+		int current = inFlight.incrementAndGet();
+		while(true) {
+			int peak = peakInFlight.get();
+			if(current<=peak || peakInFlight.compareAndSet(peak, current)) break;
+		}
+		return spill;
+	}
+	
+	/**
+	 * Counts a rejected acquisition and creates the exception to throw for it
+	 * @return the rejection exception
+	 */
+	protected RuntimeException reject() {
+		rejections.incrementAndGet();
+		return new RuntimeException("All [" + capacity + "] spill files in ring [" + name + "] are in flight", new Throwable());
+	}
+	
+	/**
+	 * Truncates the passed spill file and returns it to the ring
+	 * @param spill The spill file to release
+	 */
+	protected void release(SpillFile spill) {
+		inFlight.decrementAndGet();
+		try {
+			spill.reset();
+			if(idle.offer(spill)) return;
+		} catch (Exception e) {
+			log.warn("Failed to reset spill file [{}]. Discarding", spill.getFile(), e);
+		}
+		created.decrementAndGet();
+		spill.destroy();
+	}
+	
+	/**
+	 * Creates a new spill file if the ring has not reached capacity
+	 * @return a new spill file or null if the ring is at capacity
+	 */
+	protected SpillFile create() {
+		while(true) {
+			int current = created.get();
+			if(current>=capacity) return null;
+			if(created.compareAndSet(current, current+1)) break;
+		}
+		try {
+			File file = File.createTempFile("jzab-spill-" + name.replaceAll("[^\\w\\-\\.]", "_") + "-", ".tmp");
+			file.deleteOnExit();
+			log.debug("Created spill file [{}] in ring [{}]", file, name);
+			return new SpillFile(this, file);
+		} catch (Exception e) {
+			created.decrementAndGet();
+			throw new RuntimeException("Failed to create spill file for ring [" + name + "]", e);
+		}
+	}
+	
+	/**
+	 * Returns the JMX ObjectName for this ring
+	 * @return the JMX ObjectName for this ring
+	 */
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getName()
+	 */
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getCapacity()
+	 */
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getCreated()
+	 */
+	@Override
+	public int getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getInFlight()
+	 */
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getPeakInFlight()
+	 */
+	@Override
+	public int getPeakInFlight() {
+		return peakInFlight.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getIdle()
+	 */
+	@Override
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getOccupancy()
+	 */
+	@Override
+	public int getOccupancy() {
+		return inFlight.get() * 100 / capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getAcquisitions()
+	 */
+	@Override
+	public long getAcquisitions() {
+		return acquisitions.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getWaits()
+	 */
+	@Override
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getOverflows()
+	 */
+	@Override
+	public long getOverflows() {
+		return overflows.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getRejections()
+	 */
+	@Override
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getBackPressurePolicy()
+	 */
+	@Override
+	public String getBackPressurePolicy() {
+		return policy.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#setBackPressurePolicy(java.lang.String)
+	 */
+	@Override
+	public void setBackPressurePolicy(String policyName) {
+		policy = SpillBackPressurePolicy.forName(policyName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#getWaitTimeout()
+	 */
+	@Override
+	public long getWaitTimeout() {
+		return waitTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#setWaitTimeout(long)
+	 */
+	@Override
+	public void setWaitTimeout(long waitTimeout) {
+		this.waitTimeout = waitTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean#resetCounters()
+	 */
+	@Override
+	public void resetCounters() {
+		acquisitions.set(0L);
+		waits.set(0L);
+		overflows.set(0L);
+		rejections.set(0L);
+		peakInFlight.set(inFlight.get());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SpillFileRing [name=" + name + ", capacity=" + capacity + ", inFlight=" + inFlight.get() + "]";
+	}
+}
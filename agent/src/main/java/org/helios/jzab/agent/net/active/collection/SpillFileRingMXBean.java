@@ -0,0 +1,129 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+/**
+ * <p>Title: SpillFileRingMXBean</p>
+ * <p>Description: JMX interface for {@link SpillFileRing}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.SpillFileRingMXBean</code></p>
+ */
+public interface SpillFileRingMXBean {
+	/**
+	 * Returns the name of the ring
+	 * @return the name of the ring
+	 */
+	public String getName();
+	
+	/**
+	 * Returns the maximum number of spill files in the ring
+	 * @return the ring capacity
+	 */
+	public int getCapacity();
+	
+	/**
+	 * Returns the number of spill files that have been created in the ring
+	 * @return the number of created spill files
+	 */
+	public int getCreated();
+	
+	/**
+	 * Returns the number of ring spill files currently in flight
+	 * @return the number of in flight spill files
+	 */
+	public int getInFlight();
+	
+	/**
+	 * Returns the highest number of ring spill files that have been in flight at once
+	 * @return the peak number of in flight spill files
+	 */
+	public int getPeakInFlight();
+	
+	/**
+	 * Returns the number of idle spill files in the ring
+	 * @return the number of idle spill files
+	 */
+	public int getIdle();
+	
+	/**
+	 * Returns the percentage of the ring's capacity currently in flight
+	 * @return the ring occupancy percentage
+	 */
+	public int getOccupancy();
+	
+	/**
+	 * Returns the number of spill files acquired from the ring
+	 * @return the number of acquisitions
+	 */
+	public long getAcquisitions();
+	
+	/**
+	 * Returns the number of acquisitions that had to wait for a slot to be released
+	 * @return the number of waits
+	 */
+	public long getWaits();
+	
+	/**
+	 * Returns the number of acquisitions that overflowed to a transient spill file
+	 * @return the number of overflows
+	 */
+	public long getOverflows();
+	
+	/**
+	 * Returns the number of acquisitions that were rejected
+	 * @return the number of rejections
+	 */
+	public long getRejections();
+	
+	/**
+	 * Returns the name of the policy applied when every slot is in flight
+	 * @return the back pressure policy name
+	 */
+	public String getBackPressurePolicy();
+	
+	/**
+	 * Sets the policy applied when every slot is in flight
+	 * @param policyName the back pressure policy name
+	 */
+	public void setBackPressurePolicy(String policyName);
+	
+	/**
+	 * Returns the time in ms. that the WAIT policy waits for a slot
+	 * @return the wait timeout in ms.
+	 */
+	public long getWaitTimeout();
+	
+	/**
+	 * Sets the time in ms. that the WAIT policy waits for a slot
+	 * @param waitTimeout the wait timeout in ms.
+	 */
+	public void setWaitTimeout(long waitTimeout);
+	
+	/**
+	 * Resets the acquisition, wait, overflow, rejection and peak counters
+	 */
+	public void resetCounters();
+}
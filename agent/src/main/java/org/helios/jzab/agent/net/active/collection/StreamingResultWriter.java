@@ -0,0 +1,159 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.collection;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: StreamingResultWriter</p>
+ * <p>Description: Writes active check results as JSON directly into a {@link ChannelBuffer}, escaping and UTF-8 encoding
+ * the value in place rather than formatting and then re-encoding an intermediary string.
+ * The output is byte for byte the same as the formatted <code>ActiveHostCheck.RESPONSE_TEMPLATE</code>.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.collection.StreamingResultWriter</code></p>
+ */
+public class StreamingResultWriter {
+	/** The UTF-8 charset */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+	/** The template for the per check JSON prefix which is completed by the escaped value, the clock and the closer */
+	public static final String PREFIX_TEMPLATE = "{ \"host\": \"%s\", \"key\": \"%s\", \"value\": \"";
+	/** The bytes written between the value and the clock */
+	private static final byte[] CLOCK_OPENER = "\", \"clock\": ".getBytes(UTF8);
+	/** The bytes written after the clock */
+	private static final byte[] RESULT_CLOSER = " },".getBytes(UTF8);
+	/** The maximum number of characters in a decimal long */
+	private static final int MAX_LONG_CHARS = 20;
+	/** The byte written in place of an unpaired surrogate, matching the default charset encoder replacement */
+	private static final byte REPLACEMENT = '?';
+	
+	/**
+	 * Encodes the static JSON prefix for a check, which is everything in the result up to the opening quote of the value
+	 * @param hostName The host name of the check
+	 * @param escapedItemKey The quote escaped item key of the check
+	 * @return the UTF-8 encoded prefix
+	 */
+	public static byte[] encodePrefix(String hostName, String escapedItemKey) {
+		return String.format(PREFIX_TEMPLATE, hostName, escapedItemKey).getBytes(UTF8);
+	}
+	
+	/**
+	 * Writes a complete JSON check result to the passed buffer
+	 * @param buffer The buffer to write to
+	 * @param prefix The pre-encoded check prefix
+	 * @param value The unescaped check value
+	 * @param clock The timestamp of the result in seconds
+	 * @return the number of bytes written
+	 */
+	public static int writeResult(ChannelBuffer buffer, byte[] prefix, CharSequence value, long clock) {
+		final int start = buffer.writerIndex();
+		// Size once up front to avoid incremental growth of dynamic buffers
+		buffer.ensureWritableBytes(maxResultSize(prefix, value));
+		buffer.writeBytes(prefix);
+		writeEscaped(buffer, value);
+		buffer.writeBytes(CLOCK_OPENER);
+		writeDecimal(buffer, clock);
+		buffer.writeBytes(RESULT_CLOSER);
+		return buffer.writerIndex()-start;
+	}
+	
+	/**
+	 * Returns the maximum number of bytes that {@link #writeResult(ChannelBuffer, byte[], CharSequence, long)} could write 
+	 * for the passed prefix and value, being 3 bytes for each char of the value
+	 * @param prefix The pre-encoded check prefix
+	 * @param value The unescaped check value
+	 * @return the maximum encoded size in bytes
+	 */
+	public static int maxResultSize(byte[] prefix, CharSequence value) {
+		return prefix.length + (value.length()*3) + CLOCK_OPENER.length + MAX_LONG_CHARS + RESULT_CLOSER.length;
+	}
+	
+	/**
+	 * Writes the passed value to the buffer, UTF-8 encoded with double quotes escaped
+	 * @param buffer The buffer to write to
+	 * @param value The value to write
+	 * @return the number of bytes written
+	 */
+	public static int writeEscaped(ChannelBuffer buffer, CharSequence value) {
+		final int start = buffer.writerIndex();
+		final int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(c < 0x80) {
+				if(c=='"') buffer.writeByte('\\');
+				buffer.writeByte(c);
+			} else if(c < 0x800) {
+				buffer.writeByte(0xC0 | (c >> 6));
+				buffer.writeByte(0x80 | (c & 0x3F));
+			} else if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				if(Character.isHighSurrogate(c) && i+1 < length && Character.isLowSurrogate(value.charAt(i+1))) {
+					int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					buffer.writeByte(0xF0 | (codePoint >> 18));
+					buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+					buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+					buffer.writeByte(0x80 | (codePoint & 0x3F));
+				} else {
+					buffer.writeByte(REPLACEMENT);
+				}
+			} else {
+				buffer.writeByte(0xE0 | (c >> 12));
+				buffer.writeByte(0x80 | ((c >> 6) & 0x3F));
+				buffer.writeByte(0x80 | (c & 0x3F));
+			}
+		}
+		return buffer.writerIndex()-start;
+	}
+	
+	/**
+	 * Writes the ASCII decimal representation of the passed long to the buffer
+	 * @param buffer The buffer to write to
+	 * @param value The value to write
+	 * @return the number of bytes written
+	 */
+	public static int writeDecimal(ChannelBuffer buffer, long value) {
+		if(value==Long.MIN_VALUE) {
+			byte[] bytes = Long.toString(value).getBytes(UTF8);
+			buffer.writeBytes(bytes);
+			return bytes.length;
+		}
+		final int start = buffer.writerIndex();
+		if(value<0) {
+			buffer.writeByte('-');
+			value = -value;
+		}
+		int digits = 1;
+		for(long v = value; v >= 10; v /= 10) digits++;
+		buffer.ensureWritableBytes(digits);
+		final int pos = buffer.writerIndex();
+		for(int i = pos + digits - 1; i >= pos; i--) {
+			buffer.setByte(i, '0' + (int)(value % 10));
+			value /= 10;
+		}
+		buffer.writerIndex(pos + digits);
+		return buffer.writerIndex()-start;
+	}
+}
@@ -92,6 +92,21 @@ public abstract class AbstractScheduleBucket<T,E> implements IScheduleBucket<T>
 		return false;
 	}
 	
+	/**
+	 * Applies a batch of schedule changes, removals first, one item at a time
+	 * @param diff The changes to apply
+	 */
+	@Override
+	public void apply(ScheduleDiff<T> diff) {
+		if(diff==null) throw new IllegalArgumentException("The passed diff was null", new Throwable());
+		for(ScheduleDiff.Change<T> change: diff.removals) {
+			removeItem(change.delay, change.item);
+		}
+		for(ScheduleDiff.Change<T> change: diff.additions) {
+			addItem(change.delay, change.item);
+		}
+	}
+	
 	/**
 	 * Returns the managed set of items with the passed delay
 	 * @param delay The delay key
@@ -0,0 +1,232 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.schedule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.agent.internal.jmx.TaskScheduler;
+import org.helios.jzab.agent.internal.jmx.TrackedScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: CoalescingScheduler</p>
+ * <p>Description: Drives every delay window from one shared one second tick. All windows are aligned to the same origin,
+ * so windows whose periods coincide (e.g. 30s, 60s and 300s every 300s) come due on the same tick and are fired together
+ * in one call to {@link #fireWindows(Set)}. A window that comes due may also be held for up to <b>max latency</b> seconds
+ * so that windows coming due within that span are fired along with it.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.schedule.CoalescingScheduler</code></p>
+ */
+
+public abstract class CoalescingScheduler implements Runnable {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The task scheduler that drives the tick */
+	protected final TaskScheduler scheduler;
+	/** The next due tick of each registered window keyed by the window delay in seconds */
+	protected final Map<Long, Long> dueTicks = new TreeMap<Long, Long>();
+	/** The number of seconds a due window may be held to coalesce it with windows coming due shortly after */
+	protected volatile long maxLatency;
+	/** The current tick, which is the number of seconds since the tick was started */
+	protected long tick = 0;
+	/** The handle of the scheduled tick */
+	protected TrackedScheduledFuture tickHandle = null;
+	
+	/** The number of firings */
+	protected final AtomicLong firings = new AtomicLong(0);
+	/** The number of windows fired */
+	protected final AtomicLong windowsFired = new AtomicLong(0);
+	
+	/** The default max latency in seconds */
+	public static final long DEFAULT_MAX_LATENCY = 0;
+	
+	/**
+	 * Creates a new CoalescingScheduler
+	 * @param scheduler The task scheduler that drives the tick
+	 * @param maxLatency The number of seconds a due window may be held to coalesce it with windows coming due shortly after
+	 */
+	public CoalescingScheduler(TaskScheduler scheduler, long maxLatency) {
+		if(scheduler==null) throw new IllegalArgumentException("The passed scheduler was null", new Throwable());
+		if(maxLatency<0) throw new IllegalArgumentException("Invalid max latency [" + maxLatency + "]", new Throwable());
+		this.scheduler = scheduler;
+		this.maxLatency = maxLatency;
+	}
+	
+	/**
+	 * Fires the collection of the passed windows
+	 * @param delays The delays of the windows that are due
+	 */
+	protected abstract void fireWindows(Set<Long> delays);
+	
+	/**
+	 * Registers a window, starting the tick if this is the first window
+	 * @param delay The window delay in seconds
+	 */
+	public synchronized void addWindow(long delay) {
+		if(delay<1) throw new IllegalArgumentException("Invalid delay [" + delay + "]", new Throwable());
+		if(dueTicks.containsKey(delay)) return;
+		if(tickHandle==null) {
+			tick = 0;
+			tickHandle = scheduler.scheduleAtFixedRate("Coalesced Active Checks", this, 1, 1, TimeUnit.SECONDS);
+		}
+		dueTicks.put(delay, nextAligned(tick, delay));
+		log.debug("Added window [{}]", delay);
+	}
+	
+	/**
+	 * Unregisters a window, stopping the tick if this was the last window
+	 * @param delay The window delay in seconds
+	 */
+	public synchronized void removeWindow(long delay) {
+		if(dueTicks.remove(delay)==null) return;
+		if(dueTicks.isEmpty() && tickHandle!=null) {
+			tickHandle.cancel(false);
+			tickHandle = null;
+		}
+		log.debug("Removed window [{}]", delay);
+	}
+	
+	/**
+	 * Advances the tick and fires the windows that are due
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		Set<Long> due = advance();
+		if(due.isEmpty()) return;
+		firings.incrementAndGet();
+		windowsFired.addAndGet(due.size());
+		if(due.size()>1) log.debug("Firing coalesced windows {}", due);
+		try {
+			fireWindows(due);
+		} catch (Exception e) {
+			log.error("Failed to fire windows {}", due, e);
+		}
+	}
+	
+	/**
+	 * Advances the tick and returns the windows to fire on it.
+	 * Nothing fires until the window due soonest, plus any window coming due within max latency of it, are all due.
+	 * @return the delays of the windows to fire, which may be empty
+	 */
+	protected synchronized Set<Long> advance() {
+		tick++;
+		if(dueTicks.isEmpty()) return Collections.emptySet();
+		long earliest = Long.MAX_VALUE;
+		for(Long due: dueTicks.values()) {
+			if(due<earliest) earliest = due;
+		}
+		if(earliest>tick) return Collections.emptySet();
+		long horizon = earliest + maxLatency, fireTick = earliest;
+		for(Long due: dueTicks.values()) {
+			if(due<=horizon && due>fireTick) fireTick = due;
+		}
+		if(fireTick>tick) return Collections.emptySet();
+		Set<Long> fire = new TreeSet<Long>();
+		for(Map.Entry<Long, Long> entry: dueTicks.entrySet()) {
+			if(entry.getValue()<=tick) {
+				fire.add(entry.getKey());
+				entry.setValue(nextAligned(tick, entry.getKey()));
+			}
+		}
+		return fire;
+	}
+	
+	/**
+	 * Returns the first tick after the passed tick that is a multiple of the passed delay
+	 * @param tick The current tick
+	 * @param delay The window delay
+	 * @return the next aligned tick
+	 */
+	protected static long nextAligned(long tick, long delay) {
+		return (tick/delay + 1) * delay;
+	}
+	
+	/**
+	 * Returns the registered window delays
+	 * @return the registered window delays
+	 */
+	public synchronized Set<Long> getWindows() {
+		return new TreeSet<Long>(dueTicks.keySet());
+	}
+
+	/**
+	 * Returns the number of seconds a due window may be held to coalesce it with windows coming due shortly after
+	 * @return the max latency in seconds
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * Sets the number of seconds a due window may be held to coalesce it with windows coming due shortly after
+	 * @param maxLatency the max latency in seconds
+	 */
+	public void setMaxLatency(long maxLatency) {
+		if(maxLatency<0) throw new IllegalArgumentException("Invalid max latency [" + maxLatency + "]", new Throwable());
+		this.maxLatency = maxLatency;
+	}
+	
+	/**
+	 * Returns the number of firings, each of which submits once per server
+	 * @return the number of firings
+	 */
+	public long getFirings() {
+		return firings.get();
+	}
+	
+	/**
+	 * Returns the number of windows fired
+	 * @return the number of windows fired
+	 */
+	public long getWindowsFired() {
+		return windowsFired.get();
+	}
+	
+	/**
+	 * Returns the number of window firings that were saved by coalescing
+	 * @return the number of coalesced windows
+	 */
+	public long getCoalescedWindows() {
+		return windowsFired.get() - firings.get();
+	}
+	
+	/**
+	 * Resets the firing counters
+	 */
+	public void resetCounters() {
+		firings.set(0);
+		windowsFired.set(0);
+	}
+}
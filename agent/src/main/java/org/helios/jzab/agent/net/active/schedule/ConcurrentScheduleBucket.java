@@ -0,0 +1,141 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.schedule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Title: ConcurrentScheduleBucket</p>
+ * <p>Description: A passive schedule bucket backed by concurrent hash sets rather than copy on write sets, 
+ * so adding or removing an item is O(1) regardless of the size of its delay bucket. Reads are lock free.
+ * Mutations are serialized so that a bucket emptying and the cancel event it fires cannot race an addition.
+ * A batch applied through {@link #apply(ScheduleDiff)} fires start and cancel events only for the net change of each delay.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.schedule.ConcurrentScheduleBucket</code></p>
+ * @param <T> The type of items managed by this bucket
+ * @param <E> The scoped instance type which is passed to the parent
+ */
+public class ConcurrentScheduleBucket<T, E> extends PassiveScheduleBucket<T, E> {
+
+	/**
+	 * Creates a new ConcurrentScheduleBucket
+	 * @param parentBucket The parent bucket that this bucket aggregates up to
+	 * @param scopedInstance The instance that will be aggregated up to the parent
+	 */
+	public ConcurrentScheduleBucket(IScheduleBucket<E> parentBucket, E scopedInstance) {
+		super(parentBucket, scopedInstance);
+	}
+	
+	/**
+	 * Creates a new concurrent delay bucket set
+	 * @return a new set
+	 */
+	protected Set<T> newBucketSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.schedule.AbstractScheduleBucket#addItem(long, java.lang.Object)
+	 */
+	@Override
+	public void addItem(long delay, T item) {
+		synchronized(scheduleBucket) {
+			Set<T> set = scheduleBucket.get(delay);
+			if(set==null) {
+				set = newBucketSet();
+				set.add(item);
+				scheduleBucket.put(delay, set);
+				fireStartScheduledEvent(delay);
+			} else {
+				set.add(item);
+			}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.active.schedule.AbstractScheduleBucket#removeItem(long, java.lang.Object)
+	 */
+	@Override
+	public boolean removeItem(long delay, T item) {
+		synchronized(scheduleBucket) {
+			Set<T> set = scheduleBucket.get(delay);
+			if(set==null || !set.remove(item)) return false;
+			if(set.isEmpty()) {
+				scheduleBucket.remove(delay);
+				fireCancelScheduledEvent(delay);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Applies a batch of schedule changes, removals first, under one lock.
+	 * Start and cancel events are fired once per delay, and only where the delay's bucket went from empty to populated or back.
+	 * The lock only serializes mutations. Readers are not blocked and the sets are weakly consistent, so a concurrent read
+	 * may see a partly applied batch, such as an item moved between delays that is in neither bucket yet.
+	 * @param diff The changes to apply
+	 */
+	@Override
+	public void apply(ScheduleDiff<T> diff) {
+		if(diff==null) throw new IllegalArgumentException("The passed diff was null", new Throwable());
+		if(diff.isEmpty()) return;
+		synchronized(scheduleBucket) {
+			Map<Long, Boolean> populatedBefore = new HashMap<Long, Boolean>();
+			for(ScheduleDiff.Change<T> change: diff.removals) {
+				Set<T> set = scheduleBucket.get(change.delay);
+				if(set==null) continue;
+				if(!populatedBefore.containsKey(change.delay)) populatedBefore.put(change.delay, true);
+				set.remove(change.item);
+			}
+			for(ScheduleDiff.Change<T> change: diff.additions) {
+				Set<T> set = scheduleBucket.get(change.delay);
+				if(!populatedBefore.containsKey(change.delay)) populatedBefore.put(change.delay, set!=null);
+				if(set==null) {
+					set = newBucketSet();
+					scheduleBucket.put(change.delay, set);
+				}
+				set.add(change.item);
+			}
+			for(Map.Entry<Long, Boolean> entry: populatedBefore.entrySet()) {
+				long delay = entry.getKey();
+				Set<T> set = scheduleBucket.get(delay);
+				boolean populatedAfter = set!=null && !set.isEmpty();
+				if(!populatedAfter && set!=null) scheduleBucket.remove(delay);
+				if(entry.getValue() && !populatedAfter) {
+					fireCancelScheduledEvent(delay);
+				} else if(!entry.getValue() && populatedAfter) {
+					fireStartScheduledEvent(delay);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.agent.internal.jmx.TaskScheduler;
+import org.helios.jzab.agent.internal.jmx.TrackedScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: HashedTimingWheel</p>
+ * <p>Description: A hashed timing wheel that schedules each item individually on its own period.
+ * Each item fires at a deterministic offset within its period, derived from a hash of the item's key,
+ * so items sharing a period are spread across it rather than all firing at the same instant.
+ * Inserts and cancels are O(1): each slot of the wheel is a doubly linked list and items are located through a map.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.schedule.HashedTimingWheel</code></p>
+ * @param <T> The type of items scheduled in the wheel
+ */
+
+public abstract class HashedTimingWheel<T> implements Runnable {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The task scheduler that drives the wheel */
+	protected final TaskScheduler scheduler;
+	/** The duration of one tick in ms. */
+	protected final long tickDuration;
+	/** The wheel slots */
+	protected final WheelEntry<T>[] wheel;
+	/** The slot index mask */
+	protected final int mask;
+	/** The wheel entries keyed by their item */
+	protected final Map<T, WheelEntry<T>> entries = new ConcurrentHashMap<T, WheelEntry<T>>();
+	/** The last tick processed */
+	protected long tick = 0;
+	/** The nano time at which the wheel started */
+	protected long startTime = 0;
+	/** The handle of the scheduled wheel driver */
+	protected TrackedScheduledFuture tickHandle = null;
+	
+	/** The number of item firings */
+	protected final AtomicLong firings = new AtomicLong(0);
+	/** The number of ticks that had items to fire */
+	protected final AtomicLong busyTicks = new AtomicLong(0);
+	/** The highest number of items fired on one tick */
+	protected final AtomicLong peakFiring = new AtomicLong(0);
+	
+	/** The default tick duration in ms. */
+	public static final long DEFAULT_TICK_DURATION = 100;
+	/** The default number of wheel slots */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+	
+	/**
+	 * Creates a new HashedTimingWheel
+	 * @param scheduler The task scheduler that drives the wheel
+	 * @param tickDuration The duration of one tick in ms.
+	 * @param wheelSize The number of wheel slots, rounded up to a power of 2
+	 */
+	@SuppressWarnings("unchecked")
+	public HashedTimingWheel(TaskScheduler scheduler, long tickDuration, int wheelSize) {
+		if(scheduler==null) throw new IllegalArgumentException("The passed scheduler was null", new Throwable());
+		if(tickDuration<1) throw new IllegalArgumentException("Invalid tick duration [" + tickDuration + "]", new Throwable());
+		if(wheelSize<1 || wheelSize>(1<<30)) throw new IllegalArgumentException("Invalid wheel size [" + wheelSize + "]", new Throwable());
+		this.scheduler = scheduler;
+		this.tickDuration = tickDuration;
+		int size = 1;
+		while(size<wheelSize) size <<= 1;
+		wheel = (WheelEntry<T>[])new WheelEntry<?>[size];
+		mask = size-1;
+	}
+	
+	/**
+	 * Fires the items that came due on one tick
+	 * @param items The due items
+	 */
+	protected abstract void fire(List<T> items);
+	
+	/**
+	 * Starts the wheel
+	 */
+	public synchronized void start() {
+		if(tickHandle!=null) return;
+		startTime = System.nanoTime() - (tick * TimeUnit.NANOSECONDS.convert(tickDuration, TimeUnit.MILLISECONDS));
+		tickHandle = scheduler.scheduleAtFixedRate("Active Check Timing Wheel", this, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+		log.info("Started timing wheel with [{}] slots of [{}] ms.", wheel.length, tickDuration);
+	}
+	
+	/**
+	 * Stops the wheel. Scheduled items are retained.
+	 */
+	public synchronized void stop() {
+		if(tickHandle==null) return;
+		tickHandle.cancel(false);
+		tickHandle = null;
+	}
+	
+	/**
+	 * Schedules an item, replacing any existing schedule for the same item
+	 * @param item The item to schedule
+	 * @param period The period of the item
+	 * @param unit The unit of the period
+	 * @param hash The hash of the item's key, which determines the item's offset within its period
+	 */
+	public synchronized void schedule(T item, long period, TimeUnit unit, int hash) {
+		if(item==null) throw new IllegalArgumentException("The passed item was null", new Throwable());
+		long periodTicks = Math.max(1, TimeUnit.MILLISECONDS.convert(period, unit) / tickDuration);
+		WheelEntry<T> entry = entries.remove(item);
+		if(entry!=null) unlink(entry);
+		entry = new WheelEntry<T>(item, periodTicks, ((hash & Integer.MAX_VALUE) % periodTicks));
+		entry.deadline = nextDeadline(entry, tick);
+		link(entry);
+		entries.put(item, entry);
+	}
+	
+	/**
+	 * Cancels an item's schedule
+	 * @param item The item to cancel
+	 * @return true if the item was scheduled, false otherwise
+	 */
+	public synchronized boolean cancel(T item) {
+		WheelEntry<T> entry = entries.remove(item);
+		if(entry==null) return false;
+		unlink(entry);
+		return true;
+	}
+	
+	/**
+	 * Advances the wheel to the current time and fires the items that came due on each tick passed
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		long target = (System.nanoTime() - startTime) / TimeUnit.NANOSECONDS.convert(tickDuration, TimeUnit.MILLISECONDS);
+		while(true) {
+			List<T> due = advance(target);
+			if(due==null) break;
+			if(due.isEmpty()) continue;
+			int count = due.size();
+			firings.addAndGet(count);
+			busyTicks.incrementAndGet();
+			long peak = peakFiring.get();
+			while(count>peak && !peakFiring.compareAndSet(peak, count)) peak = peakFiring.get();
+			try {
+				fire(due);
+			} catch (Exception e) {
+				log.error("Failed to fire [{}] items", due.size(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Advances the wheel by one tick, unless it has reached the passed target tick, 
+	 * and returns the items that came due, re-scheduling each for its next period
+	 * @param target The tick to advance to
+	 * @return the due items, or null if the wheel has reached the target tick
+	 */
+	protected synchronized List<T> advance(long target) {
+		if(tick>=target) return null;
+		tick++;
+		List<WheelEntry<T>> expired = null;
+		WheelEntry<T> entry = wheel[(int)(tick & mask)];
+		while(entry!=null) {
+			WheelEntry<T> next = entry.next;
+			if(entry.deadline<=tick) {
+				unlink(entry);
+				if(expired==null) expired = new ArrayList<WheelEntry<T>>();
+				expired.add(entry);
+			}
+			entry = next;
+		}
+		if(expired==null) return new ArrayList<T>(0);
+		List<T> due = new ArrayList<T>(expired.size());
+		for(WheelEntry<T> e: expired) {
+			due.add(e.item);
+			e.deadline = nextDeadline(e, tick);
+			link(e);
+		}
+		return due;
+	}
+	
+	/**
+	 * Returns the first tick after the passed tick on which the passed entry is due
+	 * @param entry The wheel entry
+	 * @param after The tick after which the entry is due
+	 * @return the deadline tick
+	 */
+	protected static long nextDeadline(WheelEntry<?> entry, long after) {
+		long deadline = (after / entry.period) * entry.period + entry.offset;
+		while(deadline<=after) deadline += entry.period;
+		return deadline;
+	}
+	
+	/**
+	 * Links an entry into the head of the slot for its deadline
+	 * @param entry The entry to link
+	 */
+	protected void link(WheelEntry<T> entry) {
+		int slot = (int)(entry.deadline & mask);
+		WheelEntry<T> head = wheel[slot];
+		entry.prev = null;
+		entry.next = head;
+		if(head!=null) head.prev = entry;
+		wheel[slot] = entry;
+	}
+	
+	/**
+	 * Unlinks an entry from its slot
+	 * @param entry The entry to unlink
+	 */
+	protected void unlink(WheelEntry<T> entry) {
+		if(entry.prev!=null) {
+			entry.prev.next = entry.next;
+		} else {
+			int slot = (int)(entry.deadline & mask);
+			if(wheel[slot]==entry) wheel[slot] = entry.next;
+		}
+		if(entry.next!=null) entry.next.prev = entry.prev;
+		entry.prev = null;
+		entry.next = null;
+	}
+	
+	/**
+	 * Returns the number of scheduled items
+	 * @return the number of scheduled items
+	 */
+	public int getItemCount() {
+		return entries.size();
+	}
+	
+	/**
+	 * Returns the number of wheel slots
+	 * @return the number of wheel slots
+	 */
+	public int getWheelSize() {
+		return wheel.length;
+	}
+	
+	/**
+	 * Returns the duration of one tick in ms.
+	 * @return the tick duration
+	 */
+	public long getTickDuration() {
+		return tickDuration;
+	}
+	
+	/**
+	 * Returns the number of item firings
+	 * @return the number of item firings
+	 */
+	public long getFirings() {
+		return firings.get();
+	}
+	
+	/**
+	 * Returns the number of ticks that had items to fire
+	 * @return the number of busy ticks
+	 */
+	public long getBusyTicks() {
+		return busyTicks.get();
+	}
+	
+	/**
+	 * Returns the highest number of items fired on one tick
+	 * @return the peak firing
+	 */
+	public long getPeakFiring() {
+		return peakFiring.get();
+	}
+	
+	/**
+	 * Resets the firing counters
+	 */
+	public void resetCounters() {
+		firings.set(0);
+		busyTicks.set(0);
+		peakFiring.set(0);
+	}
+	
+	/**
+	 * <p>Title: WheelEntry</p>
+	 * <p>Description: A scheduled item linked into a wheel slot</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.schedule.HashedTimingWheel.WheelEntry</code></p>
+	 * @param <T> The type of the scheduled item
+	 */
+	protected static class WheelEntry<T> {
+		/** The scheduled item */
+		protected final T item;
+		/** The period of the item in ticks */
+		protected final long period;
+		/** The offset of the item within its period in ticks */
+		protected final long offset;
+		/** The tick on which the item is next due */
+		protected long deadline;
+		/** The previous entry in the slot */
+		protected WheelEntry<T> prev;
+		/** The next entry in the slot */
+		protected WheelEntry<T> next;
+		
+		/**
+		 * Creates a new WheelEntry
+		 * @param item The scheduled item
+		 * @param period The period of the item in ticks
+		 * @param offset The offset of the item within its period in ticks
+		 */
+		protected WheelEntry(T item, long period, long offset) {
+			this.item = item;
+			this.period = period;
+			this.offset = offset;
+		}
+	}
+}
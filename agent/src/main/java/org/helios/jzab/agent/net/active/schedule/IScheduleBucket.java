@@ -51,6 +51,12 @@ public interface IScheduleBucket<T> {
 	 */
 	public boolean removeItem(long delay, T item);
 	
+	/**
+	 * Applies a batch of schedule changes, removals first
+	 * @param diff The changes to apply
+	 */
+	public void apply(ScheduleDiff<T> diff);
+	
 	/**
 	 * Initates a scheduled task to execute the items in the passed schedule delay
 	 * @param delay The schedule delay
@@ -0,0 +1,162 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.schedule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Title: ScheduleDiff</p>
+ * <p>Description: Accumulates the schedule changes of a refresh so they can be applied to an {@link IScheduleBucket} in one batch.
+ * Removals are applied before additions, so a delay change is recorded as a removal from the old delay and an addition to the new one.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.schedule.ScheduleDiff</code></p>
+ * @param <T> The type of items scheduled
+ */
+public class ScheduleDiff<T> {
+	/** The items to remove */
+	protected final List<Change<T>> removals = new ArrayList<Change<T>>();
+	/** The items to add */
+	protected final List<Change<T>> additions = new ArrayList<Change<T>>();
+	
+	/**
+	 * Records an item to be added to a delay
+	 * @param delay The schedule delay
+	 * @param item The item to add
+	 * @return this diff
+	 */
+	public ScheduleDiff<T> add(long delay, T item) {
+		additions.add(new Change<T>(delay, item));
+		return this;
+	}
+	
+	/**
+	 * Records an item to be removed from a delay
+	 * @param delay The schedule delay
+	 * @param item The item to remove
+	 * @return this diff
+	 */
+	public ScheduleDiff<T> remove(long delay, T item) {
+		removals.add(new Change<T>(delay, item));
+		return this;
+	}
+	
+	/**
+	 * Records an item to be moved from one delay to another
+	 * @param fromDelay The current schedule delay
+	 * @param toDelay The new schedule delay
+	 * @param item The item to move
+	 * @return this diff
+	 */
+	public ScheduleDiff<T> move(long fromDelay, long toDelay, T item) {
+		removals.add(new Change<T>(fromDelay, item));
+		additions.add(new Change<T>(toDelay, item));
+		return this;
+	}
+	
+	/**
+	 * Returns the recorded removals
+	 * @return the recorded removals
+	 */
+	public List<Change<T>> getRemovals() {
+		return Collections.unmodifiableList(removals);
+	}
+	
+	/**
+	 * Returns the recorded additions
+	 * @return the recorded additions
+	 */
+	public List<Change<T>> getAdditions() {
+		return Collections.unmodifiableList(additions);
+	}
+	
+	/**
+	 * Indicates if no changes have been recorded
+	 * @return true if no changes have been recorded
+	 */
+	public boolean isEmpty() {
+		return removals.isEmpty() && additions.isEmpty();
+	}
+	
+	/**
+	 * Returns the number of recorded changes
+	 * @return the number of recorded changes
+	 */
+	public int size() {
+		return removals.size() + additions.size();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("ScheduleDiff [removals=%s, additions=%s]", removals.size(), additions.size());
+	}
+	
+	/**
+	 * <p>Title: Change</p>
+	 * <p>Description: A single item change in a schedule diff</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.active.schedule.ScheduleDiff.Change</code></p>
+	 * @param <T> The type of the item
+	 */
+	public static class Change<T> {
+		/** The schedule delay */
+		protected final long delay;
+		/** The item */
+		protected final T item;
+		
+		/**
+		 * Creates a new Change
+		 * @param delay The schedule delay
+		 * @param item The item
+		 */
+		protected Change(long delay, T item) {
+			this.delay = delay;
+			this.item = item;
+		}
+
+		/**
+		 * Returns the schedule delay
+		 * @return the schedule delay
+		 */
+		public long getDelay() {
+			return delay;
+		}
+
+		/**
+		 * Returns the item
+		 * @return the item
+		 */
+		public T getItem() {
+			return item;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.active.schedule;
+
+/**
+ * <p>Title: ScheduleMode</p>
+ * <p>Description: Enumerates the schemes by which the active agent schedules active checks</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.active.schedule.ScheduleMode</code></p>
+ */
+public enum ScheduleMode {
+	/** Checks are bucketed by delay and every check in a delay window fires at once. The default. */
+	BUCKET,
+	/** Each check is scheduled individually on a {@link HashedTimingWheel}, spread across its delay, and results are submitted from a rolling buffer */
+	WHEEL;
+	
+	/**
+	 * Decodes the passed string into a ScheduleMode, applying trim and uppercase to the passed value
+	 * @param name The name to decode
+	 * @return the decoded ScheduleMode
+	 */
+	public static ScheduleMode forName(CharSequence name) {
+		if(name==null || name.toString().trim().isEmpty()) throw new IllegalArgumentException("The passed name was null or empty", new Throwable());
+		try {
+			return ScheduleMode.valueOf(name.toString().trim().toUpperCase());
+		} catch (Exception e) {
+			throw new IllegalArgumentException("The passed name [" + name + "] was not a valid ScheduleMode", new Throwable());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.codecs;
+
+import java.io.Writer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: ChannelBufferWriter</p>
+ * <p>Description: A {@link Writer} that UTF-8 encodes characters straight into a {@link ChannelBuffer}, 
+ * so that text and JSON can be serialized without building an intermediate string or byte array.
+ * Not thread safe.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.codecs.ChannelBufferWriter</code></p>
+ */
+public class ChannelBufferWriter extends Writer {
+	/** The buffer written to */
+	protected final ChannelBuffer buffer;
+	/** A high surrogate waiting for its low surrogate, or 0 if none is pending */
+	protected char highSurrogate = 0;
+	
+	/**
+	 * Creates a new ChannelBufferWriter
+	 * @param buffer The buffer to write to
+	 */
+	public ChannelBufferWriter(ChannelBuffer buffer) {
+		if(buffer==null) throw new IllegalArgumentException("The passed buffer was null", new Throwable());
+		this.buffer = buffer;
+	}
+	
+	/**
+	 * Returns the buffer written to
+	 * @return the buffer
+	 */
+	public ChannelBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Writer#write(int)
+	 */
+	@Override
+	public void write(int c) {
+		encode((char)c);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Writer#write(char[], int, int)
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		for(int i = off, end = off + len; i < end; i++) {
+			encode(cbuf[i]);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Writer#write(java.lang.String, int, int)
+	 */
+	@Override
+	public void write(String str, int off, int len) {
+		for(int i = off, end = off + len; i < end; i++) {
+			encode(str.charAt(i));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Writer#append(java.lang.CharSequence)
+	 */
+	@Override
+	public ChannelBufferWriter append(CharSequence csq) {
+		if(csq==null) csq = "null";
+		for(int i = 0, end = csq.length(); i < end; i++) {
+			encode(csq.charAt(i));
+		}
+		return this;
+	}
+	
+	/**
+	 * UTF-8 encodes the passed character into the buffer
+	 * @param c The character to encode
+	 */
+	protected void encode(char c) {
+		if(highSurrogate!=0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if(Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(high, c);
+				buffer.writeByte(0xF0 | (cp >> 18));
+				buffer.writeByte(0x80 | ((cp >> 12) & 0x3F));
+				buffer.writeByte(0x80 | ((cp >> 6) & 0x3F));
+				buffer.writeByte(0x80 | (cp & 0x3F));
+				return;
+			}
+			buffer.writeByte('?');
+		}
+		if(c<0x80) {
+			buffer.writeByte(c);
+		} else if(c<0x800) {
+			buffer.writeByte(0xC0 | (c >> 6));
+			buffer.writeByte(0x80 | (c & 0x3F));
+		} else if(Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if(Character.isLowSurrogate(c)) {
+			buffer.writeByte('?');
+		} else {
+			buffer.writeByte(0xE0 | (c >> 12));
+			buffer.writeByte(0x80 | ((c >> 6) & 0x3F));
+			buffer.writeByte(0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Writer#flush()
+	 */
+	@Override
+	public void flush() {
+		/* No Op */
+	}
+
+	/**
+	 * Writes a replacement for any unpaired trailing high surrogate
+	 * {@inheritDoc}
+	 * @see java.io.Writer#close()
+	 */
+	@Override
+	public void close() {
+		if(highSurrogate!=0) {
+			highSurrogate = 0;
+			buffer.writeByte('?');
+		}
+	}
+}
@@ -0,0 +1,509 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.codecs;
+
+import java.math.BigInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>Title: JSONPullParser</p>
+ * <p>Description: A minimal pull parser that tokenizes UTF-8 JSON directly from a {@link ChannelBuffer} region without copying it to a byte array or string first.
+ * Commas and colons are consumed by the tokenizer, which tracks what the grammar allows next and rejects missing or misplaced separators.
+ * Not thread safe. One instance is intended to parse one payload.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.codecs.JSONPullParser</code></p>
+ */
+public class JSONPullParser {
+	/** The buffer being parsed */
+	protected final ChannelBuffer buffer;
+	/** The current read position */
+	protected int pos;
+	/** The exclusive end position */
+	protected final int limit;
+	/** The text of the last string, field name or number token */
+	protected final StringBuilder text = new StringBuilder(64);
+	/** The container nesting stack, true for an object, false for an array */
+	protected boolean[] stack = new boolean[16];
+	/** The current nesting depth */
+	protected int depth = 0;
+	/** What the grammar allows next */
+	protected Expect expect = Expect.VALUE;
+	/** Indicates if the last number token had a fraction or exponent */
+	protected boolean decimal = false;
+	/** The last token read */
+	protected Token token = null;
+	
+	/**
+	 * <p>Title: Token</p>
+	 * <p>Description: Enumerates the JSON token types</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.codecs.JSONPullParser.Token</code></p>
+	 */
+	public static enum Token {
+		/** An object opener */
+		START_OBJECT,
+		/** An object closer */
+		END_OBJECT,
+		/** An array opener */
+		START_ARRAY,
+		/** An array closer */
+		END_ARRAY,
+		/** An object field name */
+		FIELD_NAME,
+		/** A string value */
+		STRING,
+		/** A number value */
+		NUMBER,
+		/** A true literal */
+		TRUE,
+		/** A false literal */
+		FALSE,
+		/** A null literal */
+		NULL,
+		/** The end of the input */
+		END;
+	}
+	
+	/**
+	 * <p>Title: Expect</p>
+	 * <p>Description: Enumerates the parser states, each naming what the grammar allows next</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.codecs.JSONPullParser.Expect</code></p>
+	 */
+	protected static enum Expect {
+		/** A value, at the top level, after a colon or after a comma in an array */
+		VALUE,
+		/** A value or an array closer, after an array opener */
+		VALUE_OR_CLOSE,
+		/** A field name, after a comma in an object */
+		NAME,
+		/** A field name or an object closer, after an object opener */
+		NAME_OR_CLOSE,
+		/** A colon, after a field name */
+		COLON,
+		/** A comma or the closer of the current container, after a value */
+		COMMA_OR_CLOSE,
+		/** Nothing but the end of the input, after the top level value */
+		END;
+	}
+	
+	/**
+	 * Creates a new JSONPullParser
+	 * @param buffer The buffer to parse
+	 * @param index The index of the first byte of the JSON text in the buffer
+	 * @param length The number of bytes of JSON text
+	 */
+	public JSONPullParser(ChannelBuffer buffer, int index, int length) {
+		if(buffer==null) throw new IllegalArgumentException("The passed buffer was null", new Throwable());
+		this.buffer = buffer;
+		this.pos = index;
+		this.limit = index + length;
+	}
+	
+	/**
+	 * Reads the next token
+	 * @return the next token
+	 * @throws JSONException thrown on malformed input
+	 */
+	public Token next() throws JSONException {
+		token = readToken();
+		return token;
+	}
+	
+	/**
+	 * Tokenizes the next token
+	 * @return the next token
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected Token readToken() throws JSONException {
+		while(true) {
+			skipWhitespace();
+			if(pos>=limit) {
+				if(depth>0) throw error("Unexpected end of input");
+				return Token.END;
+			}
+			byte b = buffer.getByte(pos);
+			switch(b) {
+				case ',':
+					if(expect!=Expect.COMMA_OR_CLOSE) throw error("Unexpected comma");
+					pos++;
+					expect = stack[depth-1] ? Expect.NAME : Expect.VALUE;
+					continue;
+				case ':':
+					if(expect!=Expect.COLON) throw error("Unexpected colon");
+					pos++;
+					expect = Expect.VALUE;
+					continue;
+				case '}':
+					if(expect!=Expect.COMMA_OR_CLOSE && expect!=Expect.NAME_OR_CLOSE) throw error("Unexpected object end");
+					pos++;
+					pop(true);
+					return Token.END_OBJECT;
+				case ']':
+					if(expect!=Expect.COMMA_OR_CLOSE && expect!=Expect.VALUE_OR_CLOSE) throw error("Unexpected array end");
+					pos++;
+					pop(false);
+					return Token.END_ARRAY;
+				case '"':
+					if(expect==Expect.NAME || expect==Expect.NAME_OR_CLOSE) {
+						pos++;
+						readString();
+						expect = Expect.COLON;
+						return Token.FIELD_NAME;
+					}
+					break;
+			}
+			if(expect!=Expect.VALUE && expect!=Expect.VALUE_OR_CLOSE) throw error("Unexpected character [" + (char)b + "], expected " + expect);
+			return readValueToken(b);
+		}
+	}
+	
+	/**
+	 * Tokenizes a value token where the grammar allows a value
+	 * @param b The first byte of the value
+	 * @return the value token
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected Token readValueToken(byte b) throws JSONException {
+		switch(b) {
+			case '{':
+				pos++;
+				push(true);
+				expect = Expect.NAME_OR_CLOSE;
+				return Token.START_OBJECT;
+			case '[':
+				pos++;
+				push(false);
+				expect = Expect.VALUE_OR_CLOSE;
+				return Token.START_ARRAY;
+		}
+		Token value;
+		switch(b) {
+			case '"':
+				pos++;
+				readString();
+				value = Token.STRING;
+				break;
+			case 't':
+				readLiteral("true");
+				value = Token.TRUE;
+				break;
+			case 'f':
+				readLiteral("false");
+				value = Token.FALSE;
+				break;
+			case 'n':
+				readLiteral("null");
+				value = Token.NULL;
+				break;
+			default:
+				if(b!='-' && (b<'0' || b>'9')) throw error("Unexpected character [" + (char)b + "]");
+				readNumber();
+				value = Token.NUMBER;
+		}
+		expect = depth>0 ? Expect.COMMA_OR_CLOSE : Expect.END;
+		return value;
+	}
+	
+	/**
+	 * Returns the text of the last string, field name or number token
+	 * @return the token text
+	 */
+	public String getText() {
+		return text.toString();
+	}
+	
+	/**
+	 * Returns the last number or numeric string token as a long, truncating decimals and saturating values out of the long range
+	 * @return the long value
+	 * @throws JSONException thrown if the last token is not a number or a string holding a JSON number
+	 */
+	public long getLong() throws JSONException {
+		if(token!=Token.NUMBER && (token!=Token.STRING || !isNumber(text))) {
+			throw error("Token [" + token + "] is not a number");
+		}
+		String value = text.toString();
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException nfe) {
+			// a fraction, exponent or integer outside the long range
+			return (long)Double.parseDouble(value);
+		}
+	}
+	
+	/**
+	 * Skips the value started by the passed token, including any nested content
+	 * @param token The token that started the value
+	 * @throws JSONException thrown on malformed input
+	 */
+	public void skipValue(Token token) throws JSONException {
+		if(token!=Token.START_OBJECT && token!=Token.START_ARRAY) return;
+		int target = depth-1;
+		while(depth>target) {
+			if(next()==Token.END) throw error("Unexpected end of input");
+		}
+	}
+	
+	/**
+	 * Reads the value started by the passed token into the org.json equivalent
+	 * @param token The token that started the value
+	 * @return the value
+	 * @throws JSONException thrown on malformed input
+	 */
+	public Object readValue(Token token) throws JSONException {
+		switch(token) {
+			case START_OBJECT:
+				JSONObject obj = new JSONObject();
+				Token t;
+				while((t=next())==Token.FIELD_NAME) {
+					String name = getText();
+					obj.put(name, readValue(next()));
+				}
+				if(t!=Token.END_OBJECT) throw error("Expected a field name or object end but got [" + t + "]");
+				return obj;
+			case START_ARRAY:
+				JSONArray arr = new JSONArray();
+				while((t=next())!=Token.END_ARRAY) {
+					arr.put(readValue(t));
+				}
+				return arr;
+			case STRING:
+				return getText();
+			case NUMBER:
+				if(decimal) return Double.valueOf(text.toString());
+				long v;
+				try {
+					v = Long.parseLong(text.toString());
+				} catch (NumberFormatException nfe) {
+					// an integer outside the long range
+					return new BigInteger(text.toString());
+				}
+				if(v>=Integer.MIN_VALUE && v<=Integer.MAX_VALUE) return Integer.valueOf((int)v);
+				return Long.valueOf(v);
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case NULL:
+				return JSONObject.NULL;
+			default:
+				throw error("Unexpected token [" + token + "]");
+		}
+	}
+	
+	/**
+	 * Pushes a container onto the nesting stack
+	 * @param object true for an object, false for an array
+	 */
+	protected void push(boolean object) {
+		if(depth==stack.length) {
+			boolean[] tmp = new boolean[depth*2];
+			System.arraycopy(stack, 0, tmp, 0, depth);
+			stack = tmp;
+		}
+		stack[depth++] = object;
+	}
+	
+	/**
+	 * Pops a container off the nesting stack
+	 * @param object true if an object is being closed, false for an array
+	 * @throws JSONException thrown if the closer does not match the open container
+	 */
+	protected void pop(boolean object) throws JSONException {
+		if(depth==0 || stack[depth-1]!=object) throw error("Mismatched closer");
+		depth--;
+		expect = depth>0 ? Expect.COMMA_OR_CLOSE : Expect.END;
+	}
+	
+	/**
+	 * Advances past any whitespace
+	 */
+	protected void skipWhitespace() {
+		while(pos<limit) {
+			byte b = buffer.getByte(pos);
+			if(b!=' ' && b!='\n' && b!='\r' && b!='\t') break;
+			pos++;
+		}
+	}
+	
+	/**
+	 * Reads the expected literal
+	 * @param literal The literal to read
+	 * @throws JSONException thrown if the input does not match the literal
+	 */
+	protected void readLiteral(String literal) throws JSONException {
+		int len = literal.length();
+		if(pos+len>limit) throw error("Unexpected end of input");
+		for(int i = 0; i < len; i++) {
+			if(buffer.getByte(pos+i)!=literal.charAt(i)) throw error("Expected [" + literal + "]");
+		}
+		pos += len;
+	}
+	
+	/**
+	 * Reads a number token into the text buffer
+	 * @throws JSONException thrown if the token is not a well formed JSON number
+	 */
+	protected void readNumber() throws JSONException {
+		text.setLength(0);
+		decimal = false;
+		while(pos<limit) {
+			byte b = buffer.getByte(pos);
+			if((b>='0' && b<='9') || b=='-' || b=='+') {
+				text.append((char)b);
+			} else if(b=='.' || b=='e' || b=='E') {
+				decimal = true;
+				text.append((char)b);
+			} else {
+				break;
+			}
+			pos++;
+		}
+		if(!isNumber(text)) throw error("Malformed number [" + text + "]");
+	}
+	
+	/**
+	 * Determines if the passed text is a JSON number: an optional minus, integer digits, and an optional fraction and exponent
+	 * @param s The text to test
+	 * @return true if the text is a JSON number
+	 */
+	protected static boolean isNumber(CharSequence s) {
+		int len = s.length(), i = 0;
+		if(i<len && s.charAt(i)=='-') i++;
+		int start = i;
+		while(i<len && isDigit(s.charAt(i))) i++;
+		if(i==start) return false;
+		if(i<len && s.charAt(i)=='.') {
+			start = ++i;
+			while(i<len && isDigit(s.charAt(i))) i++;
+			if(i==start) return false;
+		}
+		if(i<len && (s.charAt(i)=='e' || s.charAt(i)=='E')) {
+			i++;
+			if(i<len && (s.charAt(i)=='+' || s.charAt(i)=='-')) i++;
+			start = i;
+			while(i<len && isDigit(s.charAt(i))) i++;
+			if(i==start) return false;
+		}
+		return i==len;
+	}
+	
+	/**
+	 * Determines if the passed character is an ASCII digit
+	 * @param c The character to test
+	 * @return true if the character is a digit
+	 */
+	protected static boolean isDigit(char c) {
+		return c>='0' && c<='9';
+	}
+	
+	/**
+	 * Reads a string token into the text buffer, the opening quote having been consumed
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected void readString() throws JSONException {
+		text.setLength(0);
+		while(true) {
+			if(pos>=limit) throw error("Unterminated string");
+			int b = buffer.getByte(pos++) & 0xFF;
+			if(b=='"') return;
+			if(b=='\\') {
+				readEscape();
+			} else if(b<0x80) {
+				text.append((char)b);
+			} else if((b & 0xE0)==0xC0) {
+				text.append((char)(((b & 0x1F) << 6) | continuation()));
+			} else if((b & 0xF0)==0xE0) {
+				int c = ((b & 0x0F) << 12) | (continuation() << 6);
+				text.append((char)(c | continuation()));
+			} else if((b & 0xF8)==0xF0) {
+				int c = ((b & 0x07) << 18) | (continuation() << 12);
+				c |= continuation() << 6;
+				text.appendCodePoint(c | continuation());
+			} else {
+				throw error("Invalid UTF-8 lead byte");
+			}
+		}
+	}
+	
+	/**
+	 * Reads a UTF-8 continuation byte
+	 * @return the 6 payload bits of the continuation byte
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected int continuation() throws JSONException {
+		if(pos>=limit) throw error("Unterminated string");
+		int b = buffer.getByte(pos++) & 0xFF;
+		if((b & 0xC0)!=0x80) throw error("Invalid UTF-8 continuation byte");
+		return b & 0x3F;
+	}
+	
+	/**
+	 * Reads a string escape sequence, the backslash having been consumed
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected void readEscape() throws JSONException {
+		if(pos>=limit) throw error("Unterminated string");
+		byte b = buffer.getByte(pos++);
+		switch(b) {
+			case '"': text.append('"'); break;
+			case '\\': text.append('\\'); break;
+			case '/': text.append('/'); break;
+			case 'b': text.append('\b'); break;
+			case 'f': text.append('\f'); break;
+			case 'n': text.append('\n'); break;
+			case 'r': text.append('\r'); break;
+			case 't': text.append('\t'); break;
+			case 'u':
+				if(pos+4>limit) throw error("Unterminated unicode escape");
+				int c = 0;
+				for(int i = 0; i < 4; i++) {
+					int d = Character.digit(buffer.getByte(pos++), 16);
+					if(d<0) throw error("Invalid unicode escape");
+					c = (c << 4) | d;
+				}
+				text.append((char)c);
+				break;
+			default:
+				throw error("Invalid escape [\\" + (char)b + "]");
+		}
+	}
+	
+	/**
+	 * Creates a JSONException reporting the current position
+	 * @param message The error message
+	 * @return the exception
+	 */
+	protected JSONException error(String message) {
+		return new JSONException(message + " at position " + pos);
+	}
+}
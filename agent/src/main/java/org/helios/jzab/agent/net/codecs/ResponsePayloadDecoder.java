@@ -0,0 +1,160 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.codecs;
+
+import java.nio.charset.Charset;
+
+import org.helios.jzab.agent.net.active.ActiveCheckEntry;
+import org.helios.jzab.agent.net.active.ActiveCheckList;
+import org.helios.jzab.agent.net.active.ActiveHost;
+import org.helios.jzab.agent.net.codecs.JSONPullParser.Token;
+import org.helios.jzab.agent.net.routing.JSONResponseHandler;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * <p>Title: ResponsePayloadDecoder</p>
+ * <p>Description: Decodes the JSON payload of a framed zabbix server response according to the configured {@link ResponseDecodeMode}.
+ * Shared by the zabbix response frame decoders. Stateless and thread safe.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.codecs.ResponsePayloadDecoder</code></p>
+ */
+public class ResponsePayloadDecoder {
+	/** The payload decode mode */
+	protected final ResponseDecodeMode decodeMode;
+	
+	/** The payload character set */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Creates a new ResponsePayloadDecoder
+	 * @param decodeMode The payload decode mode
+	 */
+	public ResponsePayloadDecoder(ResponseDecodeMode decodeMode) {
+		if(decodeMode==null) throw new IllegalArgumentException("The passed decode mode was null", new Throwable());
+		this.decodeMode = decodeMode;
+	}
+	
+	/**
+	 * Decodes the passed payload into a JSONObject. In streaming mode, falls back to the tree decode if the streaming decode fails.
+	 * @param payload The payload to decode
+	 * @param log The logger of the calling decoder
+	 * @return the decoded JSONObject or null if the payload could not be parsed
+	 */
+	public JSONObject decode(ChannelBuffer payload, Logger log) {
+		JSONObject obj = null;
+		if(decodeMode==ResponseDecodeMode.STREAMING) {
+			try {
+				obj = decodeStreaming(payload);
+			} catch (JSONException e) {
+				log.debug("Streaming decode failed, falling back to tree decode: [{}]", e.getMessage());
+			}
+		}
+		if(obj==null) {
+			String msg = payload.toString(UTF8);
+			try {
+				obj = new JSONObject(msg);
+			} catch (JSONException e) {
+				log.warn("Failed to parse JSON request [{}]", msg);
+				return null;
+			}
+		}
+		if(log.isTraceEnabled()) log.trace("Decoded JSONObject [{}]",  obj.toString());
+		return obj;
+	}
+	
+	/**
+	 * Returns the payload decode mode
+	 * @return the payload decode mode
+	 */
+	public ResponseDecodeMode getDecodeMode() {
+		return decodeMode;
+	}
+	
+	/**
+	 * Pull parses the passed payload into a JSONObject. A <code>data</code> array of objects is decoded into an {@link ActiveCheckList}
+	 * and any other field is decoded into its standard org.json form.
+	 * @param payload The payload to decode
+	 * @return the decoded JSONObject
+	 * @throws JSONException thrown on malformed input
+	 */
+	protected JSONObject decodeStreaming(ChannelBuffer payload) throws JSONException {
+		JSONPullParser parser = new JSONPullParser(payload, payload.readerIndex(), payload.readableBytes());
+		if(parser.next()!=Token.START_OBJECT) throw new JSONException("Payload is not a JSON object");
+		JSONObject obj = new JSONObject();
+		Token t;
+		while((t=parser.next())==Token.FIELD_NAME) {
+			String name = parser.getText();
+			Token valueToken = parser.next();
+			if(valueToken==Token.START_ARRAY && JSONResponseHandler.KEY_DATA.equals(name)) {
+				obj.put(name, readActiveChecks(parser));
+			} else {
+				obj.put(name, parser.readValue(valueToken));
+			}
+		}
+		if(t!=Token.END_OBJECT) throw new JSONException("Expected a field name or object end but got [" + t + "]");
+		return obj;
+	}
+	
+	/**
+	 * Reads an array of active check definitions, the array opener having been consumed
+	 * @param parser The parser positioned in the array
+	 * @return the active check list
+	 * @throws JSONException thrown on malformed input or if an array element is not an active check definition
+	 */
+	protected ActiveCheckList readActiveChecks(JSONPullParser parser) throws JSONException {
+		ActiveCheckList list = new ActiveCheckList();
+		Token t;
+		while((t=parser.next())==Token.START_OBJECT) {
+			String key = null;
+			long delay = -1, mtime = -1, lastLogSize = 0;
+			Token f;
+			while((f=parser.next())==Token.FIELD_NAME) {
+				String field = parser.getText();
+				Token v = parser.next();
+				if(ActiveHost.CHECK_ITEM_KEY.equals(field)) {
+					if(v!=Token.STRING) throw new JSONException("Active check key is not a string");
+					key = parser.getText();
+				} else if(ActiveHost.CHECK_DELAY.equals(field)) {
+					delay = parser.getLong();
+				} else if(ActiveHost.CHECK_MTIME.equals(field)) {
+					mtime = parser.getLong();
+				} else if(ActiveHost.CHECK_LASTLOG_SIZE.equals(field)) {
+					lastLogSize = parser.getLong();
+				} else {
+					parser.skipValue(v);
+				}
+			}
+			if(f!=Token.END_OBJECT) throw new JSONException("Malformed active check definition");
+			if(key==null || delay<0 || mtime<0) throw new JSONException("Incomplete active check definition");
+			list.add(new ActiveCheckEntry(key, delay, mtime, lastLogSize));
+		}
+		if(t!=Token.END_ARRAY) throw new JSONException("Data array element is not an active check definition");
+		return list;
+	}
+}
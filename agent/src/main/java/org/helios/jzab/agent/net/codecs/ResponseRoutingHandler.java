@@ -30,16 +30,15 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadPoolExecutor;
 
 import org.helios.jzab.agent.net.routing.JSONResponseHandler;
+import org.helios.jzab.agent.net.routing.ResponseCorrelation;
+import org.helios.jzab.agent.net.routing.ResponseProcessingStage;
 import org.helios.jzab.agent.net.routing.RoutingObjectName;
 import org.helios.jzab.agent.net.routing.RoutingObjectNameFactory;
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
 import org.json.JSONObject;
@@ -61,19 +60,17 @@ public class ResponseRoutingHandler extends SimpleChannelHandler {
 	protected final Map<Integer, Map<String, String>> sessionKeys = new ConcurrentHashMap<Integer, Map<String, String>>();
 	/** A set of keys that qualify for session tokens */
 	protected final Set<String> keysToLookFor = new HashSet<String>();
-	/** The routing executor */
-	protected final ThreadPoolExecutor executor;
-	
-	/** An optional override for requests that opaque (not json) and cannot provide routing keys */
-	public static final ChannelLocal<Map<String, String>> ROUTING_OVERRIDE = new ChannelLocal<Map<String, String>>();
+	/** The stage that delivers routed responses to their handlers */
+	protected final ResponseProcessingStage processingStage;
 	
 	/**
 	 * Creates a new ResponseRoutingHandler
-	 * @param executor The routing executor
+	 * @param processingStage The stage that delivers routed responses to their handlers
 	 * @param keys An aray of case sensitive keys
 	 */
-	public ResponseRoutingHandler(ThreadPoolExecutor executor, String...keys) {
-		this.executor = executor;
+	public ResponseRoutingHandler(ResponseProcessingStage processingStage, String...keys) {
+		if(processingStage==null) throw new IllegalArgumentException("The passed processing stage was null", new Throwable());
+		this.processingStage = processingStage;
 		if(keys!=null) {
 			for(String key: keys) {
 				if(key!=null) {
@@ -93,25 +90,14 @@ public class ResponseRoutingHandler extends SimpleChannelHandler {
 		Object msg = e.getMessage();
 		if(msg instanceof JSONObject) {
 			JSONObject request = (JSONObject)msg;
-			boolean keysFound = false;
 			Channel channel = e.getChannel();
 			for(String key: keysToLookFor) {
 				if(request.has(key)) {
 					String value = request.getString(key);
 					addPair(channel.getId(), key, value);
 					log.debug("Captured key [{}] for channel [{}]", key + "/" + value, channel);
-					keysFound = true;
 				}
 			}
-			if(keysFound) {
-				channel.getCloseFuture().addListener(new ChannelFutureListener() {
-					public void operationComplete(ChannelFuture future) throws Exception {
-						if(future.isDone()) {
-							sessionKeys.remove(future.getChannel().getId());
-						}
-					}
-				});
-			}
 		}
 		super.writeRequested(ctx, e);
 	}
@@ -124,10 +110,15 @@ public class ResponseRoutingHandler extends SimpleChannelHandler {
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
 		Object msg = e.getMessage();		
 		if(msg instanceof JSONObject) {
-			Map<String, String> map = sessionKeys.get(e.getChannel().getId());
-			if(map==null) {
-				map = ROUTING_OVERRIDE.remove(e.getChannel());
-			} 
+			Object attachment = e.getChannel().getAttachment();
+			ResponseCorrelation correlation = attachment instanceof ResponseCorrelation ? (ResponseCorrelation)attachment : null;
+			Map<String, String> map = null;
+			if(correlation==null || !correlation.isConsumed()) {
+				map = sessionKeys.get(e.getChannel().getId());
+				if(map==null && correlation!=null && correlation.getRoutingOverride()!=null) {
+					map = new HashMap<String, String>(correlation.getRoutingOverride());
+				}
+			}
 			if(map!=null) {
 				final JSONObject response = (JSONObject)msg;
 				for(String jsonKey: JSONObject.getNames(response)) {
@@ -136,20 +127,8 @@ public class ResponseRoutingHandler extends SimpleChannelHandler {
 				}
 				Collection<RoutingObjectName> routingMatches = RoutingObjectNameFactory.getInstance().lookup(map);
 				log.debug("Located [{}] Routing Matches for [{}]", routingMatches.size(), map);
-				for(final RoutingObjectName ron : routingMatches) {
-					for(final JSONResponseHandler responseHandler : ron) {
-						executor.execute(new Runnable(){
-							public void run() {
-								try {
-									log.debug("Passing JSONResponse to [{}] for Routing [{}]", responseHandler, ron);
-									responseHandler.jsonResponse(ron, response);
-								} catch (Exception e) {
-									log.warn("Failed to process json response for routing [{}] on handler [{}]", ron, responseHandler);
-									log.debug("Handler failed to process json response [{}]", responseHandler, e);
-								}
-							}
-						});
-					}
+				if(!routingMatches.isEmpty()) {
+					processingStage.dispatch(response, routingMatches);
 				}
 			}
 			sessionKeys.remove(e.getChannel().getId());
@@ -157,6 +136,17 @@ public class ResponseRoutingHandler extends SimpleChannelHandler {
 		super.messageReceived(ctx, e);		
 	}
 	
+	/**
+	 * Discards any session keys captured for the closed channel
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		sessionKeys.remove(e.getChannel().getId());
+		super.channelClosed(ctx, e);
+	}
+	
 	/**
 	 * Adds a name value pair to the sessionKeys state map
 	 * @param channelId The ID of the channel
@@ -27,6 +27,8 @@ package org.helios.jzab.agent.net.codecs;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 /**
  * <p>Title: ZabbixConstants</p>
  * <p>Description: </p> 
@@ -43,6 +45,8 @@ public class ZabbixConstants {
 	public static final byte[] ZABBIX_HEADER =  "ZBXD".getBytes();
 	/** The zabbix response baseline size for creating the downstream channel buffer */
 	public static final int BASELINE_SIZE = ZABBIX_HEADER.length + 9;  // one byte for protocol, 8 bytes for length
+	/** The offset of the payload length in the zabbix header */
+	public static final int LENGTH_OFFSET = ZABBIX_HEADER.length + 1;
 	
 	
 	public static final byte[] AGENT_DATA_HEADER = "{ \"request\":\"agent data\", \"data\":[".getBytes(); 
@@ -90,6 +94,16 @@ public class ZabbixConstants {
 		return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(payloadLength).array();
 	}
 	
+	/**
+	 * Sets the passed long at the passed index of the passed buffer in little endian byte order, regardless of the buffer's byte order
+	 * @param buffer The buffer to write to
+	 * @param index The index to write at
+	 * @param value The long value to write
+	 */
+	public static void setLittleEndianLong(ChannelBuffer buffer, int index, long value) {
+		buffer.setLong(index, buffer.order()==ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+	}
+	
 	/**
 	 * Decodes the little endian encoded bytes to a long
 	 * @param bytes The bytes to decode
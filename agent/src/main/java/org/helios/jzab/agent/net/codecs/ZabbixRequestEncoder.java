@@ -24,6 +24,8 @@
  */
 package org.helios.jzab.agent.net.codecs;
 
+import java.nio.ByteOrder;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -45,8 +47,13 @@ import org.json.JSONObject;
 public class ZabbixRequestEncoder extends OneToOneEncoder {
 	/** The protocol version of the zabbix passive response processor */
 	protected final byte protocolVersion;
-
+	/** The estimated payload size used to size new outbound buffers, tracking the last encoded payload. Shared across channels, races are benign. */
+	protected volatile int sizeHint = MIN_SIZE_HINT;
 	
+	/** The minimum payload size estimate */
+	public static final int MIN_SIZE_HINT = 256;
+	/** The maximum payload size estimate */
+	public static final int MAX_SIZE_HINT = 64 * 1024;
 	
 	/**
 	 * Creates a new ZabbixRequestEncoder
@@ -58,37 +65,56 @@ public class ZabbixRequestEncoder extends OneToOneEncoder {
 
 	/**
 	 * {@inheritDoc}
+	 * <p>Text and JSON payloads are UTF-8 encoded straight into the outbound buffer after a reserved header, 
+	 * and the payload length is then set in place. Byte array payloads are wrapped behind a separate header buffer without being copied.</p>
 	 * @see org.jboss.netty.handler.codec.oneone.OneToOneEncoder#encode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, java.lang.Object)
 	 */
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
 		if(msg==null) return null;
-		if(msg instanceof ChannelBuffer) {
+		if(msg instanceof ChannelBuffer || msg instanceof FileRegion || msg instanceof ChunkedFile) {
 			return msg;
 		}
-		if(msg instanceof JSONObject) {
-			msg = msg.toString();
+		if(msg instanceof byte[]) {
+			byte[] payload = (byte[])msg;
+			ChannelBuffer header = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, ZabbixConstants.BASELINE_SIZE);
+			writeHeader(header, payload.length);
+			return ChannelBuffers.wrappedBuffer(header, ChannelBuffers.wrappedBuffer(ByteOrder.LITTLE_ENDIAN, payload));
 		}
-		byte[] payload = null;
-		if(msg instanceof CharSequence) {
-			payload = msg.toString().getBytes();
-		} else if(msg instanceof byte[]) {
-			payload = (byte[])msg;
-		} else if(msg instanceof FileRegion || msg instanceof ChunkedFile) {
-			return msg;
-			
-		} else  {
+		if(!(msg instanceof JSONObject) && !(msg instanceof CharSequence)) {
 			throw new RuntimeException("Unrecognized payload type [" + msg.getClass().getName() + "]", new Throwable());
 		}
-		
-		ChannelBuffer buffer = ChannelBuffers.buffer(ZabbixConstants.BASELINE_SIZE + payload.length);
-		buffer.writeBytes(ZabbixConstants.ZABBIX_HEADER);
-		buffer.writeByte(protocolVersion);
-		buffer.writeBytes(ZabbixConstants.encodeLittleEndianLongBytes(payload.length));
-		buffer.writeBytes(payload);		
+		ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, ZabbixConstants.BASELINE_SIZE + sizeHint);
+		writeHeader(buffer, 0);
+		ChannelBufferWriter writer = new ChannelBufferWriter(buffer);
+		if(msg instanceof JSONObject) {
+			((JSONObject)msg).write(writer);
+		} else {
+			writer.append((CharSequence)msg);
+		}
+		writer.close();
+		int length = buffer.writerIndex() - ZabbixConstants.BASELINE_SIZE;
+		buffer.setLong(ZabbixConstants.LENGTH_OFFSET, length);
+		sizeHint = Math.min(Math.max(length, MIN_SIZE_HINT), MAX_SIZE_HINT);
 		return buffer;
 	}
 	
+	/**
+	 * Writes the zabbix header, protocol and payload length into the passed little endian buffer
+	 * @param buffer The buffer to write to
+	 * @param length The payload length
+	 */
+	protected void writeHeader(ChannelBuffer buffer, long length) {
+		buffer.writeBytes(ZabbixConstants.ZABBIX_HEADER);
+		buffer.writeByte(protocolVersion);
+		buffer.writeLong(length);
+	}
 	
-	
+	/**
+	 * Returns the current payload size estimate used to size new outbound buffers
+	 * @return the payload size estimate in bytes
+	 */
+	public int getSizeHint() {
+		return sizeHint;
+	}
 }
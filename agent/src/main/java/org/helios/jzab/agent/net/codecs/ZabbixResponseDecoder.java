@@ -29,8 +29,8 @@ import java.util.Arrays;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +47,35 @@ import org.slf4j.LoggerFactory;
 public class ZabbixResponseDecoder extends ReplayingDecoder<ZabbixEncoding> {
 	/** Instance logger */
 	protected Logger log;
+	/** The payload decode mode */
+	protected final ResponseDecodeMode decodeMode;
+	/** The maximum accepted payload size in bytes */
+	protected final int maxFrameSize;
+	/** The payload decoder */
+	protected final ResponsePayloadDecoder payloadDecoder;
+	
+	/** The default maximum accepted payload size in bytes */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	
+	/**
+	 * Creates a new ZabbixResponseDecoder
+	 * @param decodeMode The payload decode mode
+	 * @param maxFrameSize The maximum accepted payload size in bytes
+	 */
+	public ZabbixResponseDecoder(ResponseDecodeMode decodeMode, int maxFrameSize) {
+		if(decodeMode==null) throw new IllegalArgumentException("The passed decode mode was null", new Throwable());
+		if(maxFrameSize<1) throw new IllegalArgumentException("Invalid max frame size [" + maxFrameSize + "]", new Throwable());
+		this.decodeMode = decodeMode;
+		this.maxFrameSize = maxFrameSize;
+		payloadDecoder = new ResponsePayloadDecoder(decodeMode);
+	}
+	
+	/**
+	 * Creates a new ZabbixResponseDecoder with the default tree decode mode and max frame size
+	 */
+	public ZabbixResponseDecoder() {
+		this(ResponseDecodeMode.TREE, DEFAULT_MAX_FRAME_SIZE);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -54,7 +83,9 @@ public class ZabbixResponseDecoder extends ReplayingDecoder<ZabbixEncoding> {
 	 */
 	@Override
 	protected JSONObject decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, ZabbixEncoding state) throws Exception {		
-		log = LoggerFactory.getLogger(getClass() + "[" + channel.getRemoteAddress() + "]" );
+		if(log==null) {
+			log = LoggerFactory.getLogger(getClass() + "[" + channel.getRemoteAddress() + "]" );
+		}
 		if(state==null) {
 			state = ZabbixEncoding.ZHEADER;
 			log.trace("Started Decode [{}]", state);
@@ -79,24 +110,21 @@ public class ZabbixResponseDecoder extends ReplayingDecoder<ZabbixEncoding> {
 				byte[] rLength = new byte[8];
 				buffer.readBytes(rLength);
 				long length = ZabbixConstants.decodeLittleEndianLongBytes(rLength);
+				if(length<0 || length>maxFrameSize) {
+					checkpoint(ZabbixEncoding.ZHEADER);
+					throw new TooLongFrameException("Response payload length [" + length + "] exceeds the max frame size [" + maxFrameSize + "]");
+				}
 				ctx.setAttachment(length);
 				log.trace("Read Length: [{}]", length);
 				checkpoint(ZabbixEncoding.JSON);
 			case JSON:
-				length = (Long)ctx.getAttachment();
-				byte[] jsonBytes = new byte[(int)length];
-				buffer.readBytes(jsonBytes);
-				String msg = new String(jsonBytes);
-				try {
-					JSONObject obj = new JSONObject(msg);
-					log.trace("Decoded JSONObject [{}]",  obj.toString());
-					return obj;
-				} catch (JSONException e) {
-					log.warn("Failed to parse JSON request [{}]", msg);
-					return null;
-				} finally {
-					checkpoint(ZabbixEncoding.ZHEADER);
-				}
+				int size = ((Long)ctx.getAttachment()).intValue();
+				// slicing the replaying buffer replays until the whole payload has arrived 
+				// and hands back a view of the cumulation, so nothing below copies the payload
+				ChannelBuffer payload = buffer.slice(buffer.readerIndex(), size);
+				buffer.skipBytes(size);
+				checkpoint(ZabbixEncoding.ZHEADER);
+				return payloadDecoder.decode(payload, log);
 		}
 		return null;
 	}
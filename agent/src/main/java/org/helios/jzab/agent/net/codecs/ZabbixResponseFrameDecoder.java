@@ -0,0 +1,149 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.codecs;
+
+import java.nio.ByteOrder;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: ZabbixResponseFrameDecoder</p>
+ * <p>Description: Decodes a Zabbix agent request response to a JSON object without replaying.
+ * The header and payload length are read once, after which the decoder simply waits until the whole payload is readable
+ * and then decodes it from a slice of the cumulation buffer. Once a payload length is known, fragments are accumulated into 
+ * a single buffer presized to that length rather than a composite buffer that is periodically recopied.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.codecs.ZabbixResponseFrameDecoder</code></p>
+ */
+public class ZabbixResponseFrameDecoder extends FrameDecoder {
+	/** Instance logger */
+	protected Logger log;
+	/** The maximum accepted payload size in bytes */
+	protected final int maxFrameSize;
+	/** The payload decoder */
+	protected final ResponsePayloadDecoder payloadDecoder;
+	/** The length of the payload being waited on, or -1 if the next header has not been read yet */
+	protected int pendingLength = -1;
+	/** The cumulation buffer presized to the pending payload length, or null if no payload is being accumulated */
+	protected ChannelBuffer payloadBuffer = null;
+	
+	/** The size of the zabbix frame header: 4 byte header, 1 byte protocol and 8 byte length */
+	public static final int HEADER_SIZE = ZabbixConstants.BASELINE_SIZE;
+	
+	/**
+	 * Creates a new ZabbixResponseFrameDecoder
+	 * @param decodeMode The payload decode mode
+	 * @param maxFrameSize The maximum accepted payload size in bytes
+	 */
+	public ZabbixResponseFrameDecoder(ResponseDecodeMode decodeMode, int maxFrameSize) {
+		if(maxFrameSize<1) throw new IllegalArgumentException("Invalid max frame size [" + maxFrameSize + "]", new Throwable());
+		this.maxFrameSize = maxFrameSize;
+		payloadDecoder = new ResponsePayloadDecoder(decodeMode);
+	}
+	
+	/**
+	 * Creates a new ZabbixResponseFrameDecoder with the default tree decode mode and max frame size
+	 */
+	public ZabbixResponseFrameDecoder() {
+		this(ResponseDecodeMode.TREE, ZabbixResponseDecoder.DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	protected JSONObject decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		if(log==null) {
+			log = LoggerFactory.getLogger(getClass() + "[" + channel.getRemoteAddress() + "]" );
+		}
+		if(pendingLength<0) {
+			if(buffer.readableBytes()<HEADER_SIZE) return null;
+			int index = buffer.readerIndex();
+			for(int i = 0; i < ZabbixConstants.ZABBIX_HEADER.length; i++) {
+				if(buffer.getByte(index+i)!=ZabbixConstants.ZABBIX_HEADER[i]) {
+					throw new Exception("Invalid Header [" + buffer.toString(index, ZabbixConstants.ZABBIX_HEADER.length, ResponsePayloadDecoder.UTF8) + "]", new Throwable());
+				}
+			}
+			byte protocol = buffer.getByte(index+4);
+			if(protocol!=ZabbixConstants.ZABBIX_PROTOCOL) {
+				throw new Exception("Invalid Protocol [" + protocol + "]", new Throwable());
+			}
+			long length = buffer.getLong(index+5);
+			if(buffer.order()!=ByteOrder.LITTLE_ENDIAN) length = Long.reverseBytes(length);
+			if(length<0 || length>maxFrameSize) {
+				throw new TooLongFrameException("Response payload length [" + length + "] exceeds the max frame size [" + maxFrameSize + "]");
+			}
+			buffer.skipBytes(HEADER_SIZE);
+			pendingLength = (int)length;
+			log.trace("Read Length: [{}]", length);
+		}
+		if(buffer.readableBytes()<pendingLength) return null;
+		ChannelBuffer payload = buffer.readSlice(pendingLength);
+		pendingLength = -1;
+		payloadBuffer = null;
+		return payloadDecoder.decode(payload, log);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>While a payload is pending, appends the input to the presized payload buffer.</p>
+	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#appendToCumulation(org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	protected ChannelBuffer appendToCumulation(ChannelBuffer input) {
+		if(pendingLength<0) return super.appendToCumulation(input);
+		if(cumulation!=payloadBuffer) {
+			payloadBuffer = ChannelBuffers.dynamicBuffer(cumulation.order(), Math.max(pendingLength, cumulation.readableBytes() + input.readableBytes()));
+			payloadBuffer.writeBytes(cumulation);
+		}
+		payloadBuffer.writeBytes(input);
+		cumulation = payloadBuffer;
+		return payloadBuffer;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>Retains the presized payload buffer as the cumulation rather than copying its readable bytes.</p>
+	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#updateCumulation(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	protected ChannelBuffer updateCumulation(ChannelHandlerContext ctx, ChannelBuffer input) {
+		if(input==payloadBuffer && input.readable()) {
+			cumulation = input;
+			return input;
+		}
+		return super.updateCumulation(ctx, input);
+	}
+}
@@ -25,7 +25,7 @@
 package org.helios.jzab.agent.net.passive;
 
 import java.net.InetSocketAddress;
-import java.util.Collections;
+import java.net.SocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -87,8 +87,10 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 	/** The sharable handlers repository */
 	protected final SharableHandlers sharableHandlers = SharableHandlers.getInstance();
 	
-	/** A map of the number of command exections received, keyed by the command name */
-	protected final Map<String, Long> commandExecutions = new ConcurrentHashMap<String, Long>();
+	/** The passive command statistics, keyed by the command */
+	protected final ConcurrentHashMap<String, CommandStatistics> commandStatistics = new ConcurrentHashMap<String, CommandStatistics>();
+	/** The passive command statistics, keyed by the remote peer's host address */
+	protected final ConcurrentHashMap<String, CommandStatistics> peerStatistics = new ConcurrentHashMap<String, CommandStatistics>();
 	
 	/** The netty server boss pool */
 	protected final Executor bossPool;
@@ -110,6 +112,10 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 	protected final ChannelGroup channelGroup;
 	
 	protected final LoggingHandler loggingHandler; 
+	/** The passive command execution pool, or null if commands are executed on the I/O threads */
+	protected final ThreadPoolFactory executionPool;
+	/** The maximum number of pending replies per connection before reading is suspended */
+	protected final int maxPipelined;
 
 	
 	
@@ -124,6 +130,8 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 	public static final String BOSS_POOL_TYPE = "boss-pool";
 	/** The config type name for the worker pool type */
 	public static final String WORKER_POOL_TYPE = "worker-pool";
+	/** The config type name for the passive command execution pool type */
+	public static final String EXECUTION_POOL_TYPE = "execution-pool";
 	
 	
 	protected String getNodeName() {
@@ -148,6 +156,10 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 		objectName = JMXHelper.objectName("org.helios.jzab.agent.net", "service", "AgentListener", "name", listenerName);
 		bossPool = ThreadPoolFactory.getInstance(XMLHelper.getAttributeByName(XMLHelper.getChildNodeByName(configNode, BOSS_POOL_TYPE, false), "name", null));
 		workerPool = ThreadPoolFactory.getInstance(XMLHelper.getAttributeByName(XMLHelper.getChildNodeByName(configNode, WORKER_POOL_TYPE, false), "name", null));
+		Node executionPoolNode = XMLHelper.getChildNodeByName(configNode, EXECUTION_POOL_TYPE, false);
+		String executionPoolName = XMLHelper.getAttributeByName(executionPoolNode, "name", null);
+		executionPool = executionPoolName==null ? null : ThreadPoolFactory.getInstance(executionPoolName);
+		maxPipelined = XMLHelper.getAttributeByName(executionPoolNode, "max-pipelined", PassiveRequestInvoker.DEFAULT_MAX_PIPELINED);
 		Node socketOpts = XMLHelper.getChildNodeByName(configNode, "socket-options", false);
 		if(socketOpts!=null) {
 			for(Node socketOption: XMLHelper.getChildNodesByName(socketOpts, "opt", false)) {
@@ -237,7 +249,7 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 		pipeline.addLast("stringDecoder", sharableHandlers.getHandler("stringDecoder"));						
 		pipeline.addLast("stringEncoder", sharableHandlers.getHandler("stringEncoder"));		
 		pipeline.addLast("passiveResponseEncoder", sharableHandlers.getHandler("responseEncoder"));
-		pipeline.addLast("passiveRequestInvoker", new PassiveRequestInvoker(this));
+		pipeline.addLast("passiveRequestInvoker", new PassiveRequestInvoker(this, executionPool, maxPipelined));
 		
 		return pipeline;
 	}
@@ -336,27 +348,116 @@ public class AgentListener extends NotificationBroadcasterSupport implements Cha
 	}
 	
 	/**
-	 * Returns the tally of command executions
-	 * @return the tally of command executions
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#getExecutionPoolName()
+	 */
+	@Override
+	public String getExecutionPoolName() {
+		return executionPool==null ? null : executionPool.getName();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#getMaxPipelined()
+	 */
+	@Override
+	public int getMaxPipelined() {
+		return maxPipelined;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#getCommandCounts()
 	 */
+	@Override
 	public Map<String, Long> getCommandCounts() {
-		return Collections.unmodifiableMap(commandExecutions);
+		Map<String, Long> counts = new HashMap<String, Long>(commandStatistics.size());
+		for(Map.Entry<String, CommandStatistics> entry: commandStatistics.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return counts;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#getCommandStatistics()
+	 */
+	@Override
+	public Map<String, Map<String, Long>> getCommandStatistics() {
+		return toMap(commandStatistics);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#getPeerStatistics()
+	 */
+	@Override
+	public Map<String, Map<String, Long>> getPeerStatistics() {
+		return toMap(peerStatistics);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.passive.AgentListenerMXBean#resetCommandStatistics()
+	 */
+	@Override
+	public void resetCommandStatistics() {
+		commandStatistics.clear();
+		peerStatistics.clear();
+	}
+	
+	/**
+	 * Returns a snapshot of the passed statistics
+	 * @param statistics The statistics to snapshot
+	 * @return a map of statistic maps keyed by the statistics key
+	 */
+	protected static Map<String, Map<String, Long>> toMap(Map<String, CommandStatistics> statistics) {
+		Map<String, Map<String, Long>> map = new HashMap<String, Map<String, Long>>(statistics.size());
+		for(Map.Entry<String, CommandStatistics> entry: statistics.entrySet()) {
+			map.put(entry.getKey(), entry.getValue().toMap());
+		}
+		return map;
 	}
 
 	/**
 	 * {@inheritDoc}
-	 * @see org.helios.jzab.agent.net.passive.IListenerStats#addCommandReceived(java.lang.String)
+	 * @see org.helios.jzab.agent.net.passive.IListenerStats#addCommandReceived(java.lang.String, java.net.SocketAddress, long, boolean)
 	 */
 	@Override
-	public synchronized void addCommandReceived(String command) {
-		Long cnt = commandExecutions.get(command);
-		if(cnt==null) {
-			cnt = 0L;
+	public void addCommandReceived(String command, SocketAddress remoteAddress, long elapsedNanos, boolean error) {
+		getStatistics(commandStatistics, command).record(elapsedNanos, error);
+		getStatistics(peerStatistics, peerKey(remoteAddress)).record(elapsedNanos, error);
+	}
+	
+	/**
+	 * Returns the statistics for the passed key, creating them if necessary
+	 * @param statistics The statistics map
+	 * @param key The statistics key
+	 * @return the statistics for the key
+	 */
+	protected static CommandStatistics getStatistics(ConcurrentHashMap<String, CommandStatistics> statistics, String key) {
+		CommandStatistics stats = statistics.get(key);
+		if(stats==null) {
+			stats = new CommandStatistics();
+			CommandStatistics prior = statistics.putIfAbsent(key, stats);
+			if(prior!=null) stats = prior;
 		}
-		cnt++;
-		commandExecutions.put(command, cnt);
-		
-		
+		return stats;
+	}
+	
+	/**
+	 * Returns the peer statistics key for the passed remote address. 
+	 * The port is omitted since the zabbix server opens a new connection from an ephemeral port for each check. 
+	 * @param remoteAddress The remote address
+	 * @return the peer key
+	 */
+	protected static String peerKey(SocketAddress remoteAddress) {
+		if(remoteAddress==null) return "unknown";
+		if(remoteAddress instanceof InetSocketAddress) {
+			InetSocketAddress isa = (InetSocketAddress)remoteAddress;
+			return isa.getAddress()==null ? isa.getHostName() : isa.getAddress().getHostAddress();
+		}
+		return remoteAddress.toString();
 	}
 
 }	
@@ -92,4 +92,33 @@ public interface AgentListenerMXBean {
 	 */
 	public Map<String, Long> getCommandCounts();
 	
+	/**
+	 * Returns the passive command statistics keyed by command
+	 * @return a map of the count, errors, and mean, 99th percentile and max latency in microseconds, keyed by command
+	 */
+	public Map<String, Map<String, Long>> getCommandStatistics();
+	
+	/**
+	 * Returns the passive command statistics keyed by the requesting peer's host address
+	 * @return a map of the count, errors, and mean, 99th percentile and max latency in microseconds, keyed by peer
+	 */
+	public Map<String, Map<String, Long>> getPeerStatistics();
+	
+	/**
+	 * Resets the passive command statistics
+	 */
+	public void resetCommandStatistics();
+	
+	/**
+	 * Returns the name of the thread pool passive commands are executed on
+	 * @return the execution pool name, or null if commands are executed on the I/O threads
+	 */
+	public String getExecutionPoolName();
+	
+	/**
+	 * Returns the maximum number of pending replies per connection before reading is suspended
+	 * @return the maximum number of pipelined requests per connection
+	 */
+	public int getMaxPipelined();
+	
 }
@@ -0,0 +1,115 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.passive;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.helios.jzab.agent.util.LatencyHistogram;
+import org.helios.jzab.agent.util.StripedLongCounter;
+
+/**
+ * <p>Title: CommandStatistics</p>
+ * <p>Description: Lock free passive command statistics for one key, being a command or a remote peer. 
+ * Tracks the number of commands executed, the number that failed and their execution latency in microseconds.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.passive.CommandStatistics</code></p>
+ */
+public class CommandStatistics {
+	/** The number of executed commands */
+	private final StripedLongCounter count = new StripedLongCounter();
+	/** The number of failed commands */
+	private final StripedLongCounter errors = new StripedLongCounter();
+	/** The command execution latency in microseconds */
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	/**
+	 * Records an executed command
+	 * @param elapsedNanos The command execution time in ns.
+	 * @param error true if the command failed
+	 */
+	public void record(long elapsedNanos, boolean error) {
+		count.increment();
+		if(error) errors.increment();
+		latency.record(elapsedNanos/1000);
+	}
+	
+	/**
+	 * Returns the number of executed commands
+	 * @return the number of executed commands
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Returns the number of failed commands
+	 * @return the number of failed commands
+	 */
+	public long getErrorCount() {
+		return errors.sum();
+	}
+	
+	/**
+	 * Returns the command execution latency histogram
+	 * @return the command execution latency histogram in microseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+	
+	/**
+	 * Returns a snapshot of these statistics 
+	 * @return a map of the count, error count, and the mean, 99th percentile and maximum latency in microseconds 
+	 */
+	public Map<String, Long> toMap() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>(8);
+		map.put("count", getCount());
+		map.put("errors", getErrorCount());
+		map.put("meanUs", latency.getMean());
+		map.put("p99Us", latency.getPercentile(99));
+		map.put("maxUs", latency.getMax());
+		return map;
+	}
+	
+	/**
+	 * Resets these statistics
+	 */
+	public void reset() {
+		count.reset();
+		errors.reset();
+		latency.reset();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+}
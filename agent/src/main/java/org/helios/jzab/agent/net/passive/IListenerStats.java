@@ -24,6 +24,8 @@
  */
 package org.helios.jzab.agent.net.passive;
 
+import java.net.SocketAddress;
+
 /**
  * <p>Title: IListenerStats</p>
  * <p>Description: Defines the interface of the agent listener that is exposed to the passive request invoker</p> 
@@ -33,8 +35,11 @@ package org.helios.jzab.agent.net.passive;
  */
 public interface IListenerStats {
 	/**
-	 * Callback whenever a command is received
+	 * Callback whenever a command has been executed
 	 * @param command The command received
+	 * @param remoteAddress The address of the peer that sent the command, which may be null
+	 * @param elapsedNanos The command execution time in ns.
+	 * @param error true if the command failed or was not supported
 	 */
-	public void addCommandReceived(String command);
+	public void addCommandReceived(String command, SocketAddress remoteAddress, long elapsedNanos, boolean error);
 }
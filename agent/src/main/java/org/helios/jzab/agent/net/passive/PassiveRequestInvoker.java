@@ -24,6 +24,11 @@
  */
 package org.helios.jzab.agent.net.passive;
 
+import java.net.SocketAddress;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.helios.jzab.agent.commands.CommandManager;
 import org.helios.jzab.agent.commands.ICommandProcessor;
 import org.jboss.netty.channel.Channel;
@@ -38,7 +43,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * <p>Title: PassiveRequestInvoker</p>
- * <p>Description: Decoder for passive agent command requests</p> 
+ * <p>Description: Decoder for passive agent command requests. When created with an executor, commands are executed on that executor
+ * rather than the I/O thread, and connections may pipeline several requests: replies are written in request order as they complete, 
+ * and reading from a connection is suspended while it has the maximum number of replies pending.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>org.helios.jzab.agent.net.passive.PassiveRequestInvoker</code></p>
@@ -47,15 +54,35 @@ import org.slf4j.LoggerFactory;
 public class PassiveRequestInvoker extends SimpleChannelUpstreamHandler {
 	/** Instance logger */
 	protected final Logger log = LoggerFactory.getLogger(getClass());
-	
+	/** The command stats callback */
 	protected final IListenerStats stats;
+	/** The command execution executor, or null to execute commands on the I/O thread */
+	protected final Executor executor;
+	/** The maximum number of pending replies per connection before reading is suspended */
+	protected final int maxPipelined;
+	
+	/** The default maximum number of pending replies per connection */
+	public static final int DEFAULT_MAX_PIPELINED = 16;
 
 	/**
-	 * Creates a new PassiveRequestInvoker
+	 * Creates a new PassiveRequestInvoker that executes commands on the I/O thread
 	 * @param stats the command stats callback
 	 */
 	public PassiveRequestInvoker(IListenerStats stats) {
+		this(stats, null, DEFAULT_MAX_PIPELINED);
+	}
+	
+	/**
+	 * Creates a new PassiveRequestInvoker
+	 * @param stats the command stats callback
+	 * @param executor The command execution executor, or null to execute commands on the I/O thread
+	 * @param maxPipelined The maximum number of pending replies per connection before reading is suspended
+	 */
+	public PassiveRequestInvoker(IListenerStats stats, Executor executor, int maxPipelined) {
+		if(maxPipelined<1) throw new IllegalArgumentException("Invalid max pipelined [" + maxPipelined + "]", new Throwable());
 		this.stats = stats;
+		this.executor = executor;
+		this.maxPipelined = maxPipelined;
 	}
 
 	/**
@@ -63,21 +90,140 @@ public class PassiveRequestInvoker extends SimpleChannelUpstreamHandler {
 	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
 	 */
 	@Override
-	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) 	throws Exception {
+	public void messageReceived(final ChannelHandlerContext ctx, MessageEvent e) 	throws Exception {
 		Object msg = e.getMessage();
 		if(msg instanceof CharSequence) {
-			log.debug("Processing Passive Request [{}]", msg);
-			stats.addCommandReceived(msg.toString());
-			String value = CommandManager.getInstance().processCommand(msg.toString());
-			if(!ICommandProcessor.COMMAND_NOT_SUPPORTED.equals(value)) {
-				log.info("Passive Request Result for [{}] was [{}]", msg, value);
+			final String command = msg.toString();
+			final Channel channel = e.getChannel();
+			if(executor==null) {
+				write(ctx, channel, execute(command, channel.getRemoteAddress()));
+			} else {
+				final ReplySequence sequence = getReplySequence(ctx);
+				final PendingReply reply = sequence.enqueue(channel);
+				Runnable task = new Runnable() {
+					public void run() {
+						String value;
+						try {
+							value = execute(command, channel.getRemoteAddress());
+						} catch (Exception ex) {
+							log.warn("Passive Request [{}] failed: [{}]", command, ex.toString());
+							value = ICommandProcessor.COMMAND_ERROR;
+						}
+						sequence.complete(reply, value, ctx, channel);
+					}
+				};
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException ree) {
+					log.debug("Passive execution saturated. Executing [{}] on the I/O thread", command);
+					task.run();
+				}
 			}
-			
-			Channel channel = e.getChannel();
-			ctx.sendDownstream(new DownstreamMessageEvent(channel, Channels.future(channel), value, channel.getRemoteAddress()));
 		}
 		super.messageReceived(ctx, e);
 	}
 	
+	/**
+	 * Executes a passive command
+	 * @param command The command to execute
+	 * @param remoteAddress The address of the requesting peer
+	 * @return the command result
+	 */
+	protected String execute(String command, SocketAddress remoteAddress) {
+		log.debug("Processing Passive Request [{}]", command);
+		long start = System.nanoTime();
+		String value = null;
+		try {
+			value = CommandManager.getInstance().processCommand(command);
+		} finally {
+			stats.addCommandReceived(command, remoteAddress, System.nanoTime()-start, 
+					value==null || ICommandProcessor.COMMAND_ERROR.equals(value) || ICommandProcessor.COMMAND_NOT_SUPPORTED.equals(value));
+		}
+		if(log.isDebugEnabled() && !ICommandProcessor.COMMAND_NOT_SUPPORTED.equals(value)) {
+			log.debug("Passive Request Result for [{}] was [{}]", command, value);
+		}
+		return value;
+	}
 	
+	/**
+	 * Writes a reply downstream
+	 * @param ctx The channel handler context
+	 * @param channel The channel to write to
+	 * @param value The reply
+	 */
+	protected void write(ChannelHandlerContext ctx, Channel channel, String value) {
+		ctx.sendDownstream(new DownstreamMessageEvent(channel, Channels.future(channel), value, channel.getRemoteAddress()));
+	}
+	
+	/**
+	 * Returns the reply sequence for the context's channel, creating it if necessary
+	 * @param ctx The channel handler context
+	 * @return the reply sequence
+	 */
+	protected ReplySequence getReplySequence(ChannelHandlerContext ctx) {
+		Object attachment = ctx.getAttachment();
+		if(attachment instanceof ReplySequence) return (ReplySequence)attachment;
+		ReplySequence sequence = new ReplySequence();
+		ctx.setAttachment(sequence);
+		return sequence;
+	}
+	
+	/**
+	 * <p>Title: PendingReply</p>
+	 * <p>Description: A reply slot for a request that has been received but not yet replied to</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.passive.PassiveRequestInvoker.PendingReply</code></p>
+	 */
+	protected static class PendingReply {
+		/** The reply value */
+		String value = null;
+		/** Indicates if the command has completed */
+		boolean done = false;
+	}
+	
+	/**
+	 * <p>Title: ReplySequence</p>
+	 * <p>Description: The pending replies for one connection in request order</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.passive.PassiveRequestInvoker.ReplySequence</code></p>
+	 */
+	protected class ReplySequence {
+		/** The pending replies in request order */
+		private final LinkedList<PendingReply> pending = new LinkedList<PendingReply>();
+		
+		/**
+		 * Adds a reply slot for a new request, suspending reads if the connection now has the maximum number of replies pending
+		 * @param channel The connection's channel
+		 * @return the reply slot
+		 */
+		synchronized PendingReply enqueue(Channel channel) {
+			PendingReply reply = new PendingReply();
+			pending.addLast(reply);
+			if(pending.size()>=maxPipelined && channel.isReadable()) {
+				channel.setReadable(false);
+			}
+			return reply;
+		}
+		
+		/**
+		 * Completes a reply and writes all the replies at the head of the sequence that are complete, 
+		 * resuming reads once the connection is below the maximum number of pending replies
+		 * @param reply The completed reply slot
+		 * @param value The reply value
+		 * @param ctx The channel handler context
+		 * @param channel The connection's channel
+		 */
+		synchronized void complete(PendingReply reply, String value, ChannelHandlerContext ctx, Channel channel) {
+			reply.value = value;
+			reply.done = true;
+			while(!pending.isEmpty() && pending.getFirst().done) {
+				write(ctx, channel, pending.removeFirst().value);
+			}
+			if(pending.size()<maxPipelined && !channel.isReadable() && channel.isOpen()) {
+				channel.setReadable(true);
+			}
+		}
+	}
 }
@@ -0,0 +1,50 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.routing;
+
+import java.util.Map;
+
+/**
+ * <p>Title: ResponseCorrelation</p>
+ * <p>Description: Defines a channel attachment that correlates the response read from a channel with the request written to it.
+ * Zabbix requests and responses carry no correlation id, so a channel has at most one request in flight and the attachment
+ * describes how the next response should be handled.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.routing.ResponseCorrelation</code></p>
+ */
+public interface ResponseCorrelation {
+	/**
+	 * Returns the routing key/value pairs for a request that is opaque (not json) and cannot provide its own routing keys
+	 * @return the routing key/value pairs or null if the request provides its own
+	 */
+	public Map<String, String> getRoutingOverride();
+	
+	/**
+	 * Indicates if the response is consumed directly by the requester, in which case it is not routed
+	 * @return true if the response is consumed by the requester, false if it should be routed
+	 */
+	public boolean isConsumed();
+}
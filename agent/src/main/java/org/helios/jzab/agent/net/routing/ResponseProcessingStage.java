@@ -0,0 +1,357 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.routing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.helios.jzab.agent.internal.jmx.ThreadPoolFactory;
+import org.helios.jzab.agent.util.LatencyHistogram;
+import org.helios.jzab.agent.util.StripedLongCounter;
+import org.helios.jzab.util.JMXHelper;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: ResponseProcessingStage</p>
+ * <p>Description: Delivers routed zabbix server responses to their {@link JSONResponseHandler}s. Each response is dispatched once:
+ * {@link InlineResponseHandler}s are invoked directly on the calling I/O thread and all the other matching handlers are invoked 
+ * in a single task on a dedicated, bounded thread pool so that large responses do not queue behind check collection work.
+ * If the stage queue is full, the response is processed on the calling thread, which pushes back on the channel.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.routing.ResponseProcessingStage</code></p>
+ */
+public class ResponseProcessingStage implements ResponseProcessingStageMXBean {
+	/** Instance logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	/** The executor processing queued responses */
+	protected final ThreadPoolExecutor executor;
+	/** Handler latency in us. */
+	protected final LatencyHistogram handlerLatency = new LatencyHistogram();
+	/** Queue wait in us. */
+	protected final LatencyHistogram queueWait = new LatencyHistogram();
+	/** The number of dispatched responses */
+	protected final StripedLongCounter dispatched = new StripedLongCounter();
+	/** The number of inline deliveries */
+	protected final StripedLongCounter inlineDeliveries = new StripedLongCounter();
+	/** The number of queued deliveries */
+	protected final StripedLongCounter queuedDeliveries = new StripedLongCounter();
+	/** The number of rejected dispatches */
+	protected final StripedLongCounter rejected = new StripedLongCounter();
+	/** The number of failed deliveries */
+	protected final StripedLongCounter failures = new StripedLongCounter();
+	/** The peak queue depth */
+	protected final AtomicInteger peakQueueDepth = new AtomicInteger(0);
+	
+	/** The name of the dedicated response processing thread pool */
+	public static final String POOL_NAME = "ResponseProcessor";
+	/** The name of the thread pool used when the dedicated pool is not configured */
+	public static final String FALLBACK_POOL_NAME = "TaskExecutor";
+	/** The stage JMX ObjectName */
+	public static final ObjectName OBJECT_NAME = JMXHelper.objectName("org.helios.jzab.agent.net.routing:service=ResponseProcessingStage");
+	
+	/**
+	 * Creates a new ResponseProcessingStage and registers its management interface
+	 * @param executor The executor processing queued responses
+	 */
+	public ResponseProcessingStage(ThreadPoolExecutor executor) {
+		if(executor==null) throw new IllegalArgumentException("The passed executor was null", new Throwable());
+		this.executor = executor;
+		JMXHelper.registerMBean(JMXHelper.getHeliosMBeanServer(), OBJECT_NAME, this);
+		log.info("Created ResponseProcessingStage on pool [{}]", getPoolName());
+	}
+	
+	/**
+	 * Creates a new ResponseProcessingStage on the dedicated response processing pool, 
+	 * or on the task executor if the dedicated pool has not been configured
+	 */
+	public ResponseProcessingStage() {
+		this(defaultExecutor());
+	}
+	
+	/**
+	 * Returns the dedicated response processing pool, or the task executor if the dedicated pool has not been configured
+	 * @return the default stage executor
+	 */
+	protected static ThreadPoolExecutor defaultExecutor() {
+		try {
+			return ThreadPoolFactory.getInstance(POOL_NAME);
+		} catch (IllegalStateException ise) {
+			LoggerFactory.getLogger(ResponseProcessingStage.class).warn("No [{}] thread pool configured. Responses will be processed on [{}]", POOL_NAME, FALLBACK_POOL_NAME);
+			return ThreadPoolFactory.getInstance(FALLBACK_POOL_NAME);
+		}
+	}
+	
+	/**
+	 * Dispatches a response to the handlers of the passed routes
+	 * @param response The response to dispatch
+	 * @param routes The routes matching the response
+	 */
+	public void dispatch(final JSONObject response, Collection<RoutingObjectName> routes) {
+		List<Delivery> queued = null;
+		for(RoutingObjectName ron: routes) {
+			for(JSONResponseHandler responseHandler: ron) {
+				if(responseHandler instanceof InlineResponseHandler) {
+					inlineDeliveries.increment();
+					deliver(ron, responseHandler, response);
+				} else {
+					if(queued==null) queued = new ArrayList<Delivery>(2);
+					queued.add(new Delivery(ron, responseHandler));
+				}
+			}
+		}
+		dispatched.increment();
+		if(queued==null) return;
+		final List<Delivery> deliveries = queued;
+		final long enqueueTime = System.nanoTime();
+		Runnable task = new Runnable() {
+			public void run() {
+				queueWait.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()-enqueueTime));
+				for(Delivery delivery: deliveries) {
+					queuedDeliveries.increment();
+					deliver(delivery.route, delivery.handler, response);
+				}
+			}
+		};
+		try {
+			executor.execute(task);
+			int depth = executor.getQueue().size();
+			int peak = peakQueueDepth.get();
+			while(depth>peak) {
+				if(peakQueueDepth.compareAndSet(peak, depth)) break;
+				peak = peakQueueDepth.get();
+			}
+		} catch (RejectedExecutionException ree) {
+			rejected.increment();
+			log.debug("Response processing stage saturated. Processing response on the calling thread.");
+			task.run();
+		}
+	}
+	
+	/**
+	 * Delivers a response to a handler, recording the handler latency
+	 * @param ron The route that matched the handler
+	 * @param responseHandler The handler
+	 * @param response The response
+	 */
+	protected void deliver(RoutingObjectName ron, JSONResponseHandler responseHandler, JSONObject response) {
+		final long start = System.nanoTime();
+		try {
+			log.debug("Passing JSONResponse to [{}] for Routing [{}]", responseHandler, ron);
+			responseHandler.jsonResponse(ron, response);
+		} catch (Exception e) {
+			failures.increment();
+			log.warn("Failed to process json response for routing [{}] on handler [{}]", ron, responseHandler);
+			log.debug("Handler failed to process json response [{}]", responseHandler, e);
+		} finally {
+			handlerLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()-start));
+		}
+	}
+	
+	/**
+	 * <p>Title: Delivery</p>
+	 * <p>Description: A pending delivery of a response to a handler</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.routing.ResponseProcessingStage.Delivery</code></p>
+	 */
+	private static final class Delivery {
+		/** The route that matched the handler */
+		final RoutingObjectName route;
+		/** The handler */
+		final JSONResponseHandler handler;
+		
+		/**
+		 * Creates a new Delivery
+		 * @param route The route that matched the handler
+		 * @param handler The handler
+		 */
+		Delivery(RoutingObjectName route, JSONResponseHandler handler) {
+			this.route = route;
+			this.handler = handler;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getPoolName()
+	 */
+	@Override
+	public String getPoolName() {
+		return executor instanceof ThreadPoolFactory ? ((ThreadPoolFactory)executor).getName() : executor.getClass().getSimpleName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getPeakQueueDepth()
+	 */
+	@Override
+	public int getPeakQueueDepth() {
+		return peakQueueDepth.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getDispatchedResponses()
+	 */
+	@Override
+	public long getDispatchedResponses() {
+		return dispatched.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getInlineDeliveries()
+	 */
+	@Override
+	public long getInlineDeliveries() {
+		return inlineDeliveries.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getQueuedDeliveries()
+	 */
+	@Override
+	public long getQueuedDeliveries() {
+		return queuedDeliveries.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getRejectedDispatches()
+	 */
+	@Override
+	public long getRejectedDispatches() {
+		return rejected.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getFailedDeliveries()
+	 */
+	@Override
+	public long getFailedDeliveries() {
+		return failures.sum();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getHandlerLatencyMean()
+	 */
+	@Override
+	public long getHandlerLatencyMean() {
+		return handlerLatency.getMean();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getHandlerLatencyP99()
+	 */
+	@Override
+	public long getHandlerLatencyP99() {
+		return handlerLatency.getPercentile(99);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getHandlerLatencyMax()
+	 */
+	@Override
+	public long getHandlerLatencyMax() {
+		return handlerLatency.getMax();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getHandlerLatencyHistogram()
+	 */
+	@Override
+	public Map<String, Long> getHandlerLatencyHistogram() {
+		return handlerLatency.getBuckets();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getQueueWaitMean()
+	 */
+	@Override
+	public long getQueueWaitMean() {
+		return queueWait.getMean();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getQueueWaitP99()
+	 */
+	@Override
+	public long getQueueWaitP99() {
+		return queueWait.getPercentile(99);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#getQueueWaitHistogram()
+	 */
+	@Override
+	public Map<String, Long> getQueueWaitHistogram() {
+		return queueWait.getBuckets();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean#resetMetrics()
+	 */
+	@Override
+	public void resetMetrics() {
+		handlerLatency.reset();
+		queueWait.reset();
+		dispatched.reset();
+		inlineDeliveries.reset();
+		queuedDeliveries.reset();
+		rejected.reset();
+		failures.reset();
+		peakQueueDepth.set(0);
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.routing;
+
+import java.util.Map;
+
+/**
+ * <p>Title: ResponseProcessingStageMXBean</p>
+ * <p>Description: JMX management interface for the {@link ResponseProcessingStage}. Latencies are in microseconds.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.routing.ResponseProcessingStageMXBean</code></p>
+ */
+public interface ResponseProcessingStageMXBean {
+	/**
+	 * Returns the name of the thread pool processing queued responses
+	 * @return the thread pool name
+	 */
+	public String getPoolName();
+	
+	/**
+	 * Returns the number of responses waiting in the stage queue
+	 * @return the queue depth
+	 */
+	public int getQueueDepth();
+	
+	/**
+	 * Returns the highest queue depth observed at dispatch since the last reset
+	 * @return the peak queue depth
+	 */
+	public int getPeakQueueDepth();
+	
+	/**
+	 * Returns the number of routed responses dispatched
+	 * @return the number of dispatched responses
+	 */
+	public long getDispatchedResponses();
+	
+	/**
+	 * Returns the number of handler invocations made inline on the I/O thread
+	 * @return the number of inline deliveries
+	 */
+	public long getInlineDeliveries();
+	
+	/**
+	 * Returns the number of handler invocations made on the stage threads
+	 * @return the number of queued deliveries
+	 */
+	public long getQueuedDeliveries();
+	
+	/**
+	 * Returns the number of responses that could not be queued because the stage was saturated, and were processed by the I/O thread instead
+	 * @return the number of rejected dispatches
+	 */
+	public long getRejectedDispatches();
+	
+	/**
+	 * Returns the number of handler invocations that threw an exception
+	 * @return the number of failed deliveries
+	 */
+	public long getFailedDeliveries();
+	
+	/**
+	 * Returns the mean handler latency
+	 * @return the mean handler latency in us.
+	 */
+	public long getHandlerLatencyMean();
+	
+	/**
+	 * Returns the 99th percentile handler latency
+	 * @return the 99th percentile handler latency in us.
+	 */
+	public long getHandlerLatencyP99();
+	
+	/**
+	 * Returns the maximum handler latency
+	 * @return the maximum handler latency in us.
+	 */
+	public long getHandlerLatencyMax();
+	
+	/**
+	 * Returns the handler latency histogram
+	 * @return the handler latency bucket counts keyed by bucket upper bound in us.
+	 */
+	public Map<String, Long> getHandlerLatencyHistogram();
+	
+	/**
+	 * Returns the mean time queued responses waited before processing started
+	 * @return the mean queue wait in us.
+	 */
+	public long getQueueWaitMean();
+	
+	/**
+	 * Returns the 99th percentile time queued responses waited before processing started
+	 * @return the 99th percentile queue wait in us.
+	 */
+	public long getQueueWaitP99();
+	
+	/**
+	 * Returns the queue wait histogram
+	 * @return the queue wait bucket counts keyed by bucket upper bound in us.
+	 */
+	public Map<String, Long> getQueueWaitHistogram();
+	
+	/**
+	 * Resets the stage metrics
+	 */
+	public void resetMetrics();
+}
@@ -0,0 +1,217 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.net.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Title: RoutingIndex</p>
+ * <p>Description: A compiled index of registered {@link RoutingObjectName}s that resolves the routes matching a set of response properties 
+ * with hashed lookups, without building or pattern matching {@link javax.management.ObjectName}s.
+ * Routes are grouped by their key set. A wildcard route matches any properties containing its key/values, 
+ * a non wildcard route only properties with exactly its key/values. The index is copy on write: registrations are rare, lookups are lock free.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.net.routing.RoutingIndex</code></p>
+ */
+public class RoutingIndex {
+	/** The current route groups */
+	private volatile RouteGroup[] groups = new RouteGroup[0];
+	
+	/**
+	 * Adds a route to the index
+	 * @param route The route to add
+	 */
+	public synchronized void add(RoutingObjectName route) {
+		if(route==null) throw new IllegalArgumentException("The passed route was null", new Throwable());
+		Hashtable<String, String> props = route.getKeyPropertyList();
+		String[] keys = props.keySet().toArray(new String[props.size()]);
+		Arrays.sort(keys);
+		boolean wildcard = route.isPropertyListPattern();
+		String[] values = new String[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			values[i] = props.get(keys[i]);
+		}
+		RouteGroup[] current = groups;
+		RouteGroup[] updated = new RouteGroup[current.length];
+		RouteGroup target = null;
+		for(int i = 0; i < current.length; i++) {
+			if(current[i].wildcard==wildcard && Arrays.equals(current[i].keys, keys)) {
+				target = current[i].with(new ValueKey(values), route);
+				updated[i] = target;
+			} else {
+				updated[i] = current[i];
+			}
+		}
+		if(target==null) {
+			updated = Arrays.copyOf(updated, current.length+1);
+			updated[current.length] = new RouteGroup(keys, wildcard, new HashMap<ValueKey, RoutingObjectName[]>()).with(new ValueKey(values), route);
+		}
+		groups = updated;
+	}
+	
+	/**
+	 * Returns the routes matching the passed properties
+	 * @param props The properties to match
+	 * @return a collection of matching routes
+	 */
+	public Collection<RoutingObjectName> lookup(Map<String, String> props) {
+		RouteGroup[] current = groups;
+		Collection<RoutingObjectName> results = null;
+		for(RouteGroup group: current) {
+			RoutingObjectName[] matches = group.lookup(props);
+			if(matches==null) continue;
+			if(results==null) {
+				results = Arrays.asList(matches);
+			} else {
+				if(!(results instanceof ArrayList)) results = new ArrayList<RoutingObjectName>(results);
+				results.addAll(Arrays.asList(matches));
+			}
+		}
+		if(results==null) return Collections.emptySet();
+		return results;
+	}
+	
+	/**
+	 * Returns the number of key set groups in the index
+	 * @return the number of key set groups
+	 */
+	public int getGroupCount() {
+		return groups.length;
+	}
+	
+	/**
+	 * <p>Title: RouteGroup</p>
+	 * <p>Description: An immutable group of routes sharing the same key set and wildcard flag, keyed by their values</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.routing.RoutingIndex.RouteGroup</code></p>
+	 */
+	private static class RouteGroup {
+		/** The sorted keys of the group */
+		final String[] keys;
+		/** True if the group's routes are wildcards */
+		final boolean wildcard;
+		/** The routes keyed by their values */
+		final Map<ValueKey, RoutingObjectName[]> routes;
+		
+		/**
+		 * Creates a new RouteGroup
+		 * @param keys The sorted keys of the group
+		 * @param wildcard True if the group's routes are wildcards
+		 * @param routes The routes keyed by their values
+		 */
+		RouteGroup(String[] keys, boolean wildcard, Map<ValueKey, RoutingObjectName[]> routes) {
+			this.keys = keys;
+			this.wildcard = wildcard;
+			this.routes = routes;
+		}
+		
+		/**
+		 * Returns a copy of this group with the passed route added
+		 * @param values The route's values
+		 * @param route The route
+		 * @return the new group
+		 */
+		RouteGroup with(ValueKey values, RoutingObjectName route) {
+			Map<ValueKey, RoutingObjectName[]> copy = new HashMap<ValueKey, RoutingObjectName[]>(routes);
+			RoutingObjectName[] existing = copy.get(values);
+			if(existing==null) {
+				copy.put(values, new RoutingObjectName[]{route});
+			} else {
+				List<RoutingObjectName> list = new ArrayList<RoutingObjectName>(Arrays.asList(existing));
+				if(!list.contains(route)) list.add(route);
+				copy.put(values, list.toArray(new RoutingObjectName[list.size()]));
+			}
+			return new RouteGroup(keys, wildcard, copy);
+		}
+		
+		/**
+		 * Returns the routes in this group matching the passed properties
+		 * @param props The properties to match
+		 * @return the matching routes or null if there are none
+		 */
+		RoutingObjectName[] lookup(Map<String, String> props) {
+			if(!wildcard && props.size()!=keys.length) return null;
+			String[] values = new String[keys.length];
+			for(int i = 0; i < keys.length; i++) {
+				values[i] = props.get(keys[i]);
+				if(values[i]==null) return null;
+			}
+			return routes.get(new ValueKey(values));
+		}
+	}
+	
+	/**
+	 * <p>Title: ValueKey</p>
+	 * <p>Description: A hash key over an ordered array of route values</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.net.routing.RoutingIndex.ValueKey</code></p>
+	 */
+	private static class ValueKey {
+		/** The values */
+		final String[] values;
+		/** The precomputed hash code */
+		final int hashCode;
+		
+		/**
+		 * Creates a new ValueKey
+		 * @param values The values
+		 */
+		ValueKey(String[] values) {
+			this.values = values;
+			this.hashCode = Arrays.hashCode(values);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof ValueKey)) return false;
+			ValueKey other = (ValueKey)obj;
+			return hashCode==other.hashCode && Arrays.equals(values, other.values);
+		}
+	}
+}
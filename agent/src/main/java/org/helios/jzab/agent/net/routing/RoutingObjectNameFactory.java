@@ -53,6 +53,9 @@ public class RoutingObjectNameFactory {
 	/** A cache of register routing objects */
 	private final Set<RoutingObjectName> routes = new CopyOnWriteArraySet<RoutingObjectName>();
 	
+	/** The compiled index of registered routes used to resolve response routing on the hot path */
+	private final RoutingIndex routingIndex = new RoutingIndex();
+	
 	/** The domain of the object routing object names */
 	public static final String DOMAIN = "org.helios.jzab.agent.net.routing";
 	
@@ -121,13 +124,14 @@ public class RoutingObjectNameFactory {
 	}
 	
 	/**
-	 * Returns a collection of matching routing objects
-	 * @param props The properties used to build a routing object to match against
+	 * Returns a collection of matching routing objects, resolved through the compiled routing index 
+	 * without creating or registering a routing object for the passed properties
+	 * @param props The properties to match against
 	 * @return a collection of matching routing objects
 	 */
 	public Collection<RoutingObjectName> lookup(Map<String, String> props) {
 		if(props==null || props.isEmpty()) throw new IllegalArgumentException("The passed property map was null or empty", new Throwable());
-		return lookup(getRoute(props));
+		return routingIndex.lookup(props);
 	}
 	
 	
@@ -148,6 +152,7 @@ public class RoutingObjectNameFactory {
 				if(realOn==null) {
 					routingObjects.put(key, on);
 					routes.add(on);
+					routingIndex.add(on);
 					realOn = on;
 				}
 			}
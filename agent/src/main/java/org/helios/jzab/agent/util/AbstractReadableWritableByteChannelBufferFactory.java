@@ -45,5 +45,15 @@ public abstract class AbstractReadableWritableByteChannelBufferFactory implement
 	public ReadableWritableByteChannelBuffer newInstance(int size) {
 		return newInstance(ByteOrder.nativeOrder(), size);
 	}
+	
+	/**
+	 * No Op. Unpooled buffers are reclaimed by the garbage collector.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.IReadableWritableByteChannelBufferFactory#release(org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer)
+	 */
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		
+	}
 
 }
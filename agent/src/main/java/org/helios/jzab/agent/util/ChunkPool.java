@@ -0,0 +1,155 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.util;
+
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * <p>Title: ChunkPool</p>
+ * <p>Description: A bounded pool of fixed size channel buffers. Chunks are allocated when the pool is empty
+ * and released chunks are discarded once the pool holds its maximum number of idle chunks.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.util.ChunkPool</code></p>
+ */
+public class ChunkPool {
+	/** The size of each chunk in bytes */
+	protected final int chunkSize;
+	/** Indicates if chunks are allocated in direct memory */
+	protected final boolean direct;
+	/** The byte order of the chunks */
+	protected final ByteOrder order;
+	/** The maximum number of idle chunks retained */
+	protected final int maxPooled;
+	/** The idle chunks */
+	protected final Queue<ChannelBuffer> idle = new ConcurrentLinkedQueue<ChannelBuffer>();
+	/** The number of idle chunks */
+	protected final AtomicInteger idleCount = new AtomicInteger(0);
+	
+	/** The default chunk size */
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+	/** The default maximum number of idle chunks retained */
+	public static final int DEFAULT_MAX_POOLED = 256;
+	
+	/**
+	 * Creates a new ChunkPool
+	 * @param chunkSize The size of each chunk in bytes
+	 * @param direct true to allocate chunks in direct memory, false for heap
+	 * @param order The byte order of the chunks
+	 * @param maxPooled The maximum number of idle chunks retained
+	 */
+	public ChunkPool(int chunkSize, boolean direct, ByteOrder order, int maxPooled) {
+		if(chunkSize<1) throw new IllegalArgumentException("Invalid chunk size [" + chunkSize + "]", new Throwable());
+		if(order==null) throw new IllegalArgumentException("The passed byte order was null", new Throwable());
+		this.chunkSize = chunkSize;
+		this.direct = direct;
+		this.order = order;
+		this.maxPooled = maxPooled;
+	}
+	
+	/**
+	 * Acquires a cleared chunk from the pool, allocating a new one if the pool is empty
+	 * @return a cleared chunk
+	 */
+	public ChannelBuffer acquire() {
+		ChannelBuffer chunk = poll();
+		if(chunk!=null) return chunk;
+		return allocate();
+	}
+	
+	/**
+	 * Acquires an idle chunk from the pool without allocating
+	 * @return a cleared chunk or null if the pool is empty
+	 */
+	public ChannelBuffer poll() {
+		ChannelBuffer chunk = idle.poll();
+		if(chunk!=null) {
+			idleCount.decrementAndGet();
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Allocates a new chunk, bypassing the pool
+	 * @return a new chunk
+	 */
+	public ChannelBuffer allocate() {
+		return direct ? ChannelBuffers.directBuffer(order, chunkSize) : ChannelBuffers.buffer(order, chunkSize);
+	}
+	
+	/**
+	 * Returns a chunk to the pool
+	 * @param chunk The chunk to release
+	 * @return true if the chunk was pooled, false if it was discarded because it did not match this pool or the pool was full
+	 */
+	public boolean release(ChannelBuffer chunk) {
+		if(chunk==null || chunk.capacity()!=chunkSize || chunk.order()!=order || chunk.isDirect()!=direct) return false;
+		if(idleCount.incrementAndGet()>maxPooled) {
+			idleCount.decrementAndGet();
+			return false;
+		}
+		chunk.clear();
+		idle.offer(chunk);
+		return true;
+	}
+	
+	/**
+	 * Returns the size of each chunk in bytes
+	 * @return the chunk size
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * Returns the byte order of the chunks
+	 * @return the byte order of the chunks
+	 */
+	public ByteOrder getOrder() {
+		return order;
+	}
+	
+	/**
+	 * Indicates if chunks are allocated in direct memory
+	 * @return true if chunks are direct, false if heap
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+	
+	/**
+	 * Returns the number of idle chunks in the pool
+	 * @return the number of idle chunks
+	 */
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+}
@@ -49,4 +49,10 @@ public interface IReadableWritableByteChannelBufferFactory {
 	 */
 	public ReadableWritableByteChannelBuffer newInstance(int size);
 	
+	/**
+	 * Releases a buffer created by this factory once it is no longer in use
+	 * @param buffer The buffer to release
+	 */
+	public void release(ReadableWritableByteChannelBuffer buffer);
+	
 }
@@ -0,0 +1,221 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: LatencyHistogram</p>
+ * <p>Description: A lock free, fixed memory histogram of non-negative long values using power of two buckets, each optionally split into 
+ * <code>2<sup>precision</sup></code> linear sub-buckets in the manner of an HDR histogram. Percentiles are reported as the upper bound of the bucket they fall in,
+ * so at the default precision of 0 they are within a factor of 2 of the true value, and at a precision of <code>p</code> they are within <code>1/2<sup>p</sup></code> of it.
+ * The histogram is unit-less: values are recorded and reported in whatever unit the caller uses. Reads are not atomic with respect to concurrent updates.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.util.LatencyHistogram</code></p>
+ */
+public class LatencyHistogram {
+	/** The number of sub-bucket bits */
+	private final int precision;
+	/** The number of sub-buckets per power of two */
+	private final int subBuckets;
+	/** The number of buckets. The last bucket holds all values of 2<sup>MAX_MAGNITUDE</sup> and above. */
+	private final int bucketCount;
+	/** The bucket counts */
+	private final AtomicLongArray buckets;
+	/** The number of recorded values */
+	private final StripedLongCounter count = new StripedLongCounter();
+	/** The sum of recorded values */
+	private final StripedLongCounter sum = new StripedLongCounter();
+	/** The largest recorded value */
+	private final AtomicLong max = new AtomicLong(0);
+	
+	/** The number of buckets at the default precision. The last bucket holds all values of 2<sup>MAX_MAGNITUDE</sup> and above. */
+	public static final int BUCKETS = 40;
+	/** The power of two above which values are not distinguished */
+	public static final int MAX_MAGNITUDE = BUCKETS-2;
+	/** The maximum precision in sub-bucket bits */
+	public static final int MAX_PRECISION = 8;
+	
+	/**
+	 * Creates a new LatencyHistogram with power of two buckets
+	 */
+	public LatencyHistogram() {
+		this(0);
+	}
+	
+	/**
+	 * Creates a new LatencyHistogram
+	 * @param precision The number of sub-bucket bits, from 0 for power of two buckets up to {@link #MAX_PRECISION}
+	 */
+	public LatencyHistogram(int precision) {
+		if(precision<0 || precision>MAX_PRECISION) throw new IllegalArgumentException("Invalid precision [" + precision + "]", new Throwable());
+		this.precision = precision;
+		subBuckets = 1 << precision;
+		bucketCount = (2 + MAX_MAGNITUDE - precision - 1) * subBuckets + 1;
+		buckets = new AtomicLongArray(bucketCount);
+	}
+	
+	/**
+	 * Records a value
+	 * @param value The value to record. Negative values are recorded as zero.
+	 */
+	public void record(long value) {
+		if(value<0) value = 0;
+		buckets.incrementAndGet(bucketFor(value));
+		count.increment();
+		sum.add(value);
+		long m = max.get();
+		while(value>m) {
+			if(max.compareAndSet(m, value)) break;
+			m = max.get();
+		}
+	}
+	
+	/**
+	 * Returns the number of recorded values
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Returns the mean of the recorded values
+	 * @return the mean or 0 if no values have been recorded
+	 */
+	public long getMean() {
+		long c = count.sum();
+		return c==0 ? 0 : sum.sum()/c;
+	}
+	
+	/**
+	 * Returns the largest recorded value
+	 * @return the largest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the upper bound of the bucket containing the passed percentile, capped at the largest recorded value
+	 * @param percentile The percentile to return, between 0 and 100
+	 * @return the percentile value or 0 if no values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		if(percentile<0 || percentile>100) throw new IllegalArgumentException("Invalid percentile [" + percentile + "]", new Throwable());
+		long[] snapshot = new long[bucketCount];
+		long total = 0;
+		for(int i = 0; i < bucketCount; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if(total==0) return 0;
+		long target = (long)Math.ceil(total * percentile / 100D);
+		if(target<1) target = 1;
+		long cumulative = 0;
+		for(int i = 0; i < bucketCount; i++) {
+			cumulative += snapshot[i];
+			if(cumulative>=target) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	/**
+	 * Returns the non-empty bucket counts keyed by a label of the bucket's upper bound
+	 * @return a map of bucket counts keyed by <code>&lt;=upper-bound</code>
+	 */
+	public Map<String, Long> getBuckets() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for(int i = 0; i < bucketCount; i++) {
+			long c = buckets.get(i);
+			if(c>0) {
+				map.put(i==bucketCount-1 ? ">" + upperBound(i-1) : "<=" + upperBound(i), c);
+			}
+		}
+		return map;
+	}
+	
+	/**
+	 * Resets the histogram
+	 */
+	public void reset() {
+		for(int i = 0; i < bucketCount; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+	
+	/**
+	 * Returns the bucket index for the passed value
+	 * @param value The value
+	 * @return the bucket index
+	 */
+	private int bucketFor(long value) {
+		if(value < (subBuckets << 1)) return (int)value;
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		if(magnitude >= MAX_MAGNITUDE) return bucketCount-1;
+		int shift = magnitude - precision;
+		int sub = (int)(value >>> shift) - subBuckets;
+		return ((shift + 1) * subBuckets) + sub;
+	}
+	
+	/**
+	 * Returns the inclusive upper bound of the passed bucket
+	 * @param bucket The bucket index
+	 * @return the upper bound
+	 */
+	private long upperBound(int bucket) {
+		if(bucket==bucketCount-1) return Long.MAX_VALUE;
+		if(bucket < (subBuckets << 1)) return bucket;
+		int shift = bucket/subBuckets - 1;
+		int sub = bucket%subBuckets;
+		return ((long)(subBuckets + sub + 1) << shift) - 1;
+	}
+	
+	/**
+	 * Returns the number of sub-bucket bits
+	 * @return the number of sub-bucket bits
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("LatencyHistogram [count=%s, mean=%s, p50=%s, p99=%s, max=%s]", getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+	}
+}
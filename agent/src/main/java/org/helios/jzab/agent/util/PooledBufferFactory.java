@@ -0,0 +1,399 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.helios.jzab.util.JMXHelper;
+import org.jboss.netty.buffer.AbstractChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DynamicChannelBuffer;
+
+/**
+ * <p>Title: PooledBufferFactory</p>
+ * <p>Description: A {@link IReadableWritableByteChannelBufferFactory} that recycles buffers through a bounded pool of power of 2 size classes.
+ * Each created buffer is a dynamic buffer backed by a lease which acquires every backing buffer the dynamic buffer allocates as it grows.
+ * When the buffer grows, the backing buffer it outgrew is returned to the pool once its content has been copied to the larger one,
+ * and the remaining leased buffers are returned when the created buffer is released through {@link #release(ReadableWritableByteChannelBuffer)}.
+ * Requests for other than the pool's byte order or larger than the largest size class are allocated unpooled.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.util.PooledBufferFactory</code></p>
+ */
+public class PooledBufferFactory extends AbstractReadableWritableByteChannelBufferFactory implements PooledBufferFactoryMXBean {
+	/** The size class pools, smallest first */
+	protected final ChunkPool[] sizeClasses;
+	/** Indicates if the pool allocates direct buffers */
+	protected final boolean direct;
+	/** The byte order of pooled buffers */
+	protected final ByteOrder order;
+	/** The number of requests served from the pool */
+	protected final AtomicLong hits = new AtomicLong(0L);
+	/** The number of requests that required an allocation */
+	protected final AtomicLong misses = new AtomicLong(0L);
+	/** The number of buffers handed out and not yet released */
+	protected final AtomicLong outstanding = new AtomicLong(0L);
+	/** The number of released buffers that were not pooled */
+	protected final AtomicLong discards = new AtomicLong(0L);
+	
+	/** The smallest size class */
+	public static final int MIN_SIZE_CLASS = 4096;
+	/** The largest size class */
+	public static final int MAX_SIZE_CLASS = 4096 * 1024;
+	/** The maximum number of idle bytes retained for each size class */
+	public static final int MAX_IDLE_BYTES_PER_CLASS = MAX_SIZE_CLASS * 2;
+	
+	/**
+	 * Creates a new PooledBufferFactory and registers its management interface
+	 * @param name The name of the pool, used in the JMX ObjectName
+	 * @param direct true to pool direct buffers, false for heap
+	 * @param order The byte order of the pooled buffers
+	 */
+	public PooledBufferFactory(String name, boolean direct, ByteOrder order) {
+		this.direct = direct;
+		this.order = order;
+		List<ChunkPool> pools = new ArrayList<ChunkPool>();
+		for(int size = MIN_SIZE_CLASS; size <= MAX_SIZE_CLASS; size <<= 1) {
+			pools.add(new ChunkPool(size, direct, order, MAX_IDLE_BYTES_PER_CLASS/size));
+		}
+		sizeClasses = pools.toArray(new ChunkPool[pools.size()]);
+		JMXHelper.registerMBean(
+				JMXHelper.getHeliosMBeanServer(), 
+				JMXHelper.objectName("org.helios.jzab.agent.util:service=BufferPool,name=" + name), this);
+	}
+	
+	/**
+	 * Creates a new dynamic buffer whose backing buffers are leased from this pool
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.IReadableWritableByteChannelBufferFactory#newInstance(java.nio.ByteOrder, int)
+	 */
+	@Override
+	public ReadableWritableByteChannelBuffer newInstance(ByteOrder order, int size) {
+		return new ReadableWritableByteChannelBuffer(new PooledDynamicBuffer(order, size, new Lease(order)));
+	}
+	
+	/**
+	 * Returns all the backing buffers leased for the passed buffer to the pool. The buffer must not be used after this call.
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.AbstractReadableWritableByteChannelBufferFactory#release(org.helios.jzab.agent.util.ReadableWritableByteChannelBuffer)
+	 */
+	@Override
+	public void release(ReadableWritableByteChannelBuffer buffer) {
+		if(buffer==null) return;
+		if(buffer.factory() instanceof Lease) {
+			Lease lease = (Lease)buffer.factory();
+			if(lease.getPool()==this) lease.release();
+		}
+	}
+	
+	/**
+	 * Acquires a buffer of at least the passed capacity
+	 * @param order The requested byte order
+	 * @param capacity The minimum capacity
+	 * @return a cleared buffer
+	 */
+	protected ChannelBuffer acquire(ByteOrder order, int capacity) {
+		outstanding.incrementAndGet();
+		ChunkPool pool = order==this.order ? sizeClass(capacity) : null;
+		if(pool==null) {
+			misses.incrementAndGet();
+			return direct ? ChannelBuffers.directBuffer(order, capacity) : ChannelBuffers.buffer(order, capacity);
+		}
+		ChannelBuffer buffer = pool.poll();
+		if(buffer!=null) {
+			hits.incrementAndGet();
+			return buffer;
+		}
+		misses.incrementAndGet();
+		return pool.allocate();
+	}
+	
+	/**
+	 * Returns a buffer to its size class pool
+	 * @param buffer The buffer to return
+	 */
+	protected void recycle(ChannelBuffer buffer) {
+		outstanding.decrementAndGet();
+		ChunkPool pool = sizeClass(buffer.capacity());
+		if(pool==null || !pool.release(buffer)) {
+			discards.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Returns the smallest size class pool that can satisfy the passed capacity
+	 * @param capacity The required capacity
+	 * @return the size class pool or null if the capacity exceeds the largest size class
+	 */
+	protected ChunkPool sizeClass(int capacity) {
+		for(ChunkPool pool: sizeClasses) {
+			if(pool.getChunkSize()>=capacity) return pool;
+		}
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getHits()
+	 */
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getMisses()
+	 */
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getOutstanding()
+	 */
+	@Override
+	public long getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getDiscards()
+	 */
+	@Override
+	public long getDiscards() {
+		return discards.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getIdleBuffers()
+	 */
+	@Override
+	public int getIdleBuffers() {
+		int idle = 0;
+		for(ChunkPool pool: sizeClasses) {
+			idle += pool.getIdleCount();
+		}
+		return idle;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getIdleBytes()
+	 */
+	@Override
+	public long getIdleBytes() {
+		long bytes = 0L;
+		for(ChunkPool pool: sizeClasses) {
+			bytes += ((long)pool.getIdleCount()) * pool.getChunkSize();
+		}
+		return bytes;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#getIdleCounts()
+	 */
+	@Override
+	public Map<Integer, Integer> getIdleCounts() {
+		Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
+		for(ChunkPool pool: sizeClasses) {
+			map.put(pool.getChunkSize(), pool.getIdleCount());
+		}
+		return map;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#isDirect()
+	 */
+	@Override
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.jzab.agent.util.PooledBufferFactoryMXBean#resetCounters()
+	 */
+	@Override
+	public void resetCounters() {
+		hits.set(0L);
+		misses.set(0L);
+		discards.set(0L);
+	}
+	
+	/**
+	 * <p>Title: Lease</p>
+	 * <p>Description: The channel buffer factory behind a single pooled dynamic buffer which tracks every backing buffer it acquires</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.util.PooledBufferFactory.Lease</code></p>
+	 */
+	protected class Lease extends AbstractChannelBufferFactory {
+		/** The backing buffers acquired by this lease */
+		private final List<ChannelBuffer> leased = new ArrayList<ChannelBuffer>(4);
+		/** Indicates if this lease has been released */
+		private boolean released = false;
+		
+		/**
+		 * Creates a new Lease
+		 * @param order The default byte order
+		 */
+		protected Lease(ByteOrder order) {
+			super(order);
+		}
+		
+		/**
+		 * Returns the pool this lease acquires from
+		 * @return the owning pool
+		 */
+		protected PooledBufferFactory getPool() {
+			return PooledBufferFactory.this;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.buffer.ChannelBufferFactory#getBuffer(java.nio.ByteOrder, int)
+		 */
+		@Override
+		public synchronized ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+			if(released) throw new IllegalStateException("Buffer lease has been released", new Throwable());
+			ChannelBuffer buffer = acquire(order, capacity);
+			leased.add(buffer);
+			return buffer;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.buffer.ChannelBufferFactory#getBuffer(java.nio.ByteOrder, byte[], int, int)
+		 */
+		@Override
+		public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+			ChannelBuffer buffer = getBuffer(order, length);
+			buffer.writeBytes(array, offset, length);
+			return buffer;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.buffer.ChannelBufferFactory#getBuffer(java.nio.ByteBuffer)
+		 */
+		@Override
+		public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+			ChannelBuffer buffer = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+			buffer.writeBytes(nioBuffer.duplicate());
+			return buffer;
+		}
+		
+		/**
+		 * Returns the most recently leased buffer
+		 * @return the most recently leased buffer or null if none has been leased
+		 */
+		protected synchronized ChannelBuffer last() {
+			return leased.isEmpty() ? null : leased.get(leased.size()-1);
+		}
+		
+		/**
+		 * Returns one leased buffer to the pool ahead of the lease's release
+		 * @param buffer The leased buffer to return
+		 */
+		protected synchronized void releaseBuffer(ChannelBuffer buffer) {
+			if(released) return;
+			// identity, since channel buffer equality compares content
+			for(int i = 0; i < leased.size(); i++) {
+				if(leased.get(i)==buffer) {
+					leased.remove(i);
+					recycle(buffer);
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Returns all the leased buffers to the pool
+		 */
+		protected synchronized void release() {
+			if(released) return;
+			released = true;
+			for(ChannelBuffer buffer: leased) {
+				recycle(buffer);
+			}
+			leased.clear();
+		}
+	}
+	
+	/**
+	 * <p>Title: PooledDynamicBuffer</p>
+	 * <p>Description: A dynamic buffer that returns the backing buffer it outgrows to its lease as soon as the content has been copied to the larger one</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>org.helios.jzab.agent.util.PooledBufferFactory.PooledDynamicBuffer</code></p>
+	 */
+	protected static class PooledDynamicBuffer extends DynamicChannelBuffer {
+		/** The lease the backing buffers are acquired from */
+		private final Lease lease;
+		/** The current backing buffer */
+		private ChannelBuffer backing;
+		
+		/**
+		 * Creates a new PooledDynamicBuffer
+		 * @param order The byte order
+		 * @param size The initial capacity
+		 * @param lease The lease the backing buffers are acquired from
+		 */
+		protected PooledDynamicBuffer(ByteOrder order, int size, Lease lease) {
+			super(order, size, lease);
+			this.lease = lease;
+			backing = lease.last();
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.buffer.DynamicChannelBuffer#ensureWritableBytes(int)
+		 */
+		@Override
+		public void ensureWritableBytes(int minWritableBytes) {
+			int capacity = capacity();
+			super.ensureWritableBytes(minWritableBytes);
+			if(capacity()!=capacity) {
+				// grown into a new backing buffer, which is the lease's most recent
+				lease.releaseBuffer(backing);
+				backing = lease.last();
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.util;
+
+import java.util.Map;
+
+/**
+ * <p>Title: PooledBufferFactoryMXBean</p>
+ * <p>Description: JMX interface for {@link PooledBufferFactory}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.util.PooledBufferFactoryMXBean</code></p>
+ */
+public interface PooledBufferFactoryMXBean {
+	/**
+	 * Returns the number of buffer requests served from the pool
+	 * @return the number of pool hits
+	 */
+	public long getHits();
+	
+	/**
+	 * Returns the number of buffer requests that required a new allocation
+	 * @return the number of pool misses
+	 */
+	public long getMisses();
+	
+	/**
+	 * Returns the number of buffers handed out and not yet released
+	 * @return the number of outstanding buffers
+	 */
+	public long getOutstanding();
+	
+	/**
+	 * Returns the number of released buffers that were discarded because the pool was full or they were not pooled sizes
+	 * @return the number of discarded buffers
+	 */
+	public long getDiscards();
+	
+	/**
+	 * Returns the total number of idle buffers in the pool
+	 * @return the number of idle buffers
+	 */
+	public int getIdleBuffers();
+	
+	/**
+	 * Returns the total number of bytes held by idle buffers in the pool
+	 * @return the number of idle bytes
+	 */
+	public long getIdleBytes();
+	
+	/**
+	 * Returns the number of idle buffers keyed by size class
+	 * @return a map of idle buffer counts keyed by size class
+	 */
+	public Map<Integer, Integer> getIdleCounts();
+	
+	/**
+	 * Indicates if the pool allocates direct buffers
+	 * @return true if the pool allocates direct buffers, false for heap
+	 */
+	public boolean isDirect();
+	
+	/**
+	 * Resets the hit, miss and discard counters
+	 */
+	public void resetCounters();
+}
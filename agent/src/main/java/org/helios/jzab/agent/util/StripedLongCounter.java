@@ -0,0 +1,157 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.jzab.agent.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Title: StripedLongCounter</p>
+ * <p>Description: A long counter that spreads concurrent updates across a number of padded cells selected by the updating thread,
+ * so that concurrent incrementers do not contend on a single value. Reads sum all the cells and are not atomic with respect to concurrent updates.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>org.helios.jzab.agent.util.StripedLongCounter</code></p>
+ */
+public class StripedLongCounter {
+	/** The number of array slots between used cells so that each cell sits on its own cache line */
+	private static final int PAD = 8;
+	/** The default number of stripes, being the next power of 2 above twice the number of available processors */
+	public static final int DEFAULT_STRIPES = nextPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+	
+	/** The padded cells */
+	private final AtomicLongArray cells;
+	/** The stripe selection mask */
+	private final int mask;
+	
+	/**
+	 * Creates a new StripedLongCounter with the default number of stripes
+	 */
+	public StripedLongCounter() {
+		this(DEFAULT_STRIPES);
+	}
+	
+	/**
+	 * Creates a new StripedLongCounter
+	 * @param stripes The number of stripes, which will be rounded up to the next power of 2
+	 */
+	public StripedLongCounter(int stripes) {
+		if(stripes<1) throw new IllegalArgumentException("Invalid number of stripes [" + stripes + "]", new Throwable());
+		int size = nextPowerOfTwo(stripes);
+		cells = new AtomicLongArray(size * PAD);
+		mask = size-1;
+	}
+	
+	/**
+	 * Adds the passed value to the counter
+	 * @param value The value to add
+	 */
+	public void add(long value) {
+		cells.addAndGet(index(), value);
+	}
+	
+	/**
+	 * Increments the counter by one
+	 */
+	public void increment() {
+		cells.incrementAndGet(index());
+	}
+	
+	/**
+	 * Decrements the counter by one
+	 */
+	public void decrement() {
+		cells.decrementAndGet(index());
+	}
+	
+	/**
+	 * Returns the sum of all the cells
+	 * @return the current value of the counter
+	 */
+	public long sum() {
+		long sum = 0L;
+		for(int i = 0; i < cells.length(); i += PAD) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Returns the sum of all the cells and resets them to zero
+	 * @return the value of the counter before the reset
+	 */
+	public long sumThenReset() {
+		long sum = 0L;
+		for(int i = 0; i < cells.length(); i += PAD) {
+			sum += cells.getAndSet(i, 0L);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Resets the counter to zero
+	 */
+	public void reset() {
+		sumThenReset();
+	}
+	
+	/**
+	 * Sets the counter to the passed value. Not atomic with respect to concurrent updates.
+	 * @param value The value to set
+	 */
+	public void set(long value) {
+		reset();
+		cells.set(0, value);
+	}
+	
+	/**
+	 * Returns the cell index for the current thread
+	 * @return the cell index
+	 */
+	private int index() {
+		long id = Thread.currentThread().getId();
+		int h = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & mask) * PAD;
+	}
+	
+	/**
+	 * Returns the smallest power of 2 greater than or equal to the passed value
+	 * @param value The value to round up
+	 * @return the rounded value
+	 */
+	private static int nextPowerOfTwo(int value) {
+		int p = 1;
+		while(p < value) p <<= 1;
+		return p;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+}
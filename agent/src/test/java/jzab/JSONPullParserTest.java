@@ -0,0 +1,161 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package jzab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.helios.jzab.agent.net.codecs.ResponseDecodeMode;
+import org.helios.jzab.agent.net.codecs.ResponsePayloadDecoder;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Title: JSONPullParserTest</p>
+ * <p>Description: Feeds well formed and malformed response payloads through the streaming payload decoder
+ * and checks that the result matches the org.json tree decode of the same payload.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>jzab.JSONPullParserTest</code></p>
+ */
+public class JSONPullParserTest {
+	/** The streaming payload decoder */
+	protected final ResponsePayloadDecoder decoder = new ResponsePayloadDecoder(ResponseDecodeMode.STREAMING);
+	/** The test logger */
+	protected final Logger log = LoggerFactory.getLogger(getClass());
+	
+	/** Well formed payloads */
+	public static final String[] WELL_FORMED = {
+		"{}",
+		"{\"response\":\"success\"}",
+		" { \"response\" : \"success\" , \"info\" : \"Processed 1 Failed 0 Total 1\" } ",
+		"{\"a\":[],\"b\":{},\"c\":[1,-2,3.5,1e3,true,false,null,\"x\"]}",
+		"{\"a\":{\"b\":{\"c\":[[1,2],[3,{\"d\":\"e\\\"f\\u0041\"}]]}}}",
+	};
+	
+	/** Payloads with missing, misplaced or extra separators, some of which the lenient tree decode accepts */
+	public static final String[] MALFORMED = {
+		"{\"a\":[1 2]}",
+		"{\"a\" 1}",
+		"{\"a\":1 \"b\":2}",
+		"{\"a\":1,}",
+		"{\"a\":[1,]}",
+		"{\"a\":[,1]}",
+		"{,\"a\":1}",
+		"{\"a\"::1}",
+		"{\"a\":1,,\"b\":2}",
+		"{\"a\":[1:2]}",
+		"{\"a\":1;\"b\":2}",
+		"{\"a\"=1}",
+		"{\"a\":{\"b\" \"c\"}}",
+		"{\"response\":\"success\",\"data\":[{\"key\":\"a\" \"delay\":30,\"mtime\":0}]}",
+		"{\"response\":\"success\",\"data\":[{\"key\":\"a\",\"delay\":30,\"mtime\":0} {\"key\":\"b\",\"delay\":30,\"mtime\":0}]}",
+	};
+
+	/**
+	 * Well formed payloads decode to the same content as the tree decode
+	 * @throws JSONException thrown if the tree decode fails
+	 */
+	@Test
+	public void testWellFormed() throws JSONException {
+		for(String payload: WELL_FORMED) {
+			JSONObject decoded = decode(payload);
+			assertNotNull("Failed to decode [" + payload + "]", decoded);
+			assertJSONEquals(payload, new JSONObject(payload), decoded);
+		}
+	}
+	
+	/**
+	 * Malformed payloads are rejected by the streaming decode and decode to the tree decode's result, or null if the tree decode also fails
+	 */
+	@Test
+	public void testMalformed() {
+		for(String payload: MALFORMED) {
+			JSONObject expected;
+			try {
+				expected = new JSONObject(payload);
+			} catch (JSONException e) {
+				expected = null;
+			}
+			JSONObject decoded = decode(payload);
+			if(expected==null) {
+				assertNull("Decoded malformed payload [" + payload + "]", decoded);
+			} else {
+				assertNotNull("Failed to decode [" + payload + "]", decoded);
+				assertJSONEquals(payload, expected, decoded);
+			}
+		}
+	}
+	
+	/**
+	 * Decodes the passed payload through the streaming decoder
+	 * @param payload The payload to decode
+	 * @return the decoded JSONObject or null if the payload could not be parsed
+	 */
+	protected JSONObject decode(String payload) {
+		return decoder.decode(ChannelBuffers.copiedBuffer(payload, ResponsePayloadDecoder.UTF8), log);
+	}
+	
+	/**
+	 * Asserts that the passed org.json values have the same content
+	 * @param payload The payload the values were decoded from
+	 * @param expected The expected value
+	 * @param actual The actual value
+	 */
+	protected static void assertJSONEquals(String payload, Object expected, Object actual) {
+		try {
+			if(expected instanceof JSONObject) {
+				assertTrue("Expected an object in [" + payload + "]", actual instanceof JSONObject);
+				JSONObject e = (JSONObject)expected, a = (JSONObject)actual;
+				assertEquals("Field count in [" + payload + "]", e.length(), a.length());
+				for(Iterator<?> keys = e.keys(); keys.hasNext();) {
+					String key = (String)keys.next();
+					assertTrue("Missing field [" + key + "] in [" + payload + "]", a.has(key));
+					assertJSONEquals(payload, e.get(key), a.get(key));
+				}
+			} else if(expected instanceof JSONArray) {
+				assertTrue("Expected an array in [" + payload + "]", actual instanceof JSONArray);
+				JSONArray e = (JSONArray)expected, a = (JSONArray)actual;
+				assertEquals("Array length in [" + payload + "]", e.length(), a.length());
+				for(int i = 0; i < e.length(); i++) {
+					assertJSONEquals(payload, e.opt(i), a.opt(i));
+				}
+			} else {
+				assertEquals("Value in [" + payload + "]", expected, actual);
+			}
+		} catch (JSONException e) {
+			throw new AssertionError("Failed to compare [" + payload + "]: " + e);
+		}
+	}
+}
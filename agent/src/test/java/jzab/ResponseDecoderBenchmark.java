@@ -0,0 +1,155 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package jzab;
+
+import java.nio.charset.Charset;
+
+import org.helios.jzab.agent.net.codecs.ResponseDecodeMode;
+import org.helios.jzab.agent.net.codecs.ZabbixResponseDecoder;
+import org.helios.jzab.agent.net.codecs.ZabbixResponseFrameDecoder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.json.JSONObject;
+import org.junit.Ignore;
+
+/**
+ * <p>Title: ResponseDecoderBenchmark</p>
+ * <p>Description: Feeds a multi-MB active check response, fragmented into TCP segment sized chunks, 
+ * through the replaying response decoder and the frame response decoder in each decode mode.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>jzab.ResponseDecoderBenchmark</code></p>
+ */
+@Ignore
+public class ResponseDecoderBenchmark {
+	/** The number of active checks in the response */
+	public static final int CHECKS = 40000;
+	/** The fragment size */
+	public static final int FRAGMENT = 1460;
+	/** The number of warmup runs per decoder */
+	public static final int WARMUP = 10;
+	/** The number of timed runs per decoder */
+	public static final int RUNS = 20;
+
+	/**
+	 * @param args None
+	 */
+	public static void main(String[] args) {
+		ChannelBuffer frame = frame(CHECKS);
+		int size = frame.readableBytes();
+		ChannelBuffer[] fragments = fragment(frame, FRAGMENT);
+		log("ResponseDecoderBenchmark: " + CHECKS + " checks, " + size + " bytes in " + fragments.length + " fragments");
+		for(ResponseDecodeMode mode: ResponseDecodeMode.values()) {
+			log("\tReplaying, " + mode + ":\t" + run(fragments, mode, true) + " ms.");
+			log("\tFrame, " + mode + ":\t" + run(fragments, mode, false) + " ms.");
+		}
+	}
+	
+	/**
+	 * Decodes the fragmented frame repeatedly and returns the average elapsed time of the timed runs
+	 * @param fragments The frame fragments
+	 * @param mode The decode mode
+	 * @param replaying true for the replaying decoder, false for the frame decoder
+	 * @return the average elapsed time in ms.
+	 */
+	public static long run(ChannelBuffer[] fragments, ResponseDecodeMode mode, boolean replaying) {
+		for(int i = 0; i < WARMUP; i++) {
+			decode(fragments, mode, replaying);
+		}
+		long total = 0;
+		for(int i = 0; i < RUNS; i++) {
+			total += decode(fragments, mode, replaying);
+		}
+		return total/RUNS;
+	}
+	
+	/**
+	 * Feeds the fragments through a new decoder
+	 * @param fragments The frame fragments
+	 * @param mode The decode mode
+	 * @param replaying true for the replaying decoder, false for the frame decoder
+	 * @return the elapsed time in ms.
+	 */
+	public static long decode(ChannelBuffer[] fragments, ResponseDecodeMode mode, boolean replaying) {
+		ChannelUpstreamHandler decoder = replaying ? 
+				new ZabbixResponseDecoder(mode, Integer.MAX_VALUE) : 
+				new ZabbixResponseFrameDecoder(mode, Integer.MAX_VALUE);
+		DecoderEmbedder<JSONObject> embedder = new DecoderEmbedder<JSONObject>(decoder);
+		long start = System.nanoTime();
+		for(ChannelBuffer fragment: fragments) {
+			embedder.offer(fragment.duplicate());
+		}
+		JSONObject response = embedder.poll();
+		long elapsed = System.nanoTime()-start;
+		if(response==null) throw new RuntimeException("No response decoded", new Throwable());
+		return elapsed/1000000;
+	}
+	
+	/**
+	 * Builds a framed active check response
+	 * @param checks The number of active checks in the response
+	 * @return the framed response
+	 */
+	public static ChannelBuffer frame(int checks) {
+		StringBuilder b = new StringBuilder("{\"response\":\"success\",\"data\":[");
+		for(int i = 0; i < checks; i++) {
+			if(i>0) b.append(",");
+			b.append("{\"key\":\"jmx[\\\"java.lang:type=Memory\\\",HeapMemoryUsage.used").append(i).append("]\",\"delay\":").append(30*(1+i%4)).append(",\"lastlogsize\":0,\"mtime\":0}");
+		}
+		b.append("]}");
+		byte[] payload = b.toString().getBytes(Charset.forName("UTF-8"));
+		ChannelBuffer frame = ChannelBuffers.buffer(13 + payload.length);
+		frame.writeBytes("ZBXD".getBytes());
+		frame.writeByte(1);
+		frame.writeLong(Long.reverseBytes(payload.length));
+		frame.writeBytes(payload);
+		return frame;
+	}
+	
+	/**
+	 * Splits the passed buffer into fragments
+	 * @param buffer The buffer to split
+	 * @param size The fragment size
+	 * @return the fragments
+	 */
+	public static ChannelBuffer[] fragment(ChannelBuffer buffer, int size) {
+		int count = (buffer.readableBytes() + size - 1)/size;
+		ChannelBuffer[] fragments = new ChannelBuffer[count];
+		for(int i = 0; i < count; i++) {
+			fragments[i] = buffer.readSlice(Math.min(size, buffer.readableBytes()));
+		}
+		return fragments;
+	}
+	
+	/**
+	 * Out printer
+	 * @param msg the message to print
+	 */
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package jzab;
+
+import org.helios.jzab.agent.net.active.schedule.AbstractScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.ActiveScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.ConcurrentScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.IScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.PassiveScheduleBucket;
+import org.helios.jzab.agent.net.active.schedule.ScheduleDiff;
+import org.junit.Ignore;
+
+/**
+ * <p>Title: ScheduleBucketBenchmark</p>
+ * <p>Description: Replays a marching orders refresh of 50k checks in which every check changes delay against the 
+ * copy on write schedule bucket, the concurrent schedule bucket one item at a time, and the concurrent schedule bucket as one batch.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>jzab.ScheduleBucketBenchmark</code></p>
+ */
+@Ignore
+public class ScheduleBucketBenchmark {
+	/** The number of checks in the refresh */
+	public static final int CHECKS = 50000;
+	/** The delays the checks are spread across before the refresh */
+	public static final long[] DELAYS = {30, 60, 120, 300};
+	/** The number of times each scenario is run */
+	public static final int RUNS = 5;
+
+	/**
+	 * @param args None
+	 */
+	public static void main(String[] args) {
+		log("ScheduleBucketBenchmark: " + CHECKS + " checks");
+		String[] checks = new String[CHECKS];
+		for(int i = 0; i < CHECKS; i++) {
+			checks[i] = "host-" + (i%100) + "/jmx[\"java.lang:type=Memory\",Attr" + i + "]";
+		}
+		ScheduleDiff<String> diff = new ScheduleDiff<String>();
+		for(int i = 0; i < CHECKS; i++) {
+			diff.move(DELAYS[i%DELAYS.length], DELAYS[(i+1)%DELAYS.length], checks[i]);
+		}
+		for(int run = 0; run < RUNS; run++) {
+			log("Run #" + run);
+			log("\tCopyOnWrite, per item:   " + replay(new PassiveScheduleBucket<String, Object>(parent(), "host"), checks, diff, false) + " ms.");
+			log("\tConcurrent, per item:    " + replay(new ConcurrentScheduleBucket<String, Object>(parent(), "host"), checks, diff, false) + " ms.");
+			log("\tConcurrent, batch apply: " + replay(new ConcurrentScheduleBucket<String, Object>(parent(), "host"), checks, diff, true) + " ms.");
+		}
+	}
+	
+	/**
+	 * Populates the passed bucket and replays the refresh diff
+	 * @param bucket The bucket to benchmark
+	 * @param checks The checks to populate the bucket with
+	 * @param diff The refresh diff
+	 * @param batch true to apply the diff as a batch, false to apply it one item at a time
+	 * @return the elapsed time of the refresh in ms.
+	 */
+	public static long replay(AbstractScheduleBucket<String, Object> bucket, String[] checks, ScheduleDiff<String> diff, boolean batch) {
+		for(int i = 0; i < checks.length; i++) {
+			bucket.addItem(DELAYS[i%DELAYS.length], checks[i]);
+		}
+		long start = System.nanoTime();
+		if(batch) {
+			bucket.apply(diff);
+		} else {
+			for(ScheduleDiff.Change<String> change: diff.getRemovals()) {
+				bucket.removeItem(change.getDelay(), change.getItem());
+			}
+			for(ScheduleDiff.Change<String> change: diff.getAdditions()) {
+				bucket.addItem(change.getDelay(), change.getItem());
+			}
+		}
+		long elapsed = (System.nanoTime()-start)/1000000;
+		int total = 0;
+		for(long delay: bucket.keySet()) {
+			total += bucket.get(delay).size();
+		}
+		if(total!=checks.length) throw new RuntimeException("Expected [" + checks.length + "] scheduled checks but found [" + total + "]", new Throwable());
+		return elapsed;
+	}
+	
+	/**
+	 * Creates a parent bucket that schedules nothing
+	 * @return a parent bucket
+	 */
+	public static IScheduleBucket<Object> parent() {
+		return new ActiveScheduleBucket<Object, Object>(Object.class);
+	}
+	
+	public static void log(Object msg) {
+		System.out.println(msg);
+	}
+
+}